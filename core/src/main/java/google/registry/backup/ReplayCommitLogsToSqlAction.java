@@ -29,8 +29,14 @@ import static org.joda.time.Duration.standardHours;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.cloud.storage.BlobInfo;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import google.registry.backup.BackupModule.Backups;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.gcs.GcsUtils;
 import google.registry.model.UpdateAutoTimestamp;
@@ -54,9 +60,18 @@ import google.registry.util.Clock;
 import google.registry.util.RequestStatusChecker;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import javax.inject.Inject;
+import javax.inject.Provider;
 import javax.servlet.http.HttpServletResponse;
+import org.hibernate.Session;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Seconds;
@@ -79,11 +94,21 @@ public class ReplayCommitLogsToSqlAction implements Runnable {
   // request timeouts
   private static final Duration REPLAY_TIMEOUT_DURATION = Duration.standardMinutes(5);
 
+  /** Number of commit log files that are read and parsed ahead of the one being replayed. */
+  private static final int PREFETCH_FILES = 2;
+
+  /** Maximum number of entities in the transactions that are replayed in one SQL transaction. */
+  private static final int MAX_BATCH_ENTITIES = 100;
+
+  /** Number of inserts or updates of an entity type that Hibernate sends in one JDBC batch. */
+  private static final int JDBC_BATCH_SIZE = 50;
+
   @Inject GcsUtils gcsUtils;
   @Inject Response response;
   @Inject RequestStatusChecker requestStatusChecker;
   @Inject GcsDiffFileLister diffLister;
   @Inject Clock clock;
+  @Inject @Backups Provider<ListeningExecutorService> executorProvider;
 
   @Inject
   @Config("commitLogGcsBucket")
@@ -164,6 +189,16 @@ public class ReplayCommitLogsToSqlAction implements Runnable {
   }
 
   private String replayFiles(DateTime startTime) {
+    ListeningExecutorService executor = executorProvider.get();
+    try {
+      return replayFiles(startTime, executor);
+    } finally {
+      // This also cancels the prefetching of any files that we didn't get to.
+      executor.shutdownNow();
+    }
+  }
+
+  private String replayFiles(DateTime startTime, ListeningExecutorService executor) {
     DateTime replayTimeoutTime = startTime.plus(REPLAY_TIMEOUT_DURATION);
     DateTime searchStartTime = jpaTm().transact(() -> SqlReplayCheckpoint.get().plusMillis(1));
     int filesProcessed = 0;
@@ -192,8 +227,17 @@ public class ReplayCommitLogsToSqlAction implements Runnable {
             "No remaining files found in hour %s, continuing search in the next hour.",
             searchStartTime.toString("yyyy-MM-dd HH"));
       }
+      // Read and parse the next few files in the background while the current one is replayed.
+      Iterator<BlobInfo> filesToPrefetch = fileBatch.iterator();
+      Queue<ListenableFuture<ImmutableList<ImmutableList<VersionedEntity>>>> prefetchedFiles =
+          new ArrayDeque<>();
       for (BlobInfo file : fileBatch) {
-        transactionsProcessed += processFile(file);
+        while (prefetchedFiles.size() <= PREFETCH_FILES && filesToPrefetch.hasNext()) {
+          BlobInfo fileToPrefetch = filesToPrefetch.next();
+          prefetchedFiles.add(executor.submit(() -> loadFile(fileToPrefetch)));
+        }
+        transactionsProcessed +=
+            processFile(file, Futures.getUnchecked(prefetchedFiles.remove()), executor);
         filesProcessed++;
         if (clock.nowUtc().isAfter(replayTimeoutTime)) {
           return createResponseString(
@@ -214,33 +258,142 @@ public class ReplayCommitLogsToSqlAction implements Runnable {
         msg, filesProcessed, transactionsProcessed, tps);
   }
 
-  /**
-   * Replays the commit logs in the given commit log file and returns the number of transactions
-   * committed.
-   */
-  private int processFile(BlobInfo metadata) {
+  /** Reads the Datastore transactions in the given commit log file. */
+  private ImmutableList<ImmutableList<VersionedEntity>> loadFile(BlobInfo metadata) {
     try (InputStream input = gcsUtils.openInputStream(metadata.getBlobId())) {
-      // Load and process the Datastore transactions one at a time
-      ImmutableList<ImmutableList<VersionedEntity>> allTransactions =
-          CommitLogImports.loadEntitiesByTransaction(input);
-      try (UpdateAutoTimestamp.DisableAutoUpdateResource disabler =
-          UpdateAutoTimestamp.disableAutoUpdate()) {
-        allTransactions.forEach(
-            transaction -> jpaTm().transact(() -> replayTransaction(transaction)));
-      }
-      // if we succeeded, set the last-seen time
-      DateTime checkpoint = DateTime.parse(metadata.getName().substring(DIFF_FILE_PREFIX.length()));
-      jpaTm().transact(() -> SqlReplayCheckpoint.set(checkpoint));
-      logger.atInfo().log(
-          "Replayed %d transactions from commit log file %s with size %d B.",
-          allTransactions.size(), metadata.getName(), metadata.getSize());
-      return allTransactions.size();
+      return CommitLogImports.loadEntitiesByTransaction(input);
     } catch (IOException e) {
       throw new RuntimeException(
           "Errored out while replaying commit log file " + metadata.getName(), e);
     }
   }
 
+  /**
+   * Replays the transactions of the given commit log file and returns the number of transactions
+   * committed.
+   */
+  private int processFile(
+      BlobInfo metadata,
+      ImmutableList<ImmutableList<VersionedEntity>> allTransactions,
+      ListeningExecutorService executor) {
+    // Transactions in the same wave touch different entities, so they can be replayed in any
+    // order, but every wave must be fully replayed before the next one is started.
+    ImmutableListMultimap<Integer, ImmutableList<VersionedEntity>> waves =
+        groupIntoWaves(allTransactions);
+    for (Integer wave : waves.keySet()) {
+      replayWave(waves.get(wave), executor);
+    }
+    // if we succeeded, set the last-seen time
+    DateTime checkpoint = DateTime.parse(metadata.getName().substring(DIFF_FILE_PREFIX.length()));
+    jpaTm().transact(() -> SqlReplayCheckpoint.set(checkpoint));
+    ReplayMetrics.recordFileReplayed(new Duration(checkpoint, clock.nowUtc()));
+    logger.atInfo().log(
+        "Replayed %d transactions in %d wave(s) from commit log file %s with size %d B.",
+        allTransactions.size(), waves.keySet().size(), metadata.getName(), metadata.getSize());
+    return allTransactions.size();
+  }
+
+  /**
+   * Groups transactions into waves, so that no two transactions in a wave touch the same entity.
+   *
+   * <p>Each transaction goes into the wave after the last one with a transaction that touches any
+   * of its entities, which keeps the writes to each entity in the order in which they happened in
+   * Datastore. The waves are numbered from zero, and the multimap iterates over them in order.
+   */
+  @VisibleForTesting
+  static ImmutableListMultimap<Integer, ImmutableList<VersionedEntity>> groupIntoWaves(
+      ImmutableList<ImmutableList<VersionedEntity>> transactions) {
+    Map<Key, Integer> lastWaves = new HashMap<>();
+    ImmutableListMultimap.Builder<Integer, ImmutableList<VersionedEntity>> waves =
+        new ImmutableListMultimap.Builder<>();
+    for (ImmutableList<VersionedEntity> transaction : transactions) {
+      int wave =
+          transaction.stream()
+              .mapToInt(entity -> lastWaves.getOrDefault(entity.key(), -1) + 1)
+              .max()
+              .orElse(0);
+      transaction.forEach(entity -> lastWaves.put(entity.key(), wave));
+      waves.put(wave, transaction);
+    }
+    return waves.build();
+  }
+
+  /**
+   * Replays a wave of transactions that touch different entities.
+   *
+   * <p>The transactions are split into batches that are replayed concurrently, each in a single
+   * SQL transaction. Entities of different transactions can still depend on each other through
+   * foreign keys, so a batch that fails is rolled back and its transactions are replayed again one
+   * at a time, in order, once all the other batches are done.
+   */
+  private void replayWave(
+      List<ImmutableList<VersionedEntity>> transactions, ListeningExecutorService executor) {
+    List<List<ImmutableList<VersionedEntity>>> batches = new ArrayList<>();
+    List<ImmutableList<VersionedEntity>> batch = new ArrayList<>();
+    int batchEntities = 0;
+    for (ImmutableList<VersionedEntity> transaction : transactions) {
+      if (!batch.isEmpty() && batchEntities + transaction.size() > MAX_BATCH_ENTITIES) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchEntities = 0;
+      }
+      batch.add(transaction);
+      batchEntities += transaction.size();
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    List<ListenableFuture<Boolean>> futures = new ArrayList<>();
+    for (List<ImmutableList<VersionedEntity>> batchToReplay : batches) {
+      futures.add(executor.submit(() -> replayBatch(batchToReplay)));
+    }
+    ImmutableList<Boolean> succeeded =
+        futures.stream().map(Futures::getUnchecked).collect(toImmutableList());
+    for (int i = 0; i < batches.size(); i++) {
+      if (!succeeded.get(i)) {
+        batches
+            .get(i)
+            .forEach(
+                transaction ->
+                    withoutAutoUpdate(
+                        () -> jpaTm().transact(() -> replayTransaction(transaction))));
+        ReplayMetrics.recordTransactionsReplayed(ReplayMetrics.SERIAL, batches.get(i).size());
+      }
+    }
+  }
+
+  /** Replays a batch of transactions in one SQL transaction, and returns whether it succeeded. */
+  private boolean replayBatch(List<ImmutableList<VersionedEntity>> batch) {
+    try {
+      withoutAutoUpdate(
+          () ->
+              jpaTm()
+                  .transact(
+                      () -> {
+                        jpaTm()
+                            .getEntityManager()
+                            .unwrap(Session.class)
+                            .setJdbcBatchSize(JDBC_BATCH_SIZE);
+                        batch.forEach(this::replayTransaction);
+                      }));
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Failed to replay a batch of %d transactions, replaying them one at a time.",
+          batch.size());
+      return false;
+    }
+    ReplayMetrics.recordTransactionsReplayed(ReplayMetrics.BATCHED, batch.size());
+    return true;
+  }
+
+  /** Runs the work with the auto-update of timestamps disabled in the current thread. */
+  private static void withoutAutoUpdate(Runnable work) {
+    try (UpdateAutoTimestamp.DisableAutoUpdateResource disabler =
+        UpdateAutoTimestamp.disableAutoUpdate()) {
+      work.run();
+    }
+  }
+
   private void replayTransaction(ImmutableList<VersionedEntity> transaction) {
     transaction.stream()
         .sorted(ReplayCommitLogsToSqlAction::compareByWeight)
@@ -0,0 +1,70 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.backup;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.DistributionFitter;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import org.joda.time.Duration;
+
+/** Metrics for the replay of commit logs to Cloud SQL by {@link ReplayCommitLogsToSqlAction}. */
+final class ReplayMetrics {
+
+  /** Value of the mode label for transactions that were replayed in a batch. */
+  static final String BATCHED = "batched";
+
+  /** Value of the mode label for transactions that were replayed one at a time. */
+  static final String SERIAL = "serial";
+
+  private static final ImmutableSet<LabelDescriptor> TRANSACTION_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create(
+              "mode", "Whether the transaction was replayed in a batch or on its own."));
+
+  // Allows values between 100 ms and 100 * 2^20 ms, which is more than a day.
+  private static final DistributionFitter EXPONENTIAL_FITTER =
+      ExponentialFitter.create(20, 2.0, 100.0);
+
+  private static final EventMetric lagMetric =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/commit_logs/replay/lag",
+              "Time between the end of a commit log file and its replay to Cloud SQL",
+              "milliseconds",
+              ImmutableSet.of(),
+              EXPONENTIAL_FITTER);
+
+  private static final IncrementableMetric transactionsMetric =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/replay/transactions",
+              "Count of Datastore transactions replayed to Cloud SQL",
+              "count",
+              TRANSACTION_LABEL_DESCRIPTORS);
+
+  private ReplayMetrics() {}
+
+  static void recordFileReplayed(Duration lag) {
+    lagMetric.record(lag.getMillis());
+  }
+
+  static void recordTransactionsReplayed(String mode, int count) {
+    transactionsMetric.incrementBy(count, mode);
+  }
+}
@@ -14,11 +14,13 @@
 
 package google.registry.beam.common;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static org.apache.beam.sdk.values.TypeDescriptors.integers;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Streams;
 import google.registry.beam.common.RegistryQuery.CriteriaQuerySupplier;
 import google.registry.model.UpdateAutoTimestamp;
@@ -27,9 +29,12 @@ import google.registry.model.replay.SqlEntity;
 import google.registry.persistence.transaction.JpaTransactionManager;
 import google.registry.persistence.transaction.TransactionManagerFactory;
 import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.persistence.criteria.CriteriaQuery;
 import org.apache.beam.sdk.coders.Coder;
@@ -130,6 +135,18 @@ public final class RegistryJpaIO {
 
     public static final String DEFAULT_NAME = "RegistryJpaIO.Read";
 
+    /**
+     * Name of the query parameter bound to the lowest key of a partition, see {@link
+     * #withKeyRangePartitions}.
+     */
+    public static final String PARTITION_START = "partitionStart";
+
+    /**
+     * Name of the query parameter bound to the highest key of a partition, see {@link
+     * #withKeyRangePartitions}.
+     */
+    public static final String PARTITION_END = "partitionEnd";
+
     abstract String name();
 
     abstract RegistryQuery<R> query();
@@ -138,16 +155,34 @@ public final class RegistryJpaIO {
 
     abstract Coder<T> coder();
 
+    @Nullable
+    abstract KeyRangePartitions keyRangePartitions();
+
     abstract Builder<R, T> toBuilder();
 
     @Override
     @SuppressWarnings("deprecation") // Reshuffle still recommended by GCP.
     public PCollection<T> expand(PBegin input) {
-      return input
-          .apply("Starting " + name(), Create.of((Void) null))
-          .apply("Run query for " + name(), ParDo.of(new QueryRunner<>(query(), resultMapper())))
-          .setCoder(coder())
-          .apply("Reshuffle", Reshuffle.viaRandomKey());
+      PCollection<Void> start = input.apply("Starting " + name(), Create.of((Void) null));
+      PCollection<T> results;
+      if (keyRangePartitions() == null) {
+        results =
+            start.apply(
+                "Run query for " + name(), ParDo.of(new QueryRunner<>(query(), resultMapper())));
+      } else {
+        results =
+            start
+                .apply(
+                    "Find key ranges for " + name(),
+                    ParDo.of(new KeyRangeFinder(keyRangePartitions())))
+                .setCoder(SerializableCoder.of(KeyRange.class))
+                // Spreads the key ranges over the workers before any of them is read.
+                .apply("Distribute key ranges for " + name(), Reshuffle.viaRandomKey())
+                .apply(
+                    "Run partitioned query for " + name(),
+                    ParDo.of(new PartitionedQueryRunner<>(name(), query(), resultMapper())));
+      }
+      return results.setCoder(coder()).apply("Reshuffle", Reshuffle.viaRandomKey());
     }
 
     public Read<R, T> withName(String name) {
@@ -162,6 +197,32 @@ public final class RegistryJpaIO {
       return toBuilder().coder(coder).build();
     }
 
+    /**
+     * Returns a copy of this {@link Read} that splits the query into ranges of a unique, non-null
+     * key, and reads the ranges in parallel, each in its own transaction and possibly on different
+     * workers.
+     *
+     * <p>The ranges are found by a boundary query that divides the values of {@code keyColumn} in
+     * {@code table} (both SQL names, e.g. {@code repo_id} in {@code Domain}) into at most {@code
+     * numPartitions} ranges of about the same number of rows. This only needs to scan the index of
+     * the key, so is cheap compared to the query itself. The query of this {@link Read} must
+     * restrict its results to one range by comparing the same key with the {@link
+     * #PARTITION_START} and {@link #PARTITION_END} parameters, both inclusive, e.g. {@code AND
+     * d.repoId BETWEEN :partitionStart AND :partitionEnd}.
+     *
+     * <p>Every partition sees a consistent snapshot of the database, but not the same one. The
+     * ranges are fixed when the boundary query runs, so rows inserted after that are only read if
+     * their keys fall within a range, and a row that is updated while the partitions are read is
+     * read as it is when its own partition runs. This mode is therefore meant for queries whose
+     * results don't depend on concurrent changes, e.g. ones over rows that are never updated or
+     * that are filtered by an explicit point in time.
+     */
+    public Read<R, T> withKeyRangePartitions(String table, String keyColumn, int numPartitions) {
+      return toBuilder()
+          .keyRangePartitions(KeyRangePartitions.create(table, keyColumn, numPartitions))
+          .build();
+    }
+
     static <R, T> Builder<R, T> builder() {
       return new AutoValue_RegistryJpaIO_Read.Builder<R, T>()
           .name(DEFAULT_NAME)
@@ -179,6 +240,8 @@ public final class RegistryJpaIO {
 
       abstract Builder<R, T> coder(Coder coder);
 
+      abstract Builder<R, T> keyRangePartitions(KeyRangePartitions keyRangePartitions);
+
       abstract Read<R, T> build();
 
       Builder<R, T> criteriaQuery(CriteriaQuerySupplier<R> criteriaQuery) {
@@ -214,6 +277,129 @@ public final class RegistryJpaIO {
                 () -> query.stream().map(resultMapper::apply).forEach(outputReceiver::output));
       }
     }
+
+    /** Runs the boundary query of a {@link KeyRangePartitions} and outputs its key ranges. */
+    static class KeyRangeFinder extends DoFn<Void, KeyRange> {
+      private final KeyRangePartitions keyRangePartitions;
+
+      KeyRangeFinder(KeyRangePartitions keyRangePartitions) {
+        this.keyRangePartitions = keyRangePartitions;
+      }
+
+      @ProcessElement
+      public void processElement(OutputReceiver<KeyRange> outputReceiver) {
+        jpaTm()
+            .transactNoRetry(keyRangePartitions::findKeyRanges)
+            .forEach(outputReceiver::output);
+      }
+    }
+
+    /**
+     * Runs the query for one {@link KeyRange}, counting the rows read and the time it took per
+     * partition.
+     */
+    static class PartitionedQueryRunner<R, T> extends DoFn<KeyRange, T> {
+      private final String name;
+      private final RegistryQuery<R> query;
+      private final SerializableFunction<R, T> resultMapper;
+
+      PartitionedQueryRunner(
+          String name, RegistryQuery<R> query, SerializableFunction<R, T> resultMapper) {
+        this.name = name;
+        this.query = query;
+        this.resultMapper = resultMapper;
+      }
+
+      @ProcessElement
+      public void processElement(@Element KeyRange keyRange, OutputReceiver<T> outputReceiver) {
+        String partition = String.format("%s partition %d", name, keyRange.index());
+        Counter rows = Metrics.counter("SQL_READ", partition + " rows");
+        Counter millis = Metrics.counter("SQL_READ", partition + " millis");
+        long startNanos = System.nanoTime();
+        jpaTm()
+            .transactNoRetry(
+                () ->
+                    query.stream(keyRange.toParameters())
+                        .map(resultMapper::apply)
+                        .forEach(
+                            result -> {
+                              outputReceiver.output(result);
+                              rows.inc();
+                            }));
+        millis.inc(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      }
+    }
+  }
+
+  /** The key ranges that a partitioned {@link Read} is split into. */
+  @AutoValue
+  abstract static class KeyRangePartitions implements Serializable {
+
+    /**
+     * Native query that divides the ordered keys into buckets of the same size and returns the
+     * first and last key of each bucket.
+     */
+    private static final String BOUNDARY_QUERY =
+        "SELECT MIN(%1$s), MAX(%1$s) FROM"
+            + " (SELECT %1$s, NTILE(:numPartitions) OVER (ORDER BY %1$s) AS bucket FROM \"%2$s\")"
+            + " AS keys GROUP BY bucket ORDER BY bucket";
+
+    abstract String table();
+
+    abstract String keyColumn();
+
+    abstract int numPartitions();
+
+    static KeyRangePartitions create(String table, String keyColumn, int numPartitions) {
+      checkArgument(numPartitions > 0, "Number of partitions must be positive: %s", numPartitions);
+      return new AutoValue_RegistryJpaIO_KeyRangePartitions(table, keyColumn, numPartitions);
+    }
+
+    /** Returns the key ranges of the table, which is empty if the table is. */
+    ImmutableList<KeyRange> findKeyRanges() {
+      @SuppressWarnings("unchecked")
+      List<Object[]> bounds =
+          jpaTm()
+              .getEntityManager()
+              .createNativeQuery(String.format(BOUNDARY_QUERY, keyColumn(), table()))
+              .setParameter("numPartitions", numPartitions())
+              .getResultList();
+      ImmutableList.Builder<KeyRange> keyRanges = new ImmutableList.Builder<>();
+      for (int i = 0; i < bounds.size(); i++) {
+        keyRanges.add(
+            KeyRange.create(i, toKeyParameter(bounds.get(i)[0]), toKeyParameter(bounds.get(i)[1])));
+      }
+      return keyRanges.build();
+    }
+
+    /**
+     * Converts a key returned by the boundary query to the type that JPA expects for the key.
+     *
+     * <p>Native queries return {@code bigint} columns as {@link BigInteger}, whereas the entities
+     * map them to {@code long}.
+     */
+    private static Serializable toKeyParameter(Object key) {
+      return key instanceof BigInteger ? ((BigInteger) key).longValueExact() : (Serializable) key;
+    }
+  }
+
+  /** A range of keys, both inclusive, that is read by one partition of a {@link Read}. */
+  @AutoValue
+  abstract static class KeyRange implements Serializable {
+
+    abstract int index();
+
+    abstract Serializable start();
+
+    abstract Serializable end();
+
+    static KeyRange create(int index, Serializable start, Serializable end) {
+      return new AutoValue_RegistryJpaIO_KeyRange(index, start, end);
+    }
+
+    ImmutableMap<String, Object> toParameters() {
+      return ImmutableMap.of(Read.PARTITION_START, start(), Read.PARTITION_END, end());
+    }
   }
 
   /**
@@ -58,6 +58,21 @@ public interface RegistryPipelineOptions extends GcpOptions {
 
   void setSqlWriteShards(int maxConcurrentSqlWriters);
 
+  @Description(
+      "Number of key ranges that large reads from the SQL database are split into, which are read "
+          + "in parallel. Please refer to the Javadoc of "
+          + "RegistryJpaIO.Read.withKeyRangePartitions() for more information.")
+  @Default.Integer(20)
+  int getSqlReadPartitions();
+
+  void setSqlReadPartitions(int sqlReadPartitions);
+
+  @Description("The number of entities to load from the SQL database in one query.")
+  @Default.Integer(100)
+  int getSqlReadBatchSize();
+
+  void setSqlReadBatchSize(int sqlReadBatchSize);
+
   static RegistryPipelineComponent toRegistryPipelineComponent(RegistryPipelineOptions options) {
     return DaggerRegistryPipelineComponent.builder()
         .isolationOverride(options.getIsolationOverride())
@@ -16,6 +16,7 @@ package google.registry.beam.common;
 
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 
+import com.google.common.collect.ImmutableMap;
 import google.registry.persistence.transaction.JpaTransactionManager;
 import java.io.Serializable;
 import java.util.Map;
@@ -38,7 +39,18 @@ public interface RegistryQuery<T> extends Serializable {
    */
   int QUERY_FETCH_SIZE = 1000;
 
-  Stream<T> stream();
+  /**
+   * Returns the results of the query, binding the given parameters in addition to the ones that the
+   * query was created with.
+   *
+   * <p>This allows {@link RegistryJpaIO.Read} to restrict the query to a partition of the key
+   * space, see {@link RegistryJpaIO.Read#withKeyRangePartitions}.
+   */
+  Stream<T> stream(Map<String, Object> additionalParameters);
+
+  default Stream<T> stream() {
+    return stream(ImmutableMap.of());
+  }
 
   interface CriteriaQuerySupplier<T> extends Supplier<CriteriaQuery<T>>, Serializable {}
 
@@ -52,13 +64,14 @@ public interface RegistryQuery<T> extends Serializable {
    */
   static <T> RegistryQuery<T> createQuery(
       String sql, @Nullable Map<String, Object> parameters, boolean nativeQuery) {
-    return () -> {
+    return additionalParameters -> {
       EntityManager entityManager = jpaTm().getEntityManager();
       Query query =
           nativeQuery ? entityManager.createNativeQuery(sql) : entityManager.createQuery(sql);
       if (parameters != null) {
         parameters.forEach(query::setParameter);
       }
+      additionalParameters.forEach(query::setParameter);
       JpaTransactionManager.setQueryFetchSize(query, QUERY_FETCH_SIZE);
       @SuppressWarnings("unchecked")
       Stream<T> resultStream = query.getResultStream();
@@ -74,13 +87,14 @@ public interface RegistryQuery<T> extends Serializable {
    */
   static <T> RegistryQuery<T> createQuery(
       String jpql, @Nullable Map<String, Object> parameters, Class<T> clazz) {
-    return () -> {
+    return additionalParameters -> {
       // TODO(b/193662898): switch to jpaTm().query() when it can properly detach loaded entities.
       EntityManager entityManager = jpaTm().getEntityManager();
       TypedQuery<T> query = entityManager.createQuery(jpql, clazz);
       if (parameters != null) {
         parameters.forEach(query::setParameter);
       }
+      additionalParameters.forEach(query::setParameter);
       JpaTransactionManager.setQueryFetchSize(query, QUERY_FETCH_SIZE);
       return query.getResultStream().map(e -> detach(entityManager, e));
     };
@@ -96,10 +110,11 @@ public interface RegistryQuery<T> extends Serializable {
    * @param <T> Type of each row in the result set.
    */
   static <T> RegistryQuery<T> createQuery(CriteriaQuerySupplier<T> criteriaQuery) {
-    return () -> {
+    return additionalParameters -> {
       // TODO(b/193662898): switch to jpaTm().query() when it can properly detach loaded entities.
       EntityManager entityManager = jpaTm().getEntityManager();
       TypedQuery<T> query = entityManager.createQuery(criteriaQuery.get());
+      additionalParameters.forEach(query::setParameter);
       JpaTransactionManager.setQueryFetchSize(query, QUERY_FETCH_SIZE);
       return query.getResultStream().map(e -> detach(entityManager, e));
     };
@@ -112,7 +112,9 @@ public class InvoicingPipeline implements Serializable {
       InvoicingPipelineOptions options, Pipeline pipeline) {
     Read<Object[], BillingEvent> read =
         RegistryJpaIO.read(
-            makeCloudSqlQuery(options.getYearMonth()), false, InvoicingPipeline::parseRow);
+                makeCloudSqlQuery(options.getYearMonth()), false, InvoicingPipeline::parseRow)
+            .withKeyRangePartitions(
+                "BillingEvent", "billing_event_id", options.getSqlReadPartitions());
 
     return pipeline.apply("Read BillingEvents from Cloud SQL", read);
   }
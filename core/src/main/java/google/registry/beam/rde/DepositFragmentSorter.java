@@ -0,0 +1,167 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.io.Closer;
+import google.registry.rde.DepositFragment;
+import google.registry.rde.RdeResourceType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sorts the fragments of a part of a deposit by their XML, in bounded memory.
+ *
+ * <p>Fragments are buffered in memory until they hold {@code maxBufferedChars} characters. The
+ * buffer is then sorted and spilled to a temporary local file, and the sorted runs are merged as
+ * they are read back, so that only one fragment per run is held in memory. Parts that fit in the
+ * buffer are sorted without touching the disk.
+ *
+ * <p>Closing the sorter deletes its temporary files, so it must be closed after the fragments
+ * are read.
+ */
+final class DepositFragmentSorter implements Closeable {
+
+  /** The number of characters of fragments that are sorted in memory by default. */
+  static final long DEFAULT_MAX_BUFFERED_CHARS = 32L * 1024 * 1024;
+
+  private static final Comparator<DepositFragment> ORDER =
+      Comparator.comparing(DepositFragment::xml);
+
+  private final long maxBufferedChars;
+  private final List<DepositFragment> buffer = new ArrayList<>();
+  private final List<Path> runs = new ArrayList<>();
+  private final Closer closer = Closer.create();
+  private long bufferedChars;
+
+  DepositFragmentSorter(long maxBufferedChars) {
+    checkArgument(maxBufferedChars > 0, "Buffer size must be positive: %s", maxBufferedChars);
+    this.maxBufferedChars = maxBufferedChars;
+  }
+
+  DepositFragmentSorter() {
+    this(DEFAULT_MAX_BUFFERED_CHARS);
+  }
+
+  void add(DepositFragment fragment) throws IOException {
+    buffer.add(fragment);
+    bufferedChars += fragment.xml().length() + fragment.error().length();
+    if (bufferedChars >= maxBufferedChars) {
+      spill();
+    }
+  }
+
+  /**
+   * Returns all the fragments that were added, in order.
+   *
+   * <p>The fragments are read from the temporary files on demand, so the iterator throws {@link
+   * UncheckedIOException} if reading fails.
+   */
+  Iterator<DepositFragment> sorted() throws IOException {
+    buffer.sort(ORDER);
+    if (runs.isEmpty()) {
+      return buffer.iterator();
+    }
+    ImmutableList.Builder<Iterator<DepositFragment>> iterators = ImmutableList.builder();
+    iterators.add(buffer.iterator());
+    for (Path run : runs) {
+      iterators.add(readRun(run));
+    }
+    return Iterators.mergeSorted(iterators.build(), ORDER);
+  }
+
+  @VisibleForTesting
+  int getSpilledRuns() {
+    return runs.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      closer.close();
+    } finally {
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+    }
+  }
+
+  private void spill() throws IOException {
+    buffer.sort(ORDER);
+    Path run = Files.createTempFile("rde-part-", ".run");
+    runs.add(run);
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+      for (DepositFragment fragment : buffer) {
+        output.writeBoolean(true);
+        output.writeUTF(fragment.type().name());
+        writeString(output, fragment.xml());
+        writeString(output, fragment.error());
+      }
+      output.writeBoolean(false);
+    }
+    buffer.clear();
+    bufferedChars = 0;
+  }
+
+  private Iterator<DepositFragment> readRun(Path run) throws IOException {
+    DataInputStream input =
+        closer.register(new DataInputStream(new BufferedInputStream(Files.newInputStream(run))));
+    return new AbstractIterator<DepositFragment>() {
+      @Override
+      protected DepositFragment computeNext() {
+        try {
+          if (!input.readBoolean()) {
+            return endOfData();
+          }
+          return DepositFragment.create(
+              RdeResourceType.valueOf(input.readUTF()), readString(input), readString(input));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  // DataOutput.writeUTF() is limited to 64 KB, which a fragment can exceed.
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
@@ -14,6 +14,7 @@
 
 package google.registry.beam.rde;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
 import static google.registry.model.common.Cursor.getCursorTimeOrStartOfTime;
@@ -21,12 +22,15 @@ import static google.registry.persistence.transaction.TransactionManagerFactory.
 import static google.registry.persistence.transaction.TransactionManagerUtil.transactIfJpaTm;
 import static google.registry.rde.RdeModule.BRDA_QUEUE;
 import static google.registry.rde.RdeModule.RDE_UPLOAD_QUEUE;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.auto.value.AutoValue;
 import com.google.cloud.storage.BlobId;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.io.CountingOutputStream;
 import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.PgpHelper;
 import google.registry.model.common.Cursor;
@@ -37,7 +41,9 @@ import google.registry.model.tld.Registry;
 import google.registry.rde.BrdaCopyAction;
 import google.registry.rde.DepositFragment;
 import google.registry.rde.Ghostryde;
+import google.registry.rde.GhostrydeAssembler;
 import google.registry.rde.PendingDeposit;
+import google.registry.rde.PendingDeposit.PendingDepositCoder;
 import google.registry.rde.RdeCounter;
 import google.registry.rde.RdeMarshaller;
 import google.registry.rde.RdeModule;
@@ -48,20 +54,40 @@ import google.registry.request.Action.Service;
 import google.registry.request.RequestParameters;
 import google.registry.tldconfig.idn.IdnTableEnum;
 import google.registry.util.CloudTasksUtils;
+import google.registry.util.ImprovedOutputStream;
 import google.registry.xjc.rdeheader.XjcRdeHeader;
 import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
 import google.registry.xml.ValidationMode;
 import google.registry.xml.XmlException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Serializable;
 import java.io.Writer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.security.Security;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.UUID;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PDone;
@@ -71,9 +97,38 @@ import org.joda.time.DateTime;
 
 public class RdeIO {
 
+  /** Namespace of the Beam metrics that show the progress of the deposits. */
+  private static final String METRICS_NAMESPACE = "RDE";
+
+  /**
+   * The cipher of the temporary part files.
+   *
+   * <p>CTR mode doesn't change the length of the data, so the compressed length of a part is the
+   * length of its file.
+   */
+  private static final String PART_CIPHER = "AES/CTR/NoPadding";
+
+  private static final int PART_KEY_BYTES = 16;
+
+  private static final SecureRandom random = new SecureRandom();
+
+  /**
+   * Writes deposits to GCS, updates their cursors, and enqueues their upload tasks.
+   *
+   * <p>The fragments of each deposit are compressed in parallel. Each type of resource is split
+   * into {@link #partsPerResourceType} parts by a hash of the fragments, and each part is sorted
+   * and compressed on its own into a temporary file. A single worker per deposit then assembles
+   * the parts, in order, into the final ghostryde file, which only leaves the encryption to be
+   * done serially. The order of the fragments in a deposit is therefore deterministic. Parts are
+   * sorted by a {@link DepositFragmentSorter}, which spills to local disk, so the memory that a
+   * worker needs doesn't grow with the size of the deposit.
+   *
+   * <p>The part files are only deleted in a separate stage, once the cursor of the deposit has been
+   * updated and its upload enqueued, so that a retry of any of these steps can still read them.
+   */
   @AutoValue
   abstract static class Write
-      extends PTransform<PCollection<KV<PendingDeposit, Iterable<DepositFragment>>>, PDone> {
+      extends PTransform<PCollection<KV<PendingDeposit, DepositFragment>>, PDone> {
 
     abstract GcsUtils gcsUtils();
 
@@ -88,6 +143,8 @@ public class RdeIO {
 
     abstract ValidationMode validationMode();
 
+    abstract int partsPerResourceType();
+
     static Builder builder() {
       return new AutoValue_RdeIO_Write.Builder();
     }
@@ -104,23 +161,232 @@ public class RdeIO {
 
       abstract Builder setValidationMode(ValidationMode value);
 
-      abstract Write build();
+      abstract Builder setPartsPerResourceType(int value);
+
+      abstract Write autoBuild();
+
+      Write build() {
+        Write write = autoBuild();
+        checkArgument(
+            write.partsPerResourceType() > 0,
+            "Number of parts per resource type must be positive: %s",
+            write.partsPerResourceType());
+        return write;
+      }
     }
 
     @Override
-    public PDone expand(PCollection<KV<PendingDeposit, Iterable<DepositFragment>>> input) {
+    @SuppressWarnings("deprecation") // Reshuffle still recommended by GCP.
+    public PDone expand(PCollection<KV<PendingDeposit, DepositFragment>> input) {
       input
+          .apply("Assign fragments to parts", ParDo.of(new PartAssigner(partsPerResourceType())))
+          .setCoder(
+              KvCoder.of(
+                  KvCoder.of(PendingDepositCoder.of(), VarIntCoder.of()),
+                  SerializableCoder.of(DepositFragment.class)))
+          .apply("Group fragments by part", GroupByKey.create())
+          .apply("Write parts to GCS", ParDo.of(new PartWriter(gcsUtils(), rdeBucket())))
+          .setCoder(KvCoder.of(PendingDepositCoder.of(), SerializableCoder.of(DepositPart.class)))
+          .apply("Group parts by PendingDeposit", GroupByKey.create())
           .apply(
               "Write to GCS",
               ParDo.of(new RdeWriter(gcsUtils(), rdeBucket(), stagingKeyBytes(), validationMode())))
           .apply("Update cursors", ParDo.of(new CursorUpdater()))
-          .apply("Enqueue upload action", ParDo.of(new UploadEnqueuer(cloudTasksUtils())));
+          .setCoder(PendingDepositCoder.of())
+          .apply("Enqueue upload action", ParDo.of(new UploadEnqueuer(cloudTasksUtils())))
+          .setCoder(PendingDepositCoder.of())
+          // The part files must outlive any retry of the steps above, which the runner may fuse
+          // with the writer. The reshuffle commits their results before the files are deleted.
+          .apply("Checkpoint deposits", Reshuffle.viaRandomKey())
+          .apply("Delete part files", ParDo.of(new PartDeleter(gcsUtils(), rdeBucket())));
       return PDone.in(input.getPipeline());
     }
   }
 
+  /** Returns the prefix under which the temporary part files of a deposit are written. */
+  private static String makePartPrefix(String jobName, PendingDeposit key) {
+    return String.format(
+        "%s/parts/%s_%s_%s/", jobName, key.tld(), key.watermark(), key.mode().name());
+  }
+
+  private static Cipher createPartCipher(int mode, byte[] encryptionKey, byte[] iv) {
+    try {
+      Cipher cipher = Cipher.getInstance(PART_CIPHER);
+      cipher.init(mode, new SecretKeySpec(encryptionKey, "AES"), new IvParameterSpec(iv));
+      return cipher;
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Counter depositCounter(PendingDeposit key, String name) {
+    return Metrics.counter(
+        METRICS_NAMESPACE, String.format("%s %s %s", key.tld(), key.mode().name(), name));
+  }
+
+  /**
+   * Assigns each fragment to a part of its deposit.
+   *
+   * <p>The parts of a type of resource are numbered consecutively, in the order of {@link
+   * RdeResourceType}, so that the resources of each type stay together in the deposit.
+   */
+  private static class PartAssigner
+      extends DoFn<
+          KV<PendingDeposit, DepositFragment>, KV<KV<PendingDeposit, Integer>, DepositFragment>> {
+
+    private final int partsPerResourceType;
+
+    private PartAssigner(int partsPerResourceType) {
+      this.partsPerResourceType = partsPerResourceType;
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<PendingDeposit, DepositFragment> kv,
+        OutputReceiver<KV<KV<PendingDeposit, Integer>, DepositFragment>> outputReceiver) {
+      DepositFragment fragment = kv.getValue();
+      int index =
+          fragment.type().ordinal() * partsPerResourceType
+              + Math.floorMod(fragment.xml().hashCode(), partsPerResourceType);
+      outputReceiver.output(KV.of(KV.of(kv.getKey(), index), fragment));
+    }
+  }
+
+  /** A part of a deposit, which was compressed and encrypted into a temporary file. */
+  @AutoValue
+  abstract static class DepositPart implements Serializable {
+
+    private static final long serialVersionUID = 2937540416413461254L;
+
+    /** The position of the part in the deposit. */
+    abstract int index();
+
+    abstract String blobName();
+
+    /** The type of the resources in the part. */
+    abstract RdeResourceType type();
+
+    /** The number of resources in the part. */
+    abstract long count();
+
+    /** The length of the XML in the part, before it was compressed. */
+    abstract long length();
+
+    /** The length of the file, after compression. */
+    abstract long compressedLength();
+
+    // The key only lives as long as the pipeline, and is never written anywhere else. It keeps the
+    // temporary file encrypted like every other file that holds deposit data on GCS.
+    @SuppressWarnings("mutable")
+    abstract byte[] encryptionKey();
+
+    @SuppressWarnings("mutable")
+    abstract byte[] iv();
+
+    /** Whether any of the fragments in the part had an error. */
+    abstract boolean failed();
+
+    static DepositPart create(
+        int index,
+        String blobName,
+        RdeResourceType type,
+        long count,
+        long length,
+        long compressedLength,
+        byte[] encryptionKey,
+        byte[] iv,
+        boolean failed) {
+      return new AutoValue_RdeIO_DepositPart(
+          index, blobName, type, count, length, compressedLength, encryptionKey, iv, failed);
+    }
+  }
+
+  private static class PartWriter
+      extends DoFn<
+          KV<KV<PendingDeposit, Integer>, Iterable<DepositFragment>>,
+          KV<PendingDeposit, DepositPart>> {
+
+    private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+    private final GcsUtils gcsUtils;
+    private final String rdeBucket;
+
+    private PartWriter(GcsUtils gcsUtils, String rdeBucket) {
+      this.gcsUtils = gcsUtils;
+      this.rdeBucket = rdeBucket;
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<KV<PendingDeposit, Integer>, Iterable<DepositFragment>> kv,
+        PipelineOptions options,
+        OutputReceiver<KV<PendingDeposit, DepositPart>> outputReceiver) {
+      PendingDeposit key = kv.getKey().getKey();
+      int index = kv.getKey().getValue();
+      // A retried or duplicated attempt writes its own file, so that it can't overwrite the file
+      // that the part actually refers to. Leftover files are deleted along with the parts.
+      String blobName =
+          String.format(
+              "%s%d-%s", makePartPrefix(options.getJobName(), key), index, UUID.randomUUID());
+      byte[] encryptionKey = new byte[PART_KEY_BYTES];
+      byte[] iv = new byte[PART_KEY_BYTES];
+      random.nextBytes(encryptionKey);
+      random.nextBytes(iv);
+      DepositPart part;
+      RdeResourceType type = null;
+      long count = 0;
+      boolean failed = false;
+      // Sort the fragments so that the deposit comes out the same no matter in which order they
+      // were grouped. The sorter spills to local disk, so a part never has to fit in memory.
+      try (DepositFragmentSorter sorter = new DepositFragmentSorter()) {
+        for (DepositFragment fragment : kv.getValue()) {
+          type = fragment.type();
+          sorter.add(fragment);
+        }
+        try (CountingOutputStream compressedOutput =
+            new CountingOutputStream(
+                new CipherOutputStream(
+                    gcsUtils.openOutputStream(BlobId.of(rdeBucket, blobName)),
+                    createPartCipher(Cipher.ENCRYPT_MODE, encryptionKey, iv)))) {
+          ImprovedOutputStream compressor =
+              GhostrydeAssembler.openPartCompressor(compressedOutput);
+          try (Writer output = new OutputStreamWriter(compressor, UTF_8)) {
+            for (Iterator<DepositFragment> fragments = sorter.sorted(); fragments.hasNext(); ) {
+              DepositFragment fragment = fragments.next();
+              if (!fragment.xml().isEmpty()) {
+                output.write(fragment.xml());
+                count++;
+              }
+              if (!fragment.error().isEmpty()) {
+                failed = true;
+                logger.atSevere().log("Fragment error: %s", fragment.error());
+              }
+            }
+          }
+          part =
+              DepositPart.create(
+                  index,
+                  blobName,
+                  type,
+                  count,
+                  compressor.getBytesWritten(),
+                  compressedOutput.getCount(),
+                  encryptionKey,
+                  iv,
+                  failed);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      depositCounter(key, "fragments").inc(count);
+      depositCounter(key, "bytes").inc(part.length());
+      depositCounter(key, "parts").inc();
+      outputReceiver.output(KV.of(key, part));
+    }
+  }
+
   private static class RdeWriter
-      extends DoFn<KV<PendingDeposit, Iterable<DepositFragment>>, KV<PendingDeposit, Integer>> {
+      extends DoFn<KV<PendingDeposit, Iterable<DepositPart>>, KV<PendingDeposit, Integer>> {
 
     private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
@@ -147,12 +413,14 @@ public class RdeIO {
 
     @ProcessElement
     public void processElement(
-        @Element KV<PendingDeposit, Iterable<DepositFragment>> kv,
+        @Element KV<PendingDeposit, Iterable<DepositPart>> kv,
         PipelineOptions options,
         OutputReceiver<KV<PendingDeposit, Integer>> outputReceiver) {
       PGPPublicKey stagingKey = PgpHelper.loadPublicKeyBytes(stagingKeyBytes);
       PendingDeposit key = kv.getKey();
-      Iterable<DepositFragment> fragments = kv.getValue();
+      // The parts only hold metadata, the fragments themselves are in the part files.
+      ImmutableList<DepositPart> parts =
+          ImmutableList.sortedCopyOf(Comparator.comparingInt(DepositPart::index), kv.getValue());
       RdeCounter counter = new RdeCounter();
 
       // Determine some basic things about the deposit.
@@ -186,42 +454,56 @@ public class RdeIO {
 
       // Write a gigantic XML file to GCS. We'll start by opening encrypted out/err file handles.
 
-      logger.atInfo().log("Writing files '%s' and '%s'.", xmlFilename, xmlLengthFilename);
+      logger.atInfo().log(
+          "Writing files '%s' and '%s' from %d parts.",
+          xmlFilename, xmlLengthFilename, parts.size());
       try (OutputStream gcsOutput = gcsUtils.openOutputStream(xmlFilename);
-          OutputStream lengthOutput = gcsUtils.openOutputStream(xmlLengthFilename);
-          OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey, lengthOutput);
-          Writer output = new OutputStreamWriter(ghostrydeEncoder, UTF_8)) {
-
-        // Output the top portion of the XML document.
-        output.write(marshaller.makeHeader(id, watermark, RdeResourceType.getUris(mode), revision));
-
-        // Output XML fragments while counting them.
-        for (DepositFragment fragment : fragments) {
-          if (!fragment.xml().isEmpty()) {
-            output.write(fragment.xml());
-            counter.increment(fragment.type());
-          }
-          if (!fragment.error().isEmpty()) {
-            failed = true;
-            logger.atSevere().log("Fragment error: %s", fragment.error());
-          }
-        }
+          OutputStream lengthOutput = gcsUtils.openOutputStream(xmlLengthFilename)) {
+        try (GhostrydeAssembler assembler = GhostrydeAssembler.open(gcsOutput, stagingKey)) {
 
-        // Don't write the IDN elements for BRDA.
-        if (mode == RdeMode.FULL) {
-          for (IdnTableEnum idn : IdnTableEnum.values()) {
-            output.write(marshaller.marshalIdn(idn.getTable()));
-            counter.increment(RdeResourceType.IDN);
+          // Output the top portion of the XML document.
+          try (Writer output = new OutputStreamWriter(assembler.openSection(), UTF_8)) {
+            output.write(
+                marshaller.makeHeader(id, watermark, RdeResourceType.getUris(mode), revision));
           }
-        }
 
-        // Output XML that says how many resources were emitted.
-        header = counter.makeHeader(tld, mode);
-        output.write(marshaller.marshalOrDie(new XjcRdeHeaderElement(header)));
+          // Output the already compressed XML fragments while counting them.
+          for (DepositPart part : parts) {
+            try (InputStream input =
+                new CipherInputStream(
+                    gcsUtils.openInputStream(BlobId.of(rdeBucket, part.blobName())),
+                    createPartCipher(Cipher.DECRYPT_MODE, part.encryptionKey(), part.iv()))) {
+              long compressedLength = assembler.appendPart(input, part.length());
+              verify(
+                  compressedLength == part.compressedLength(),
+                  "Part file %s has %s bytes instead of %s",
+                  part.blobName(),
+                  compressedLength,
+                  part.compressedLength());
+            }
+            counter.add(part.type(), part.count());
+            failed |= part.failed();
+          }
 
-        // Output the bottom of the XML document.
-        output.write(marshaller.makeFooter());
+          try (Writer output = new OutputStreamWriter(assembler.openSection(), UTF_8)) {
+            // Don't write the IDN elements for BRDA.
+            if (mode == RdeMode.FULL) {
+              for (IdnTableEnum idn : IdnTableEnum.values()) {
+                output.write(marshaller.marshalIdn(idn.getTable()));
+                counter.increment(RdeResourceType.IDN);
+              }
+            }
+
+            // Output XML that says how many resources were emitted.
+            header = counter.makeHeader(tld, mode);
+            output.write(marshaller.marshalOrDie(new XjcRdeHeaderElement(header)));
+
+            // Output the bottom of the XML document.
+            output.write(marshaller.makeFooter());
+          }
 
+          lengthOutput.write(Long.toString(assembler.getLength()).getBytes(US_ASCII));
+        }
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -241,12 +523,11 @@ public class RdeIO {
           throw new RuntimeException(e);
         }
       }
+
+      depositCounter(key, "deposits").inc();
+
       // Now that we're done, output roll the cursor forward.
-      if (key.manual()) {
-        logger.atInfo().log("Manual operation; not advancing cursor or enqueuing upload task.");
-      } else {
-        outputReceiver.output(KV.of(key, revision));
-      }
+      outputReceiver.output(KV.of(key, revision));
     }
   }
 
@@ -256,6 +537,11 @@ public class RdeIO {
     @ProcessElement
     public void processElement(
         @Element KV<PendingDeposit, Integer> input, OutputReceiver<PendingDeposit> outputReceiver) {
+      if (input.getKey().manual()) {
+        logger.atInfo().log("Manual operation; not advancing cursor or enqueuing upload task.");
+        outputReceiver.output(input.getKey());
+        return;
+      }
       tm().transact(
               () -> {
                 PendingDeposit key = input.getKey();
@@ -287,7 +573,7 @@ public class RdeIO {
     }
   }
 
-  private static class UploadEnqueuer extends DoFn<PendingDeposit, Void> {
+  private static class UploadEnqueuer extends DoFn<PendingDeposit, PendingDeposit> {
 
     private final CloudTasksUtils cloudTasksUtils;
 
@@ -296,7 +582,14 @@ public class RdeIO {
     }
 
     @ProcessElement
-    public void processElement(@Element PendingDeposit input, PipelineOptions options) {
+    public void processElement(
+        @Element PendingDeposit input,
+        PipelineOptions options,
+        OutputReceiver<PendingDeposit> outputReceiver) {
+      if (input.manual()) {
+        outputReceiver.output(input);
+        return;
+      }
       if (input.mode() == RdeMode.FULL) {
         cloudTasksUtils.enqueue(
             RDE_UPLOAD_QUEUE,
@@ -322,6 +615,36 @@ public class RdeIO {
                     RdeModule.PARAM_PREFIX,
                     options.getJobName() + '/')));
       }
+      outputReceiver.output(input);
+    }
+  }
+
+  /**
+   * Deletes the part files of a deposit, including any that were left behind by retries.
+   *
+   * <p>If the deposit failed, its part files are left in place. They are useless without their
+   * keys, which only exist in the pipeline.
+   */
+  private static class PartDeleter extends DoFn<PendingDeposit, Void> {
+
+    private final GcsUtils gcsUtils;
+    private final String rdeBucket;
+
+    private PartDeleter(GcsUtils gcsUtils, String rdeBucket) {
+      this.gcsUtils = gcsUtils;
+      this.rdeBucket = rdeBucket;
+    }
+
+    @ProcessElement
+    public void processElement(@Element PendingDeposit input, PipelineOptions options) {
+      String partPrefix = makePartPrefix(options.getJobName(), input);
+      try {
+        for (String partName : gcsUtils.listFolderObjects(rdeBucket, partPrefix)) {
+          gcsUtils.delete(BlobId.of(rdeBucket, partPrefix + partName));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 }
@@ -14,10 +14,13 @@
 
 package google.registry.beam.rde;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.EppResourceUtils.loadAtPointInTimeAsync;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static org.apache.beam.sdk.values.TypeDescriptors.integers;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
@@ -39,7 +42,7 @@ import google.registry.model.rde.RdeMode;
 import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.Registrar.Type;
 import google.registry.persistence.PersistenceModule.TransactionIsolationLevel;
-import google.registry.persistence.VKey;
+import google.registry.persistence.transaction.CriteriaQueryBuilder;
 import google.registry.rde.DepositFragment;
 import google.registry.rde.PendingDeposit;
 import google.registry.rde.PendingDeposit.PendingDepositCoder;
@@ -54,9 +57,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -65,10 +67,13 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.PipelineResult;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.FlatMapElements;
 import org.apache.beam.sdk.transforms.Flatten;
-import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.GroupIntoBatches;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.util.ShardedKey;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionList;
@@ -106,7 +111,8 @@ public class RdePipeline implements Serializable {
       "SELECT id FROM %entity% "
           + "WHERE COALESCE(creationClientId, '') NOT LIKE 'prober-%' "
           + "AND COALESCE(currentSponsorClientId, '') NOT LIKE 'prober-%' "
-          + "AND COALESCE(lastEppUpdateClientId, '') NOT LIKE 'prober-%'";
+          + "AND COALESCE(lastEppUpdateClientId, '') NOT LIKE 'prober-%' "
+          + "AND id BETWEEN :partitionStart AND :partitionEnd";
 
   public static String createEppResourceQuery(Class<? extends EppResource> clazz) {
     return EPP_RESOURCE_QUERY.replace("%entity%", clazz.getAnnotation(Entity.class).name())
@@ -126,23 +132,22 @@ public class RdePipeline implements Serializable {
 
   PipelineResult run() {
     Pipeline pipeline = Pipeline.create(options);
-    PCollection<KV<PendingDeposit, Iterable<DepositFragment>>> fragments =
-        createFragments(pipeline);
+    PCollection<KV<PendingDeposit, DepositFragment>> fragments = createFragments(pipeline);
     persistData(fragments);
     return pipeline.run();
   }
 
-  PCollection<KV<PendingDeposit, Iterable<DepositFragment>>> createFragments(Pipeline pipeline) {
+  PCollection<KV<PendingDeposit, DepositFragment>> createFragments(Pipeline pipeline) {
     return PCollectionList.of(processRegistrars(pipeline))
         .and(processNonRegistrarEntities(pipeline, DomainBase.class))
         .and(processNonRegistrarEntities(pipeline, ContactResource.class))
         .and(processNonRegistrarEntities(pipeline, HostResource.class))
         .apply(Flatten.pCollections())
-        .setCoder(KvCoder.of(PendingDepositCoder.of(), SerializableCoder.of(DepositFragment.class)))
-        .apply("Group by PendingDeposit", GroupByKey.create());
+        .setCoder(
+            KvCoder.of(PendingDepositCoder.of(), SerializableCoder.of(DepositFragment.class)));
   }
 
-  void persistData(PCollection<KV<PendingDeposit, Iterable<DepositFragment>>> input) {
+  void persistData(PCollection<KV<PendingDeposit, DepositFragment>> input) {
     input.apply(
         "Write to GCS, update cursors, and enqueue upload tasks",
         RdeIO.Write.builder()
@@ -151,103 +156,146 @@ public class RdePipeline implements Serializable {
             .setCloudTasksUtils(cloudTasksUtils)
             .setValidationMode(mode)
             .setStagingKeyBytes(stagingKeyBytes)
+            .setPartsPerResourceType(options.getPartsPerResourceType())
             .build());
   }
 
   PCollection<KV<PendingDeposit, DepositFragment>> processRegistrars(Pipeline pipeline) {
     return pipeline
         .apply(
-            "Read all production Registrar entities",
+            "Read and marshal all production Registrar entities",
+            // There are few enough registrars that they are marshalled as they are read, so that
+            // they don't need to be loaded again.
             RegistryJpaIO.read(
-                "SELECT clientIdentifier FROM Registrar WHERE type NOT IN (:types)",
-                ImmutableMap.of("types", IGNORED_REGISTRAR_TYPES),
-                String.class,
-                // TODO: consider adding coders for entities and pass them directly instead of using
-                // VKeys.
-                id -> VKey.createSql(Registrar.class, id)))
+                    "SELECT r FROM Registrar r WHERE r.type NOT IN (:types)",
+                    ImmutableMap.of("types", IGNORED_REGISTRAR_TYPES),
+                    Registrar.class,
+                    registrar -> new RdeMarshaller(mode).marshalRegistrar(registrar))
+                .withCoder(SerializableCoder.of(DepositFragment.class)))
         .apply(
-            "Marshal Registrar into DepositFragment",
+            "Pair Registrar DepositFragment with PendingDeposits",
             FlatMapElements.into(
                     TypeDescriptors.kvs(
                         TypeDescriptor.of(PendingDeposit.class),
                         TypeDescriptor.of(DepositFragment.class)))
                 .via(
-                    (VKey<Registrar> key) -> {
-                      Registrar registrar = jpaTm().transact(() -> jpaTm().loadByKey(key));
-                      DepositFragment fragment =
-                          new RdeMarshaller(mode).marshalRegistrar(registrar);
-                      return pendings.values().stream()
-                          .map(pending -> KV.of(pending, fragment))
-                          .collect(toImmutableSet());
-                    }));
+                    (DepositFragment fragment) ->
+                        pendings.values().stream()
+                            .map(pending -> KV.of(pending, fragment))
+                            .collect(toImmutableSet())));
   }
 
   <T extends EppResource>
       PCollection<KV<PendingDeposit, DepositFragment>> processNonRegistrarEntities(
           Pipeline pipeline, Class<T> clazz) {
+    int shards = options.getSqlReadPartitions();
     return createInputs(pipeline, clazz)
+        .apply(
+            "Shard " + clazz.getSimpleName() + " ids",
+            WithKeys.<Integer, String>of(id -> ThreadLocalRandom.current().nextInt(shards))
+                .withKeyType(integers()))
+        .apply(
+            "Group " + clazz.getSimpleName() + " ids into batches",
+            GroupIntoBatches.<Integer, String>ofSize(options.getSqlReadBatchSize())
+                .withShardedKey())
         .apply("Marshal " + clazz.getSimpleName() + " into DepositFragment", mapToFragments(clazz))
         .setCoder(
             KvCoder.of(PendingDepositCoder.of(), SerializableCoder.of(DepositFragment.class)));
   }
 
-  <T extends EppResource> PCollection<VKey<T>> createInputs(Pipeline pipeline, Class<T> clazz) {
+  /** Reads the repo ids of all the production resources of the given type. */
+  <T extends EppResource> PCollection<String> createInputs(Pipeline pipeline, Class<T> clazz) {
     return pipeline.apply(
         "Read all production " + clazz.getSimpleName() + " entities",
         RegistryJpaIO.read(
-            createEppResourceQuery(clazz),
-            clazz.equals(DomainBase.class)
-                ? ImmutableMap.of("tlds", pendings.keySet())
-                : ImmutableMap.of(),
-            String.class,
-            // TODO: consider adding coders for entities and pass them directly instead of using
-            // VKeys.
-            x -> VKey.createSql(clazz, x)));
+                createEppResourceQuery(clazz),
+                clazz.equals(DomainBase.class)
+                    ? ImmutableMap.of("tlds", pendings.keySet())
+                    : ImmutableMap.of(),
+                String.class,
+                x -> x)
+            .withCoder(StringUtf8Coder.of())
+            .withKeyRangePartitions(
+                clazz.getAnnotation(Entity.class).name(),
+                "repo_id",
+                options.getSqlReadPartitions()));
   }
 
+  /**
+   * Loads each batch of resources with one query and marshals them into deposit fragments.
+   *
+   * <p>The resources are loaded and marshalled in the same step, so they never need to be encoded
+   * between steps of the pipeline.
+   */
   <T extends EppResource>
-      FlatMapElements<VKey<T>, KV<PendingDeposit, DepositFragment>> mapToFragments(Class<T> clazz) {
+      FlatMapElements<
+              KV<ShardedKey<Integer>, Iterable<String>>, KV<PendingDeposit, DepositFragment>>
+          mapToFragments(Class<T> clazz) {
     return FlatMapElements.into(
             TypeDescriptors.kvs(
                 TypeDescriptor.of(PendingDeposit.class), TypeDescriptor.of(DepositFragment.class)))
         .via(
-            (VKey<T> key) -> {
-              T resource = jpaTm().transact(() -> jpaTm().loadByKey(key));
-              // The set of all TLDs to which this resource should be emitted.
-              ImmutableSet<String> tlds =
-                  clazz.equals(DomainBase.class)
-                      ? ImmutableSet.of(((DomainBase) resource).getTld())
-                      : pendings.keySet();
-              // Get the set of all point-in-time watermarks we need, to minimize rewinding.
-              ImmutableSet<DateTime> dates =
-                  tlds.stream()
-                      .map(pendings::get)
-                      .flatMap(ImmutableSet::stream)
-                      .map(PendingDeposit::watermark)
-                      .collect(toImmutableSet());
-              // Launch asynchronous fetches of point-in-time representations of resource.
-              ImmutableMap<DateTime, Supplier<EppResource>> resourceAtTimes =
-                  ImmutableMap.copyOf(
-                      Maps.asMap(dates, input -> loadAtPointInTimeAsync(resource, input)));
-              // Convert resource to an XML fragment for each watermark/mode pair lazily and cache
-              // the result.
-              RdeFragmenter fragmenter =
-                  new RdeFragmenter(resourceAtTimes, new RdeMarshaller(mode));
-              List<KV<PendingDeposit, DepositFragment>> results = new ArrayList<>();
-              for (String tld : tlds) {
-                for (PendingDeposit pending : pendings.get(tld)) {
-                  // Hosts and contacts don't get included in BRDA deposits.
-                  if (pending.mode() == RdeMode.THIN && !clazz.equals(DomainBase.class)) {
-                    continue;
-                  }
-                  Optional<DepositFragment> fragment =
-                      fragmenter.marshal(pending.watermark(), pending.mode());
-                  fragment.ifPresent(
-                      depositFragment -> results.add(KV.of(pending, depositFragment)));
-                }
-              }
-              return results;
-            });
+            (KV<ShardedKey<Integer>, Iterable<String>> batch) ->
+                loadResources(clazz, batch.getValue()).stream()
+                    .flatMap(resource -> marshalResource(clazz, resource).stream())
+                    .collect(toImmutableList()));
+  }
+
+  /**
+   * Loads the resources with the given repo ids in one query, skipping those that no longer exist.
+   *
+   * <p>The results are loaded as a list rather than streamed, so that all the resources are in the
+   * session by the time their collections (e.g. the DS data and grace periods of domains) are
+   * fetched, which Hibernate then does in batches rather than in one query per resource.
+   */
+  static <T extends EppResource> ImmutableList<T> loadResources(
+      Class<T> clazz, Iterable<String> repoIds) {
+    return jpaTm()
+        .transact(
+            () ->
+                ImmutableList.copyOf(
+                    jpaTm()
+                        .getEntityManager()
+                        .createQuery(
+                            CriteriaQueryBuilder.create(clazz)
+                                .whereFieldIsIn("repoId", ImmutableList.copyOf(repoIds))
+                                .build())
+                        .getResultList()));
+  }
+
+  private <T extends EppResource> ImmutableList<KV<PendingDeposit, DepositFragment>>
+      marshalResource(Class<T> clazz, T resource) {
+    // The set of all TLDs to which this resource should be emitted.
+    ImmutableSet<String> tlds =
+        clazz.equals(DomainBase.class)
+            ? ImmutableSet.of(((DomainBase) resource).getTld())
+            : pendings.keySet();
+    // Get the set of all point-in-time watermarks we need, to minimize rewinding.
+    ImmutableSet<DateTime> dates =
+        tlds.stream()
+            .map(pendings::get)
+            .flatMap(ImmutableSet::stream)
+            .map(PendingDeposit::watermark)
+            .collect(toImmutableSet());
+    // Launch asynchronous fetches of point-in-time representations of resource.
+    ImmutableMap<DateTime, Supplier<EppResource>> resourceAtTimes =
+        ImmutableMap.copyOf(Maps.asMap(dates, input -> loadAtPointInTimeAsync(resource, input)));
+    // Convert resource to an XML fragment for each watermark/mode pair lazily and cache the result.
+    RdeFragmenter fragmenter = new RdeFragmenter(resourceAtTimes, new RdeMarshaller(mode));
+    ImmutableList.Builder<KV<PendingDeposit, DepositFragment>> results =
+        new ImmutableList.Builder<>();
+    for (String tld : tlds) {
+      for (PendingDeposit pending : pendings.get(tld)) {
+        // Hosts and contacts don't get included in BRDA deposits.
+        if (pending.mode() == RdeMode.THIN && !clazz.equals(DomainBase.class)) {
+          continue;
+        }
+        Optional<DepositFragment> fragment =
+            fragmenter.marshal(pending.watermark(), pending.mode());
+        fragment.ifPresent(depositFragment -> results.add(KV.of(pending, depositFragment)));
+      }
+    }
+    return results.build();
   }
 
   /**
@@ -15,6 +15,7 @@
 package google.registry.beam.rde;
 
 import google.registry.beam.common.RegistryPipelineOptions;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 
 /** Custom options for running the spec11 pipeline. */
@@ -39,4 +40,12 @@ public interface RdePipelineOptions extends RegistryPipelineOptions {
   String getStagingKey();
 
   void setStagingKey(String value);
+
+  @Description(
+      "The number of parts that each type of resource in a deposit is split into, which are "
+          + "compressed in parallel before they are assembled into the deposit.")
+  @Default.Integer(10)
+  int getPartsPerResourceType();
+
+  void setPartsPerResourceType(int value);
 }
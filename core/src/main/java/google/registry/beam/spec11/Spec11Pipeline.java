@@ -25,6 +25,7 @@ import dagger.Module;
 import dagger.Provides;
 import google.registry.beam.common.RegistryJpaIO;
 import google.registry.beam.common.RegistryJpaIO.Read;
+import google.registry.beam.common.RegistryPipelineOptions;
 import google.registry.beam.spec11.SafeBrowsingTransforms.EvaluateSafeBrowsingFn;
 import google.registry.config.RegistryConfig.ConfigModule;
 import google.registry.model.domain.DomainBase;
@@ -118,11 +119,16 @@ public class Spec11Pipeline implements Serializable {
   static PCollection<DomainNameInfo> readFromCloudSql(Pipeline pipeline) {
     Read<Object[], KV<String, String>> read =
         RegistryJpaIO.read(
-            "select d.repoId, r.emailAddress from Domain d join Registrar r on"
-                + " d.currentSponsorClientId = r.clientIdentifier where r.type = 'REAL' and"
-                + " d.deletionTime > now()",
-            false,
-            Spec11Pipeline::parseRow);
+                "select d.repoId, r.emailAddress from Domain d join Registrar r on"
+                    + " d.currentSponsorClientId = r.clientIdentifier where r.type = 'REAL' and"
+                    + " d.deletionTime > now() and d.repoId between :partitionStart and"
+                    + " :partitionEnd",
+                false,
+                Spec11Pipeline::parseRow)
+            .withKeyRangePartitions(
+                "Domain",
+                "repo_id",
+                pipeline.getOptions().as(RegistryPipelineOptions.class).getSqlReadPartitions());
 
     return pipeline
         .apply("Read active domains from Cloud SQL", read)
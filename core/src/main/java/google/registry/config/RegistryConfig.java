@@ -336,6 +336,35 @@ public final class RegistryConfig {
       return Duration.standardMinutes(3);
     }
 
+    /**
+     * Maximum number of publishDomain and publishHost calls running at once for a single TLD.
+     *
+     * <p>This limit is shared by all publishDnsUpdates batches for the TLD running on the same
+     * instance, regardless of which publish lock they hold. It only applies to DNS writers that
+     * support concurrent publishing; other writers always publish one item at a time.
+     *
+     * @see google.registry.dns.PublishDnsUpdatesAction
+     */
+    @Provides
+    @Config("publishDnsUpdatesMaxConcurrencyPerTld")
+    public static int providePublishDnsUpdatesMaxConcurrencyPerTld() {
+      return 8;
+    }
+
+    /**
+     * Number of times failed publishDomain and publishHost calls may be retried in each batch.
+     *
+     * <p>The budget is shared by all items in the batch, so that a batch whose loads keep failing
+     * gives up quickly and is retried as a whole by the task queue, instead of retrying every item.
+     *
+     * @see google.registry.dns.PublishDnsUpdatesAction
+     */
+    @Provides
+    @Config("publishDnsUpdatesRetryBudget")
+    public static int providePublishDnsUpdatesRetryBudget() {
+      return 3;
+    }
+
     /**
      * The requested maximum duration for ReadDnsQueueAction.
      *
@@ -402,6 +431,32 @@ public final class RegistryConfig {
       return config.cloudSql.instanceConnectionName;
     }
 
+    /**
+     * Returns the connection names of the read-only replicas of the Cloud SQL instance.
+     *
+     * <p>Read-only work, such as EPP info and check commands, RDAP and WHOIS queries, is sent to
+     * these replicas instead of the primary instance.
+     *
+     * @see google.registry.persistence.transaction.ReplicaRouter
+     */
+    @Provides
+    @Config("cloudSqlReplicaInstanceConnectionNames")
+    public static ImmutableList<String> provideCloudSqlReplicaInstanceConnectionNames(
+        RegistryConfigSettings config) {
+      return ImmutableList.copyOf(config.cloudSql.replicaInstanceConnectionNames);
+    }
+
+    /**
+     * Returns how far behind the primary Cloud SQL instance a replica may be and still be used.
+     *
+     * @see google.registry.persistence.transaction.ReplicaRouter
+     */
+    @Provides
+    @Config("cloudSqlMaxReplicaLag")
+    public static Duration provideCloudSqlMaxReplicaLag(RegistryConfigSettings config) {
+      return Duration.standardSeconds(config.cloudSql.maxReplicaLagSeconds);
+    }
+
     @Provides
     @Config("cloudSqlDbInstanceName")
     public static String providesCloudSqlDbInstance(RegistryConfigSettings config) {
@@ -792,6 +847,39 @@ public final class RegistryConfig {
       return URI.create(config.rde.uploadUrl);
     }
 
+    /**
+     * Returns the size of the OpenPGP packet buffers of RyDE and ghostryde files.
+     *
+     * @see google.registry.rde.RydeSettings#bufferSize()
+     */
+    @Provides
+    @Config("rdeStreamBufferSize")
+    public static int provideRdeStreamBufferSize(RegistryConfigSettings config) {
+      return config.rde.streamBufferSize;
+    }
+
+    /**
+     * Returns the deflate level of the compression of RyDE and ghostryde files.
+     *
+     * @see google.registry.rde.RydeSettings#compressionLevel()
+     */
+    @Provides
+    @Config("rdeCompressionLevel")
+    public static int provideRdeCompressionLevel(RegistryConfigSettings config) {
+      return config.rde.compressionLevel;
+    }
+
+    /**
+     * Returns whether RyDE and ghostryde files are encrypted with the JDK's AES implementation.
+     *
+     * @see google.registry.rde.RydeSettings#useJdkCipher()
+     */
+    @Provides
+    @Config("rdeUseJdkCipher")
+    public static boolean provideRdeUseJdkCipher(RegistryConfigSettings config) {
+      return config.rde.useJdkCipher;
+    }
+
     /**
      * Whether or not the registrar console is enabled.
      *
@@ -927,6 +1015,20 @@ public final class RegistryConfig {
       return config.misc.transientFailureRetries;
     }
 
+    /**
+     * Returns how often the full XML of an inbound EPP command is logged, as one out of every N.
+     *
+     * <p>A value of zero means that the XML is only logged when the flow fails or when FINE
+     * logging is enabled.
+     *
+     * @see google.registry.flows.FlowRunner
+     */
+    @Provides
+    @Config("eppCommandXmlLogSampleInterval")
+    public static int provideEppCommandXmlLogSampleInterval(RegistryConfigSettings config) {
+      return config.misc.eppCommandXmlLogSampleInterval;
+    }
+
     /**
      * Amount of time public HTTP proxies are permitted to cache our WHOIS responses.
      *
@@ -1419,6 +1521,27 @@ public final class RegistryConfig {
     return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.domainLabelCachingSeconds);
   }
 
+  /**
+   * Returns whether domain DNS refreshes are recorded in Cloud SQL instead of the DNS pull queue.
+   *
+   * @see google.registry.dns.DnsQueue
+   */
+  public static boolean isSqlDnsRefreshQueueEnabled() {
+    return CONFIG_SETTINGS.get().misc.sqlDnsRefreshQueueEnabled;
+  }
+
+  /**
+   * Returns how often the latest claims list revision id is re-read from the database.
+   *
+   * <p>The in-memory claims list index is only reloaded when this probe finds a new revision. A
+   * zero duration disables the index, so that every lookup goes to the database.
+   *
+   * @see google.registry.model.tmch.ClaimsListDao#getIndex
+   */
+  public static Duration getClaimsListRevisionProbeDuration() {
+    return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.claimsListRevisionProbeSeconds);
+  }
+
   /** Returns the amount of time a singleton should be cached in persist mode, before expiring. */
   public static Duration getSingletonCachePersistDuration() {
     return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.singletonCachePersistSeconds);
@@ -1431,6 +1554,14 @@ public final class RegistryConfig {
     return CONFIG_SETTINGS.get().caching.staticPremiumListMaxCachedEntries;
   }
 
+  /**
+   * Returns whether premium prices are looked up in an in-memory table of the whole premium list
+   * revision, rather than queried from the database label by label.
+   */
+  public static boolean isPremiumPriceTableEnabled() {
+    return CONFIG_SETTINGS.get().caching.premiumPriceTableEnabled;
+  }
+
   public static boolean isEppResourceCachingEnabled() {
     return CONFIG_SETTINGS.get().caching.eppResourceCachingEnabled;
   }
@@ -1482,6 +1613,11 @@ public final class RegistryConfig {
     return Duration.millis(CONFIG_SETTINGS.get().datastore.baseOfyRetryMillis);
   }
 
+  /** Returns whether SQL transactions are written for replay in the binary format. */
+  public static boolean getWriteBinarySqlTransactions() {
+    return CONFIG_SETTINGS.get().datastore.writeBinarySqlTransactions;
+  }
+
   /** Returns the default database transaction isolation. */
   public static String getHibernateConnectionIsolation() {
     return CONFIG_SETTINGS.get().hibernate.connectionIsolation;
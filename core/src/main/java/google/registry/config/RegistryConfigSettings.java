@@ -110,6 +110,7 @@ public class RegistryConfigSettings {
     public int commitLogBucketsNum;
     public int eppResourceIndexBucketsNum;
     public int baseOfyRetryMillis;
+    public boolean writeBinarySqlTransactions;
   }
 
   /** Configuration for Hibernate. */
@@ -128,6 +129,8 @@ public class RegistryConfigSettings {
     // TODO(05012021): remove username field after it is removed from all yaml files.
     public String username;
     public String instanceConnectionName;
+    public List<String> replicaInstanceConnectionNames;
+    public int maxReplicaLagSeconds;
   }
 
   /** Configuration for Apache Beam (Cloud Dataflow). */
@@ -148,6 +151,8 @@ public class RegistryConfigSettings {
     public int domainLabelCachingSeconds;
     public int singletonCachePersistSeconds;
     public int staticPremiumListMaxCachedEntries;
+    public boolean premiumPriceTableEnabled;
+    public int claimsListRevisionProbeSeconds;
     public boolean eppResourceCachingEnabled;
     public int eppResourceCachingSeconds;
     public int eppResourceMaxCachedEntries;
@@ -170,6 +175,9 @@ public class RegistryConfigSettings {
     public String reportUrlPrefix;
     public String uploadUrl;
     public String sshIdentityEmailAddress;
+    public int streamBufferSize;
+    public int compressionLevel;
+    public boolean useJdkCipher;
   }
 
   /** Configuration for the web-based registrar console. */
@@ -203,6 +211,8 @@ public class RegistryConfigSettings {
     public List<String> spec11BccEmailAddresses;
     public int asyncDeleteDelaySeconds;
     public int transientFailureRetries;
+    public int eppCommandXmlLogSampleInterval;
+    public boolean sqlDnsRefreshQueueEnabled;
   }
 
   /** Configuration for keyrings (used to store secrets outside of source). */
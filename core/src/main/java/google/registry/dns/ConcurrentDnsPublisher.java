@@ -0,0 +1,230 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.min;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import google.registry.dns.writer.DnsWriter;
+import google.registry.request.HttpException.ServiceUnavailableException;
+import google.registry.util.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Stages the domains and hosts of a publishDnsUpdates batch with a {@link DnsWriter} that {@link
+ * DnsWriter#supportsConcurrentPublish supports concurrent publishing}.
+ *
+ * <p>Publish calls run on a pool of request threads, with at most {@code maxConcurrency} calls
+ * running at once across all batches for the TLD on this instance. Each item waits for one of these
+ * permits before it is handed to the pool, so a batch never queues up more work than can actually
+ * run. If request threads aren't available, the calls run one at a time on the calling thread.
+ *
+ * <p>Failed calls are retried from a budget shared by the whole batch. Once the budget runs out, no
+ * further items are started, and the first failure is rethrown once the calls already running have
+ * finished.
+ */
+final class ConcurrentDnsPublisher {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Permits bounding the publish calls running for each TLD, shared by all batches. */
+  private static final ConcurrentMap<String, Semaphore> tldPermits = new ConcurrentHashMap<>();
+
+  private final String tld;
+  private final String dnsWriterName;
+  private final DnsWriter writer;
+  private final int maxConcurrency;
+  private final AtomicInteger retriesLeft;
+  private final Duration permitTimeout;
+  private final Supplier<ThreadFactory> threadFactorySupplier;
+  private final DnsMetrics dnsMetrics;
+  private final Clock clock;
+
+  /**
+   * Class constructor.
+   *
+   * @param tld the TLD being published
+   * @param dnsWriterName the name of the writer, for metrics and logging
+   * @param writer the writer to stage the items with
+   * @param maxConcurrency maximum number of publish calls running at once for the TLD
+   * @param retryBudget number of failed publish calls that may be retried in this batch
+   * @param permitTimeout how long to wait for another batch on the TLD to free up a permit
+   * @param threadFactorySupplier source of request threads, which may supply null if there are none
+   * @param dnsMetrics metrics for the publish calls
+   * @param clock a source of time
+   */
+  ConcurrentDnsPublisher(
+      String tld,
+      String dnsWriterName,
+      DnsWriter writer,
+      int maxConcurrency,
+      int retryBudget,
+      Duration permitTimeout,
+      Supplier<ThreadFactory> threadFactorySupplier,
+      DnsMetrics dnsMetrics,
+      Clock clock) {
+    checkArgument(maxConcurrency > 0, "maxConcurrency must be positive: %s", maxConcurrency);
+    checkArgument(
+        writer.supportsConcurrentPublish(),
+        "DNS writer %s does not support concurrent publishing",
+        dnsWriterName);
+    this.tld = tld;
+    this.dnsWriterName = dnsWriterName;
+    this.writer = writer;
+    this.maxConcurrency = maxConcurrency;
+    this.retriesLeft = new AtomicInteger(retryBudget);
+    this.permitTimeout = permitTimeout;
+    this.threadFactorySupplier = threadFactorySupplier;
+    this.dnsMetrics = dnsMetrics;
+    this.clock = clock;
+  }
+
+  /** Stages all the given domains and hosts, returning once every one of them is staged. */
+  void publishAll(ImmutableList<String> domains, ImmutableList<String> hosts) {
+    ImmutableList.Builder<Runnable> calls = new ImmutableList.Builder<>();
+    for (String domain : domains) {
+      calls.add(() -> publishWithRetries("domain", domain, writer::publishDomain));
+    }
+    for (String host : hosts) {
+      calls.add(() -> publishWithRetries("host", host, writer::publishHost));
+    }
+    ImmutableList<Runnable> allCalls = calls.build();
+    if (allCalls.isEmpty()) {
+      return;
+    }
+    DateTime startTime = clock.nowUtc();
+    int threadCount = min(maxConcurrency, allCalls.size());
+    ThreadFactory threadFactory = threadCount > 1 ? threadFactorySupplier.get() : null;
+    if (threadFactory == null) {
+      allCalls.forEach(Runnable::run);
+    } else {
+      runConcurrently(allCalls, threadCount, threadFactory);
+    }
+    dnsMetrics.recordPublishThroughput(
+        tld, dnsWriterName, allCalls.size(), new Duration(startTime, clock.nowUtc()));
+  }
+
+  private void runConcurrently(
+      ImmutableList<Runnable> calls, int threadCount, ThreadFactory threadFactory) {
+    Semaphore permits =
+        tldPermits.computeIfAbsent(tld, unused -> new Semaphore(maxConcurrency, true));
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicBoolean abandoned = new AtomicBoolean();
+    List<Future<?>> futures = new ArrayList<>();
+    ExecutorService executor = newFixedThreadPool(threadCount, threadFactory);
+    try {
+      for (Runnable call : calls) {
+        if (failure.get() != null) {
+          break;
+        }
+        acquirePermit(permits);
+        futures.add(
+            executor.submit(
+                () -> {
+                  try {
+                    if (!abandoned.get()) {
+                      call.run();
+                    }
+                  } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                  } finally {
+                    permits.release();
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+          // Already recorded in failure.
+        }
+      }
+    } finally {
+      // If we gave up early, let the calls already running finish rather than interrupting them
+      // halfway through staging, but skip any that haven't started yet. Either way every call
+      // releases its own permit.
+      abandoned.set(true);
+      executor.shutdown();
+      Uninterruptibles.awaitTerminationUninterruptibly(executor);
+    }
+    if (failure.get() != null) {
+      Throwables.throwIfUnchecked(failure.get());
+      throw new UncheckedExecutionException(failure.get());
+    }
+  }
+
+  private void acquirePermit(Semaphore permits) {
+    try {
+      if (!permits.tryAcquire(permitTimeout.getMillis(), TimeUnit.MILLISECONDS)) {
+        throw new ServiceUnavailableException(
+            String.format("Timed out waiting to publish DNS updates for TLD %s", tld));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException(
+          String.format("Interrupted waiting to publish DNS updates for TLD %s", tld));
+    }
+  }
+
+  private void publishWithRetries(String type, String name, Consumer<String> publishFunction) {
+    while (true) {
+      dnsMetrics.incrementPublishesInFlight(tld, dnsWriterName);
+      try {
+        publishFunction.accept(name);
+        logger.atInfo().log("%s: published %s %s.", tld, type, name);
+        return;
+      } catch (RuntimeException e) {
+        if (retriesLeft.getAndDecrement() <= 0) {
+          throw e;
+        }
+        dnsMetrics.incrementPublishRetries(tld, dnsWriterName);
+        logger.atWarning().withCause(e).log("%s: retrying publish of %s %s.", tld, type, name);
+      } finally {
+        dnsMetrics.decrementPublishesInFlight(tld, dnsWriterName);
+      }
+    }
+  }
+
+  /** Returns the number of free permits for the TLD, if it has ever published concurrently. */
+  @VisibleForTesting
+  static Optional<Integer> getAvailablePermits(String tld) {
+    return Optional.ofNullable(tldPermits.get(tld)).map(Semaphore::availablePermits);
+  }
+}
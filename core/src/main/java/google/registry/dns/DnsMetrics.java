@@ -16,6 +16,8 @@ package google.registry.dns;
 
 import static google.registry.config.RegistryEnvironment.PRODUCTION;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.DistributionFitter;
 import com.google.monitoring.metrics.EventMetric;
@@ -23,8 +25,14 @@ import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.FibonacciFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.config.RegistryEnvironment;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import org.joda.time.Duration;
 
@@ -60,6 +68,16 @@ public class DnsMetrics {
           LabelDescriptor.create("status", "Whether the publish succeeded, or why it failed."),
           LabelDescriptor.create("dnsWriter", "The DnsWriter used."));
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_UPDATE_MESSAGES =
+      ImmutableSet.of(
+          LabelDescriptor.create("tld", "TLD"),
+          LabelDescriptor.create("dnsWriter", "The DnsWriter used."));
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_PUBLISH_CALLS =
+      ImmutableSet.of(
+          LabelDescriptor.create("tld", "TLD"),
+          LabelDescriptor.create("dnsWriter", "The DnsWriter used."));
+
   // Finer-grained fitter than the DEFAULT_FITTER, allows values between 100 ms and just over 29
   // hours.
   private static final DistributionFitter EXPONENTIAL_FITTER =
@@ -70,6 +88,14 @@ public class DnsMetrics {
   private static final DistributionFitter FIBONACCI_FITTER =
       FibonacciFitter.create(10946);
 
+  // Fitter for DNS message sizes, allows values between 32 bytes and just over the 64KB maximum.
+  private static final DistributionFitter MESSAGE_SIZE_FITTER =
+      ExponentialFitter.create(12, 2.0, 32.0);
+
+  // Fitter for network round trips, allows values between 1 ms and about 17 minutes.
+  private static final DistributionFitter ROUND_TRIP_FITTER =
+      ExponentialFitter.create(20, 2.0, 1.0);
+
   private static final IncrementableMetric publishDomainRequests =
       MetricRegistryImpl.getDefault()
           .newIncrementableMetric(
@@ -182,6 +208,73 @@ public class DnsMetrics {
               LABEL_DESCRIPTORS_FOR_LATENCY,
               EXPONENTIAL_FITTER);
 
+  private static final EventMetric updateMessagesPerCommit =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/dns/update/messages_per_commit",
+              "Number of DNS UPDATE messages sent for each writer.commit()",
+              "count",
+              LABEL_DESCRIPTORS_FOR_UPDATE_MESSAGES,
+              FIBONACCI_FITTER);
+
+  private static final EventMetric updateMessageSize =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/dns/update/message_size",
+              "Size of each DNS UPDATE message sent",
+              "bytes",
+              LABEL_DESCRIPTORS_FOR_UPDATE_MESSAGES,
+              MESSAGE_SIZE_FITTER);
+
+  private static final EventMetric updateRoundTripTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/dns/update/round_trip_time",
+              "Time to send the DNS UPDATE messages of a commit and receive all responses",
+              "milliseconds",
+              LABEL_DESCRIPTORS_FOR_UPDATE_MESSAGES,
+              ROUND_TRIP_FITTER);
+
+  /** Number of publishDomain and publishHost calls currently running, keyed by label values. */
+  private static final ConcurrentMap<ImmutableList<String>, AtomicLong> publishesInFlight =
+      new ConcurrentHashMap<>();
+
+  /** Items staged per second by the latest batch of each writer, keyed by label values. */
+  private static final ConcurrentMap<ImmutableList<String>, Double> publishThroughput =
+      new ConcurrentHashMap<>();
+
+  static final Metric<Long> publishesInFlightGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/dns/publish/in_flight",
+              "Number of publishDomain and publishHost calls currently running",
+              "count",
+              LABEL_DESCRIPTORS_FOR_PUBLISH_CALLS,
+              () ->
+                  publishesInFlight.entrySet().stream()
+                      .collect(
+                          ImmutableMap.toImmutableMap(
+                              Map.Entry::getKey, entry -> entry.getValue().get())),
+              Long.class);
+
+  static final Metric<Double> publishThroughputGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/dns/publish/throughput",
+              "Domains and hosts staged per second by the latest batch of each DnsWriter",
+              "items/s",
+              LABEL_DESCRIPTORS_FOR_PUBLISH_CALLS,
+              () -> ImmutableMap.copyOf(publishThroughput),
+              Double.class);
+
+  private static final IncrementableMetric publishRetries =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/dns/publish/retries",
+              "Count of failed publishDomain and publishHost calls that were retried",
+              "count",
+              LABEL_DESCRIPTORS_FOR_PUBLISH_CALLS);
+
   @Inject
   DnsMetrics() {}
 
@@ -262,4 +355,51 @@ public class DnsMetrics {
         timeSinceUpdateRequest.getMillis(), numberOfItems, tld, status.name(), dnsWriter);
     publishQueueDelay.record(timeSinceActionEnqueued.getMillis(), tld, status.name(), dnsWriter);
   }
+
+  /**
+   * Records the DNS UPDATE messages sent for a single commit of a writer that speaks the DNS
+   * protocol directly.
+   *
+   * @param messageLengths the size in bytes of each message sent
+   * @param roundTripTime time from sending the first message to receiving the last response
+   */
+  public void recordUpdateMessages(
+      String tld, String dnsWriter, List<Integer> messageLengths, Duration roundTripTime) {
+    updateMessagesPerCommit.record(messageLengths.size(), tld, dnsWriter);
+    for (int messageLength : messageLengths) {
+      updateMessageSize.record(messageLength, tld, dnsWriter);
+    }
+    updateRoundTripTime.record(roundTripTime.getMillis(), tld, dnsWriter);
+  }
+
+  /** Records that a publishDomain or publishHost call has started. */
+  void incrementPublishesInFlight(String tld, String dnsWriter) {
+    publishesInFlight
+        .computeIfAbsent(ImmutableList.of(tld, dnsWriter), labels -> new AtomicLong())
+        .incrementAndGet();
+  }
+
+  /** Records that a publishDomain or publishHost call has returned or thrown. */
+  void decrementPublishesInFlight(String tld, String dnsWriter) {
+    publishesInFlight
+        .computeIfAbsent(ImmutableList.of(tld, dnsWriter), labels -> new AtomicLong())
+        .decrementAndGet();
+  }
+
+  /**
+   * Records how quickly a batch was staged.
+   *
+   * @param numberOfItems the number of domains and hosts staged
+   * @param duration time from the first publish call starting to the last one returning
+   */
+  void recordPublishThroughput(String tld, String dnsWriter, int numberOfItems, Duration duration) {
+    // Never divide by zero; a batch staged within a millisecond is as fast as we can measure.
+    double seconds = Math.max(duration.getMillis(), 1) / 1000.0;
+    publishThroughput.put(ImmutableList.of(tld, dnsWriter), numberOfItems / seconds);
+  }
+
+  /** Records that a failed publishDomain or publishHost call is being retried. */
+  void incrementPublishRetries(String tld, String dnsWriter) {
+    publishRetries.increment(tld, dnsWriter);
+  }
 }
@@ -21,6 +21,7 @@ import static google.registry.dns.DnsConstants.DNS_TARGET_CREATE_TIME_PARAM;
 import static google.registry.dns.DnsConstants.DNS_TARGET_NAME_PARAM;
 import static google.registry.dns.DnsConstants.DNS_TARGET_TYPE_PARAM;
 import static google.registry.model.tld.Registries.assertTldExists;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.request.RequestParameters.PARAM_TLD;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -37,7 +38,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InternetDomainName;
 import com.google.common.util.concurrent.RateLimiter;
+import google.registry.config.RegistryConfig;
 import google.registry.dns.DnsConstants.TargetType;
+import google.registry.model.domain.DomainBase;
 import google.registry.model.tld.Registries;
 import google.registry.util.Clock;
 import google.registry.util.NonFinalForTesting;
@@ -45,8 +48,10 @@ import google.registry.util.SystemClock;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
 /**
@@ -61,6 +66,11 @@ import org.joda.time.Duration;
  * {@link ReadDnsQueueAction}, which is run as a cron job with running time shorter than the cron
  * repeat time - meaning there should never be two instances running at once.
  *
+ * <p>If {@link google.registry.config.RegistryConfig#isSqlDnsRefreshQueueEnabled} is set and Cloud
+ * SQL is the primary database, domain refreshes bypass the queue altogether, and are instead
+ * recorded on the domain's own row, in the same transaction as the change that needs publishing.
+ * See {@link DnsRefreshRequestDao}.
+ *
  * @see google.registry.config.RegistryConfig.ConfigModule#provideReadDnsQueueRuntime
  */
 public class DnsQueue {
@@ -77,6 +87,9 @@ public class DnsQueue {
   // return results. The others will return no results."
   private static final RateLimiter rateLimiter = RateLimiter.create(9);
 
+  @NonFinalForTesting
+  private static boolean sqlRefreshQueueEnabled = RegistryConfig.isSqlDnsRefreshQueueEnabled();
+
   @Inject
   public DnsQueue(@Named(DNS_PULL_QUEUE_NAME) Queue queue, Clock clock) {
     this.queue = queue;
@@ -127,18 +140,55 @@ public class DnsQueue {
     return addToQueue(TargetType.HOST, hostName, tld.get().toString(), Duration.ZERO);
   }
 
-  /** Enqueues a task to refresh DNS for the specified domain now. */
+  /**
+   * Enqueues a task to refresh DNS for the specified domain now.
+   *
+   * @return the enqueued task, or null if the refresh was recorded in Cloud SQL instead
+   */
+  @Nullable
   public TaskHandle addDomainRefreshTask(String domainName) {
     return addDomainRefreshTask(domainName, Duration.ZERO);
   }
 
-  /** Enqueues a task to refresh DNS for the specified domain at some point in the future. */
+  /**
+   * Enqueues a task to refresh DNS for the specified domain at some point in the future.
+   *
+   * <p>Flows that save the domain being refreshed should use {@link #requestDomainRefresh}
+   * instead, since saving the domain would undo a refresh recorded in Cloud SQL by this method.
+   *
+   * @return the enqueued task, or null if the refresh was recorded in Cloud SQL instead
+   */
+  @Nullable
   public TaskHandle addDomainRefreshTask(String domainName, Duration countdown) {
-    return addToQueue(
-        TargetType.DOMAIN,
-        domainName,
-        assertTldExists(getTldFromDomainName(domainName)),
-        countdown);
+    String tld = assertTldExists(getTldFromDomainName(domainName));
+    if (usesSqlRefreshQueue()) {
+      DnsRefreshRequestDao.requestRefresh(domainName, clock.nowUtc().plus(countdown));
+      return null;
+    }
+    return addToQueue(TargetType.DOMAIN, domainName, tld, countdown);
+  }
+
+  /**
+   * Requests a DNS refresh for a domain that the current transaction is about to save.
+   *
+   * <p>If domain refreshes are recorded in Cloud SQL, this returns a copy of the domain with the
+   * refresh request set on it, and it is that copy which must be saved. Otherwise this enqueues a
+   * task as {@link #addDomainRefreshTask} does, and returns the domain unchanged.
+   */
+  public DomainBase requestDomainRefresh(DomainBase domain) {
+    if (!usesSqlRefreshQueue()) {
+      addDomainRefreshTask(domain.getDomainName());
+      return domain;
+    }
+    DateTime now = tm().getTransactionTime();
+    DateTime requestTime =
+        domain.getDnsRefreshRequestTime().filter(time -> time.isBefore(now)).orElse(now);
+    return domain.asBuilder().setDnsRefreshRequestTime(Optional.of(requestTime)).build();
+  }
+
+  /** Returns whether domain refreshes are recorded in Cloud SQL instead of the pull queue. */
+  public static boolean usesSqlRefreshQueue() {
+    return sqlRefreshQueueEnabled && !tm().isOfy();
   }
 
   /** Adds a task to the queue to refresh the DNS information for the specified zone. */
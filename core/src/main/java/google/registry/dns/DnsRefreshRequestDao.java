@@ -0,0 +1,111 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.DateTime;
+
+/**
+ * Data access object for DNS refresh requests recorded on {@code Domain} rows in Cloud SQL.
+ *
+ * <p>A domain needs a DNS refresh when its {@code dnsRefreshRequestTime} is set and not in the
+ * future. Requests are claimed with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so concurrent
+ * readers each get a disjoint set of domains without waiting on each other, and are cleared in the
+ * same transaction as they are claimed. If that transaction fails, the requests are simply left in
+ * place for the next reader.
+ */
+final class DnsRefreshRequestDao {
+
+  private static final String CLAIM_QUERY =
+      "SELECT repo_id, domain_name, dns_refresh_request_time FROM \"Domain\""
+          + " WHERE tld = :tld AND dns_refresh_request_time <= :now"
+          + " ORDER BY dns_refresh_request_time"
+          + " LIMIT :limit"
+          + " FOR UPDATE SKIP LOCKED";
+
+  private static final String CLEAR_QUERY =
+      "UPDATE \"Domain\" SET dns_refresh_request_time = NULL WHERE repo_id IN (:repoIds)";
+
+  /**
+   * Requests a DNS refresh of all domains with the given name, as of the given time.
+   *
+   * <p>An earlier pending request is left as it is, so that the refresh isn't pushed back.
+   *
+   * <p>This updates the rows directly, so it must not be used in a transaction that goes on to
+   * save the same domain, since saving it would overwrite the request. Such transactions should
+   * set {@code dnsRefreshRequestTime} on the domain they save instead.
+   */
+  static void requestRefresh(String domainName, DateTime requestTime) {
+    jpaTm()
+        .transact(
+            () ->
+                jpaTm()
+                    .query(
+                        "UPDATE Domain SET dnsRefreshRequestTime = :requestTime"
+                            + " WHERE domainName = :domainName AND (dnsRefreshRequestTime IS NULL"
+                            + " OR dnsRefreshRequestTime > :requestTime)")
+                    .setParameter("requestTime", requestTime)
+                    .setParameter("domainName", domainName)
+                    .executeUpdate());
+  }
+
+  /**
+   * Claims and clears up to {@code limit} of the oldest due DNS refresh requests on a TLD.
+   *
+   * <p>This must be called in a transaction, and the caller must hand the returned domains off for
+   * publishing before that transaction commits.
+   *
+   * @return the names of the claimed domains, each with its earliest request time, oldest first
+   */
+  static ImmutableMap<String, DateTime> claimRefreshes(String tld, DateTime now, int limit) {
+    jpaTm().assertInTransaction();
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows =
+        jpaTm()
+            .getEntityManager()
+            .createNativeQuery(CLAIM_QUERY)
+            .setParameter("tld", tld)
+            .setParameter("now", now.toDate())
+            .setParameter("limit", limit)
+            .getResultList();
+    if (rows.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    // Deleted and live domains can share a name; publishing the name once covers all of them.
+    Map<String, DateTime> requestTimes = new LinkedHashMap<>();
+    for (Object[] row : rows) {
+      requestTimes.putIfAbsent((String) row[1], new DateTime((Timestamp) row[2], UTC));
+    }
+    ImmutableList<String> repoIds =
+        rows.stream().map(row -> (String) row[0]).collect(toImmutableList());
+    jpaTm()
+        .getEntityManager()
+        .createNativeQuery(CLEAR_QUERY)
+        .setParameter("repoIds", repoIds)
+        .executeUpdate();
+    return ImmutableMap.copyOf(requestTimes);
+  }
+
+  private DnsRefreshRequestDao() {}
+}
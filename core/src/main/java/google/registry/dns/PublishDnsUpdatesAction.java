@@ -25,6 +25,8 @@ import static google.registry.request.Action.Method.POST;
 import static google.registry.request.RequestParameters.PARAM_TLD;
 import static google.registry.util.CollectionUtils.nullToEmpty;
 
+import com.google.appengine.api.ThreadManager;
+import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InternetDomainName;
 import google.registry.config.RegistryConfig.Config;
@@ -42,6 +44,8 @@ import google.registry.util.Clock;
 import google.registry.util.DomainNameUtils;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -64,6 +68,8 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
   @Inject DnsWriterProxy dnsWriterProxy;
   @Inject DnsMetrics dnsMetrics;
   @Inject @Config("publishDnsUpdatesLockDuration") Duration timeout;
+  @Inject @Config("publishDnsUpdatesMaxConcurrencyPerTld") int maxConcurrencyPerTld;
+  @Inject @Config("publishDnsUpdatesRetryBudget") int retryBudget;
 
   /**
    * The DNS writer to use for this batch.
@@ -90,6 +96,10 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
   @Inject @Parameter(PARAM_TLD) String tld;
   @Inject LockHandler lockHandler;
   @Inject Clock clock;
+
+  /** Source of threads for concurrent publishing, which supplies null outside of App Engine. */
+  Supplier<ThreadFactory> threadFactorySupplier = ThreadManager::currentRequestThreadFactory;
+
   @Inject PublishDnsUpdatesAction() {}
 
   private void recordActionResult(ActionStatus status) {
@@ -185,7 +195,7 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
       return;
     }
 
-    int domainsPublished = 0;
+    ImmutableList.Builder<String> acceptedDomains = new ImmutableList.Builder<>();
     int domainsRejected = 0;
     for (String domain : nullToEmpty(domains)) {
       if (!DomainNameUtils.isUnder(
@@ -193,15 +203,11 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
         logger.atSevere().log("%s: skipping domain %s not under TLD.", tld, domain);
         domainsRejected += 1;
       } else {
-        writer.publishDomain(domain);
-        logger.atInfo().log("%s: published domain %s.", tld, domain);
-        domainsPublished += 1;
+        acceptedDomains.add(domain);
       }
     }
-    dnsMetrics.incrementPublishDomainRequests(tld, domainsPublished, PublishStatus.ACCEPTED);
-    dnsMetrics.incrementPublishDomainRequests(tld, domainsRejected, PublishStatus.REJECTED);
 
-    int hostsPublished = 0;
+    ImmutableList.Builder<String> acceptedHosts = new ImmutableList.Builder<>();
     int hostsRejected = 0;
     for (String host : nullToEmpty(hosts)) {
       if (!DomainNameUtils.isUnder(
@@ -209,11 +215,38 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
         logger.atSevere().log("%s: skipping host %s not under TLD.", tld, host);
         hostsRejected += 1;
       } else {
+        acceptedHosts.add(host);
+      }
+    }
+
+    ImmutableList<String> domainsToPublish = acceptedDomains.build();
+    ImmutableList<String> hostsToPublish = acceptedHosts.build();
+    if (writer.supportsConcurrentPublish()) {
+      new ConcurrentDnsPublisher(
+              tld,
+              dnsWriter,
+              writer,
+              maxConcurrencyPerTld,
+              retryBudget,
+              timeout,
+              threadFactorySupplier,
+              dnsMetrics,
+              clock)
+          .publishAll(domainsToPublish, hostsToPublish);
+    } else {
+      for (String domain : domainsToPublish) {
+        writer.publishDomain(domain);
+        logger.atInfo().log("%s: published domain %s.", tld, domain);
+      }
+      for (String host : hostsToPublish) {
         writer.publishHost(host);
         logger.atInfo().log("%s: published host %s.", tld, host);
-        hostsPublished += 1;
       }
     }
+    int domainsPublished = domainsToPublish.size();
+    int hostsPublished = hostsToPublish.size();
+    dnsMetrics.incrementPublishDomainRequests(tld, domainsPublished, PublishStatus.ACCEPTED);
+    dnsMetrics.incrementPublishDomainRequests(tld, domainsRejected, PublishStatus.REJECTED);
     dnsMetrics.incrementPublishHostRequests(tld, hostsPublished, PublishStatus.ACCEPTED);
     dnsMetrics.incrementPublishHostRequests(tld, hostsRejected, PublishStatus.REJECTED);
 
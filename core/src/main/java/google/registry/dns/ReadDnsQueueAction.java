@@ -27,6 +27,7 @@ import static google.registry.dns.DnsModule.PARAM_LOCK_INDEX;
 import static google.registry.dns.DnsModule.PARAM_NUM_PUBLISH_LOCKS;
 import static google.registry.dns.DnsModule.PARAM_PUBLISH_TASK_ENQUEUED;
 import static google.registry.dns.DnsModule.PARAM_REFRESH_REQUEST_CREATED;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.request.RequestParameters.PARAM_TLD;
 import static google.registry.util.DomainNameUtils.getSecondLevelDomain;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -70,6 +71,9 @@ import org.joda.time.Duration;
 /**
  * Action for fanning out DNS refresh tasks by TLD, using data taken from the DNS pull queue.
  *
+ * <p>If domain refreshes are recorded in Cloud SQL (see {@link DnsQueue}), this also claims the due
+ * ones from there, TLD by TLD and oldest first, and fans them out in the same way.
+ *
  * <h3>Parameters Reference</h3>
  *
  * <ul>
@@ -101,6 +105,9 @@ public final class ReadDnsQueueAction implements Runnable {
    */
   private static final Duration LEASE_PADDING = Duration.standardMinutes(1);
 
+  /** Maximum number of domain refresh requests claimed from Cloud SQL in one transaction. */
+  private static final int SQL_CLAIM_BATCH_SIZE = 1000;
+
   @Inject @Config("dnsTldUpdateBatchSize") int tldUpdateBatchSize;
   @Inject @Config("readDnsQueueActionRuntime") Duration requestedMaximumDuration;
   @Inject @Named(DNS_PUBLISH_PUSH_QUEUE_NAME) Queue dnsPublishPushQueue;
@@ -139,6 +146,15 @@ public final class ReadDnsQueueAction implements Runnable {
   public void run() {
     DateTime requestedEndTime = clock.nowUtc().plus(requestedMaximumDuration);
     ImmutableSet<String> tlds = Registries.getTlds();
+    readPullQueue(requestedEndTime, tlds);
+    if (DnsQueue.usesSqlRefreshQueue()) {
+      for (String tld : tlds) {
+        readSqlRefreshRequests(requestedEndTime, tld);
+      }
+    }
+  }
+
+  private void readPullQueue(DateTime requestedEndTime, ImmutableSet<String> tlds) {
     while (requestedEndTime.isAfterNow()) {
       List<TaskHandle> tasks = dnsQueue.leaseTasks(requestedMaximumDuration.plus(LEASE_PADDING));
       logger.atInfo().log("Leased %d DNS update tasks.", tasks.size());
@@ -151,6 +167,48 @@ public final class ReadDnsQueueAction implements Runnable {
     }
   }
 
+  /**
+   * Claims the due domain refresh requests of a TLD from Cloud SQL and creates update actions for
+   * them.
+   *
+   * <p>Each batch is dispatched inside the transaction that claims it, so that if enqueuing the
+   * update actions fails, the requests stay in place to be claimed again. Requests on paused TLDs
+   * are left in place until the TLD is unpaused.
+   */
+  private void readSqlRefreshRequests(DateTime requestedEndTime, String tld) {
+    if (Registry.get(tld).getDnsPaused()) {
+      logger.atInfo().log("Not reading DNS refresh requests for paused TLD %s.", tld);
+      return;
+    }
+    while (requestedEndTime.isAfterNow()) {
+      int numClaimed =
+          jpaTm()
+              .transact(
+                  () -> {
+                    ImmutableMap<String, DateTime> requestTimes =
+                        DnsRefreshRequestDao.claimRefreshes(
+                            tld, jpaTm().getTransactionTime(), SQL_CLAIM_BATCH_SIZE);
+                    if (!requestTimes.isEmpty()) {
+                      bucketRefreshItems(
+                          requestTimes.entrySet().stream()
+                              .collect(
+                                  toImmutableSetMultimap(
+                                      entry -> tld,
+                                      entry ->
+                                          RefreshItem.create(
+                                              TargetType.DOMAIN,
+                                              entry.getKey(),
+                                              entry.getValue()))));
+                    }
+                    return requestTimes.size();
+                  });
+      logger.atInfo().log("Claimed %d DNS refresh requests for TLD %s.", numClaimed, tld);
+      if (numClaimed < SQL_CLAIM_BATCH_SIZE) {
+        return;
+      }
+    }
+  }
+
   /** A set of tasks grouped based on the action to take on them. */
   @AutoValue
   abstract static class ClassifiedTasks {
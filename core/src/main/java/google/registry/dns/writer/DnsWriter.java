@@ -58,6 +58,19 @@ public interface DnsWriter {
    */
   void publishHost(String hostName);
 
+  /**
+   * Returns whether {@link #publishDomain} and {@link #publishHost} may be called concurrently from
+   * several threads.
+   *
+   * <p>Staging an update usually means loading the resource from the database, so a writer that
+   * can stage updates in parallel lets a batch finish in about the time of its slowest load, rather
+   * than the sum of all of them. {@link #commit()} is still only called once every publish call has
+   * returned.
+   */
+  default boolean supportsConcurrentPublish() {
+    return false;
+  }
+
   /**
    * Commits the updates to the DNS server atomically.
    *
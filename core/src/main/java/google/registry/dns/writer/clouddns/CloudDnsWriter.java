@@ -48,12 +48,12 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -88,7 +88,8 @@ public class CloudDnsWriter extends BaseDnsWriter {
   private final String projectId;
   private final String zoneName;
   private final Dns dnsConnection;
-  private final HashMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords = new HashMap<>();
+  private final ConcurrentHashMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords =
+      new ConcurrentHashMap<>();
 
   @Inject
   CloudDnsWriter(
@@ -259,6 +260,12 @@ public class CloudDnsWriter extends BaseDnsWriter {
     publishDomain(getSecondLevelDomain(hostName, tld.get().toString()));
   }
 
+  /** Publishing only stages records in a concurrent map, so it can run on several threads. */
+  @Override
+  public boolean supportsConcurrentPublish() {
+    return true;
+  }
+
   /**
    * Sync changes in a zone requested by publishDomain and publishHost to Cloud DNS.
    *
@@ -0,0 +1,237 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.primitives.Ints;
+import google.registry.util.Clock;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.net.SocketFactory;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * A bounded pool of persistent TCP connections to a single DNS server.
+ *
+ * <p>Opening a new connection for every UPDATE message means that during mass refreshes most of the
+ * time is spent on connection setup. RFC 7766 allows clients to keep TCP connections open and send
+ * further messages over them, so this pool hands connections back out instead of closing them.
+ *
+ * <p>At most {@code maxConnections} connections are open at a time; callers wait up to the socket
+ * timeout for one to become free. Idle connections are only reused if they look healthy and have
+ * been idle for less than {@code maxIdleTime}, since servers close idle connections on their own.
+ * Even so, a reused connection may turn out to have been closed by the server, so callers should
+ * retry once on a fresh connection if I/O on a reused one fails.
+ */
+@ThreadSafe
+public class DnsConnectionPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final SocketFactory factory;
+  private final String host;
+  private final int port;
+  private final int socketTimeoutMillis;
+  private final Duration maxIdleTime;
+  private final Clock clock;
+  private final Semaphore permits;
+
+  @GuardedBy("this")
+  private final ArrayDeque<DnsConnection> idleConnections = new ArrayDeque<>();
+
+  /**
+   * Class constructor.
+   *
+   * @param factory a factory for TCP sockets
+   * @param host host name of the DNS server
+   * @param port port of the DNS server
+   * @param socketTimeout I/O timeout on each connection, also the maximum wait for a connection
+   * @param maxConnections maximum number of connections open at once
+   * @param maxIdleTime how long a connection may be idle and still be reused
+   * @param clock a source of time
+   */
+  public DnsConnectionPool(
+      SocketFactory factory,
+      String host,
+      int port,
+      Duration socketTimeout,
+      int maxConnections,
+      Duration maxIdleTime,
+      Clock clock) {
+    checkArgument(maxConnections > 0, "maxConnections must be positive: %s", maxConnections);
+    this.factory = factory;
+    this.host = host;
+    this.port = port;
+    this.socketTimeoutMillis = Ints.checkedCast(socketTimeout.getMillis());
+    this.maxIdleTime = maxIdleTime;
+    this.clock = clock;
+    this.permits = new Semaphore(maxConnections, true);
+  }
+
+  /**
+   * Takes a connection from the pool, opening a new one if no healthy idle connection exists.
+   *
+   * <p>Every connection obtained here must be handed back through exactly one of {@link #release}
+   * or {@link #invalidate}.
+   *
+   * @throws IOException if the connection could not be opened, or none became free in time
+   */
+  DnsConnection borrow() throws IOException {
+    acquirePermit();
+    try {
+      DnsConnection connection = pollHealthyIdleConnection();
+      if (connection == null) {
+        connection = openConnection();
+      }
+      return connection;
+    } catch (IOException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Takes a newly opened connection, bypassing any idle ones.
+   *
+   * <p>This is for retrying after I/O on a reused connection fails. The same rules for handing the
+   * connection back apply as for {@link #borrow}.
+   */
+  DnsConnection borrowNew() throws IOException {
+    acquirePermit();
+    try {
+      return openConnection();
+    } catch (IOException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /** Returns a connection that is still in a known-good state to the pool for reuse. */
+  void release(DnsConnection connection) {
+    connection.lastUsed = clock.nowUtc();
+    connection.isReused = true;
+    synchronized (this) {
+      idleConnections.addFirst(connection);
+    }
+    permits.release();
+  }
+
+  /** Closes a connection that failed or is in an unknown state, instead of reusing it. */
+  void invalidate(DnsConnection connection) {
+    connection.close();
+    permits.release();
+  }
+
+  /** Returns the number of idle connections currently held by the pool. */
+  @VisibleForTesting
+  synchronized int getIdleConnectionCount() {
+    return idleConnections.size();
+  }
+
+  private void acquirePermit() throws IOException {
+    try {
+      // A timeout of zero means to wait indefinitely, as it does for sockets.
+      if (socketTimeoutMillis == 0) {
+        permits.acquire();
+      } else if (!permits.tryAcquire(socketTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new IOException(
+            String.format("Timed out waiting for a connection to DNS server %s", host));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a DNS connection", e);
+    }
+  }
+
+  /** Returns the most recently used healthy idle connection, closing any stale ones found. */
+  private DnsConnection pollHealthyIdleConnection() {
+    DateTime now = clock.nowUtc();
+    while (true) {
+      DnsConnection connection;
+      synchronized (this) {
+        connection = idleConnections.pollFirst();
+      }
+      if (connection == null) {
+        return null;
+      }
+      if (connection.isHealthy(now.minus(maxIdleTime))) {
+        return connection;
+      }
+      logger.atInfo().log("Closing stale connection to DNS server %s.", host);
+      connection.close();
+    }
+  }
+
+  private DnsConnection openConnection() throws IOException {
+    Socket socket = factory.createSocket(InetAddress.getByName(host), port);
+    try {
+      socket.setSoTimeout(socketTimeoutMillis);
+      return new DnsConnection(socket);
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /** A single TCP connection to the DNS server, along with its streams. */
+  static class DnsConnection {
+
+    private final Socket socket;
+    final DataInputStream inputStream;
+    final OutputStream outputStream;
+    private boolean isReused = false;
+    private DateTime lastUsed;
+
+    private DnsConnection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.inputStream = new DataInputStream(socket.getInputStream());
+      this.outputStream = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /** Returns whether this connection was used for earlier messages before being borrowed. */
+    boolean isReused() {
+      return isReused;
+    }
+
+    private boolean isHealthy(DateTime idleCutoff) {
+      return lastUsed.isAfter(idleCutoff)
+          && socket.isConnected()
+          && !socket.isClosed()
+          && !socket.isInputShutdown()
+          && !socket.isOutputShutdown();
+    }
+
+    private void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close DNS connection.");
+      }
+    }
+  }
+}
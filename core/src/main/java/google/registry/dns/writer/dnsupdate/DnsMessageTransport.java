@@ -17,19 +17,22 @@ package google.registry.dns.writer.dnsupdate;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.primitives.Ints;
-import google.registry.config.RegistryConfig.Config;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
+import google.registry.dns.writer.dnsupdate.DnsConnectionPool.DnsConnection;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
-import javax.net.SocketFactory;
-import org.joda.time.Duration;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Opcode;
 
@@ -38,43 +41,44 @@ import org.xbill.DNS.Opcode;
  * s and the message framing defined in <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>.
  * We would like use the dnsjava library's {@link org.xbill.DNS.SimpleResolver} class for this, but
  * it requires {@link java.nio.channels.SocketChannel} which is not supported on AppEngine.
+ *
+ * <p>Connections are taken from a {@link DnsConnectionPool} and kept open between messages, as
+ * allowed by <a href="https://tools.ietf.org/html/rfc7766">RFC 7766</a>. Several messages can be
+ * pipelined over one connection with {@link #sendAll}, in which case responses are matched to
+ * queries by message ID, since the server may answer them in any order.
  */
 public class DnsMessageTransport {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /**
    * Size of message length field for DNS TCP transport.
    *
    * @see <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>
    */
   static final int MESSAGE_LENGTH_FIELD_BYTES = 2;
-  private static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
+  static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
+
+  /** Number of distinct values of the 16-bit DNS message ID. */
+  private static final int MESSAGE_ID_COUNT = 1 << 16;
 
   /**
    * The standard DNS port number.
    *
    * @see <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>
    */
-  @VisibleForTesting static final int DNS_PORT = 53;
+  static final int DNS_PORT = 53;
 
-  private final SocketFactory factory;
-  private final String updateHost;
-  private final int updateTimeout;
+  private final DnsConnectionPool connectionPool;
 
   /**
    * Class constructor.
    *
-   * @param factory a factory for TCP sockets
-   * @param updateHost host name of the DNS server
-   * @param updateTimeout update I/O timeout
+   * @param connectionPool the pool of connections to the DNS server
    */
   @Inject
-  public DnsMessageTransport(
-      SocketFactory factory,
-      @Config("dnsUpdateHost") String updateHost,
-      @Config("dnsUpdateTimeout") Duration updateTimeout) {
-    this.factory = factory;
-    this.updateHost = updateHost;
-    this.updateTimeout = Ints.checkedCast(updateTimeout.getMillis());
+  public DnsMessageTransport(DnsConnectionPool connectionPool) {
+    this.connectionPool = connectionPool;
   }
 
   /**
@@ -87,20 +91,124 @@ public class DnsMessageTransport {
    * @throws IllegalArgumentException if the query is too large to be sent (&gt; 65535 bytes)
    */
   public Message send(Message query) throws IOException {
-    try (Socket socket = factory.createSocket(InetAddress.getByName(updateHost), DNS_PORT)) {
-      socket.setSoTimeout(updateTimeout);
-      writeMessage(socket.getOutputStream(), query);
-      Message response = readMessage(socket.getInputStream());
-      checkValidResponse(query, response);
-      return response;
+    return Iterables.getOnlyElement(sendAll(ImmutableList.of(query)));
+  }
+
+  /**
+   * Sends several DNS "query" messages over a single connection without waiting for each response
+   * before sending the next, and returns the responses in the same order as the queries.
+   *
+   * <p>Each response is checked for matching ID and opcode. Responses are matched to queries by
+   * ID, so a query whose ID is already used by an earlier one in the list is sent as a copy with an
+   * unused ID; the queries themselves are not modified.
+   *
+   * <p>If the pooled connection turns out to have been closed by the server, all of the queries are
+   * retried once on a new connection. This is safe for the UPDATE messages we send, which always
+   * replace the full set of records for a name and are therefore idempotent.
+   *
+   * @param queries the messages to send
+   * @return the responses received from the server, in query order
+   * @throws IOException if the Socket input/output streams throws one
+   * @throws IllegalArgumentException if a query is too large to be sent (&gt; 65535 bytes), or
+   *     there are more queries than distinct message IDs
+   */
+  public ImmutableList<Message> sendAll(ImmutableList<Message> queries) throws IOException {
+    queries = withDistinctIds(queries);
+    ImmutableList<byte[]> wireQueries = toWireMessages(queries);
+    DnsConnection connection = connectionPool.borrow();
+    try {
+      return sendAll(connection, queries, wireQueries);
+    } catch (IOException e) {
+      if (!connection.isReused()) {
+        throw e;
+      }
+      logger.atInfo().withCause(e).log("Pooled DNS connection failed, retrying on a new one.");
     }
+    return sendAll(connectionPool.borrowNew(), queries, wireQueries);
   }
 
-  private void checkValidResponse(Message query, Message response) {
+  /**
+   * Sends the queries over the given connection, returning it to the pool afterwards if it is still
+   * usable, or closing it otherwise.
+   */
+  private ImmutableList<Message> sendAll(
+      DnsConnection connection, ImmutableList<Message> queries, ImmutableList<byte[]> wireQueries)
+      throws IOException {
+    boolean succeeded = false;
+    try {
+      for (byte[] wireQuery : wireQueries) {
+        writeMessage(connection.outputStream, wireQuery);
+      }
+      connection.outputStream.flush();
+      Map<Integer, Message> responsesById = new HashMap<>();
+      for (int i = 0; i < queries.size(); i++) {
+        Message response = readMessage(connection.inputStream);
+        responsesById.put(response.getHeader().getID(), response);
+      }
+      ImmutableList.Builder<Message> responses = new ImmutableList.Builder<>();
+      for (Message query : queries) {
+        Message response = responsesById.get(query.getHeader().getID());
+        checkValidResponse(query, response, responsesById.keySet());
+        responses.add(response);
+      }
+      succeeded = true;
+      return responses.build();
+    } finally {
+      if (succeeded) {
+        connectionPool.release(connection);
+      } else {
+        connectionPool.invalidate(connection);
+      }
+    }
+  }
+
+  /**
+   * Returns the queries with every ID distinct, replacing each query whose ID was already taken by
+   * an earlier one with a copy using the next unused ID.
+   */
+  private static ImmutableList<Message> withDistinctIds(ImmutableList<Message> queries) {
+    checkArgument(
+        queries.size() <= MESSAGE_ID_COUNT,
+        "Too many pipelined DNS queries: %s",
+        queries.size());
+    Set<Integer> ids = new HashSet<>();
+    ImmutableList.Builder<Message> distinctQueries = new ImmutableList.Builder<>();
+    for (Message query : queries) {
+      int id = query.getHeader().getID();
+      if (ids.add(id)) {
+        distinctQueries.add(query);
+        continue;
+      }
+      do {
+        id = (id + 1) % MESSAGE_ID_COUNT;
+      } while (!ids.add(id));
+      Message copy = query.clone();
+      copy.getHeader().setID(id);
+      distinctQueries.add(copy);
+    }
+    return distinctQueries.build();
+  }
+
+  private static ImmutableList<byte[]> toWireMessages(ImmutableList<Message> queries) {
+    ImmutableList.Builder<byte[]> wireMessages = new ImmutableList.Builder<>();
+    for (Message query : queries) {
+      byte[] messageData = query.toWire();
+      checkArgument(
+          messageData.length <= MESSAGE_MAXIMUM_LENGTH,
+          "DNS request message larger than maximum of %s: %s",
+          MESSAGE_MAXIMUM_LENGTH,
+          messageData.length);
+      wireMessages.add(messageData);
+    }
+    return wireMessages.build();
+  }
+
+  private void checkValidResponse(
+      Message query, @Nullable Message response, Set<Integer> responseIds) {
     verify(
-        response.getHeader().getID() == query.getHeader().getID(),
+        response != null,
         "response ID %s does not match query ID %s",
-        response.getHeader().getID(),
+        Joiner.on(", ").join(responseIds),
         query.getHeader().getID());
     verify(
         response.getHeader().getOpcode() == query.getHeader().getOpcode(),
@@ -109,21 +217,14 @@ public class DnsMessageTransport {
         Opcode.string(query.getHeader().getOpcode()));
   }
 
-  private void writeMessage(OutputStream outputStream, Message message) throws IOException {
-    byte[] messageData = message.toWire();
-    checkArgument(
-        messageData.length <= MESSAGE_MAXIMUM_LENGTH,
-        "DNS request message larger than maximum of %s: %s",
-        MESSAGE_MAXIMUM_LENGTH,
-        messageData.length);
+  private void writeMessage(OutputStream outputStream, byte[] messageData) throws IOException {
     ByteBuffer buffer = ByteBuffer.allocate(messageData.length + MESSAGE_LENGTH_FIELD_BYTES);
     buffer.putShort((short) messageData.length);
     buffer.put(messageData);
     outputStream.write(buffer.array());
   }
 
-  private Message readMessage(InputStream inputStream) throws IOException {
-    DataInputStream stream = new DataInputStream(inputStream);
+  private Message readMessage(DataInputStream stream) throws IOException {
     int length = stream.readUnsignedShort();
     byte[] messageData = new byte[length];
     stream.readFully(messageData);
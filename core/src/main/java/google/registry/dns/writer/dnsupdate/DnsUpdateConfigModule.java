@@ -41,4 +41,22 @@ public class DnsUpdateConfigModule {
   public static Duration provideDnsUpdateTimeout() {
     return Duration.standardSeconds(30);
   }
+
+  /** Maximum number of TCP connections kept open to the DNS server at once. */
+  @Provides
+  @Config("dnsUpdateMaxConnections")
+  public static int provideDnsUpdateMaxConnections() {
+    return 4;
+  }
+
+  /**
+   * How long a TCP connection to the DNS server may sit idle and still be reused.
+   *
+   * <p>This should be shorter than the server's own idle timeout.
+   */
+  @Provides
+  @Config("dnsUpdateConnectionMaxIdleTime")
+  public static Duration provideDnsUpdateConnectionMaxIdleTime() {
+    return Duration.standardSeconds(60);
+  }
 }
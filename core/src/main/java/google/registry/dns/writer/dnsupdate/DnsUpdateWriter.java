@@ -16,15 +16,19 @@ package google.registry.dns.writer.dnsupdate;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Sets.intersection;
 import static com.google.common.collect.Sets.union;
+import static google.registry.dns.writer.dnsupdate.DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.net.InternetDomainName;
 import google.registry.config.RegistryConfig.Config;
+import google.registry.dns.DnsMetrics;
 import google.registry.dns.writer.BaseDnsWriter;
 import google.registry.dns.writer.DnsWriterZone;
 import google.registry.model.domain.DomainBase;
@@ -36,8 +40,14 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
+import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.xbill.DNS.AAAARecord;
 import org.xbill.DNS.ARecord;
@@ -48,6 +58,8 @@ import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
@@ -58,9 +70,11 @@ import org.xbill.DNS.Update;
  * domain-registry to a (capable) external DNS server, sometimes called a "hidden master". DNS
  * UPDATE messages are sent via a supplied "transport" class.
  *
- * On call to {@link #commit()}, a single UPDATE message is created containing the records required
- * to "synchronize" the DNS with the current (at the time of processing) state of the registry, for
- * the supplied domain/host.
+ * On call to {@link #commit()}, UPDATE messages are created containing the records required to
+ * "synchronize" the DNS with the current (at the time of processing) state of the registry, for
+ * the supplied domains/hosts. As many names as fit under the 64KB DNS message limit are coalesced
+ * into each message, and the messages are pipelined over a single connection. Publishing the same
+ * domain (or hosts under the same domain) more than once in a batch only sends its records once.
  *
  * <p>The general strategy of the publish methods is to delete <em>all</em> resource records of any
  * <em>type</em> that match the exact domain/host name supplied. And then for create/update cases,
@@ -71,10 +85,13 @@ import org.xbill.DNS.Update;
  * <p>Only NS, DS, A, and AAAA records are published, and in particular no DNSSEC signing is done
  * assuming that this will be done by a third party DNS provider.
  *
- * <p>Each commit call is treated as an atomic update to the DNS. If a commit fails an exception
- * is thrown. The SOA record serial number is implicitly incremented by the server on each UPDATE
- * message, as required by RFC 2136. Care must be taken to make sure the SOA serial number does not
- * go backwards if the entire TLD (zone) is "reset" to empty and republished.
+ * <p>The records for a single domain, including its glue, always go in the same message, so each
+ * domain is updated atomically. When a batch is too large for one message, the batch as a whole is
+ * not atomic, but since every message replaces all records for its names, a failed commit can
+ * safely be retried. If a commit fails an exception is thrown. The SOA record serial number is
+ * implicitly incremented by the server on each UPDATE message, as required by RFC 2136. Care must
+ * be taken to make sure the SOA serial number does not go backwards if the entire TLD (zone) is
+ * "reset" to empty and republished.
  */
 public class DnsUpdateWriter extends BaseDnsWriter {
 
@@ -88,10 +105,23 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private final Duration dnsDefaultNsTtl;
   private final Duration dnsDefaultDsTtl;
   private final DnsMessageTransport transport;
+  private final DnsMetrics dnsMetrics;
   private final Clock clock;
-  private final Update update;
   private final String zoneName;
 
+  /**
+   * The records to send for each domain published so far, keyed by domain name.
+   *
+   * <p>Each value is an UPDATE message holding only that domain's records, which are later copied
+   * into the coalesced messages that are actually sent.
+   */
+  @GuardedBy("this")
+  private final Map<String, Update> domainUpdates = new LinkedHashMap<>();
+
+  /** Hosts that triggered a refresh of each domain in {@link #domainUpdates}. */
+  @GuardedBy("this")
+  private final SetMultimap<String, String> requestingHostNames = LinkedHashMultimap.create();
+
   /**
    * Class constructor.
    *
@@ -99,6 +129,7 @@ public class DnsUpdateWriter extends BaseDnsWriter {
    * @param dnsDefaultNsTtl TTL used for any created nameserver records
    * @param dnsDefaultDsTtl TTL used for any created DS records
    * @param transport the transport used to send/receive the UPDATE messages
+   * @param dnsMetrics metrics for the UPDATE messages sent
    * @param clock a source of time
    */
   @Inject
@@ -108,13 +139,14 @@ public class DnsUpdateWriter extends BaseDnsWriter {
       @Config("dnsDefaultNsTtl") Duration dnsDefaultNsTtl,
       @Config("dnsDefaultDsTtl") Duration dnsDefaultDsTtl,
       DnsMessageTransport transport,
+      DnsMetrics dnsMetrics,
       Clock clock) {
     this.zoneName = zoneName;
-    this.update = new Update(toAbsoluteName(zoneName));
     this.dnsDefaultATtl = dnsDefaultATtl;
     this.dnsDefaultNsTtl = dnsDefaultNsTtl;
     this.dnsDefaultDsTtl = dnsDefaultDsTtl;
     this.transport = transport;
+    this.dnsMetrics = dnsMetrics;
     this.clock = clock;
   }
 
@@ -126,20 +158,42 @@ public class DnsUpdateWriter extends BaseDnsWriter {
    * @param requestingHostName the fully qualified host name, with no trailing dot, that triggers
    *     this domain refresh request
    */
-  private void publishDomain(String domainName, String requestingHostName) {
+  private void publishDomain(String domainName, @Nullable String requestingHostName) {
+    synchronized (this) {
+      boolean isNewRequestingHost =
+          requestingHostName != null && requestingHostNames.put(domainName, requestingHostName);
+      if (domainUpdates.containsKey(domainName) && !isNewRequestingHost) {
+        // Already published in this batch, and there is no new host to delete.
+        return;
+      }
+    }
+    // Load the domain and build its records outside the lock, since this is the slow part when
+    // publishing concurrently.
     Optional<DomainBase> domainOptional =
         loadByForeignKey(DomainBase.class, domainName, clock.nowUtc());
-    update.delete(toAbsoluteName(domainName), Type.ANY);
-    // If the domain is now deleted, then don't update DNS for it.
-    if (domainOptional.isPresent()) {
-      DomainBase domain = domainOptional.get();
-      // As long as the domain exists, orphan glues should be cleaned.
-      deleteSubordinateHostAddressSet(domain, requestingHostName, update);
-      if (domain.shouldPublishToDns()) {
-        addInBailiwickNameServerSet(domain, update);
-        update.add(makeNameServerSet(domain));
-        update.add(makeDelegationSignerSet(domain));
+    Update records = new Update(toAbsoluteName(zoneName));
+    if (domainOptional.isPresent() && domainOptional.get().shouldPublishToDns()) {
+      addInBailiwickNameServerSet(domainOptional.get(), records);
+      records.add(makeNameServerSet(domainOptional.get()));
+      records.add(makeDelegationSignerSet(domainOptional.get()));
+    }
+    synchronized (this) {
+      // Rebuild the domain's records from scratch if it was already published. Appending the
+      // delete of another requesting host instead could remove glue records added earlier. The
+      // deletes use the requesting hosts as of now, which include those of any concurrent calls
+      // whose records were staged before these.
+      Update update = new Update(toAbsoluteName(zoneName));
+      update.delete(toAbsoluteName(domainName), Type.ANY);
+      // If the domain is now deleted, then don't update DNS for it.
+      if (domainOptional.isPresent()) {
+        // As long as the domain exists, orphan glues should be cleaned.
+        deleteSubordinateHostAddressSet(
+            domainOptional.get(), requestingHostNames.get(domainName), update);
+        for (Record record : records.getSection(Section.UPDATE)) {
+          update.addRecord(record, Section.UPDATE);
+        }
       }
+      domainUpdates.put(domainName, update);
     }
   }
 
@@ -170,20 +224,69 @@ public class DnsUpdateWriter extends BaseDnsWriter {
     publishDomain(domain, hostName);
   }
 
+  /** Staging is synchronized, and the slow part of it (loading resources) runs unlocked. */
+  @Override
+  public boolean supportsConcurrentPublish() {
+    return true;
+  }
+
   @Override
   protected void commitUnchecked() {
+    ImmutableList<Update> messages = coalesceUpdates();
+    ImmutableList<Integer> messageLengths =
+        messages.stream().map(message -> message.toWire().length).collect(toImmutableList());
     try {
-      Message response = transport.send(update);
-      verify(
-          response.getRcode() == Rcode.NOERROR,
-          "DNS server failed domain update for '%s' rcode: %s",
-          zoneName,
-          Rcode.string(response.getRcode()));
+      DateTime startTime = clock.nowUtc();
+      ImmutableList<Message> responses =
+          messages.size() == 1
+              ? ImmutableList.of(transport.send(messages.get(0)))
+              : transport.sendAll(ImmutableList.copyOf(messages));
+      dnsMetrics.recordUpdateMessages(
+          zoneName, NAME, messageLengths, new Duration(startTime, clock.nowUtc()));
+      for (Message response : responses) {
+        verify(
+            response.getRcode() == Rcode.NOERROR,
+            "DNS server failed domain update for '%s' rcode: %s",
+            zoneName,
+            Rcode.string(response.getRcode()));
+      }
     } catch (IOException e) {
       throw new RuntimeException("publishDomain failed for zone: " + zoneName, e);
     }
   }
 
+  /**
+   * Packs the records of all published domains into as few UPDATE messages as possible.
+   *
+   * <p>A domain's records are never split across messages. A domain whose records don't fit in a
+   * message on their own still gets a message of its own, which the transport will then reject.
+   */
+  private synchronized ImmutableList<Update> coalesceUpdates() {
+    Name zone = toAbsoluteName(zoneName);
+    int headerLength = new Update(zone).toWire().length;
+    ImmutableList.Builder<Update> messages = new ImmutableList.Builder<>();
+    Update message = new Update(zone);
+    int messageLength = headerLength;
+    boolean messageIsEmpty = true;
+    for (Update domainUpdate : domainUpdates.values()) {
+      // The records on their own are at least as long as they will be in the combined message,
+      // where there are more names for DNS name compression to point to.
+      int recordsLength = domainUpdate.toWire().length - headerLength;
+      if (!messageIsEmpty && messageLength + recordsLength > MESSAGE_MAXIMUM_LENGTH) {
+        messages.add(message);
+        message = new Update(zone);
+        messageLength = headerLength;
+      }
+      for (Record record : domainUpdate.getSection(Section.UPDATE)) {
+        message.addRecord(record, Section.UPDATE);
+      }
+      messageLength += recordsLength;
+      messageIsEmpty = false;
+    }
+    messages.add(message);
+    return messages.build();
+  }
+
   private RRset makeDelegationSignerSet(DomainBase domain) {
     RRset signerSet = new RRset();
     for (DelegationSignerData signerData : domain.getDsData()) {
@@ -202,13 +305,8 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   }
 
   private void deleteSubordinateHostAddressSet(
-      DomainBase domain, String additionalHost, Update update) {
-    for (String hostName :
-        union(
-            domain.getSubordinateHosts(),
-            (additionalHost == null
-                ? ImmutableSet.of()
-                : ImmutableSet.of(additionalHost)))) {
+      DomainBase domain, Set<String> additionalHosts, Update update) {
+    for (String hostName : union(domain.getSubordinateHosts(), additionalHosts)) {
       update.delete(toAbsoluteName(hostName), Type.ANY);
     }
   }
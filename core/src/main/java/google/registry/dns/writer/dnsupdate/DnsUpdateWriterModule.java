@@ -14,24 +14,86 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static google.registry.dns.writer.dnsupdate.DnsMessageTransport.DNS_PORT;
+
+import com.google.auto.value.AutoValue;
 import dagger.Module;
 import dagger.Provides;
 import dagger.multibindings.IntoMap;
 import dagger.multibindings.IntoSet;
 import dagger.multibindings.StringKey;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.dns.writer.DnsWriter;
+import google.registry.util.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.inject.Named;
 import javax.net.SocketFactory;
+import org.joda.time.Duration;
 
 /** Dagger module that provides a DnsUpdateWriter. */
 @Module
 public abstract class DnsUpdateWriterModule {
 
+  /**
+   * Connection pools shared by every request in this process, keyed by their full configuration.
+   *
+   * <p>The writer is request-scoped, so the pool can't be a {@code @Singleton} binding here; it
+   * has to outlive individual requests for its connections to be reused at all.
+   */
+  private static final ConcurrentMap<ConnectionPoolConfig, DnsConnectionPool> connectionPools =
+      new ConcurrentHashMap<>();
+
+  /** The settings a {@link DnsConnectionPool} is created with. */
+  @AutoValue
+  abstract static class ConnectionPoolConfig {
+    abstract SocketFactory factory();
+
+    abstract String host();
+
+    abstract Duration timeout();
+
+    abstract int maxConnections();
+
+    abstract Duration maxIdleTime();
+
+    abstract Clock clock();
+
+    static ConnectionPoolConfig create(
+        SocketFactory factory,
+        String host,
+        Duration timeout,
+        int maxConnections,
+        Duration maxIdleTime,
+        Clock clock) {
+      return new AutoValue_DnsUpdateWriterModule_ConnectionPoolConfig(
+          factory, host, timeout, maxConnections, maxIdleTime, clock);
+    }
+
+    DnsConnectionPool createPool() {
+      return new DnsConnectionPool(
+          factory(), host(), DNS_PORT, timeout(), maxConnections(), maxIdleTime(), clock());
+    }
+  }
+
   @Provides
   static SocketFactory provideSocketFactory() {
     return SocketFactory.getDefault();
   }
 
+  @Provides
+  static DnsConnectionPool provideDnsConnectionPool(
+      SocketFactory factory,
+      @Config("dnsUpdateHost") String host,
+      @Config("dnsUpdateTimeout") Duration timeout,
+      @Config("dnsUpdateMaxConnections") int maxConnections,
+      @Config("dnsUpdateConnectionMaxIdleTime") Duration maxIdleTime,
+      Clock clock) {
+    return connectionPools.computeIfAbsent(
+        ConnectionPoolConfig.create(factory, host, timeout, maxConnections, maxIdleTime, clock),
+        ConnectionPoolConfig::createPool);
+  }
+
   @Provides
   @IntoMap
   @StringKey(DnsUpdateWriter.NAME)
@@ -20,7 +20,6 @@ import static google.registry.flows.domain.DomainFlowUtils.validateDomainName;
 import static google.registry.flows.domain.DomainFlowUtils.validateDomainNameWithIdnTables;
 import static google.registry.flows.domain.DomainFlowUtils.verifyNotInPredelegation;
 import static google.registry.model.tld.label.ReservationType.getTypeOfHighestSeverity;
-import static google.registry.model.tld.label.ReservedList.getReservationTypes;
 import static google.registry.monitoring.whitebox.CheckApiMetric.Availability.AVAILABLE;
 import static google.registry.monitoring.whitebox.CheckApiMetric.Availability.REGISTERED;
 import static google.registry.monitoring.whitebox.CheckApiMetric.Availability.RESERVED;
@@ -48,6 +47,7 @@ import google.registry.model.domain.DomainBase;
 import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.tld.Registry;
 import google.registry.model.tld.label.ReservationType;
+import google.registry.model.tld.label.TldLabelPolicy;
 import google.registry.monitoring.whitebox.CheckApiMetric;
 import google.registry.monitoring.whitebox.CheckApiMetric.Availability;
 import google.registry.request.Action;
@@ -162,7 +162,8 @@ public class CheckApiAction implements Runnable {
 
   private Optional<String> checkReserved(InternetDomainName domainName) {
     ImmutableSet<ReservationType> reservationTypes =
-        getReservationTypes(domainName.parts().get(0), domainName.parent().toString());
+        TldLabelPolicy.get(domainName.parent().toString())
+            .getReservationTypes(domainName.parts().get(0));
     if (!reservationTypes.isEmpty()) {
       return Optional.of(getTypeOfHighestSeverity(reservationTypes).getMessageForCheck());
     }
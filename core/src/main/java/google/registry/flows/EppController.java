@@ -19,6 +19,7 @@ import static com.google.common.flogger.LazyArgs.lazy;
 import static com.google.common.io.BaseEncoding.base64;
 import static google.registry.flows.FlowReporter.extractTlds;
 import static google.registry.flows.FlowUtils.unmarshalEpp;
+import static google.registry.monitoring.whitebox.EppMetric.Stage.PARSE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -64,9 +65,12 @@ public final class EppController {
     eppMetricBuilder.setRegistrarId(Optional.ofNullable(sessionMetadata.getRegistrarId()));
     try {
       EppInput eppInput;
+      eppMetricBuilder.beginStage(PARSE);
       try {
         eppInput = unmarshalEpp(EppInput.class, inputXmlBytes);
+        eppMetricBuilder.endStage(PARSE);
       } catch (EppException e) {
+        eppMetricBuilder.endStage(PARSE);
         // Log the unmarshalling error, with the raw bytes (in base64) to help with debugging.
         logger.atInfo().withCause(e).log(
             "EPP request XML unmarshalling failed - \"%s\":\n%s\n%s\n%s\n%s",
@@ -119,6 +123,7 @@ public final class EppController {
         EppMetric metric = eppMetricBuilder.build();
         eppMetrics.incrementEppRequests(metric);
         eppMetrics.recordProcessingTime(metric);
+        eppMetrics.recordStageTimes(metric);
       }
     }
   }
@@ -71,6 +71,20 @@ public class EppMetrics {
               LABEL_DESCRIPTORS,
               DEFAULT_FITTER);
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_BY_STAGE =
+      ImmutableSet.of(
+          LabelDescriptor.create("command", "The name of the command."),
+          LabelDescriptor.create("stage", "The stage of request processing."));
+
+  private static final EventMetric stageTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/stage_time",
+              "EPP Request Time By Processing Stage",
+              "milliseconds",
+              LABEL_DESCRIPTORS_BY_STAGE,
+              DEFAULT_FITTER);
+
   private enum TrafficType {
     CANARY, PROBER, REAL
   }
@@ -104,6 +118,16 @@ public class EppMetrics {
     requestTime.record(processingTime, commandName, getTrafficType(tld).toString(), eppStatusCode);
   }
 
+  /** Records the time spent in each timed stage of an EPP request. */
+  public void recordStageTimes(EppMetric metric) {
+    String commandName = metric.getCommandName().orElse("");
+    metric
+        .getStageDurations()
+        .forEach(
+            (stage, duration) ->
+                stageTime.record(duration.getMillis(), commandName, stage.toString()));
+  }
+
   private static TrafficType getTrafficType(String tld) {
     if (tld.endsWith("canary.test")) {
       return TrafficType.CANARY;
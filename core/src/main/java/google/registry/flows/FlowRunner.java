@@ -14,20 +14,32 @@
 
 package google.registry.flows;
 
+import static com.google.common.flogger.LazyArgs.lazy;
+import static google.registry.monitoring.whitebox.EppMetric.Stage.COMMAND_LOG;
+import static google.registry.monitoring.whitebox.EppMetric.Stage.FLOW;
+import static google.registry.persistence.transaction.TransactionManagerFactory.replicaRouter;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.xml.XmlTransformer.prettyPrint;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.flows.FlowModule.DryRun;
 import google.registry.flows.FlowModule.InputXml;
 import google.registry.flows.FlowModule.RegistrarId;
 import google.registry.flows.FlowModule.Superuser;
 import google.registry.flows.FlowModule.Transactional;
+import google.registry.flows.session.HelloFlow;
 import google.registry.flows.session.LoginFlow;
+import google.registry.flows.session.LogoutFlow;
+import google.registry.model.EppResourceLoadScope;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppoutput.EppOutput;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.util.Clock;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
@@ -36,6 +48,19 @@ public class FlowRunner {
 
   private static final String COMMAND_LOG_FORMAT = "EPP Command" + Strings.repeat("\n\t%s", 8);
 
+  /** Placeholder logged instead of the input XML for commands that aren't sampled. */
+  private static final String XML_NOT_LOGGED = "<XML not logged>";
+
+  /** Count of commands run, for sampling which ones get their full XML logged. */
+  private static final AtomicLong commandCounter = new AtomicLong();
+
+  /**
+   * Flows that aren't run as read-only work: logging in must see the current credentials of the
+   * registrar, and the other session flows don't read the database at all.
+   */
+  private static final ImmutableSet<Class<? extends Flow>> SESSION_FLOWS =
+      ImmutableSet.of(HelloFlow.class, LoginFlow.class, LogoutFlow.class);
+
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   @Inject @RegistrarId String registrarId;
@@ -50,29 +75,72 @@ public class FlowRunner {
   @Inject SessionMetadata sessionMetadata;
   @Inject Trid trid;
   @Inject FlowReporter flowReporter;
+  @Inject Clock clock;
+  @Inject @Config("eppCommandXmlLogSampleInterval") int xmlLogSampleInterval;
   @Inject FlowRunner() {}
 
   /** Runs the EPP flow, and records metrics on the given builder. */
   public EppOutput run(final EppMetric.Builder eppMetricBuilder) throws EppException {
-    String prettyXml = prettyPrint(EppXmlSanitizer.sanitizeEppXml(inputXmlBytes));
+    eppMetricBuilder.beginStage(COMMAND_LOG);
+    boolean loggedXml = logCommand();
+    eppMetricBuilder.endStage(COMMAND_LOG);
+    // Record flow info to the GAE request logs for reporting purposes if it's not a dry run.
+    if (!isDryRun) {
+      flowReporter.recordToLogs();
+    }
+    eppMetricBuilder.setCommandNameFromFlow(flowClass.getSimpleName());
+    eppMetricBuilder.beginStage(FLOW);
+    try {
+      return runFlow(eppMetricBuilder);
+    } catch (EppException | RuntimeException e) {
+      // Make sure the full command is available when investigating a failure.
+      if (!loggedXml) {
+        logger.atInfo().log(
+            "EPP Command %s failed, input XML:\n\t%s",
+            trid.getServerTransactionId(),
+            lazy(this::formatInputXml));
+      }
+      throw e;
+    } finally {
+      eppMetricBuilder.endStage(FLOW);
+    }
+  }
 
+  /**
+   * Logs the inbound command, and returns whether its full XML was included.
+   *
+   * <p>Sanitizing and pretty-printing the XML is expensive compared to many flows, so it is only
+   * done for a sample of commands, or for all of them when FINE logging is enabled.
+   */
+  private boolean logCommand() {
+    boolean logXml = logger.atFine().isEnabled() || isSampledForXmlLogging();
     logger.atInfo().log(
         COMMAND_LOG_FORMAT,
         trid.getServerTransactionId(),
         registrarId,
         sessionMetadata,
-        prettyXml.replace("\n", "\n\t"),
+        logXml ? lazy(this::formatInputXml) : XML_NOT_LOGGED,
         credentials,
         eppRequestSource,
         isDryRun ? "DRY_RUN" : "LIVE",
         isSuperuser ? "SUPERUSER" : "NORMAL");
-    // Record flow info to the GAE request logs for reporting purposes if it's not a dry run.
-    if (!isDryRun) {
-      flowReporter.recordToLogs();
-    }
-    eppMetricBuilder.setCommandNameFromFlow(flowClass.getSimpleName());
+    return logXml;
+  }
+
+  private boolean isSampledForXmlLogging() {
+    return xmlLogSampleInterval > 0
+        && commandCounter.getAndIncrement() % xmlLogSampleInterval == 0;
+  }
+
+  /** Returns the sanitized and pretty-printed input XML, indented to fit in the log message. */
+  private String formatInputXml() {
+    return prettyPrint(EppXmlSanitizer.sanitizeEppXml(inputXmlBytes)).replace("\n", "\n\t");
+  }
+
+  private EppOutput runFlow(EppMetric.Builder eppMetricBuilder) throws EppException {
     if (!isTransactional) {
-      EppOutput eppOutput = EppOutput.create(flowProvider.get().run());
+      EppOutput eppOutput =
+          SESSION_FLOWS.contains(flowClass) ? runFlowInLoadScope() : runReadOnlyFlow();
       if (flowClass.equals(LoginFlow.class)) {
         // In LoginFlow, registrarId isn't known until after the flow executes, so save it then.
         eppMetricBuilder.setRegistrarId(sessionMetadata.getRegistrarId());
@@ -80,26 +148,63 @@ public class FlowRunner {
       return eppOutput;
     }
     try {
-      return tm()
-          .transact(
+      EppOutput eppOutput =
+          tm()
+              .transact(
+                  () -> {
+                    try {
+                      EppOutput output = runFlowInLoadScope();
+                      if (isDryRun) {
+                        throw new DryRunException(output);
+                      }
+                      return output;
+                    } catch (EppException e) {
+                      throw new EppRuntimeException(e);
+                    }
+                  });
+      // Later read-only commands of this session must see what this one wrote.
+      sessionMetadata.setLastWriteTime(clock.nowUtc());
+      return eppOutput;
+    } catch (DryRunException e) {
+      return e.output;
+    } catch (EppRuntimeException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Runs a flow that doesn't write as read-only work, which may go to a replica of the database.
+   *
+   * <p>The flow runs against the primary database for a while after a mutating command of the
+   * same session, so that it sees the writes of that command.
+   */
+  private EppOutput runReadOnlyFlow() throws EppException {
+    try {
+      return replicaRouter()
+          .transactReadOnly(
               () -> {
                 try {
-                  EppOutput output = EppOutput.create(flowProvider.get().run());
-                  if (isDryRun) {
-                    throw new DryRunException(output);
-                  }
-                  return output;
+                  return runFlowInLoadScope();
                 } catch (EppException e) {
                   throw new EppRuntimeException(e);
                 }
-              });
-    } catch (DryRunException e) {
-      return e.output;
+              },
+              sessionMetadata.getLastWriteTime().orElse(START_OF_TIME));
     } catch (EppRuntimeException e) {
       throw e.getCause();
     }
   }
 
+  /**
+   * Runs the flow with an {@link EppResourceLoadScope} open, so that the resources it looks up
+   * piecemeal are loaded in as few batches as possible.
+   */
+  private EppOutput runFlowInLoadScope() throws EppException {
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      return EppOutput.create(flowProvider.get().run());
+    }
+  }
+
   /** Exception for canceling a transaction while capturing what the output would have been. */
   private static class DryRunException extends RuntimeException {
     final EppOutput output;
@@ -21,6 +21,7 @@ import com.google.common.base.Joiner;
 import java.util.Optional;
 import java.util.Set;
 import javax.servlet.http.HttpSession;
+import org.joda.time.DateTime;
 
 /** A metadata class that is a wrapper around {@link HttpSession}. */
 public class HttpSessionMetadata implements SessionMetadata {
@@ -28,6 +29,7 @@ public class HttpSessionMetadata implements SessionMetadata {
   private static final String REGISTRAR_ID = "REGISTRAR_ID";
   private static final String SERVICE_EXTENSIONS = "SERVICE_EXTENSIONS";
   private static final String FAILED_LOGIN_ATTEMPTS = "FAILED_LOGIN_ATTEMPTS";
+  private static final String LAST_WRITE_TIME = "LAST_WRITE_TIME";
 
   private final HttpSession session;
 
@@ -56,6 +58,11 @@ public class HttpSessionMetadata implements SessionMetadata {
     return Optional.ofNullable((Integer) session.getAttribute(FAILED_LOGIN_ATTEMPTS)).orElse(0);
   }
 
+  @Override
+  public Optional<DateTime> getLastWriteTime() {
+    return Optional.ofNullable((DateTime) session.getAttribute(LAST_WRITE_TIME));
+  }
+
   @Override
   public void setRegistrarId(String registrarId) {
     session.setAttribute(REGISTRAR_ID, registrarId);
@@ -66,6 +73,11 @@ public class HttpSessionMetadata implements SessionMetadata {
     session.setAttribute(SERVICE_EXTENSIONS, serviceExtensionUris);
   }
 
+  @Override
+  public void setLastWriteTime(DateTime lastWriteTime) {
+    session.setAttribute(LAST_WRITE_TIME, lastWriteTime);
+  }
+
   @Override
   public void incrementFailedLoginAttempts() {
     session.setAttribute(FAILED_LOGIN_ATTEMPTS, getFailedLoginAttempts() + 1);
@@ -14,7 +14,9 @@
 
 package google.registry.flows;
 
+import java.util.Optional;
 import java.util.Set;
+import org.joda.time.DateTime;
 
 /** Object to allow setting and retrieving session information in flows. */
 public interface SessionMetadata {
@@ -32,10 +34,20 @@ public interface SessionMetadata {
 
   int getFailedLoginAttempts();
 
+  /**
+   * Returns when the last mutating command of the session was done, if any.
+   *
+   * <p>Read-only commands run against the primary database for a while after this, so that they
+   * see the writes of the session even if the read-only replicas haven't caught up yet.
+   */
+  Optional<DateTime> getLastWriteTime();
+
   void setRegistrarId(String registrarId);
 
   void setServiceExtensionUris(Set<String> serviceExtensionUris);
 
+  void setLastWriteTime(DateTime lastWriteTime);
+
   void incrementFailedLoginAttempts();
 
   void resetFailedLoginAttempts();
@@ -20,7 +20,9 @@ import static google.registry.util.CollectionUtils.nullToEmpty;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
+import java.util.Optional;
 import java.util.Set;
+import org.joda.time.DateTime;
 
 /** A read-only {@link SessionMetadata} that doesn't support login/logout. */
 public class StatelessRequestSessionMetadata implements SessionMetadata {
@@ -54,6 +56,11 @@ public class StatelessRequestSessionMetadata implements SessionMetadata {
     return 0;
   }
 
+  @Override
+  public Optional<DateTime> getLastWriteTime() {
+    return Optional.empty();
+  }
+
   @Override
   public void setRegistrarId(String registrarId) {
     throw new UnsupportedOperationException();
@@ -64,6 +71,11 @@ public class StatelessRequestSessionMetadata implements SessionMetadata {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public void setLastWriteTime(DateTime lastWriteTime) {
+    // Each request is a session of its own, so there are no later commands that must see this.
+  }
+
   @Override
   public void incrementFailedLoginAttempts() {
     throw new UnsupportedOperationException();
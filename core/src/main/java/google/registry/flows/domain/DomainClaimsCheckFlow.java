@@ -46,6 +46,7 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.tld.Registry;
 import google.registry.model.tmch.ClaimsListDao;
+import google.registry.model.tmch.ClaimsListIndex;
 import google.registry.util.Clock;
 import java.util.HashSet;
 import java.util.Optional;
@@ -90,6 +91,7 @@ public final class DomainClaimsCheckFlow implements Flow {
     verifyTargetIdCount(domainNames, maxChecks);
     Set<String> seenTlds = new HashSet<>();
     ImmutableList.Builder<LaunchCheck> launchChecksBuilder = new ImmutableList.Builder<>();
+    ClaimsListIndex claimsListIndex = ClaimsListDao.getIndex();
     for (String domainName : ImmutableSet.copyOf(domainNames)) {
       InternetDomainName parsedDomain = validateDomainName(domainName);
       validateDomainNameWithIdnTables(parsedDomain);
@@ -104,7 +106,7 @@ public final class DomainClaimsCheckFlow implements Flow {
           verifyClaimsPeriodNotEnded(registry, now);
         }
       }
-      Optional<String> claimKey = ClaimsListDao.get().getClaimKey(parsedDomain.parts().get(0));
+      Optional<String> claimKey = claimsListIndex.getClaimKey(parsedDomain.parts().get(0));
       launchChecksBuilder.add(
           LaunchCheck.create(
               LaunchCheckName.create(claimKey.isPresent(), domainName), claimKey.orElse(null)));
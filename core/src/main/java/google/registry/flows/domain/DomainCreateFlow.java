@@ -357,6 +357,9 @@ public class DomainCreateFlow implements TransactionalFlow {
             .addGracePeriod(
                 GracePeriod.forBillingEvent(GracePeriodStatus.ADD, repoId, createBillingEvent))
             .build();
+    if (domain.shouldPublishToDns() && DnsQueue.usesSqlRefreshQueue()) {
+      domain = dnsQueue.requestDomainRefresh(domain);
+    }
     DomainHistory domainHistory =
         buildDomainHistory(domain, registry, now, period, registry.getAddGracePeriodLength());
     if (reservationTypes.contains(NAME_COLLISION)) {
@@ -597,7 +600,7 @@ public class DomainCreateFlow implements TransactionalFlow {
 
   private void enqueueTasks(
       DomainBase newDomain, boolean hasSignedMarks, boolean hasClaimsNotice) {
-    if (newDomain.shouldPublishToDns()) {
+    if (newDomain.shouldPublishToDns() && !DnsQueue.usesSqlRefreshQueue()) {
       dnsQueue.addDomainRefreshTask(newDomain.getDomainName());
     }
     if (hasClaimsNotice || hasSignedMarks) {
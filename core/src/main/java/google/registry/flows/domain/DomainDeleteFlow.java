@@ -246,7 +246,7 @@ public final class DomainDeleteFlow implements TransactionalFlow {
     }
     builder.setRegistrationExpirationTime(newExpirationTime);
 
-    DomainBase newDomain = builder.build();
+    DomainBase newDomain = dnsQueue.requestDomainRefresh(builder.build());
     DomainHistory domainHistory =
         buildDomainHistory(newDomain, registry, now, durationUntilDelete, inAddGracePeriod);
     updateForeignKeyIndexDeletionTime(newDomain);
@@ -258,7 +258,6 @@ public final class DomainDeleteFlow implements TransactionalFlow {
     // If there's a pending transfer, the gaining client's autorenew billing
     // event and poll message will already have been deleted in
     // ResourceDeleteFlow since it's listed in serverApproveEntities.
-    dnsQueue.addDomainRefreshTask(existingDomain.getDomainName());
 
     entitiesToSave.add(newDomain, domainHistory);
     EntityChanges entityChanges =
@@ -125,10 +125,9 @@ import google.registry.model.reporting.HistoryEntry;
 import google.registry.model.tld.Registry;
 import google.registry.model.tld.Registry.TldState;
 import google.registry.model.tld.label.ReservationType;
-import google.registry.model.tld.label.ReservedList;
+import google.registry.model.tld.label.TldLabelPolicy;
 import google.registry.model.tmch.ClaimsListDao;
 import google.registry.persistence.VKey;
-import google.registry.tldconfig.idn.IdnLabelValidator;
 import google.registry.util.Idn;
 import java.math.BigDecimal;
 import java.util.Collection;
@@ -170,10 +169,6 @@ public class DomainFlowUtils {
   private static final CharMatcher ALLOWED_CHARS =
       CharMatcher.inRange('a', 'z').or(CharMatcher.inRange('0', '9').or(CharMatcher.anyOf("-.")));
 
-  /** Default validator used to determine if an IDN name can be provisioned on a TLD. */
-  private static final IdnLabelValidator IDN_LABEL_VALIDATOR =
-      IdnLabelValidator.createDefaultIdnLabelValidator();
-
   /** The maximum number of DS records allowed on a domain. */
   private static final int MAX_DS_RECORDS_PER_DOMAIN = 8;
 
@@ -247,8 +242,8 @@ public class DomainFlowUtils {
   public static String validateDomainNameWithIdnTables(InternetDomainName domainName)
       throws InvalidIdnDomainLabelException {
     Optional<String> idnTableName =
-        IDN_LABEL_VALIDATOR.findValidIdnTableForTld(
-            domainName.parts().get(0), domainName.parent().toString());
+        TldLabelPolicy.get(domainName.parent().toString())
+            .findValidIdnTable(domainName.parts().get(0));
     if (!idnTableName.isPresent()) {
       throw new InvalidIdnDomainLabelException();
     }
@@ -443,8 +438,8 @@ public class DomainFlowUtils {
   /** Returns a set of {@link ReservationType}s for the given domain name. */
   static ImmutableSet<ReservationType> getReservationTypes(InternetDomainName domainName) {
     // The TLD should always be the parent of the requested domain name.
-    return ReservedList.getReservationTypes(
-        domainName.parts().get(0), domainName.parent().toString());
+    return TldLabelPolicy.get(domainName.parent().toString())
+        .getReservationTypes(domainName.parts().get(0));
   }
 
   /** Verifies that a launch extension's specified phase matches the specified registry's phase. */
@@ -997,7 +992,8 @@ public class DomainFlowUtils {
   static void verifyClaimsNoticeIfAndOnlyIfNeeded(
       InternetDomainName domainName, boolean hasSignedMarks, boolean hasClaimsNotice)
       throws EppException {
-    boolean isInClaimsList = ClaimsListDao.get().getClaimKey(domainName.parts().get(0)).isPresent();
+    boolean isInClaimsList =
+        ClaimsListDao.getIndex().getClaimKey(domainName.parts().get(0)).isPresent();
     if (hasClaimsNotice && !isInClaimsList) {
       throw new UnexpectedClaimsNoticeException(domainName.toString());
     }
@@ -181,11 +181,11 @@ public final class DomainRestoreRequestFlow implements TransactionalFlow  {
             now,
             registrarId);
     updateForeignKeyIndexDeletionTime(newDomain);
+    newDomain = dnsQueue.requestDomainRefresh(newDomain);
     DomainHistory domainHistory = buildDomainHistory(newDomain, now);
     entitiesToSave.add(newDomain, domainHistory, autorenewEvent, autorenewPollMessage);
     tm().putAll(entitiesToSave.build());
     tm().delete(existingDomain.getDeletePollMessage());
-    dnsQueue.addDomainRefreshTask(existingDomain.getDomainName());
     return responseBuilder
         .setExtensions(createResponseExtensions(feesAndCredits, feeUpdate, isExpired))
         .build();
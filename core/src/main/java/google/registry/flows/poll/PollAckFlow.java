@@ -115,6 +115,11 @@ public class PollAckFlow implements TransactionalFlow {
     if (!includeAckedMessageInCount && tm().isOfy()) {
       messageCount--;
     }
+    if (!tm().isOfy()) {
+      // Saves the count, so that later polls of the registrar only count the poll messages whose
+      // event times are after now.
+      PollMessageQueue.saveCount(registrarId, messageCount, now);
+    }
     if (messageCount <= 0) {
       return responseBuilder.setResultFromCode(SUCCESS_WITH_NO_MESSAGES).build();
     }
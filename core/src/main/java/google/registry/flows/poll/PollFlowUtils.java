@@ -29,9 +29,20 @@ import org.joda.time.DateTime;
 /** Static utility functions for poll flows. */
 public final class PollFlowUtils {
 
-  /** Returns the number of poll messages for the given registrar that are not in the future. */
+  /**
+   * Returns the number of poll messages for the given registrar that are not in the future.
+   *
+   * <p>In Cloud SQL, this starts from the count saved in the {@link PollMessageQueue} when the
+   * registrar last acked a poll message, and only counts all the poll messages if there is none.
+   */
   public static int getPollMessageCount(String registrarId, DateTime now) {
-    return transactIfJpaTm(() -> createPollMessageQuery(registrarId, now).count()).intValue();
+    return transactIfJpaTm(
+            () ->
+                tm().isOfy()
+                    ? createPollMessageQuery(registrarId, now).count()
+                    : PollMessageQueue.getCount(registrarId, now)
+                        .orElseGet(() -> createPollMessageQuery(registrarId, now).count()))
+        .intValue();
   }
 
   /** Returns the first (by event time) poll message not in the future for this registrar. */
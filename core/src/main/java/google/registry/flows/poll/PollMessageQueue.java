@@ -0,0 +1,123 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows.poll;
+
+import static google.registry.persistence.transaction.TransactionManagerFactory.isRoutedToReplica;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.persistence.transaction.TransactionManagerFactory.routeToPrimary;
+
+import google.registry.model.common.DatabaseMigrationStateSchedule;
+import google.registry.util.NonFinalForTesting;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.EntityManager;
+import org.joda.time.DateTime;
+
+/**
+ * Counts of the due poll messages of each registrar, kept in Cloud SQL.
+ *
+ * <p>Counting all the due poll messages of a registrar on every poll request is expensive for
+ * registrars with large queues that poll in tight loops. Instead, the count of a registrar is saved
+ * with the time it was taken whenever the registrar acks a poll message, and a trigger on the
+ * PollMessage table keeps the saved count up to date as poll messages that were due by then are
+ * inserted, deleted or moved. The count at any other time is the saved count corrected by the few
+ * poll messages whose event times lie between the two times. Future-dated poll messages, such as
+ * those of autorenews, are thus only counted once they are due.
+ *
+ * <p>A registrar that polls without acking would never save a count, and the correction would keep
+ * growing as more poll messages became due. So the count is also saved whenever it takes a large
+ * correction, even by a poll request.
+ *
+ * <p>This relies on the serializable isolation of Cloud SQL transactions: a transaction that saves
+ * a count can't commit if a concurrent transaction wrote a poll message that it didn't count.
+ */
+final class PollMessageQueue {
+
+  /**
+   * Query for the saved count, the number of poll messages that became due since it was taken, and
+   * the number that it counted but aren't due yet.
+   */
+  private static final String COUNT_QUERY =
+      "SELECT q.pending_count,"
+          + " (SELECT COUNT(*) FROM \"PollMessage\" p WHERE p.registrar_id = q.registrar_id"
+          + " AND p.event_time > q.counted_until AND p.event_time <= :now),"
+          + " (SELECT COUNT(*) FROM \"PollMessage\" p WHERE p.registrar_id = q.registrar_id"
+          + " AND p.event_time > :now AND p.event_time <= q.counted_until)"
+          + " FROM \"PollMessageQueue\" q WHERE q.registrar_id = :registrarId";
+
+  private static final String SAVE_COUNT_STATEMENT =
+      "INSERT INTO \"PollMessageQueue\" (registrar_id, pending_count, counted_until)"
+          + " VALUES (:registrarId, :count, :now) ON CONFLICT (registrar_id) DO UPDATE"
+          + " SET pending_count = EXCLUDED.pending_count, counted_until = EXCLUDED.counted_until";
+
+  /** Number of poll messages that a correction may go through before the count is saved again. */
+  @NonFinalForTesting private static int maxCorrection = 1000;
+
+  /**
+   * Returns the number of poll messages of the registrar that are due at the given time, or empty
+   * if no count was ever saved for the registrar.
+   */
+  static Optional<Long> getCount(String registrarId, DateTime now) {
+    jpaTm().assertInTransaction();
+    EntityManager entityManager = jpaTm().getEntityManager();
+    // The trigger only sees the poll messages of this transaction once they're flushed.
+    entityManager.flush();
+    List<?> rows =
+        entityManager
+            .createNativeQuery(COUNT_QUERY)
+            .setParameter("registrarId", registrarId)
+            .setParameter("now", now.toDate())
+            .getResultList();
+    if (rows.isEmpty()) {
+      return Optional.empty();
+    }
+    Object[] row = (Object[]) rows.get(0);
+    long becameDue = ((Number) row[1]).longValue();
+    long notDueYet = ((Number) row[2]).longValue();
+    long count = ((Number) row[0]).longValue() + becameDue - notDueYet;
+    if (becameDue + notDueYet > maxCorrection) {
+      saveLargelyCorrectedCount(registrarId, count, now);
+    }
+    return Optional.of(count);
+  }
+
+  /** Saves a count that took a large correction, so that later counts start from it. */
+  private static void saveLargelyCorrectedCount(String registrarId, long count, DateTime now) {
+    if (DatabaseMigrationStateSchedule.getValueAtTime(now).isReadOnly()) {
+      return;
+    }
+    if (isRoutedToReplica()) {
+      // Replicas can't be written to. The count is taken again on the primary, because the replica
+      // may not have seen all the poll messages that the trigger has counted there.
+      Optional<Long> unused =
+          routeToPrimary(() -> jpaTm().transactNew(() -> getCount(registrarId, now)));
+      return;
+    }
+    saveCount(registrarId, count, now);
+  }
+
+  /** Saves the number of poll messages of the registrar that are due at the given time. */
+  static void saveCount(String registrarId, long count, DateTime now) {
+    jpaTm()
+        .getEntityManager()
+        .createNativeQuery(SAVE_COUNT_STATEMENT)
+        .setParameter("registrarId", registrarId)
+        .setParameter("count", count)
+        .setParameter("now", now.toDate())
+        .executeUpdate();
+  }
+
+  private PollMessageQueue() {}
+}
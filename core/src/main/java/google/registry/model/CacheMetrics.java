@@ -0,0 +1,85 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/** Metrics for the refreshing caches created by {@link CacheUtils}. */
+final class CacheMetrics {
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("cache", "Name of the cache."));
+
+  /** Suppliers of the age of the oldest entry of each cache, keyed by label values. */
+  private static final ConcurrentMap<ImmutableList<String>, LongSupplier> oldestEntryAges =
+      new ConcurrentHashMap<>();
+
+  static final Metric<Long> ageGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/cache/age",
+              "Time since the oldest entry of the cache was loaded",
+              "milliseconds",
+              LABEL_DESCRIPTORS,
+              () ->
+                  oldestEntryAges.entrySet().stream()
+                      .collect(
+                          ImmutableMap.toImmutableMap(
+                              Map.Entry::getKey, entry -> entry.getValue().getAsLong())),
+              Long.class);
+
+  static final EventMetric refreshLatency =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/cache/refresh/latency",
+              "Time to reload a cache entry in the background",
+              "milliseconds",
+              LABEL_DESCRIPTORS,
+              EventMetric.DEFAULT_FITTER);
+
+  static final IncrementableMetric refreshFailures =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/cache/refresh/failures",
+              "Count of cache entries that failed to reload, and kept their previous value",
+              "count",
+              LABEL_DESCRIPTORS);
+
+  private CacheMetrics() {}
+
+  /** Registers the supplier of the age, in milliseconds, of the oldest entry of a cache. */
+  static void registerCache(String cacheName, LongSupplier oldestEntryAgeMillis) {
+    oldestEntryAges.put(ImmutableList.of(cacheName), oldestEntryAgeMillis);
+  }
+
+  static void recordRefresh(String cacheName, long latencyMillis) {
+    refreshLatency.record(latencyMillis, cacheName);
+  }
+
+  static void recordRefreshFailure(String cacheName) {
+    refreshFailures.increment(cacheName);
+  }
+}
@@ -17,14 +17,56 @@ package google.registry.model;
 import static com.google.common.base.Suppliers.memoizeWithExpiration;
 import static google.registry.config.RegistryConfig.getSingletonCacheRefreshDuration;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.joda.time.Duration.ZERO;
 
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.appengine.api.utils.SystemProperty.Environment.Value;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import org.joda.time.Duration;
 
 /** Utility methods related to caching Datastore entities. */
 public class CacheUtils {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Number of threads that reload the entries of refreshing caches in the background. */
+  private static final int REFRESH_THREADS = 2;
+
+  /** Largest random delay of a reload, as a fraction of the refresh duration of the cache. */
+  private static final double MAX_REFRESH_JITTER = 0.1;
+
+  /**
+   * The executor that reloads the entries of all refreshing caches, created on first use, or empty
+   * if this instance can't create background threads.
+   */
+  private static final Supplier<Optional<ScheduledExecutorService>> refreshExecutor =
+      Suppliers.memoize(() -> createRefreshExecutor(createRefreshThreadFactory()));
+
   /**
    * Memoize a supplier, with a short expiration specified in the environment config.
    *
@@ -45,4 +87,200 @@ public class CacheUtils {
         ? original
         : memoizeWithExpiration(original, expiration.getMillis(), MILLISECONDS);
   }
+
+  /**
+   * Creates a cache whose entries are reloaded in the background once they are older than the
+   * given refresh duration.
+   *
+   * <p>Unlike a cache whose entries expire, readers never wait for a reload. They keep getting the
+   * previous value of an entry while it is reloaded, and if the reload fails. Only one load of a
+   * key runs at a time, and each reload is delayed by a random fraction of the refresh duration,
+   * so that entries loaded at the same time are not all reloaded at once. Entries are only
+   * reloaded once they are read again, so keys that are no longer used don't keep the database
+   * busy.
+   *
+   * <p>The age of the oldest entry, and the latency and failures of reloads, are exported as
+   * metrics under the given cache name.
+   *
+   * <p>If the refresh duration is zero (likely in a unit test), nothing is cached.
+   */
+  public static <K, V> LoadingCache<K, V> newRefreshingCache(
+      String cacheName, Duration refreshDuration, CacheLoader<K, V> loader) {
+    if (refreshDuration.isEqual(ZERO)) {
+      return CacheBuilder.newBuilder().expireAfterWrite(java.time.Duration.ZERO).build(loader);
+    }
+    return newRefreshingCache(
+        cacheName, refreshDuration, loader, refreshExecutor.get(), Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  static <K, V> LoadingCache<K, V> newRefreshingCache(
+      String cacheName,
+      Duration refreshDuration,
+      CacheLoader<K, V> loader,
+      Optional<ScheduledExecutorService> executor,
+      Ticker ticker) {
+    RefreshingCacheLoader<K, V> refreshingLoader =
+        new RefreshingCacheLoader<>(
+            cacheName,
+            loader,
+            executor,
+            ticker,
+            (long) (refreshDuration.getMillis() * MAX_REFRESH_JITTER));
+    LoadingCache<K, V> cache =
+        CacheBuilder.newBuilder()
+            .refreshAfterWrite(java.time.Duration.ofMillis(refreshDuration.getMillis()))
+            .ticker(ticker)
+            .removalListener(refreshingLoader)
+            .build(refreshingLoader);
+    CacheMetrics.registerCache(cacheName, refreshingLoader::getOldestEntryAgeMillis);
+    return cache;
+  }
+
+  /**
+   * Runs a reload on the executor that refreshes caches, or right away in the calling thread if
+   * this instance can't create background threads.
+   */
+  public static void runInBackground(Runnable reload) {
+    Optional<ScheduledExecutorService> executor = refreshExecutor.get();
+    if (executor.isPresent()) {
+      executor.get().execute(reload);
+    } else {
+      reload.run();
+    }
+  }
+
+  /**
+   * Creates the refresh executor, with all its threads already started, or returns empty if the
+   * thread factory can't create them.
+   *
+   * <p>Background threads are not available on all App Engine instances. Finding that out when a
+   * reload is scheduled would be too late, since the executor queues a task before it creates the
+   * thread that would run it.
+   */
+  @VisibleForTesting
+  static Optional<ScheduledExecutorService> createRefreshExecutor(ThreadFactory threadFactory) {
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(REFRESH_THREADS, threadFactory);
+    try {
+      if (executor.prestartAllCoreThreads() == REFRESH_THREADS) {
+        return Optional.of(executor);
+      }
+      logger.atWarning().log("Cannot create threads to reload caches in the background.");
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Cannot create threads to reload caches in the background.");
+    }
+    executor.shutdownNow();
+    return Optional.empty();
+  }
+
+  private static ThreadFactory createRefreshThreadFactory() {
+    // Only App Engine's own background threads may outlive the request that creates them.
+    return SystemProperty.environment.value() == Value.Production
+        ? ThreadManager.backgroundThreadFactory()
+        : new ThreadFactoryBuilder().setNameFormat("cache-refresh-%d").setDaemon(true).build();
+  }
+
+  /**
+   * A {@link CacheLoader} that reloads entries on the refresh executor, and keeps track of when
+   * each entry was loaded.
+   */
+  private static final class RefreshingCacheLoader<K, V> extends CacheLoader<K, V>
+      implements RemovalListener<K, V> {
+
+    private final String cacheName;
+    private final CacheLoader<K, V> delegate;
+    private final Optional<ScheduledExecutorService> executor;
+    private final Ticker ticker;
+    private final long maxJitterMillis;
+
+    /** Ticker time at which each cached entry was last loaded. */
+    private final ConcurrentHashMap<K, Long> loadTimes = new ConcurrentHashMap<>();
+
+    RefreshingCacheLoader(
+        String cacheName,
+        CacheLoader<K, V> delegate,
+        Optional<ScheduledExecutorService> executor,
+        Ticker ticker,
+        long maxJitterMillis) {
+      this.cacheName = cacheName;
+      this.delegate = delegate;
+      this.executor = executor;
+      this.ticker = ticker;
+      this.maxJitterMillis = maxJitterMillis;
+    }
+
+    @Override
+    public V load(K key) throws Exception {
+      return recordLoadTime(key, delegate.load(key));
+    }
+
+    @Override
+    public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+      Map<K, V> values = delegate.loadAll(keys);
+      values.forEach(this::recordLoadTime);
+      return values;
+    }
+
+    @Override
+    public ListenableFuture<V> reload(K key, V oldValue) {
+      ListenableFutureTask<V> task = ListenableFutureTask.create(() -> reloadNow(key, oldValue));
+      if (!executor.isPresent()) {
+        // Without background threads, the reader that triggered the reload does it, and the other
+        // readers still don't wait.
+        task.run();
+        return task;
+      }
+      try {
+        executor
+            .get()
+            .schedule(
+                task, ThreadLocalRandom.current().nextLong(maxJitterMillis + 1), MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // The executor only rejects tasks once it is shut down, and then doesn't queue them.
+        logger.atWarning().atMostEvery(1, MINUTES).withCause(e).log(
+            "Cannot reload cache %s in the background.", cacheName);
+        task.run();
+      }
+      return task;
+    }
+
+    private V reloadNow(K key, V oldValue) throws Exception {
+      long startTime = ticker.read();
+      try {
+        V value = Uninterruptibles.getUninterruptibly(delegate.reload(key, oldValue));
+        CacheMetrics.recordRefresh(cacheName, NANOSECONDS.toMillis(ticker.read() - startTime));
+        return recordLoadTime(key, value);
+      } catch (Exception e) {
+        // The cache logs the failure and keeps the previous value.
+        CacheMetrics.recordRefreshFailure(cacheName);
+        throw e;
+      }
+    }
+
+    private V recordLoadTime(K key, V value) {
+      // Null values are rejected by the cache, so are never cached.
+      if (value != null) {
+        loadTimes.put(key, ticker.read());
+      }
+      return value;
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<K, V> notification) {
+      // Reloaded entries are replaced, and have already recorded their new load time.
+      if (notification.getCause() != RemovalCause.REPLACED) {
+        loadTimes.remove(notification.getKey());
+      }
+    }
+
+    long getOldestEntryAgeMillis() {
+      long now = ticker.read();
+      return loadTimes.values().stream()
+          .mapToLong(loadTime -> NANOSECONDS.toMillis(now - loadTime))
+          .max()
+          .orElse(0);
+    }
+  }
 }
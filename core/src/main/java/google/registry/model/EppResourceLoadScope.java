@@ -0,0 +1,131 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import google.registry.model.index.ForeignKeyIndex;
+import google.registry.persistence.VKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A scope, such as the execution of a flow, whose cached loads of EPP resources and foreign key
+ * indexes are memoized and batched.
+ *
+ * <p>Flows look up the resources they reference piecemeal: nameservers, contacts and the
+ * registrant each get their own call to {@link ForeignKeyIndex#loadCached}, and then the resources
+ * themselves are loaded again to check their statuses. While a scope is open on the current
+ * thread, every resource or foreign key index loaded through the cached load methods is kept for
+ * the rest of the scope, including the resources that Cloud SQL returns as a by-product of looking
+ * up foreign keys. Later lookups in the scope only go to the caches or the database for what
+ * hasn't been loaded yet, and load all of it in one batch.
+ *
+ * <p>The scope doesn't make cached loads any more consistent than they already are, so the same
+ * caveats as for {@link EppResource#loadCached} apply. It should be opened inside the transaction
+ * of a flow, so that a retried transaction starts with an empty scope.
+ */
+public final class EppResourceLoadScope implements AutoCloseable {
+
+  private static final ThreadLocal<EppResourceLoadScope> currentScope = new ThreadLocal<>();
+
+  /** The scope that was open on the thread when this one was opened, if any. */
+  private final EppResourceLoadScope enclosingScope;
+
+  private final Map<VKey<? extends EppResource>, EppResource> resources = new HashMap<>();
+
+  private final Map<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> foreignKeyIndexes =
+      new HashMap<>();
+
+  private EppResourceLoadScope(EppResourceLoadScope enclosingScope) {
+    this.enclosingScope = enclosingScope;
+  }
+
+  /**
+   * Opens a new, empty scope on the current thread, suitable for use in a try-with-resources block.
+   *
+   * <p>If a scope is already open, it is set aside until the new one is closed.
+   */
+  public static EppResourceLoadScope open() {
+    EppResourceLoadScope scope = new EppResourceLoadScope(currentScope.get());
+    currentScope.set(scope);
+    return scope;
+  }
+
+  /** Returns the scope open on the current thread, if there is one. */
+  public static Optional<EppResourceLoadScope> current() {
+    return Optional.ofNullable(currentScope.get());
+  }
+
+  @Override
+  public void close() {
+    checkState(currentScope.get() == this, "This EppResourceLoadScope is not the innermost one");
+    if (enclosingScope == null) {
+      currentScope.remove();
+    } else {
+      currentScope.set(enclosingScope);
+    }
+  }
+
+  /**
+   * Returns the resources with the given keys, loading the ones not already in the scope in one
+   * call to the given loader.
+   */
+  ImmutableMap<VKey<? extends EppResource>, EppResource> getResources(
+      Iterable<VKey<? extends EppResource>> keys,
+      Function<
+              ImmutableSet<VKey<? extends EppResource>>,
+              ? extends Map<VKey<? extends EppResource>, EppResource>>
+          loader) {
+    return getAll(resources, keys, loader);
+  }
+
+  /** Adds a resource that was loaded as a by-product of some other lookup to the scope. */
+  public void addResource(EppResource resource) {
+    resources.put(resource.createVKey(), resource);
+  }
+
+  /**
+   * Returns the foreign key indexes with the given keys, loading the ones not already in the scope
+   * in one call to the given loader.
+   */
+  public ImmutableMap<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> getForeignKeyIndexes(
+      Iterable<VKey<ForeignKeyIndex<?>>> keys,
+      Function<
+              ImmutableSet<VKey<ForeignKeyIndex<?>>>,
+              ? extends Map<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>>
+          loader) {
+    return getAll(foreignKeyIndexes, keys, loader);
+  }
+
+  private static <K, V> ImmutableMap<K, V> getAll(
+      Map<K, V> loaded, Iterable<K> keys, Function<ImmutableSet<K>, ? extends Map<K, V>> loader) {
+    ImmutableSet<K> uniqueKeys = ImmutableSet.copyOf(keys);
+    ImmutableSet<K> missingKeys =
+        uniqueKeys.stream().filter(key -> !loaded.containsKey(key)).collect(toImmutableSet());
+    if (!missingKeys.isEmpty()) {
+      loaded.putAll(loader.apply(missingKeys));
+    }
+    return uniqueKeys.stream()
+        .filter(loaded::containsKey)
+        .collect(toImmutableMap(Function.identity(), loaded::get));
+  }
+}
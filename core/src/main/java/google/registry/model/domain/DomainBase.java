@@ -39,6 +39,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.PostLoad;
 import javax.persistence.Table;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
 import org.joda.time.DateTime;
 
 /**
@@ -74,6 +75,12 @@ import org.joda.time.DateTime;
 public class DomainBase extends DomainContent
     implements DatastoreAndSqlEntity, ForeignKeyedEppResource {
 
+  /**
+   * The maximum number of domains whose collections are fetched in one query, when several domains
+   * are loaded in the same session.
+   */
+  private static final int COLLECTION_BATCH_SIZE = 100;
+
   @Override
   @javax.persistence.Id
   @Access(AccessType.PROPERTY)
@@ -89,6 +96,7 @@ public class DomainBase extends DomainContent
       indexes = {@Index(columnList = "domain_repo_id,host_repo_id", unique = true)})
   @Access(AccessType.PROPERTY)
   @Column(name = "host_repo_id")
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   public Set<VKey<HostResource>> getNsHosts() {
     return super.nsHosts;
   }
@@ -113,6 +121,7 @@ public class DomainBase extends DomainContent
       referencedColumnName = "repoId",
       insertable = false,
       updatable = false)
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   @SuppressWarnings("UnusedMethod")
   private Set<GracePeriod> getInternalGracePeriods() {
     return gracePeriods;
@@ -139,6 +148,7 @@ public class DomainBase extends DomainContent
       referencedColumnName = "repoId",
       insertable = false,
       updatable = false)
+  @BatchSize(size = COLLECTION_BATCH_SIZE)
   @SuppressWarnings("UnusedMethod")
   private Set<DelegationSignerData> getInternalDelegationSignerData() {
     return dsData;
@@ -14,6 +14,7 @@
 
 package google.registry.model.eppcommon;
 
+import static google.registry.xml.OutputFormat.FORMATTED;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -21,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import google.registry.model.ImmutableObject;
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppoutput.EppOutput;
+import google.registry.xml.OutputFormat;
 import google.registry.xml.ValidationMode;
 import google.registry.xml.XmlException;
 import google.registry.xml.XmlTransformer;
@@ -73,19 +75,26 @@ public class EppXmlTransformer  {
   private static byte[] marshal(
       XmlTransformer transformer,
       ImmutableObject root,
-      ValidationMode validation) throws XmlException {
+      ValidationMode validation,
+      OutputFormat format) throws XmlException {
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    transformer.marshal(root, byteArrayOutputStream, UTF_8, validation);
+    transformer.marshal(root, byteArrayOutputStream, UTF_8, validation, format);
     return byteArrayOutputStream.toByteArray();
   }
 
   public static byte[] marshal(EppOutput root, ValidationMode validation) throws XmlException {
-    return marshal(OUTPUT_TRANSFORMER, root, validation);
+    return marshal(OUTPUT_TRANSFORMER, root, validation, FORMATTED);
+  }
+
+  /** Marshals an {@link EppOutput} in the given format, e.g. compactly for non-human clients. */
+  public static byte[] marshal(EppOutput root, ValidationMode validation, OutputFormat format)
+      throws XmlException {
+    return marshal(OUTPUT_TRANSFORMER, root, validation, format);
   }
 
   @VisibleForTesting
   public static byte[] marshalInput(EppInput root, ValidationMode validation) throws XmlException {
-    return marshal(INPUT_TRANSFORMER, root, validation);
+    return marshal(INPUT_TRANSFORMER, root, validation, FORMATTED);
   }
 
   @VisibleForTesting
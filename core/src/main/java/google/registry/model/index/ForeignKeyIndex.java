@@ -30,6 +30,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -43,6 +44,7 @@ import com.googlecode.objectify.annotation.Index;
 import google.registry.config.RegistryConfig;
 import google.registry.model.BackupGroupRoot;
 import google.registry.model.EppResource;
+import google.registry.model.EppResourceLoadScope;
 import google.registry.model.annotations.ReportedOn;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
@@ -56,6 +58,7 @@ import java.util.Comparator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -216,6 +219,22 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
   private static <E extends EppResource>
       ImmutableMap<String, ForeignKeyIndex<E>> loadIndexesFromStore(
           Class<E> clazz, Collection<String> foreignKeys, boolean inTransaction) {
+    return loadIndexesFromStore(clazz, foreignKeys, inTransaction, resource -> {});
+  }
+
+  /**
+   * Helper method to load all of the most recent {@link ForeignKeyIndex}es for the given foreign
+   * keys, passing the resources that they were derived from to the given consumer.
+   *
+   * <p>In Cloud SQL, foreign key indexes are derived from the resources themselves, so they come
+   * for free. In Datastore, they are separate entities, and the consumer is never called.
+   */
+  private static <E extends EppResource>
+      ImmutableMap<String, ForeignKeyIndex<E>> loadIndexesFromStore(
+          Class<E> clazz,
+          Collection<String> foreignKeys,
+          boolean inTransaction,
+          Consumer<? super E> loadedResources) {
     if (tm().isOfy()) {
       Class<ForeignKeyIndex<E>> fkiClass = mapToFkiClass(clazz);
       return ImmutableMap.copyOf(
@@ -233,7 +252,11 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
                                   .whereFieldIsIn(property, foreignKeys)
                                   .build())
                           .getResultStream()
-                          .map(e -> ForeignKeyIndex.create(e, e.getDeletionTime()))
+                          .map(
+                              e -> {
+                                loadedResources.accept(e);
+                                return ForeignKeyIndex.create(e, e.getDeletionTime());
+                              })
                           .collect(toImmutableList()));
       // We need to find and return the entities with the maximum deletionTime for each foreign key.
       return Multimaps.index(indexes, ForeignKeyIndex::getForeignKey).asMap().entrySet().stream()
@@ -258,32 +281,42 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
               loadIndexesFromStore(
                       RESOURCE_CLASS_TO_FKI_CLASS.inverse().get(key.getKind()),
                       ImmutableSet.of(foreignKey),
-                      false)
+                      false,
+                      EppResource::cacheLoadedResource)
                   .get(foreignKey));
         }
 
         @Override
         public Map<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> loadAll(
             Iterable<? extends VKey<ForeignKeyIndex<?>>> keys) {
-          if (!keys.iterator().hasNext()) {
-            return ImmutableMap.of();
-          }
-          Class<? extends EppResource> resourceClass =
-              RESOURCE_CLASS_TO_FKI_CLASS.inverse().get(keys.iterator().next().getKind());
-          ImmutableSet<String> foreignKeys =
-              Streams.stream(keys).map(v -> v.getSqlKey().toString()).collect(toImmutableSet());
-          ImmutableSet<VKey<ForeignKeyIndex<?>>> typedKeys = ImmutableSet.copyOf(keys);
-          ImmutableMap<String, ? extends ForeignKeyIndex<? extends EppResource>> existingFkis =
-              loadIndexesFromStore(resourceClass, foreignKeys, false);
-          // ofy omits keys that don't have values in Datastore, so re-add them in
-          // here with Optional.empty() values.
-          return Maps.asMap(
-              typedKeys,
-              (VKey<ForeignKeyIndex<?>> key) ->
-                  Optional.ofNullable(existingFkis.getOrDefault(key.getSqlKey().toString(), null)));
+          return loadIndexes(keys);
         }
       };
 
+  /**
+   * Loads the foreign key indexes with the given keys, all of which must be of the same type, and
+   * passes the resources that Cloud SQL loads along with them on to the EPP resource caches.
+   */
+  private static Map<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> loadIndexes(
+      Iterable<? extends VKey<ForeignKeyIndex<?>>> keys) {
+    if (!keys.iterator().hasNext()) {
+      return ImmutableMap.of();
+    }
+    Class<? extends EppResource> resourceClass =
+        RESOURCE_CLASS_TO_FKI_CLASS.inverse().get(keys.iterator().next().getKind());
+    ImmutableSet<String> foreignKeys =
+        Streams.stream(keys).map(v -> v.getSqlKey().toString()).collect(toImmutableSet());
+    ImmutableSet<VKey<ForeignKeyIndex<?>>> typedKeys = ImmutableSet.copyOf(keys);
+    ImmutableMap<String, ? extends ForeignKeyIndex<? extends EppResource>> existingFkis =
+        loadIndexesFromStore(resourceClass, foreignKeys, false, EppResource::cacheLoadedResource);
+    // ofy omits keys that don't have values in Datastore, so re-add them in
+    // here with Optional.empty() values.
+    return Maps.asMap(
+        typedKeys,
+        (VKey<ForeignKeyIndex<?>> key) ->
+            Optional.ofNullable(existingFkis.getOrDefault(key.getSqlKey().toString(), null)));
+  }
+
   /**
    * A limited size, limited time cache for foreign key entities.
    *
@@ -327,7 +360,8 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
    */
   public static <E extends EppResource> ImmutableMap<String, ForeignKeyIndex<E>> loadCached(
       Class<E> clazz, Collection<String> foreignKeys, final DateTime now) {
-    if (!RegistryConfig.isEppResourceCachingEnabled()) {
+    Optional<EppResourceLoadScope> scope = EppResourceLoadScope.current();
+    if (!scope.isPresent() && !RegistryConfig.isEppResourceCachingEnabled()) {
       return tm().doTransactionless(() -> load(clazz, foreignKeys, now));
     }
     Class<? extends ForeignKeyIndex<?>> fkiClass = mapToFkiClass(clazz);
@@ -337,19 +371,31 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
         Streams.stream(foreignKeys)
             .map(fk -> (VKey<ForeignKeyIndex<?>>) VKey.create(fkiClass, fk))
             .collect(toImmutableList());
+    ImmutableMap<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> fkis =
+        scope.isPresent()
+            ? scope.get().getForeignKeyIndexes(fkiVKeys, ForeignKeyIndex::loadCachedOutsideScope)
+            : loadCachedOutsideScope(fkiVKeys);
+    // This cast is safe because when we loaded ForeignKeyIndexes above we used type clazz, which
+    // is scoped to E.
+    @SuppressWarnings("unchecked")
+    ImmutableMap<String, ForeignKeyIndex<E>> fkisFromCache =
+        fkis.entrySet().stream()
+            .filter(entry -> entry.getValue().isPresent())
+            .filter(entry -> now.isBefore(entry.getValue().get().getDeletionTime()))
+            .collect(
+                toImmutableMap(
+                    entry -> entry.getKey().getSqlKey().toString(),
+                    entry -> (ForeignKeyIndex<E>) entry.getValue().get()));
+    return fkisFromCache;
+  }
+
+  private static ImmutableMap<VKey<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>
+      loadCachedOutsideScope(ImmutableCollection<VKey<ForeignKeyIndex<?>>> fkiVKeys) {
+    if (!RegistryConfig.isEppResourceCachingEnabled()) {
+      return ImmutableMap.copyOf(tm().doTransactionless(() -> loadIndexes(fkiVKeys)));
+    }
     try {
-      // This cast is safe because when we loaded ForeignKeyIndexes above we used type clazz, which
-      // is scoped to E.
-      @SuppressWarnings("unchecked")
-      ImmutableMap<String, ForeignKeyIndex<E>> fkisFromCache =
-          cacheForeignKeyIndexes.getAll(fkiVKeys).entrySet().stream()
-              .filter(entry -> entry.getValue().isPresent())
-              .filter(entry -> now.isBefore(entry.getValue().get().getDeletionTime()))
-              .collect(
-                  toImmutableMap(
-                      entry -> entry.getKey().getSqlKey().toString(),
-                      entry -> (ForeignKeyIndex<E>) entry.getValue().get()));
-      return fkisFromCache;
+      return cacheForeignKeyIndexes.getAll(fkiVKeys);
     } catch (ExecutionException e) {
       throw new RuntimeException("Error loading cached ForeignKeyIndexes", e.getCause());
     }
@@ -19,7 +19,7 @@ import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
 import com.google.common.net.InternetDomainName;
 import google.registry.model.tld.Registry;
-import google.registry.model.tld.label.PremiumListDao;
+import google.registry.model.tld.label.TldLabelPolicy;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.money.Money;
@@ -38,8 +38,7 @@ public final class StaticPremiumListPricingEngine implements PremiumPricingEngin
     String tld = getTldFromDomainName(fullyQualifiedDomainName);
     String label = InternetDomainName.from(fullyQualifiedDomainName).parts().get(0);
     Registry registry = Registry.get(checkNotNull(tld, "tld"));
-    Optional<Money> premiumPrice =
-        registry.getPremiumListName().flatMap(pl -> PremiumListDao.getPremiumPrice(pl, label));
+    Optional<Money> premiumPrice = TldLabelPolicy.get(tld).getPremiumPrice(label);
     return DomainPrices.create(
         premiumPrice.isPresent(),
         premiumPrice.orElse(registry.getStandardCreateCost()),
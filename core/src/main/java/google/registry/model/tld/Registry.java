@@ -21,6 +21,7 @@ import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Maps.toMap;
 import static google.registry.config.RegistryConfig.getSingletonCacheRefreshDuration;
+import static google.registry.model.CacheUtils.newRefreshingCache;
 import static google.registry.model.common.EntityGroupRoot.getCrossTldKey;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.util.CollectionUtils.nullToEmptyImmutableCopy;
@@ -31,7 +32,6 @@ import static org.joda.money.CurrencyUnit.USD;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
@@ -260,28 +260,27 @@ public class Registry extends ImmutableObject implements Buildable, DatastoreAnd
 
   /** A cache that loads the {@link Registry} for a given tld. */
   private static final LoadingCache<String, Optional<Registry>> CACHE =
-      CacheBuilder.newBuilder()
-          .expireAfterWrite(
-              java.time.Duration.ofMillis(getSingletonCacheRefreshDuration().getMillis()))
-          .build(
-              new CacheLoader<String, Optional<Registry>>() {
-                @Override
-                public Optional<Registry> load(final String tld) {
-                  // Enter a transaction-less context briefly; we don't want to enroll every TLD in
-                  // a transaction that might be wrapping this call.
-                  return tm().doTransactionless(() -> tm().loadByKeyIfPresent(createVKey(tld)));
-                }
-
-                @Override
-                public Map<String, Optional<Registry>> loadAll(Iterable<? extends String> tlds) {
-                  ImmutableMap<String, VKey<Registry>> keysMap =
-                      toMap(ImmutableSet.copyOf(tlds), Registry::createVKey);
-                  Map<VKey<? extends Registry>, Registry> entities =
-                      tm().doTransactionless(() -> tm().loadByKeys(keysMap.values()));
-                  return Maps.transformEntries(
-                      keysMap, (k, v) -> Optional.ofNullable(entities.getOrDefault(v, null)));
-                }
-              });
+      newRefreshingCache(
+          "Registry",
+          getSingletonCacheRefreshDuration(),
+          new CacheLoader<String, Optional<Registry>>() {
+            @Override
+            public Optional<Registry> load(final String tld) {
+              // Enter a transaction-less context briefly; we don't want to enroll every TLD in
+              // a transaction that might be wrapping this call.
+              return tm().doTransactionless(() -> tm().loadByKeyIfPresent(createVKey(tld)));
+            }
+
+            @Override
+            public Map<String, Optional<Registry>> loadAll(Iterable<? extends String> tlds) {
+              ImmutableMap<String, VKey<Registry>> keysMap =
+                  toMap(ImmutableSet.copyOf(tlds), Registry::createVKey);
+              Map<VKey<? extends Registry>, Registry> entities =
+                  tm().doTransactionless(() -> tm().loadByKeys(keysMap.values()));
+              return Maps.transformEntries(
+                  keysMap, (k, v) -> Optional.ofNullable(entities.getOrDefault(v, null)));
+            }
+          });
 
   public static VKey<Registry> createVKey(String tld) {
     return VKey.create(Registry.class, tld, Key.create(getCrossTldKey(), Registry.class, tld));
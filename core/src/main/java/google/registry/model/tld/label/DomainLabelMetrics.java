@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.EventMetric;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 
 /** Instrumentation for reserved lists. */
@@ -89,6 +90,10 @@ class DomainLabelMetrics {
           LabelDescriptor.create("premium_list", "Premium list name."),
           LabelDescriptor.create("outcome", "Outcome of the premium list check."));
 
+  /** Labels attached to the premium price table metrics. */
+  private static final ImmutableSet<LabelDescriptor> PRICE_TABLE_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("premium_list", "Premium list name."));
+
   /** Metric counting the number of times a label was checked against all reserved lists. */
   @VisibleForTesting
   static final IncrementableMetric reservedListChecks =
@@ -151,6 +156,29 @@ class DomainLabelMetrics {
               PREMIUM_LIST_LABEL_DESCRIPTORS,
               EventMetric.DEFAULT_FITTER);
 
+  /** Metric recording the memory used by the in-memory premium price tables of each list. */
+  @VisibleForTesting
+  static final Metric<Long> premiumPriceTableSize =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/domain_label/premium/price_table/size",
+              "Memory used by premium price tables",
+              "bytes",
+              PRICE_TABLE_LABEL_DESCRIPTORS,
+              PremiumListDao::getPriceTableSizes,
+              Long.class);
+
+  /** Metric recording the time required to load a premium list revision into a price table. */
+  @VisibleForTesting
+  static final EventMetric premiumPriceTableLoadTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/domain_label/premium/price_table/load_time",
+              "Premium price table load time",
+              "milliseconds",
+              PRICE_TABLE_LABEL_DESCRIPTORS,
+              EventMetric.DEFAULT_FITTER);
+
   /** Update all three reserved list metrics. */
   static void recordReservedListCheckOutcome(
       String tld, ImmutableSet<MetricsReservedListMatch> matches, double elapsedMillis) {
@@ -179,4 +207,9 @@ class DomainLabelMetrics {
     premiumListChecks.increment(tld, premiumList, outcome.name());
     premiumListProcessingTime.record(elapsedMillis, tld, premiumList, outcome.name());
   }
+
+  /** Update the premium price table load time metric. */
+  static void recordPremiumPriceTableLoad(String premiumList, double elapsedMillis) {
+    premiumPriceTableLoadTime.record(elapsedMillis, premiumList);
+  }
 }
@@ -18,24 +18,34 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.config.RegistryConfig.getDomainLabelListCacheDuration;
 import static google.registry.config.RegistryConfig.getSingletonCachePersistDuration;
 import static google.registry.config.RegistryConfig.getStaticPremiumListMaxCachedEntries;
+import static google.registry.config.RegistryConfig.isPremiumPriceTableEnabled;
+import static google.registry.model.CacheUtils.newRefreshingCache;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static org.joda.time.DateTimeZone.UTC;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import google.registry.model.tld.label.PremiumList.PremiumEntry;
 import google.registry.util.NonFinalForTesting;
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
+import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
 /**
@@ -51,8 +61,8 @@ public class PremiumListDao {
   /**
    * In-memory cache for premium lists.
    *
-   * <p>This is cached for a shorter duration because we need to periodically reload this entity to
-   * check if a new revision has been published, and if so, then use that.
+   * <p>This is refreshed after a shorter duration because we need to periodically reload this
+   * entity to check if a new revision has been published, and if so, then use that.
    *
    * <p>We also cache the absence of premium lists with a given name to avoid unnecessary pointless
    * lookups. Note that this cache is only applicable to PremiumList objects stored in SQL.
@@ -70,15 +80,15 @@ public class PremiumListDao {
   @VisibleForTesting
   public static LoadingCache<String, Optional<PremiumList>> createPremiumListCache(
       Duration cachePersistDuration) {
-    return CacheBuilder.newBuilder()
-        .expireAfterWrite(java.time.Duration.ofMillis(cachePersistDuration.getMillis()))
-        .build(
-            new CacheLoader<String, Optional<PremiumList>>() {
-              @Override
-              public Optional<PremiumList> load(final String name) {
-                return jpaTm().doTransactionless(() -> getLatestRevisionUncached(name));
-              }
-            });
+    return newRefreshingCache(
+        "PremiumList",
+        cachePersistDuration,
+        new CacheLoader<String, Optional<PremiumList>>() {
+          @Override
+          public Optional<PremiumList> load(final String name) {
+            return jpaTm().doTransactionless(() -> getLatestRevisionUncached(name));
+          }
+        });
   }
 
   /**
@@ -115,6 +125,31 @@ public class PremiumListDao {
             });
   }
 
+  /**
+   * In-memory cache of the {@link PremiumPriceTable price tables} of premium list revisions, keyed
+   * by revision id.
+   *
+   * <p>Revisions are immutable, so a table never has to be reloaded while it is in use. Once a
+   * newer revision of a list has been published, the table of the old one stops being looked up,
+   * and expires after the domain label list cache duration.
+   */
+  @NonFinalForTesting
+  static Cache<Long, PremiumPriceTable> premiumPriceTableCache =
+      createPremiumPriceTableCache(getDomainLabelListCacheDuration());
+
+  @VisibleForTesting
+  public static void setPremiumPriceTableCacheForTest(Optional<Duration> expiry) {
+    premiumPriceTableCache =
+        createPremiumPriceTableCache(expiry.orElse(getDomainLabelListCacheDuration()));
+  }
+
+  @VisibleForTesting
+  static Cache<Long, PremiumPriceTable> createPremiumPriceTableCache(Duration expiry) {
+    return CacheBuilder.newBuilder()
+        .expireAfterAccess(java.time.Duration.ofMillis(expiry.getMillis()))
+        .build();
+  }
+
   /**
    * Returns the most recent revision of the PremiumList with the specified name, if it exists.
    *
@@ -128,6 +163,11 @@ public class PremiumListDao {
   /**
    * Returns the premium price for the specified label and registry, or absent if the label is not
    * premium.
+   *
+   * <p>If {@link google.registry.config.RegistryConfig#isPremiumPriceTableEnabled premium price
+   * tables} are enabled, the price is looked up in the {@link #getPriceTable price table} of the
+   * list. Otherwise, labels that pass the list's Bloom filter are queried from the database one by
+   * one, and cached individually.
    */
   public static Optional<Money> getPremiumPrice(String premiumListName, String label) {
     Optional<PremiumList> maybeLoadedList = getLatestRevision(premiumListName);
@@ -135,6 +175,9 @@ public class PremiumListDao {
       return Optional.empty();
     }
     PremiumList loadedList = maybeLoadedList.get();
+    if (isPremiumPriceTableEnabled()) {
+      return getPriceTable(loadedList).getPrice(label);
+    }
     // Consult the bloom filter and immediately return if the label definitely isn't premium.
     if (!loadedList.getBloomFilter().mightContain(label)) {
       return Optional.empty();
@@ -152,6 +195,47 @@ public class PremiumListDao {
     }
   }
 
+  /**
+   * Returns the price table of the given premium list revision, loading the whole revision from the
+   * database if it isn't already in memory.
+   */
+  public static PremiumPriceTable getPriceTable(PremiumList premiumList) {
+    try {
+      return premiumPriceTableCache.get(
+          premiumList.getRevisionId(), () -> loadPriceTable(premiumList));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new RuntimeException(
+          String.format(
+              "Could not load price table of premium list %s at revision %d",
+              premiumList.getName(), premiumList.getRevisionId()),
+          e.getCause());
+    }
+  }
+
+  private static PremiumPriceTable loadPriceTable(PremiumList premiumList) {
+    DateTime startTime = DateTime.now(UTC);
+    PremiumPriceTable priceTable =
+        PremiumPriceTable.create(premiumList, loadPremiumEntries(premiumList));
+    DomainLabelMetrics.recordPremiumPriceTableLoad(
+        premiumList.getName(), DateTime.now(UTC).getMillis() - startTime.getMillis());
+    return priceTable;
+  }
+
+  /** Returns the memory used by the price tables in memory, summed up by premium list name. */
+  static ImmutableMap<ImmutableList<String>, Long> getPriceTableSizes() {
+    Map<ImmutableList<String>, Long> sizes = new HashMap<>();
+    premiumPriceTableCache
+        .asMap()
+        .values()
+        .forEach(
+            table ->
+                sizes.merge(
+                    ImmutableList.of(table.getPremiumListName()),
+                    table.getSizeInBytes(),
+                    Long::sum));
+    return ImmutableMap.copyOf(sizes);
+  }
+
   public static PremiumList save(String name, CurrencyUnit currencyUnit, List<String> inputData) {
     return save(PremiumListUtils.parseToPremiumList(name, currencyUnit, inputData));
   }
@@ -192,12 +276,13 @@ public class PremiumListDao {
                     .setParameter("revisionId", persistedList.get().getRevisionId())
                     .executeUpdate();
                 jpaTm().delete(persistedList.get());
+                premiumPriceTableCache.invalidate(persistedList.get().getRevisionId());
               }
             });
     premiumListCache.invalidate(premiumList.getName());
   }
 
-  private static Optional<PremiumList> getLatestRevisionUncached(String premiumListName) {
+  static Optional<PremiumList> getLatestRevisionUncached(String premiumListName) {
     return jpaTm()
         .transact(
             () ->
@@ -0,0 +1,177 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tld.label;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import google.registry.model.tld.label.PremiumList.PremiumEntry;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+/**
+ * An immutable, in-memory table of the prices of a single revision of a {@link PremiumList}.
+ *
+ * <p>Premium list revisions never change once saved, so a revision can be loaded once and then
+ * looked up without going back to the database. Rather than a map with a {@link String} key and a
+ * {@link java.math.BigDecimal} value per entry, the labels are packed in sorted order into one
+ * {@code char} array, and their prices into a parallel {@code long} array of minor currency units
+ * (e.g. cents). Looking a label up is a binary search that doesn't allocate.
+ */
+public final class PremiumPriceTable {
+
+  /** Price returned by {@link #getPriceUnits} for labels that aren't premium. */
+  public static final long NOT_PREMIUM = -1L;
+
+  private final String premiumListName;
+  private final long revisionId;
+  private final CurrencyUnit currency;
+
+  /** The labels of the table, in sorted order and back to back. */
+  private final char[] labelChars;
+
+  /** The offset of each label in {@link #labelChars}, followed by the total length. */
+  private final int[] labelOffsets;
+
+  /** The price of each label, in minor units of {@link #currency}. */
+  private final long[] priceUnits;
+
+  private PremiumPriceTable(
+      String premiumListName,
+      long revisionId,
+      CurrencyUnit currency,
+      char[] labelChars,
+      int[] labelOffsets,
+      long[] priceUnits) {
+    this.premiumListName = premiumListName;
+    this.revisionId = revisionId;
+    this.currency = currency;
+    this.labelChars = labelChars;
+    this.labelOffsets = labelOffsets;
+    this.priceUnits = priceUnits;
+  }
+
+  /** Creates a table of the given premium list revision from its entries. */
+  static PremiumPriceTable create(PremiumList premiumList, Iterable<PremiumEntry> entries) {
+    TreeMap<String, Long> sortedPrices = new TreeMap<>();
+    for (PremiumEntry entry : entries) {
+      long units = premiumList.convertAmountToMoney(entry.getValue()).getAmountMinorLong();
+      checkArgument(units >= 0, "Premium price of %s is negative", entry.getDomainLabel());
+      sortedPrices.put(checkNotNull(entry.getDomainLabel(), "label"), units);
+    }
+    int[] labelOffsets = new int[sortedPrices.size() + 1];
+    long[] priceUnits = new long[sortedPrices.size()];
+    StringBuilder labels = new StringBuilder();
+    int i = 0;
+    for (Map.Entry<String, Long> entry : sortedPrices.entrySet()) {
+      labelOffsets[i] = labels.length();
+      priceUnits[i] = entry.getValue();
+      labels.append(entry.getKey());
+      i++;
+    }
+    labelOffsets[i] = labels.length();
+    char[] labelChars = new char[labels.length()];
+    labels.getChars(0, labels.length(), labelChars, 0);
+    return new PremiumPriceTable(
+        premiumList.getName(),
+        premiumList.getRevisionId(),
+        premiumList.getCurrency(),
+        labelChars,
+        labelOffsets,
+        priceUnits);
+  }
+
+  /** Returns the name of the premium list that this table was built from. */
+  public String getPremiumListName() {
+    return premiumListName;
+  }
+
+  /** Returns the revision id of the premium list that this table was built from. */
+  public long getRevisionId() {
+    return revisionId;
+  }
+
+  /** Returns the currency of the prices in the table. */
+  public CurrencyUnit getCurrency() {
+    return currency;
+  }
+
+  /**
+   * Returns the premium price of the label in minor units of the {@link #getCurrency currency}, or
+   * {@link #NOT_PREMIUM} if the label is not premium.
+   */
+  public long getPriceUnits(String label) {
+    int index = indexOf(checkNotNull(label, "label"));
+    return index >= 0 ? priceUnits[index] : NOT_PREMIUM;
+  }
+
+  /** Returns the premium price of the label, or absent if the label is not premium. */
+  public Optional<Money> getPrice(String label) {
+    long units = getPriceUnits(label);
+    return units == NOT_PREMIUM ? Optional.empty() : Optional.of(Money.ofMinor(currency, units));
+  }
+
+  /** Returns the number of labels in the table. */
+  public int size() {
+    return priceUnits.length;
+  }
+
+  /**
+   * Returns an estimate of the memory used by the table, in bytes.
+   *
+   * <p>This counts the contents of the arrays, which is all that grows with the size of the list.
+   */
+  public long getSizeInBytes() {
+    return (long) Character.BYTES * labelChars.length
+        + (long) Integer.BYTES * labelOffsets.length
+        + (long) Long.BYTES * priceUnits.length;
+  }
+
+  /** Returns the index of the label in the table, or a negative number if it isn't there. */
+  private int indexOf(String label) {
+    int low = 0;
+    int high = priceUnits.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareLabelAt(mid, label);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the label at the given index to the given label, as {@link String#compareTo} does. */
+  private int compareLabelAt(int index, String label) {
+    int start = labelOffsets[index];
+    int length = labelOffsets[index + 1] - start;
+    int commonLength = Math.min(length, label.length());
+    for (int i = 0; i < commonLength; i++) {
+      char c = labelChars[start + i];
+      char other = label.charAt(i);
+      if (c != other) {
+        return c - other;
+      }
+    }
+    return length - label.length();
+  }
+}
@@ -20,6 +20,7 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.config.RegistryConfig.getDomainLabelListCacheDuration;
+import static google.registry.model.CacheUtils.newRefreshingCache;
 import static google.registry.model.tld.label.ReservationType.FULLY_BLOCKED;
 import static google.registry.persistence.transaction.QueryComposer.Comparator.EQ;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
@@ -27,7 +28,6 @@ import static google.registry.util.CollectionUtils.nullToEmpty;
 import static org.joda.time.DateTimeZone.UTC;
 
 import com.google.common.base.Splitter;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
@@ -287,16 +287,15 @@ public final class ReservedList
   }
 
   private static LoadingCache<String, ReservedList> cache =
-      CacheBuilder.newBuilder()
-          .expireAfterWrite(
-              java.time.Duration.ofMillis(getDomainLabelListCacheDuration().getMillis()))
-          .build(
-              new CacheLoader<String, ReservedList>() {
-                @Override
-                public ReservedList load(String listName) {
-                  return ReservedListDao.getLatestRevision(listName).orElse(null);
-                }
-              });
+      newRefreshingCache(
+          "ReservedList",
+          getDomainLabelListCacheDuration(),
+          new CacheLoader<String, ReservedList>() {
+            @Override
+            public ReservedList load(String listName) {
+              return ReservedListDao.getLatestRevision(listName).orElse(null);
+            }
+          });
 
   /**
    * Gets the {@link ReservationType} of a label in a single ReservedList, or returns an absent
@@ -0,0 +1,248 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tld.label;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static google.registry.config.RegistryConfig.getDomainLabelListCacheDuration;
+import static google.registry.model.CacheUtils.newRefreshingCache;
+import static google.registry.model.tld.label.ReservationType.FULLY_BLOCKED;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import google.registry.model.tld.Registry;
+import google.registry.model.tld.label.DomainLabelMetrics.MetricsReservedListMatch;
+import google.registry.tldconfig.idn.IdnLabelValidator;
+import google.registry.tldconfig.idn.IdnTableEnum;
+import google.registry.util.NonFinalForTesting;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.joda.money.Money;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * An immutable snapshot of the policy that applies to the second-level labels of a TLD.
+ *
+ * <p>The snapshot merges the entries of all the reserved lists of the TLD, and holds the {@link
+ * PremiumPriceTable price table} of its premium list and its IDN tables, so that checking a label
+ * is a few in-memory lookups. Without it, each label goes through a cache lookup per reserved list,
+ * and the premium list's Bloom filter plus a SQL query whenever the filter matches.
+ *
+ * <p>Snapshots are cached per TLD. Once the domain label list cache duration has passed, the next
+ * lookup has a background thread check whether the TLD's lists or their latest revisions have
+ * changed, and only rebuild the snapshot if they have. Lookups keep getting the old snapshot until
+ * the new one replaces it.
+ */
+public final class TldLabelPolicy {
+
+  private static final IdnLabelValidator IDN_LABEL_VALIDATOR =
+      IdnLabelValidator.createDefaultIdnLabelValidator();
+
+  @NonFinalForTesting
+  private static LoadingCache<String, TldLabelPolicy> cache =
+      createCache(getDomainLabelListCacheDuration());
+
+  private final String tld;
+
+  /** Revision IDs of the reserved lists of the TLD, keyed by list name. */
+  private final ImmutableMap<String, Long> reservedListRevisions;
+
+  /** Reserved list matches of the reserved labels of the TLD, across all its reserved lists. */
+  private final ImmutableMap<String, ImmutableSet<MetricsReservedListMatch>> reservedListMatches;
+
+  /** Reservation types of the reserved labels of the TLD, across all its reserved lists. */
+  private final ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes;
+
+  /** Prices of the premium list of the TLD, if there is one. */
+  private final Optional<PremiumPriceTable> premiumPriceTable;
+
+  private final ImmutableList<IdnTableEnum> idnTables;
+
+  private TldLabelPolicy(
+      String tld,
+      ImmutableMap<String, Long> reservedListRevisions,
+      ImmutableMap<String, ImmutableSet<MetricsReservedListMatch>> reservedListMatches,
+      Optional<PremiumPriceTable> premiumPriceTable,
+      ImmutableList<IdnTableEnum> idnTables) {
+    this.tld = tld;
+    this.reservedListRevisions = reservedListRevisions;
+    this.reservedListMatches = reservedListMatches;
+    this.reservationTypes =
+        reservedListMatches.entrySet().stream()
+            .collect(
+                toImmutableMap(
+                    Map.Entry::getKey,
+                    entry ->
+                        entry.getValue().stream()
+                            .map(MetricsReservedListMatch::reservationType)
+                            .collect(toImmutableSet())));
+    this.premiumPriceTable = premiumPriceTable;
+    this.idnTables = idnTables;
+  }
+
+  /** Returns the label policy of the given TLD, throwing if the TLD doesn't exist. */
+  public static TldLabelPolicy get(String tld) {
+    try {
+      return cache.getUnchecked(checkNotNull(tld, "tld must not be null"));
+    } catch (UncheckedExecutionException e) {
+      // Surfaces a RegistryNotFoundException as is.
+      throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  @VisibleForTesting
+  static LoadingCache<String, TldLabelPolicy> createCache(Duration refreshDuration) {
+    return newRefreshingCache(
+        "TldLabelPolicy",
+        refreshDuration,
+        new CacheLoader<String, TldLabelPolicy>() {
+          @Override
+          public TldLabelPolicy load(String tld) {
+            return jpaTm().doTransactionless(() -> TldLabelPolicy.load(tld));
+          }
+
+          @Override
+          public ListenableFuture<TldLabelPolicy> reload(String tld, TldLabelPolicy oldPolicy) {
+            return Futures.immediateFuture(
+                jpaTm()
+                    .doTransactionless(
+                        () -> oldPolicy.isCurrent() ? oldPolicy : TldLabelPolicy.load(tld)));
+          }
+        });
+  }
+
+  @VisibleForTesting
+  public static void setCacheForTest(Optional<Duration> expiry) {
+    cache = createCache(expiry.orElse(getDomainLabelListCacheDuration()));
+  }
+
+  private static TldLabelPolicy load(String tld) {
+    Registry registry = Registry.get(tld);
+    ImmutableMap.Builder<String, Long> reservedListRevisions = new ImmutableMap.Builder<>();
+    Map<String, ImmutableSet.Builder<MetricsReservedListMatch>> reservedListMatches =
+        new HashMap<>();
+    for (String listName : registry.getReservedListNames()) {
+      ReservedList reservedList = loadReservedList(tld, listName);
+      reservedListRevisions.put(listName, reservedList.getRevisionId());
+      reservedList
+          .getReservedListEntries()
+          .forEach(
+              (label, entry) ->
+                  reservedListMatches
+                      .computeIfAbsent(label, l -> new ImmutableSet.Builder<>())
+                      .add(MetricsReservedListMatch.create(listName, entry.getValue())));
+    }
+    // Price tables are shared with PremiumListDao, so TLDs with the same premium list share one.
+    Optional<PremiumPriceTable> premiumPriceTable =
+        registry
+            .getPremiumListName()
+            .flatMap(PremiumListDao::getLatestRevisionUncached)
+            .map(PremiumListDao::getPriceTable);
+    return new TldLabelPolicy(
+        tld,
+        reservedListRevisions.build(),
+        reservedListMatches.entrySet().stream()
+            .collect(toImmutableMap(Map.Entry::getKey, entry -> entry.getValue().build())),
+        premiumPriceTable,
+        IDN_LABEL_VALIDATOR.getIdnTablesForTld(tld));
+  }
+
+  private static ReservedList loadReservedList(String tld, String listName) {
+    return ReservedListDao.getLatestRevision(listName)
+        .orElseThrow(
+            () ->
+                new IllegalStateException(
+                    String.format("Reserved list %s of TLD %s does not exist", listName, tld)));
+  }
+
+  /** Returns whether the TLD still uses the same revisions of the same lists as this snapshot. */
+  private boolean isCurrent() {
+    Registry registry = Registry.get(tld);
+    if (!registry.getReservedListNames().equals(reservedListRevisions.keySet())) {
+      return false;
+    }
+    for (Map.Entry<String, Long> revision : reservedListRevisions.entrySet()) {
+      if (loadReservedList(tld, revision.getKey()).getRevisionId() != revision.getValue()) {
+        return false;
+      }
+    }
+    Optional<Long> premiumListRevision = premiumPriceTable.map(PremiumPriceTable::getRevisionId);
+    Optional<Long> latestPremiumListRevision =
+        registry
+            .getPremiumListName()
+            .flatMap(PremiumListDao::getLatestRevisionUncached)
+            .map(PremiumList::getRevisionId);
+    return premiumListRevision.equals(latestPremiumListRevision);
+  }
+
+  /** Returns the TLD that this policy applies to. */
+  public String getTld() {
+    return tld;
+  }
+
+  /**
+   * Returns the reservation types of the label across all reserved lists of the TLD.
+   *
+   * <p>If the label is in none of the lists, it returns an empty set.
+   *
+   * @see ReservedList#getReservationTypes
+   */
+  public ImmutableSet<ReservationType> getReservationTypes(String label) {
+    checkNotNull(label, "label");
+    if (label.length() == 0) {
+      return ImmutableSet.of(FULLY_BLOCKED);
+    }
+    DateTime startTime = DateTime.now(UTC);
+    ImmutableSet<ReservationType> types = reservationTypes.getOrDefault(label, ImmutableSet.of());
+    DomainLabelMetrics.recordReservedListCheckOutcome(
+        tld,
+        reservedListMatches.getOrDefault(label, ImmutableSet.of()),
+        DateTime.now(UTC).getMillis() - startTime.getMillis());
+    return types;
+  }
+
+  /**
+   * Returns the premium price of the label, or absent if the label is not premium.
+   *
+   * @see PremiumListDao#getPremiumPrice
+   */
+  public Optional<Money> getPremiumPrice(String label) {
+    return premiumPriceTable.flatMap(table -> table.getPrice(label));
+  }
+
+  /**
+   * Returns the name of the first IDN table of the TLD that considers the label valid, or absent
+   * if there is none.
+   *
+   * @see IdnLabelValidator#findValidIdnTableForTld
+   */
+  public Optional<String> findValidIdnTable(String label) {
+    return IdnLabelValidator.findValidIdnTable(label, idnTables);
+  }
+}
@@ -14,23 +14,74 @@
 
 package google.registry.model.tmch;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static google.registry.config.RegistryConfig.getClaimsListRevisionProbeDuration;
+import static google.registry.model.CacheUtils.tryMemoizeWithExpiration;
 import static google.registry.persistence.transaction.QueryComposer.Comparator.EQ;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
+import static org.joda.time.DateTimeZone.UTC;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import google.registry.model.CacheUtils;
+import google.registry.model.tmch.ClaimsListMetrics.IndexFetchOutcome;
+import google.registry.util.NonFinalForTesting;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** Data access object for {@link ClaimsList}. */
 public class ClaimsListDao {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /**
+   * Memoized probe for the latest claims list revision id.
+   *
+   * <p>This is a cheap query, and is what decides when {@link #currentIndex} needs reloading.
+   */
+  @NonFinalForTesting
+  private static Supplier<Optional<Long>> latestRevisionId =
+      createLatestRevisionIdSupplier(getClaimsListRevisionProbeDuration());
+
+  /** Whether {@link #currentIndex} is used at all, which it isn't when probing on every call. */
+  @NonFinalForTesting
+  private static boolean indexEnabled = isIndexEnabled(getClaimsListRevisionProbeDuration());
+
+  /** The in-memory index of the latest claims list revision seen by this process, if any. */
+  private static final AtomicReference<ClaimsListIndex> currentIndex = new AtomicReference<>();
+
+  /** Lock held while loading the first {@link #currentIndex}, which callers have to wait for. */
+  private static final ReentrantLock loadLock = new ReentrantLock();
+
+  /** Whether a newer revision of {@link #currentIndex} is being loaded in the background. */
+  private static final AtomicBoolean reloading = new AtomicBoolean();
+
+  /** Where newer revisions of {@link #currentIndex} are loaded. */
+  @NonFinalForTesting private static Executor reloadExecutor = CacheUtils::runInBackground;
+
   /** Saves the given {@link ClaimsList} to Cloud SQL. */
   public static void save(ClaimsList claimsList) {
     jpaTm().transact(() -> jpaTm().insert(claimsList));
+    // Swap in the new revision right away, rather than waiting for the next probe to find it.
+    if (indexEnabled && claimsList.labelsToKeys != null) {
+      installIndex(ClaimsListIndex.create(claimsList.getRevisionId(), claimsList.labelsToKeys));
+    }
   }
 
   /**
    * Returns the most recent revision of the {@link ClaimsList} in SQL or an empty list if it
    * doesn't exist.
+   *
+   * <p>This always goes to the database. Flows that only need to look up claim keys should use
+   * {@link #getIndex} instead.
    */
   public static ClaimsList get() {
     return jpaTm()
@@ -48,5 +99,139 @@ public class ClaimsListDao {
         .orElse(ClaimsList.create(START_OF_TIME, ImmutableMap.of()));
   }
 
+  /**
+   * Returns an in-memory index of the most recent revision of the {@link ClaimsList}.
+   *
+   * <p>The latest revision id is re-read from the database at most once per {@link
+   * google.registry.config.RegistryConfig#getClaimsListRevisionProbeDuration}. When it changes, the
+   * full index is reloaded in the background, and callers are served the previous revision until
+   * the reload is done. Only the first index of the process is loaded by the callers themselves,
+   * since they have nothing to fall back on.
+   *
+   * <p>If the probe duration is zero (as in unit tests), the index is rebuilt on every call.
+   */
+  public static ClaimsListIndex getIndex() {
+    if (!indexEnabled) {
+      return loadIndex(latestRevisionId.get());
+    }
+    Optional<Long> revisionId = latestRevisionId.get();
+    ClaimsListIndex index = currentIndex.get();
+    if (index != null) {
+      if (isIndexCurrent(index, revisionId)) {
+        ClaimsListMetrics.recordIndexFetch(IndexFetchOutcome.HIT);
+      } else {
+        if (reloading.compareAndSet(false, true)) {
+          try {
+            reloadExecutor.execute(() -> reloadIndex(revisionId));
+          } catch (RuntimeException e) {
+            reloading.set(false);
+            throw e;
+          }
+        }
+        ClaimsListMetrics.recordIndexFetch(IndexFetchOutcome.MISS_STALE);
+      }
+      return index;
+    }
+    loadLock.lock();
+    try {
+      // Another caller may have finished loading while we were waiting for the lock.
+      index = currentIndex.get();
+      if (index == null) {
+        index = installIndex(timeLoadIndex(revisionId));
+      }
+      ClaimsListMetrics.recordIndexFetch(IndexFetchOutcome.MISS_RELOADED);
+      return index;
+    } finally {
+      loadLock.unlock();
+    }
+  }
+
+  private static void reloadIndex(Optional<Long> revisionId) {
+    try {
+      installIndex(timeLoadIndex(revisionId));
+    } catch (RuntimeException e) {
+      // The previous revision keeps being served, and the next caller retries.
+      logger.atWarning().withCause(e).log("Failed to reload the claims list index.");
+    } finally {
+      reloading.set(false);
+    }
+  }
+
+  /**
+   * Installs the given index unless a newer one is already installed, and returns the index that
+   * is installed.
+   */
+  private static ClaimsListIndex installIndex(ClaimsListIndex index) {
+    return currentIndex.accumulateAndGet(
+        index,
+        (current, update) ->
+            current == null || update.getRevisionId() > current.getRevisionId() ? update : current);
+  }
+
+  private static ClaimsListIndex timeLoadIndex(Optional<Long> revisionId) {
+    DateTime startTime = DateTime.now(UTC);
+    ClaimsListIndex index = loadIndex(revisionId);
+    ClaimsListMetrics.recordIndexReload(DateTime.now(UTC).getMillis() - startTime.getMillis());
+    return index;
+  }
+
+  private static boolean isIndexEnabled(Duration probeDuration) {
+    return probeDuration.isLongerThan(Duration.ZERO);
+  }
+
+  /**
+   * Returns whether the index is at least as recent as the given revision.
+   *
+   * <p>Revision ids only ever increase, and {@link #save} installs new revisions before the probe
+   * sees them, so an index that is ahead of the probe is still current.
+   */
+  private static boolean isIndexCurrent(ClaimsListIndex index, Optional<Long> revisionId) {
+    return index.getRevisionId() >= revisionId.orElse(ClaimsListIndex.EMPTY_REVISION_ID);
+  }
+
+  private static Optional<Long> getLatestRevisionId() {
+    return jpaTm()
+        .transact(
+            () ->
+                Optional.ofNullable(
+                    jpaTm()
+                        .query("SELECT MAX(revisionId) FROM ClaimsList", Long.class)
+                        .getSingleResult()));
+  }
+
+  private static ClaimsListIndex loadIndex(Optional<Long> revisionId) {
+    if (!revisionId.isPresent()) {
+      return ClaimsListIndex.createEmpty();
+    }
+    ImmutableMap<String, String> labelsToKeys =
+        jpaTm()
+            .transact(
+                () ->
+                    jpaTm()
+                        .createQueryComposer(ClaimsEntry.class)
+                        .where("revisionId", EQ, revisionId.get())
+                        .stream()
+                        .collect(
+                            toImmutableMap(ClaimsEntry::getDomainLabel, ClaimsEntry::getClaimKey)));
+    return ClaimsListIndex.create(revisionId.get(), labelsToKeys);
+  }
+
+  private static Supplier<Optional<Long>> createLatestRevisionIdSupplier(Duration probeDuration) {
+    return tryMemoizeWithExpiration(probeDuration, ClaimsListDao::getLatestRevisionId);
+  }
+
+  /**
+   * Resets the in-memory index and sets how often the revision is probed, or restores the
+   * configured probe duration if empty.
+   */
+  @VisibleForTesting
+  public static void setIndexRevisionProbeForTest(Optional<Duration> probeDuration) {
+    Duration effectiveProbeDuration = probeDuration.orElse(getClaimsListRevisionProbeDuration());
+    latestRevisionId = createLatestRevisionIdSupplier(effectiveProbeDuration);
+    indexEnabled = isIndexEnabled(effectiveProbeDuration);
+    currentIndex.set(null);
+    reloading.set(false);
+  }
+
   private ClaimsListDao() {}
 }
@@ -0,0 +1,80 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An immutable, in-memory index of a single revision of the {@link ClaimsList}.
+ *
+ * <p>Claims lists run to hundreds of thousands of labels, so rather than a hash map (with an entry
+ * object and a boxed hash per label) this keeps the labels in one sorted array and their claim keys
+ * in a parallel array, and looks labels up by binary search.
+ */
+public final class ClaimsListIndex {
+
+  /** Revision id used for the index of an empty, never-uploaded claims list. */
+  static final long EMPTY_REVISION_ID = -1L;
+
+  private final long revisionId;
+  private final String[] labels;
+  private final String[] claimKeys;
+
+  private ClaimsListIndex(long revisionId, String[] labels, String[] claimKeys) {
+    this.revisionId = revisionId;
+    this.labels = labels;
+    this.claimKeys = claimKeys;
+  }
+
+  /** Creates an index of the given revision from its map of labels to claim keys. */
+  static ClaimsListIndex create(long revisionId, Map<String, String> labelsToKeys) {
+    @SuppressWarnings("unchecked")
+    Map.Entry<String, String>[] entries = labelsToKeys.entrySet().toArray(new Map.Entry[0]);
+    Arrays.sort(entries, Map.Entry.comparingByKey(Comparator.naturalOrder()));
+    String[] labels = new String[entries.length];
+    String[] claimKeys = new String[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      labels[i] = checkNotNull(entries[i].getKey(), "label");
+      claimKeys[i] = checkNotNull(entries[i].getValue(), "claimKey");
+    }
+    return new ClaimsListIndex(revisionId, labels, claimKeys);
+  }
+
+  /** Creates an empty index, for use when no claims list has ever been uploaded. */
+  static ClaimsListIndex createEmpty() {
+    return new ClaimsListIndex(EMPTY_REVISION_ID, new String[0], new String[0]);
+  }
+
+  /** Returns the revision id of the {@link ClaimsList} this index was built from. */
+  public long getRevisionId() {
+    return revisionId;
+  }
+
+  /** Returns the claim key for a given domain label if there is one, empty otherwise. */
+  public Optional<String> getClaimKey(String label) {
+    int index = Arrays.binarySearch(labels, label);
+    return index >= 0 ? Optional.of(claimKeys[index]) : Optional.empty();
+  }
+
+  /** Returns the number of labels in the index. */
+  public int size() {
+    return labels.length;
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+
+/** Instrumentation for the in-memory claims list index. */
+class ClaimsListMetrics {
+
+  /** Possible outcomes of fetching the claims list index. */
+  enum IndexFetchOutcome {
+    /** The index in memory was for the latest revision. */
+    HIT,
+
+    /** The index in memory was out of date, and was reloaded by this caller. */
+    MISS_RELOADED,
+
+    /** The index in memory was out of date, but another caller was already reloading it. */
+    MISS_STALE
+  }
+
+  private static final ImmutableSet<LabelDescriptor> OUTCOME_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("outcome", "Outcome of the index fetch."));
+
+  /** Metric counting the number of times the claims list index was fetched, by outcome. */
+  @VisibleForTesting
+  static final IncrementableMetric indexFetches =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/tmch/claims_list/index_fetches",
+              "Count of claims list index fetches",
+              "count",
+              OUTCOME_LABEL_DESCRIPTORS);
+
+  /** Metric recording the time required to reload the claims list index. */
+  @VisibleForTesting
+  static final EventMetric indexReloadTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/tmch/claims_list/index_reload_time",
+              "Claims list index reload time",
+              "milliseconds",
+              ImmutableSet.of(),
+              EventMetric.DEFAULT_FITTER);
+
+  static void recordIndexFetch(IndexFetchOutcome outcome) {
+    indexFetches.increment(outcome.name());
+  }
+
+  static void recordIndexReload(double elapsedMillis) {
+    indexReloadTime.record(elapsedMillis);
+  }
+
+  private ClaimsListMetrics() {}
+}
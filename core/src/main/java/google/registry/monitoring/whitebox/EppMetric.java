@@ -17,18 +17,33 @@ package google.registry.monitoring.whitebox;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import google.registry.model.eppoutput.Result.Code;
 import google.registry.model.tld.Registries;
 import google.registry.util.Clock;
+import java.util.EnumMap;
 import java.util.Optional;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** A value class for recording attributes of an EPP metric. */
 @AutoValue
 public abstract class EppMetric {
 
+  /** Individually timed stages of the processing of an EPP request. */
+  public enum Stage {
+    /** Unmarshalling the inbound XML into an {@code EppInput}. */
+    PARSE,
+
+    /** Logging the inbound command, including sanitizing and formatting its XML if needed. */
+    COMMAND_LOG,
+
+    /** Running the flow itself, including any transaction it runs in. */
+    FLOW
+  }
+
   public abstract DateTime getStartTimestamp();
 
   public abstract DateTime getEndTimestamp();
@@ -41,6 +56,9 @@ public abstract class EppMetric {
 
   public abstract Optional<Code> getStatus();
 
+  /** Returns how long each completed {@link Stage} of the request took. */
+  public abstract ImmutableMap<Stage, Duration> getStageDurations();
+
   /** Create an {@link EppMetric.Builder}. */
   public static Builder builder() {
     return new AutoValue_EppMetric.Builder();
@@ -65,6 +83,12 @@ public abstract class EppMetric {
     /** Builder-only clock to support automatic recording of endTimestamp on {@link #build()}. */
     private Clock clock = null;
 
+    /** Start times of stages that have begun but not yet ended. */
+    private final EnumMap<Stage, DateTime> stageStartTimes = new EnumMap<>(Stage.class);
+
+    /** Durations of stages that have ended. */
+    private final EnumMap<Stage, Duration> stageDurations = new EnumMap<>(Stage.class);
+
     abstract Builder setStartTimestamp(DateTime startTimestamp);
 
     abstract Builder setEndTimestamp(DateTime endTimestamp);
@@ -115,6 +139,37 @@ public abstract class EppMetric {
 
     public abstract Builder setStatus(Code code);
 
+    abstract Builder setStageDurations(ImmutableMap<Stage, Duration> stageDurations);
+
+    /**
+     * Marks the start of the given {@link Stage}, to be timed until {@link #endStage} is called.
+     *
+     * <p>Stages are only timed by builders created with {@link #builderForRequest}; on any other
+     * builder this is a no-op.
+     */
+    public Builder beginStage(Stage stage) {
+      if (clock != null) {
+        stageStartTimes.put(stage, clock.nowUtc());
+      }
+      return this;
+    }
+
+    /**
+     * Marks the end of the given {@link Stage}, recording its duration on the metric.
+     *
+     * <p>Ending a stage that was never begun is a no-op, which lets callers end stages in {@code
+     * finally} blocks without tracking whether the stage was reached. If a stage runs more than
+     * once, the durations are summed.
+     */
+    public Builder endStage(Stage stage) {
+      DateTime stageStartTime = stageStartTimes.remove(stage);
+      if (stageStartTime != null) {
+        stageDurations.merge(
+            stage, new Duration(stageStartTime, clock.nowUtc()), Duration::plus);
+      }
+      return this;
+    }
+
     Builder setClock(Clock clock) {
       this.clock = clock;
       return this;
@@ -124,12 +179,14 @@ public abstract class EppMetric {
      * Build an instance of {@link EppMetric} using this builder.
      *
      * <p>If a clock was provided with {@code setClock()}, the end timestamp will be set to the
-     * current timestamp of the clock; otherwise end timestamp must have been previously set.
+     * current timestamp of the clock; otherwise end timestamp must have been previously set. Any
+     * stages that have begun but not ended are left out of the metric.
      */
     public EppMetric build() {
       if (clock != null) {
         setEndTimestamp(clock.nowUtc());
       }
+      setStageDurations(ImmutableMap.copyOf(stageDurations));
       return autoBuild();
     }
 
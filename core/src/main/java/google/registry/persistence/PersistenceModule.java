@@ -25,6 +25,7 @@ import static google.registry.persistence.transaction.TransactionManagerFactory.
 
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.flogger.FluentLogger;
@@ -35,6 +36,7 @@ import google.registry.config.RegistryConfig.Config;
 import google.registry.persistence.transaction.CloudSqlCredentialSupplier;
 import google.registry.persistence.transaction.JpaTransactionManager;
 import google.registry.persistence.transaction.JpaTransactionManagerImpl;
+import google.registry.persistence.transaction.ReplicaRouter;
 import google.registry.persistence.transaction.TransactionManager;
 import google.registry.privileges.secretmanager.SqlCredential;
 import google.registry.privileges.secretmanager.SqlCredentialStore;
@@ -59,6 +61,7 @@ import javax.inject.Singleton;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import org.hibernate.cfg.Environment;
+import org.joda.time.Duration;
 
 /** Dagger module class for the persistence layer. */
 @Module
@@ -226,6 +229,35 @@ public abstract class PersistenceModule {
     return new JpaTransactionManagerImpl(create(overrides), clock);
   }
 
+  @Provides
+  @Singleton
+  @ReadOnlyReplicaJpaTms
+  static ImmutableMap<String, JpaTransactionManager> provideReadOnlyReplicaJpaTms(
+      SqlCredentialStore credentialStore,
+      @Config("cloudSqlReplicaInstanceConnectionNames")
+          ImmutableList<String> replicaInstanceConnectionNames,
+      @PartialCloudSqlConfigs ImmutableMap<String, String> cloudSqlConfigs,
+      Clock clock) {
+    ImmutableMap.Builder<String, JpaTransactionManager> replicaTms = new ImmutableMap.Builder<>();
+    for (String instanceConnectionName : replicaInstanceConnectionNames) {
+      HashMap<String, String> overrides = Maps.newHashMap(cloudSqlConfigs);
+      setSqlCredential(credentialStore, new RobotUser(RobotId.NOMULUS), overrides);
+      overrides.put(HIKARI_DS_CLOUD_SQL_INSTANCE, instanceConnectionName);
+      replicaTms.put(
+          instanceConnectionName, new JpaTransactionManagerImpl(create(overrides), clock));
+    }
+    return replicaTms.build();
+  }
+
+  @Provides
+  @Singleton
+  static ReplicaRouter provideReplicaRouter(
+      @ReadOnlyReplicaJpaTms ImmutableMap<String, JpaTransactionManager> replicaTms,
+      @Config("cloudSqlMaxReplicaLag") Duration maxReplicaLag,
+      Clock clock) {
+    return new ReplicaRouter(replicaTms, maxReplicaLag, clock);
+  }
+
   @Provides
   @Singleton
   @BeamJpaTm
@@ -356,6 +388,14 @@ public abstract class PersistenceModule {
   @Documented
   @interface AppEngineJpaTm {}
 
+  /**
+   * Dagger qualifier for the {@link JpaTransactionManager}s of the read-only replicas used by the
+   * App Engine application, keyed by the connection names of their instances.
+   */
+  @Qualifier
+  @Documented
+  @interface ReadOnlyReplicaJpaTms {}
+
   /** Dagger qualifier for {@link JpaTransactionManager} used inside BEAM pipelines. */
   // Note: @SocketFactoryJpaTm will be phased out in favor of this qualifier.
   @Qualifier
@@ -0,0 +1,92 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.joda.time.Duration;
+
+/** Metrics for the routing of read-only work by {@link ReplicaRouter}. */
+final class ReplicaMetrics {
+
+  /** Value of the instance label for work that was run on the primary. */
+  private static final String PRIMARY = "primary";
+
+  /** Value of the reason label for work that was run on a replica. */
+  private static final String UP_TO_DATE = "up_to_date";
+
+  private static final ImmutableSet<LabelDescriptor> LAG_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("replica", "Connection name of the replica."));
+
+  private static final ImmutableSet<LabelDescriptor> ROUTE_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create(
+              "instance", "Connection name of the replica, or primary if the work ran there."),
+          LabelDescriptor.create("reason", "Why the work ran on that instance."));
+
+  /** Suppliers of the last measured lag of each replica, keyed by label values. */
+  private static final ConcurrentMap<ImmutableList<String>, Supplier<Optional<Duration>>> lags =
+      new ConcurrentHashMap<>();
+
+  static final Metric<Long> lagGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/sql/replica/lag",
+              "Replication lag of the replica when it was last measured",
+              "milliseconds",
+              LAG_LABEL_DESCRIPTORS,
+              ReplicaMetrics::getLagMillis,
+              Long.class);
+
+  static final IncrementableMetric routes =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/sql/read_only/routes",
+              "Count of read-only work by the database instance that it ran on",
+              "count",
+              ROUTE_LABEL_DESCRIPTORS);
+
+  private ReplicaMetrics() {}
+
+  /** Registers the supplier of the last measured lag of a replica. */
+  static void registerReplica(String replicaName, Supplier<Optional<Duration>> lag) {
+    lags.put(ImmutableList.of(replicaName), lag);
+  }
+
+  private static ImmutableMap<ImmutableList<String>, Long> getLagMillis() {
+    ImmutableMap.Builder<ImmutableList<String>, Long> lagMillis = new ImmutableMap.Builder<>();
+    lags.forEach(
+        (labels, lag) ->
+            lag.get().ifPresent(duration -> lagMillis.put(labels, duration.getMillis())));
+    return lagMillis.build();
+  }
+
+  static void recordReplica(String replicaName) {
+    routes.increment(replicaName, UP_TO_DATE);
+  }
+
+  static void recordPrimary(String reason) {
+    routes.increment(PRIMARY, reason);
+  }
+}
@@ -0,0 +1,193 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import google.registry.util.Clock;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Routes read-only work to the read-only replicas of the Cloud SQL database.
+ *
+ * <p>Work passed to {@link #transactReadOnly} runs in a transaction on one of the replicas, which
+ * are taken in turn, skipping those that are further behind the primary than the maximum lag. For
+ * as long as the work runs, {@link TransactionManagerFactory#jpaTm} and {@link
+ * TransactionManagerFactory#tm} return the transaction manager of that replica, so the work doesn't
+ * need to know where it runs.
+ *
+ * <p>The work runs as it would otherwise, i.e. against the primary, if there are no replicas or
+ * none of them is up to date enough, if it must see writes that may not have reached the replicas
+ * yet, if Datastore is the primary database, or if a transaction is already open.
+ */
+public class ReplicaRouter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** How long the measured lag of a replica is used before it is measured again. */
+  @VisibleForTesting static final Duration LAG_CHECK_INTERVAL = Duration.standardSeconds(5);
+
+  /**
+   * Query for the lag of a replica, in seconds.
+   *
+   * <p>The time since the last transaction that the replica replayed keeps growing while the
+   * primary is idle, so a replica that has replayed everything that it has received is up to date.
+   * This also returns zero when run on the primary.
+   */
+  private static final String LAG_QUERY =
+      "SELECT CASE WHEN NOT pg_is_in_recovery()"
+          + " OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+          + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+  private final ImmutableList<Replica> replicas;
+  private final Duration maxLag;
+  private final Clock clock;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  /**
+   * Creates a router to the given replicas.
+   *
+   * @param replicaTms the transaction managers of the replicas, keyed by the connection names of
+   *     their instances
+   * @param maxLag how far behind the primary a replica may be and still be used
+   * @param clock the clock that the lags and the times of the writes are compared with
+   */
+  public ReplicaRouter(
+      ImmutableMap<String, JpaTransactionManager> replicaTms, Duration maxLag, Clock clock) {
+    this.replicas =
+        replicaTms.entrySet().stream()
+            .map(entry -> new Replica(entry.getKey(), entry.getValue()))
+            .collect(toImmutableList());
+    this.maxLag = maxLag;
+    this.clock = clock;
+    replicas.forEach(replica -> ReplicaMetrics.registerReplica(replica.name, () -> replica.lag));
+  }
+
+  /**
+   * Returns how long work keeps running on the primary after a write that it must see.
+   *
+   * <p>A replica that was up to date enough when its lag was last measured may have fallen further
+   * behind since, by up to the interval between measurements.
+   */
+  public Duration getReadYourWritesWindow() {
+    return maxLag.plus(LAG_CHECK_INTERVAL);
+  }
+
+  /** Runs read-only work in a transaction on a replica, or on the primary. */
+  public <T> T transactReadOnly(Supplier<T> work) {
+    return transactReadOnly(work, START_OF_TIME);
+  }
+
+  /**
+   * Runs read-only work like {@link #transactReadOnly(Supplier)}, on the primary unless the given
+   * write has had time to reach the replicas.
+   *
+   * @param lastWriteTime the time of the last write that the work must see
+   */
+  public <T> T transactReadOnly(Supplier<T> work, DateTime lastWriteTime) {
+    if (replicas.isEmpty() || tm().isOfy() || jpaTm().inTransaction()) {
+      return work.get();
+    }
+    if (clock.nowUtc().isBefore(lastWriteTime.plus(getReadYourWritesWindow()))) {
+      ReplicaMetrics.recordPrimary("read_your_writes");
+      return work.get();
+    }
+    Optional<Replica> replica = pickReplica();
+    if (!replica.isPresent()) {
+      ReplicaMetrics.recordPrimary("replicas_lagging");
+      return work.get();
+    }
+    ReplicaMetrics.recordReplica(replica.get().name);
+    JpaTransactionManager replicaTm = replica.get().tm;
+    return TransactionManagerFactory.routeToReplica(
+        replicaTm, () -> replicaTm.transactNewReadOnly(work));
+  }
+
+  /** Runs read-only work in a transaction on a replica, or on the primary. */
+  public void transactReadOnly(Runnable work) {
+    transactReadOnly(
+        () -> {
+          work.run();
+          return null;
+        });
+  }
+
+  /** Returns the next replica in turn that is up to date enough, if any. */
+  private Optional<Replica> pickReplica() {
+    int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    for (int i = 0; i < replicas.size(); i++) {
+      Replica replica = replicas.get((first + i) % replicas.size());
+      if (isUpToDate(replica)) {
+        return Optional.of(replica);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private boolean isUpToDate(Replica replica) {
+    DateTime now = clock.nowUtc();
+    // Concurrent requests may measure the lag at the same time, which is harmless.
+    if (!now.isBefore(replica.lagCheckTime.plus(LAG_CHECK_INTERVAL))) {
+      replica.lagCheckTime = now;
+      try {
+        replica.lag = measureLag(replica.tm);
+      } catch (RuntimeException e) {
+        logger.atWarning().withCause(e).log(
+            "Failed to measure the lag of replica %s.", replica.name);
+        replica.lag = Optional.empty();
+      }
+    }
+    return replica.lag.map(lag -> !lag.isLongerThan(maxLag)).orElse(false);
+  }
+
+  /** Measures how far behind the primary a replica is, or returns empty if it can't tell. */
+  @VisibleForTesting
+  Optional<Duration> measureLag(JpaTransactionManager replicaTm) {
+    Number seconds =
+        (Number)
+            replicaTm.transactNewReadOnly(
+                () -> replicaTm.getEntityManager().createNativeQuery(LAG_QUERY).getSingleResult());
+    return Optional.ofNullable(seconds)
+        .map(lag -> Duration.millis(Math.round(lag.doubleValue() * 1000)));
+  }
+
+  /** A replica, and its lag when it was last measured. */
+  private static class Replica {
+
+    final String name;
+    final JpaTransactionManager tm;
+
+    /** The last measured lag, which is empty if it couldn't be measured. */
+    volatile Optional<Duration> lag = Optional.empty();
+
+    volatile DateTime lagCheckTime = START_OF_TIME;
+
+    Replica(String name, JpaTransactionManager tm) {
+      this.name = name;
+      this.tm = tm;
+    }
+  }
+}
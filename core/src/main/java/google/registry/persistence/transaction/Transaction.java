@@ -24,17 +24,31 @@ import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
+import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig;
 import google.registry.model.Buildable;
 import google.registry.model.ImmutableObject;
 import google.registry.model.replay.DatastoreEntity;
 import google.registry.model.replay.SqlEntity;
 import google.registry.persistence.VKey;
+import google.registry.util.NonFinalForTesting;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A SQL transaction that can be serialized and stored in its own table.
@@ -46,18 +60,42 @@ import java.io.ObjectOutputStream;
  * <p>TODO(mmuller): Use these from {@link TransactionManager} to store the contents of an SQL
  * transaction for asynchronous propagation to datastore. Implement a cron endpoint that reads them
  * from the Transaction table and calls writeToDatastore().
+ *
+ * <p>A serialized transaction starts with its version id, as a four byte big-endian int, and a byte
+ * of flags that says whether the rest is compressed with deflate. The rest is the number of
+ * mutations, as an int, followed by the mutations. An update is its entity as a length-prefixed
+ * Datastore {@link EntityProto}, and a delete is the kind, Objectify key and SQL key of its {@link
+ * VKey}, where only SQL keys that aren't strings or longs use Java serialization.
+ *
+ * <p>Transactions can also be written entirely with Java serialization, which is how they were
+ * written before the binary format was introduced, and both formats can be deserialized. Java
+ * serialization stays the default until every running version can read the binary format, since
+ * a version that can't read it would stop replicating transactions.
  */
 public class Transaction extends ImmutableObject implements Buildable {
 
   // Version id for persisted objects.  Use the creation date for the value, as it's reasonably
   // unique and inherently informative.
-  private static final int VERSION_ID = 20200604;
+  private static final int VERSION_ID = 20211016;
+
+  // Version id of the transactions that were written with Java serialization, which are still read.
+  private static final int JAVA_SERIALIZATION_VERSION_ID = 20200604;
+
+  // Flag for the transactions whose mutations are compressed with deflate.
+  private static final int DEFLATED = 0x01;
+
+  // Mutations that are smaller than this aren't worth compressing.
+  private static final int MIN_COMPRESSED_SIZE = 512;
 
   // Keep a per-thread flag to keep track of whether we're serializing an entity for a transaction.
   // This is used by internal translators to avoid doing things that are dependent on being in a
   // datastore transaction and alter the persisted representation of the entity.
   private static ThreadLocal<Boolean> inSerializationMode = ThreadLocal.withInitial(() -> false);
 
+  // Whether transactions are written in the binary format rather than with Java serialization.
+  @NonFinalForTesting
+  private static boolean writeBinaryFormat = RegistryConfig.getWriteBinarySqlTransactions();
+
   private transient ImmutableList<Mutation> mutations;
 
   @VisibleForTesting
@@ -78,13 +116,53 @@ public class Transaction extends ImmutableObject implements Buildable {
 
   /** Serialize a transaction to a byte array. */
   public byte[] serialize() {
+    return writeBinaryFormat ? serializeBinary() : serializeWithJava();
+  }
+
+  private byte[] serializeBinary() {
+    try {
+      // Write all of the mutations, preceded by their count.
+      ByteArrayOutputStream mutationBytes = new ByteArrayOutputStream();
+      DataOutputStream mutationOut = new DataOutputStream(mutationBytes);
+      mutationOut.writeInt(mutations.size());
+      try {
+        inSerializationMode.set(true);
+        for (Mutation mutation : mutations) {
+          mutation.writeTo(mutationOut);
+        }
+      } finally {
+        inSerializationMode.set(false);
+      }
+      byte[] uncompressed = mutationBytes.toByteArray();
+      byte[] compressed = uncompressed.length < MIN_COMPRESSED_SIZE ? null : deflate(uncompressed);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(baos);
+      // Write the transaction version id.  This serves as both a version id and a "magic number" to
+      // protect us against trying to deserialize some random byte array.
+      out.writeInt(VERSION_ID);
+      if (compressed != null && compressed.length < uncompressed.length) {
+        out.writeByte(DEFLATED);
+        out.write(compressed);
+      } else {
+        out.writeByte(0);
+        out.write(uncompressed);
+      }
+      out.close();
+      return baos.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private byte[] serializeWithJava() {
     try {
       ByteArrayOutputStream baos = new ByteArrayOutputStream();
       ObjectOutputStream out = new ObjectOutputStream(baos);
 
       // Write the transaction version id.  This serves as both a version id and a "magic number" to
       // protect us against trying to deserialize some random byte array.
-      out.writeInt(VERSION_ID);
+      out.writeInt(JAVA_SERIALIZATION_VERSION_ID);
 
       // Write all of the mutations, preceded by their count.
       out.writeInt(mutations.size());
@@ -100,17 +178,73 @@ public class Transaction extends ImmutableObject implements Buildable {
       out.close();
       return baos.toByteArray();
     } catch (IOException e) {
-      throw new IllegalArgumentException();
+      throw new IllegalArgumentException(e);
     }
   }
 
+  private static byte[] deflate(byte[] bytes) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(baos, deflater)) {
+      out.write(bytes);
+    } finally {
+      deflater.end();
+    }
+    return baos.toByteArray();
+  }
+
   public static Transaction deserialize(byte[] serializedTransaction) throws IOException {
+    if (isJavaSerialized(serializedTransaction)) {
+      return deserializeJavaSerialized(serializedTransaction);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(serializedTransaction));
+
+    // Verify that the data is what we expect.
+    if (serializedTransaction.length < 5 || in.readInt() != VERSION_ID) {
+      throw new StreamCorruptedException("Invalid serialized transaction header.");
+    }
+    int flags = in.readUnsignedByte();
+    if ((flags & ~DEFLATED) != 0) {
+      throw new StreamCorruptedException("Unknown serialized transaction flags: " + flags);
+    }
+    if ((flags & DEFLATED) != 0) {
+      in = new DataInputStream(new InflaterInputStream(in));
+    }
+
+    Transaction.Builder builder = new Transaction.Builder();
+    // Closing the stream releases the inflater, if any.
+    try (DataInputStream mutationIn = in) {
+      int mutationCount = mutationIn.readInt();
+      for (int i = 0; i < mutationCount; ++i) {
+        builder.add(Mutation.readFrom(mutationIn));
+      }
+      if (mutationIn.read() != -1) {
+        throw new RuntimeException("Unread data at the end of a serialized transaction.");
+      }
+    } catch (EOFException e) {
+      throw new RuntimeException("Serialized transaction terminated prematurely", e);
+    }
+    return builder.build();
+  }
+
+  /** Returns whether a transaction was serialized before the binary format was introduced. */
+  private static boolean isJavaSerialized(byte[] serializedTransaction) {
+    return serializedTransaction.length >= 2
+        && (serializedTransaction[0] & 0xff) == (ObjectStreamConstants.STREAM_MAGIC >>> 8 & 0xff)
+        && (serializedTransaction[1] & 0xff) == (ObjectStreamConstants.STREAM_MAGIC & 0xff);
+  }
+
+  private static Transaction deserializeJavaSerialized(byte[] serializedTransaction)
+      throws IOException {
     ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedTransaction));
 
     // Verify that the data is what we expect.
     int version = in.readInt();
     checkArgument(
-        version == VERSION_ID, "Invalid version id.  Expected %s but got %s", VERSION_ID, version);
+        version == JAVA_SERIALIZATION_VERSION_ID,
+        "Invalid version id.  Expected %s but got %s",
+        JAVA_SERIALIZATION_VERSION_ID,
+        version);
 
     Transaction.Builder builder = new Transaction.Builder();
     int mutationCount = in.readInt();
@@ -192,17 +326,38 @@ public class Transaction extends ImmutableObject implements Buildable {
   public abstract static class Mutation {
 
     enum Type {
-      UPDATE,
-      DELETE
+      UPDATE(1),
+      DELETE(2);
+
+      // The tag of the mutation in the binary format. Java serialization uses the name instead.
+      private final int tag;
+
+      Type(int tag) {
+        this.tag = tag;
+      }
     }
 
     /** Write the changes in the mutation to the datastore. */
     public abstract void writeToDatastore();
 
-    /** Serialize the mutation to the output stream. */
+    /** Write the mutation in the binary format, preceded by the tag of its type. */
+    abstract void writeTo(DataOutput out) throws IOException;
+
+    /** Serialize the mutation to the output stream with Java serialization. */
     public abstract void serializeTo(ObjectOutputStream out) throws IOException;
 
-    /** Deserialize a mutation from the input stream. */
+    /** Read a mutation in the binary format. */
+    static Mutation readFrom(DataInput in) throws IOException {
+      int tag = in.readUnsignedByte();
+      if (tag == Type.UPDATE.tag) {
+        return Update.readFrom(in);
+      } else if (tag == Type.DELETE.tag) {
+        return Delete.readFrom(in);
+      }
+      throw new IllegalArgumentException("Unknown mutation tag: " + tag);
+    }
+
+    /** Deserialize a mutation serialized with Java serialization from the input stream. */
     public static Mutation deserializeFrom(ObjectInputStream in) throws IOException {
       try {
         Type type = (Type) in.readObject();
@@ -245,12 +400,19 @@ public class Transaction extends ImmutableObject implements Buildable {
       ofyTm().putIgnoringReadOnly(entity);
     }
 
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+      out.writeByte(Type.UPDATE.tag);
+      Entity realEntity = auditedOfy().toEntity(entity);
+      writeBytes(out, EntityTranslator.convertToPb(realEntity).toByteArray());
+    }
+
     @Override
     public void serializeTo(ObjectOutputStream out) throws IOException {
       out.writeObject(Type.UPDATE);
       Entity realEntity = auditedOfy().toEntity(entity);
       EntityProto proto = EntityTranslator.convertToPb(realEntity);
-      out.write(VERSION_ID);
+      out.write(JAVA_SERIALIZATION_VERSION_ID);
       proto.writeDelimitedTo(out);
     }
 
@@ -259,6 +421,12 @@ public class Transaction extends ImmutableObject implements Buildable {
       return entity;
     }
 
+    static Update readFrom(DataInput in) throws IOException {
+      EntityProto proto = new EntityProto();
+      checkArgument(proto.parseFrom(readBytes(in)), "Invalid entity in serialized transaction.");
+      return new Update(auditedOfy().toPojo(EntityTranslator.createFromPb(proto)));
+    }
+
     public static Update deserializeFrom(ObjectInputStream in) throws IOException {
       EntityProto proto = new EntityProto();
       proto.parseDelimitedFrom(in);
@@ -269,9 +437,17 @@ public class Transaction extends ImmutableObject implements Buildable {
   /**
    * Record deletion.
    *
-   * <p>Delete serializes its VKey using Java native serialization.
+   * <p>Delete serializes its VKey field by field. Only SQL keys that are neither strings nor longs,
+   * such as composite keys, use Java native serialization.
    */
   public static class Delete extends Mutation {
+
+    // Tags of the types of SQL keys.
+    private static final int NO_SQL_KEY = 0;
+    private static final int STRING_SQL_KEY = 1;
+    private static final int LONG_SQL_KEY = 2;
+    private static final int SERIALIZED_SQL_KEY = 3;
+
     private final VKey<?> key;
 
     Delete(VKey<?> key) {
@@ -283,6 +459,34 @@ public class Transaction extends ImmutableObject implements Buildable {
       ofyTm().deleteIgnoringReadOnly(key);
     }
 
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+      out.writeByte(Type.DELETE.tag);
+      out.writeUTF(key.getKind().getName());
+      Optional<String> ofyKey = key.maybeGetOfyKey().map(Key::getString);
+      out.writeBoolean(ofyKey.isPresent());
+      if (ofyKey.isPresent()) {
+        out.writeUTF(ofyKey.get());
+      }
+      Object sqlKey = key.maybeGetSqlKey().orElse(null);
+      if (sqlKey == null) {
+        out.writeByte(NO_SQL_KEY);
+      } else if (sqlKey instanceof String) {
+        out.writeByte(STRING_SQL_KEY);
+        out.writeUTF((String) sqlKey);
+      } else if (sqlKey instanceof Long) {
+        out.writeByte(LONG_SQL_KEY);
+        out.writeLong((Long) sqlKey);
+      } else {
+        out.writeByte(SERIALIZED_SQL_KEY);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(baos)) {
+          objectOut.writeObject(sqlKey);
+        }
+        writeBytes(out, baos.toByteArray());
+      }
+    }
+
     @Override
     public void serializeTo(ObjectOutputStream out) throws IOException {
       out.writeObject(Type.DELETE);
@@ -296,6 +500,41 @@ public class Transaction extends ImmutableObject implements Buildable {
       return key;
     }
 
+    @SuppressWarnings("unchecked")
+    static Delete readFrom(DataInput in) throws IOException {
+      Class<Object> kind;
+      try {
+        kind = (Class<Object>) Class.forName(in.readUTF());
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException(e);
+      }
+      Key<Object> ofyKey = in.readBoolean() ? Key.create(in.readUTF()) : null;
+      Serializable sqlKey;
+      int sqlKeyTag = in.readUnsignedByte();
+      switch (sqlKeyTag) {
+        case NO_SQL_KEY:
+          return new Delete(VKey.createOfy(kind, ofyKey));
+        case STRING_SQL_KEY:
+          sqlKey = in.readUTF();
+          break;
+        case LONG_SQL_KEY:
+          sqlKey = in.readLong();
+          break;
+        case SERIALIZED_SQL_KEY:
+          try (ObjectInputStream objectIn =
+              new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+            sqlKey = (Serializable) objectIn.readObject();
+          } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown SQL key tag: " + sqlKeyTag);
+      }
+      return new Delete(
+          ofyKey == null ? VKey.createSql(kind, sqlKey) : VKey.create(kind, sqlKey, ofyKey));
+    }
+
     public static Delete deserializeFrom(ObjectInputStream in) throws IOException {
       try {
         return new Delete((VKey<?>) in.readObject());
@@ -304,4 +543,21 @@ public class Transaction extends ImmutableObject implements Buildable {
       }
     }
   }
+
+  /** Writes a byte array preceded by its length. */
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** Reads a byte array written by {@link #writeBytes}. */
+  private static byte[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new StreamCorruptedException("Negative length in serialized transaction: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
 }
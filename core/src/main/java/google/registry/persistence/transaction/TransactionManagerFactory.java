@@ -22,16 +22,20 @@ import com.google.appengine.api.utils.SystemProperty;
 import com.google.appengine.api.utils.SystemProperty.Environment.Value;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import google.registry.config.RegistryEnvironment;
 import google.registry.model.common.DatabaseMigrationStateSchedule;
 import google.registry.model.common.DatabaseMigrationStateSchedule.PrimaryDatabase;
 import google.registry.model.ofy.DatastoreTransactionManager;
 import google.registry.persistence.DaggerPersistenceComponent;
+import google.registry.persistence.PersistenceComponent;
 import google.registry.tools.RegistryToolEnvironment;
 import google.registry.util.NonFinalForTesting;
+import google.registry.util.SystemClock;
 import java.util.Optional;
 import java.util.function.Supplier;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** Factory class to create {@link TransactionManager} instance. */
 // TODO: Rename this to PersistenceFactory and move to persistence package.
@@ -47,18 +51,38 @@ public class TransactionManagerFactory {
   private static Supplier<JpaTransactionManager> jpaTm =
       Suppliers.memoize(TransactionManagerFactory::createJpaTransactionManager);
 
+  /** Supplier for the router to the replicas, initialized only once, upon first usage. */
+  private static final Supplier<ReplicaRouter> replicaRouter =
+      Suppliers.memoize(TransactionManagerFactory::createReplicaRouter);
+
+  /** The replica that read-only work running in the current thread was routed to, if any. */
+  private static final ThreadLocal<JpaTransactionManager> replicaJpaTm = new ThreadLocal<>();
+
+  /** Supplier for the component shared by the transaction managers in App Engine. */
+  private static final Supplier<PersistenceComponent> persistenceComponent =
+      Suppliers.memoize(DaggerPersistenceComponent::create);
+
   private TransactionManagerFactory() {}
 
   private static JpaTransactionManager createJpaTransactionManager() {
     // If we are running a nomulus command, jpaTm will be injected in RegistryCli.java
     // by calling setJpaTm().
     if (isInAppEngine()) {
-      return DaggerPersistenceComponent.create().appEngineJpaTransactionManager();
+      return persistenceComponent.get().appEngineJpaTransactionManager();
     } else {
       return DummyJpaTransactionManager.create();
     }
   }
 
+  private static ReplicaRouter createReplicaRouter() {
+    // Outside of App Engine, all work goes to the transaction manager returned by jpaTm().
+    if (isInAppEngine()) {
+      return persistenceComponent.get().replicaRouter();
+    } else {
+      return new ReplicaRouter(ImmutableMap.of(), Duration.ZERO, new SystemClock());
+    }
+  }
+
   private static DatastoreTransactionManager createTransactionManager() {
     return new DatastoreTransactionManager(null);
   }
@@ -80,9 +104,14 @@ public class TransactionManagerFactory {
    * Returns the {@link TransactionManager} instance.
    *
    * <p>Returns the {@link JpaTransactionManager} or {@link DatastoreTransactionManager} based on
-   * the migration schedule or the manually specified per-test transaction manager.
+   * the migration schedule or the manually specified per-test transaction manager, or the replica
+   * that the work running in the current thread was routed to by {@link ReplicaRouter}.
    */
   public static TransactionManager tm() {
+    JpaTransactionManager replica = replicaJpaTm.get();
+    if (replica != null) {
+      return replica;
+    }
     if (tmForTest.isPresent()) {
       return tmForTest.get();
     }
@@ -97,10 +126,50 @@ public class TransactionManagerFactory {
    * Returns {@link JpaTransactionManager} instance.
    *
    * <p>Between invocations of {@link TransactionManagerFactory#setJpaTm} every call to this method
-   * returns the same instance.
+   * returns the same instance, except in work that {@link ReplicaRouter} routed to a replica, where
+   * it returns the replica.
    */
   public static JpaTransactionManager jpaTm() {
-    return jpaTm.get();
+    JpaTransactionManager replica = replicaJpaTm.get();
+    return replica != null ? replica : jpaTm.get();
+  }
+
+  /** Returns the {@link ReplicaRouter} that sends read-only work to the read-only replicas. */
+  public static ReplicaRouter replicaRouter() {
+    return replicaRouter.get();
+  }
+
+  /** Returns whether the work running in the current thread was routed to a replica. */
+  public static boolean isRoutedToReplica() {
+    return replicaJpaTm.get() != null;
+  }
+
+  /**
+   * Runs work against the primary database, even from within work that was routed to a replica.
+   *
+   * <p>This is for the rare writes that read-only work may need to make, which must be made in a
+   * transaction of their own.
+   */
+  public static <T> T routeToPrimary(Supplier<T> work) {
+    JpaTransactionManager replica = replicaJpaTm.get();
+    replicaJpaTm.remove();
+    try {
+      return work.get();
+    } finally {
+      if (replica != null) {
+        replicaJpaTm.set(replica);
+      }
+    }
+  }
+
+  /** Runs work with {@link #jpaTm()} and {@link #tm()} returning the given replica. */
+  static <T> T routeToReplica(JpaTransactionManager replica, Supplier<T> work) {
+    replicaJpaTm.set(replica);
+    try {
+      return work.get();
+    } finally {
+      replicaJpaTm.remove();
+    }
   }
 
   /** Returns {@link DatastoreTransactionManager} instance. */
@@ -17,6 +17,7 @@ package google.registry.rdap;
 import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.net.HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN;
+import static google.registry.persistence.transaction.TransactionManagerFactory.replicaRouter;
 import static google.registry.request.Actions.getPathForAction;
 import static google.registry.util.DomainNameUtils.canonicalizeDomainName;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
@@ -141,8 +142,13 @@ public abstract class RdapActionBase implements Runnable {
       String pathSearchString = pathProper.substring(getActionPath().length());
       logger.atInfo().log("path search string: '%s'.", pathSearchString);
 
+      // RDAP only reads, so the lookup can be served by a read-only replica of the database.
       ReplyPayloadBase replyObject =
-          getJsonObjectForResource(pathSearchString, requestMethod == Action.Method.HEAD);
+          replicaRouter()
+              .transactReadOnly(
+                  () ->
+                      getJsonObjectForResource(
+                          pathSearchString, requestMethod == Action.Method.HEAD));
       if (replyObject instanceof BaseSearchResponse) {
         metricInformationBuilder.setIncompletenessWarningType(
             ((BaseSearchResponse) replyObject).incompletenessWarningType());
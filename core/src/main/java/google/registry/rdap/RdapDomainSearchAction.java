@@ -14,6 +14,7 @@
 
 package google.registry.rdap;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.model.index.ForeignKeyIndex.loadAndGetKey;
@@ -25,6 +26,8 @@ import static google.registry.request.Action.Method.HEAD;
 import static google.registry.util.DateTimeUtils.END_OF_TIME;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -40,6 +43,7 @@ import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
 import google.registry.persistence.VKey;
 import google.registry.persistence.transaction.CriteriaQueryBuilder;
+import google.registry.rdap.RdapAuthorization.Role;
 import google.registry.rdap.RdapJsonFormatter.OutputDataType;
 import google.registry.rdap.RdapMetrics.EndpointType;
 import google.registry.rdap.RdapMetrics.SearchType;
@@ -60,6 +64,7 @@ import java.util.Optional;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import javax.inject.Inject;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import org.hibernate.Hibernate;
 
@@ -194,8 +199,13 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
   /** Searches for domains by domain name with an initial string, wildcard and possible suffix. */
   private DomainSearchResponse searchByDomainNameWithInitialString(
       final RdapSearchPattern partialStringQuery) {
-    // We can't query for undeleted domains as part of the query itself; that would require an
-    // inequality query on deletion time, and we are already using inequality queries on
+    if (!tm().isOfy()) {
+      return searchByDomainNameSql(
+          Optional.of(partialStringQuery.getInitialString()),
+          Optional.ofNullable(partialStringQuery.getSuffix()));
+    }
+    // In Datastore, we can't query for undeleted domains as part of the query itself; that would
+    // require an inequality query on deletion time, and we are already using inequality queries on
     // fullyQualifiedDomainName. So we instead pick an arbitrary limit of
     // RESULT_SET_SIZE_SCALING_FACTOR times the result set size limit, fetch up to that many, and
     // weed out all deleted domains. If there still isn't a full result set's worth of domains, we
@@ -204,88 +214,100 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     // domains directly, rather than the foreign keys, because then we have an index on TLD if we
     // need it.
     int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
-    RdapResultSet<DomainBase> resultSet;
-    if (tm().isOfy()) {
-      Query<DomainBase> query =
-          auditedOfy()
-              .load()
-              .type(DomainBase.class)
-              .filter("fullyQualifiedDomainName <", partialStringQuery.getNextInitialString())
-              .filter("fullyQualifiedDomainName >=", partialStringQuery.getInitialString());
-      if (cursorString.isPresent()) {
-        query = query.filter("fullyQualifiedDomainName >", cursorString.get());
-      }
-      if (partialStringQuery.getSuffix() != null) {
-        query = query.filter("tld", partialStringQuery.getSuffix());
-      }
-      query = query.limit(querySizeLimit);
-      // Always check for visibility, because we couldn't look at the deletionTime in the query.
-      resultSet = getMatchingResources(query, true, querySizeLimit);
-    } else {
-      resultSet =
-          jpaTm()
-              .transact(
-                  () -> {
-                    CriteriaBuilder criteriaBuilder =
-                        jpaTm().getEntityManager().getCriteriaBuilder();
-                    CriteriaQueryBuilder<DomainBase> queryBuilder =
-                        CriteriaQueryBuilder.create(DomainBase.class)
-                            .where(
-                                "fullyQualifiedDomainName",
-                                criteriaBuilder::like,
-                                String.format("%s%%", partialStringQuery.getInitialString()))
-                            .orderByAsc("fullyQualifiedDomainName");
-                    if (cursorString.isPresent()) {
-                      queryBuilder =
-                          queryBuilder.where(
-                              "fullyQualifiedDomainName",
-                              criteriaBuilder::greaterThan,
-                              cursorString.get());
-                    }
-                    if (partialStringQuery.getSuffix() != null) {
-                      queryBuilder =
-                          queryBuilder.where(
-                              "tld", criteriaBuilder::equal, partialStringQuery.getSuffix());
-                    }
-                    return getMatchingResourcesSql(queryBuilder, true, querySizeLimit);
-                  });
+    Query<DomainBase> query =
+        auditedOfy()
+            .load()
+            .type(DomainBase.class)
+            .filter("fullyQualifiedDomainName <", partialStringQuery.getNextInitialString())
+            .filter("fullyQualifiedDomainName >=", partialStringQuery.getInitialString());
+    if (cursorString.isPresent()) {
+      query = query.filter("fullyQualifiedDomainName >", cursorString.get());
+    }
+    if (partialStringQuery.getSuffix() != null) {
+      query = query.filter("tld", partialStringQuery.getSuffix());
     }
-    return makeSearchResults(resultSet);
+    query = query.limit(querySizeLimit);
+    // Always check for visibility, because we couldn't look at the deletionTime in the query.
+    return makeSearchResults(getMatchingResources(query, true, querySizeLimit));
   }
 
   /** Searches for domains by domain name with a TLD suffix. */
   private DomainSearchResponse searchByDomainNameByTld(String tld) {
+    if (!tm().isOfy()) {
+      return searchByDomainNameSql(Optional.empty(), Optional.of(tld));
+    }
     // Even though we are not searching on fullyQualifiedDomainName, we want the results to come
     // back ordered by name, so we are still in the same boat as
     // searchByDomainNameWithInitialString, unable to perform an inequality query on deletion time.
     // Don't use queryItems, because it doesn't handle pending deletes.
     int querySizeLimit = RESULT_SET_SIZE_SCALING_FACTOR * rdapResultSetMaxSize;
-    RdapResultSet<DomainBase> resultSet;
-    if (tm().isOfy()) {
-      Query<DomainBase> query = auditedOfy().load().type(DomainBase.class).filter("tld", tld);
-      if (cursorString.isPresent()) {
-        query = query.filter("fullyQualifiedDomainName >", cursorString.get());
-      }
-      query = query.order("fullyQualifiedDomainName").limit(querySizeLimit);
-      resultSet = getMatchingResources(query, true, querySizeLimit);
-    } else {
-      resultSet =
-          jpaTm()
-              .transact(
-                  () -> {
-                    CriteriaQueryBuilder<DomainBase> builder =
-                        queryItemsSql(
-                                DomainBase.class,
-                                "tld",
-                                tld,
-                                Optional.of("fullyQualifiedDomainName"),
-                                cursorString,
-                                DeletedItemHandling.INCLUDE)
-                            .orderByAsc("fullyQualifiedDomainName");
-                    return getMatchingResourcesSql(builder, true, querySizeLimit);
-                  });
+    Query<DomainBase> query = auditedOfy().load().type(DomainBase.class).filter("tld", tld);
+    if (cursorString.isPresent()) {
+      query = query.filter("fullyQualifiedDomainName >", cursorString.get());
+    }
+    query = query.order("fullyQualifiedDomainName").limit(querySizeLimit);
+    return makeSearchResults(getMatchingResources(query, true, querySizeLimit));
+  }
+
+  /**
+   * Searches for domains by domain name in Cloud SQL, with an initial string and/or a TLD.
+   *
+   * <p>Unlike Datastore, SQL can check the deletion time and the sponsoring registrar of the
+   * domains in the same query as their name, so only visible domains are fetched, and there is no
+   * need to over-fetch and filter them afterwards. The query pages through the domains in order of
+   * name, starting after the cursor, and only fetches the columns needed for a summary, plus one
+   * more domain than fits in the result set to know whether it is truncated. The initial string is
+   * matched with a LIKE prefix, which is backed by an index with {@code text_pattern_ops}.
+   */
+  private DomainSearchResponse searchByDomainNameSql(
+      Optional<String> initialString, Optional<String> tld) {
+    ImmutableList.Builder<String> conditions = new ImmutableList.Builder<>();
+    ImmutableMap.Builder<String, Object> parameters = new ImmutableMap.Builder<>();
+    if (initialString.isPresent()) {
+      conditions.add("fullyQualifiedDomainName LIKE :pattern");
+      parameters.put("pattern", initialString.get() + "%");
+    }
+    if (tld.isPresent()) {
+      conditions.add("tld = :tld");
+      parameters.put("tld", tld.get());
+    }
+    if (cursorString.isPresent()) {
+      conditions.add("fullyQualifiedDomainName > :cursor");
+      parameters.put("cursor", cursorString.get());
+    }
+    Optional<String> desiredRegistrar = getDesiredRegistrar();
+    if (desiredRegistrar.isPresent()) {
+      conditions.add("currentSponsorClientId = :desiredRegistrar");
+      parameters.put("desiredRegistrar", desiredRegistrar.get());
+    }
+    // This is the same check as isAuthorized(), done in the database.
+    if (!shouldIncludeDeleted() || rdapAuthorization.role() == Role.PUBLIC) {
+      conditions.add("deletionTime > :now");
+      parameters.put("now", getRequestTime());
+    } else if (rdapAuthorization.role() == Role.REGISTRAR) {
+      conditions.add("(deletionTime > :now OR currentSponsorClientId IN (:authorizedRegistrars))");
+      parameters.put("now", getRequestTime());
+      parameters.put("authorizedRegistrars", rdapAuthorization.registrarIds());
     }
-    return makeSearchResults(resultSet);
+    String queryString =
+        "SELECT fullyQualifiedDomainName, repoId FROM Domain WHERE "
+            + Joiner.on(" AND ").join(conditions.build())
+            + " ORDER BY fullyQualifiedDomainName";
+    ImmutableList<DomainSummary> summaries =
+        jpaTm()
+            .transact(
+                () -> {
+                  TypedQuery<Object[]> query =
+                      jpaTm()
+                          .query(queryString, Object[].class)
+                          .setMaxResults(rdapResultSetMaxSize + 1);
+                  parameters.build().forEach(query::setParameter);
+                  return query
+                      .getResultStream()
+                      .map(row -> DomainSummary.create((String) row[0], (String) row[1]))
+                      .collect(toImmutableList());
+                });
+    return makeSearchResultsFromSummaries(summaries);
   }
 
   /**
@@ -495,10 +517,12 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     } else {
       // Hibernate does not allow us to query @Converted array fields directly, either
       // in the CriteriaQuery or the raw text format. However, Postgres does -- so we
-      // use native queries to find hosts where any of the inetAddresses match.
+      // use native queries to find hosts where any of the inetAddresses match. Array containment,
+      // unlike = ANY(), can use the GIN index on the addresses.
       StringBuilder queryBuilder =
           new StringBuilder(
-              "SELECT h.repo_id FROM \"Host\" h WHERE :address = ANY(h.inet_addresses) AND "
+              "SELECT h.repo_id FROM \"Host\" h WHERE h.inet_addresses @> "
+                  + "ARRAY[CAST(:address AS text)] AND "
                   + "h.deletion_time = CAST(:endOfTime AS timestamptz)");
       ImmutableMap.Builder<String, String> parameters =
           new ImmutableMap.Builder<String, String>()
@@ -616,6 +640,37 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
         (numHostKeysSearched > 0) ? Optional.of((long) domains.size()) : Optional.empty());
   }
 
+  /**
+   * Output JSON for the domains found by {@link #searchByDomainNameSql}.
+   *
+   * <p>A single domain is returned in full, so it is loaded. Otherwise, the summaries only need the
+   * columns that were fetched. There are no incompleteness warnings other than truncation, because
+   * the query only returns visible domains.
+   */
+  private DomainSearchResponse makeSearchResultsFromSummaries(
+      ImmutableList<DomainSummary> summaries) {
+    if (summaries.size() == 1) {
+      VKey<DomainBase> key = VKey.create(DomainBase.class, summaries.get(0).repoId());
+      return makeSearchResults(ImmutableList.of(jpaTm().transact(() -> jpaTm().loadByKey(key))));
+    }
+    metricInformationBuilder.setNumDomainsRetrieved(summaries.size());
+    DomainSearchResponse.Builder builder =
+        DomainSearchResponse.builder()
+            .setIncompletenessWarningType(IncompletenessWarningType.COMPLETE);
+    Optional<String> newCursor = Optional.empty();
+    for (DomainSummary summary : Iterables.limit(summaries, rdapResultSetMaxSize)) {
+      newCursor = Optional.of(summary.domainName());
+      builder
+          .domainSearchResultsBuilder()
+          .add(rdapJsonFormatter.createRdapDomainSummary(summary.domainName(), summary.repoId()));
+    }
+    if (rdapResultSetMaxSize < summaries.size()) {
+      builder.setNextPageUri(createNavigationUri(newCursor.get()));
+      builder.setIncompletenessWarningType(IncompletenessWarningType.TRUNCATED);
+    }
+    return builder.build();
+  }
+
   /** Output JSON for a list of domains, with no incompleteness warnings. */
   private DomainSearchResponse makeSearchResults(List<DomainBase> domains) {
     return makeSearchResults(
@@ -659,4 +714,17 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     }
     return builder.build();
   }
+
+  /** The columns of a domain that make up its summary in the search results. */
+  @AutoValue
+  abstract static class DomainSummary {
+
+    abstract String domainName();
+
+    abstract String repoId();
+
+    static DomainSummary create(String domainName, String repoId) {
+      return new AutoValue_RdapDomainSearchAction_DomainSummary(domainName, repoId);
+    }
+  }
 }
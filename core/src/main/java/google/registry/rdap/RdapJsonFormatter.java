@@ -250,6 +250,32 @@ public class RdapJsonFormatter {
     return noticeBuilder.build();
   }
 
+  /**
+   * Creates a summary of a domain, as returned by domain searches, from just its name and ROID.
+   *
+   * <p>This is the same as {@link #createRdapDomain} with {@link OutputDataType#SUMMARY}, but the
+   * domain doesn't need to be loaded.
+   */
+  RdapDomain createRdapDomainSummary(String domainName, String repoId) {
+    return createRdapDomainBuilder(domainName, repoId, OutputDataType.SUMMARY).build();
+  }
+
+  /** Creates a builder of an RDAP domain with the parts that are in every output data type. */
+  private RdapDomain.Builder createRdapDomainBuilder(
+      String domainName, String repoId, OutputDataType outputDataType) {
+    RdapDomain.Builder builder = RdapDomain.builder();
+    builder.linksBuilder().add(makeSelfLink("domain", domainName));
+    if (outputDataType != OutputDataType.FULL) {
+      builder.remarksBuilder().add(RdapIcannStandardInformation.SUMMARY_DATA_REMARK);
+    }
+    // RDAP Response Profile 15feb19 section 2.1 discusses the domain name.
+    builder.setLdhName(domainName);
+    // RDAP Response Profile 15feb19 section 2.2:
+    // The domain handle MUST be the ROID
+    builder.setHandle(repoId);
+    return builder;
+  }
+
   /**
    * Creates a JSON object for a {@link DomainBase}.
    *
@@ -264,16 +290,9 @@ public class RdapJsonFormatter {
    * @param outputDataType whether to generate FULL or SUMMARY data. Domains are never INTERNAL.
    */
   RdapDomain createRdapDomain(DomainBase domainBase, OutputDataType outputDataType) {
-    RdapDomain.Builder builder = RdapDomain.builder();
-    builder.linksBuilder().add(makeSelfLink("domain", domainBase.getDomainName()));
-    if (outputDataType != OutputDataType.FULL) {
-      builder.remarksBuilder().add(RdapIcannStandardInformation.SUMMARY_DATA_REMARK);
-    }
-    // RDAP Response Profile 15feb19 section 2.1 discusses the domain name.
-    builder.setLdhName(domainBase.getDomainName());
-    // RDAP Response Profile 15feb19 section 2.2:
-    // The domain handle MUST be the ROID
-    builder.setHandle(domainBase.getRepoId());
+    RdapDomain.Builder builder =
+        createRdapDomainBuilder(
+            domainBase.getDomainName(), domainBase.getRepoId(), outputDataType);
     // If this is a summary (search result) - we'll return now. Since there's no requirement for
     // domain searches at all, having the name, handle, and self link is enough.
     if (outputDataType == OutputDataType.SUMMARY) {
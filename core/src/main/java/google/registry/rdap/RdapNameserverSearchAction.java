@@ -269,9 +269,11 @@ public class RdapNameserverSearchAction extends RdapSearchActionBase {
     } else {
       // Hibernate does not allow us to query @Converted array fields directly, either in the
       // CriteriaQuery or the raw text format. However, Postgres does -- so we use native queries to
-      // find hosts where any of the inetAddresses match.
+      // find hosts where any of the inetAddresses match. Array containment, unlike = ANY(), can use
+      // the GIN index on the addresses.
       StringBuilder queryBuilder =
-          new StringBuilder("SELECT * FROM \"Host\" WHERE :address = ANY(inet_addresses)");
+          new StringBuilder(
+              "SELECT * FROM \"Host\" WHERE inet_addresses @> ARRAY[CAST(:address AS text)]");
       ImmutableMap.Builder<String, String> parameters =
           new ImmutableMap.Builder<String, String>()
               .put("address", InetAddresses.toAddrString(inetAddress));
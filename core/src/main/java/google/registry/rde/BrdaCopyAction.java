@@ -74,6 +74,7 @@ public final class BrdaCopyAction implements Runnable {
   @Inject @Key("brdaReceiverKey") PGPPublicKey receiverKey;
   @Inject @Key("brdaSigningKey") PGPKeyPair signingKey;
   @Inject @Key("rdeStagingDecryptionKey") PGPPrivateKey stagingDecryptionKey;
+  @Inject RydeSettings rydeSettings;
   @Inject BrdaCopyAction() {}
 
   @Override
@@ -97,7 +98,8 @@ public final class BrdaCopyAction implements Runnable {
 
     logger.atInfo().log("Writing files '%s' and '%s'.", rydeFile, sigFile);
     try (InputStream gcsInput = gcsUtils.openInputStream(xmlFilename);
-        InputStream ghostrydeDecoder = Ghostryde.decoder(gcsInput, stagingDecryptionKey);
+        InputStream ghostrydeDecoder =
+            Ghostryde.decoder(gcsInput, stagingDecryptionKey, rydeSettings);
         OutputStream rydeOut = gcsUtils.openOutputStream(rydeFile);
         OutputStream sigOut = gcsUtils.openOutputStream(sigFile);
         RydeEncoder rydeEncoder =
@@ -105,6 +107,7 @@ public final class BrdaCopyAction implements Runnable {
                 .setRydeOutput(rydeOut, receiverKey)
                 .setSignatureOutput(sigOut, signingKey)
                 .setFileMetadata(nameWithoutPrefix, xmlLength, watermark)
+                .setSettings(rydeSettings)
                 .build()) {
       ByteStreams.copy(ghostrydeDecoder, rydeEncoder);
     }
@@ -157,18 +157,27 @@ public final class Ghostryde {
    * @param encryptionKey the encryption key to use
    * @param lengthOutput if not null - will save the total length of the data written to this
    *     output. See {@link #readLength}.
+   * @param settings the tuning of the encoding streams
    */
   public static ImprovedOutputStream encoder(
-      OutputStream output, PGPPublicKey encryptionKey, @Nullable OutputStream lengthOutput) {
+      OutputStream output,
+      PGPPublicKey encryptionKey,
+      @Nullable OutputStream lengthOutput,
+      RydeSettings settings) {
 
     // We use a Closer to handle the stream .close, to make sure it's done correctly.
     Closer closer = Closer.create();
     OutputStream encryptionLayer =
         closer.register(
-            openEncryptor(output, GHOSTRYDE_USE_INTEGRITY_PACKET, ImmutableList.of(encryptionKey)));
-    OutputStream kompressor = closer.register(openCompressor(encryptionLayer));
+            openEncryptor(
+                output,
+                GHOSTRYDE_USE_INTEGRITY_PACKET,
+                ImmutableList.of(encryptionKey),
+                settings));
+    OutputStream kompressor = closer.register(openCompressor(encryptionLayer, settings));
     OutputStream fileLayer =
-        closer.register(openPgpFileWriter(kompressor, INNER_FILENAME, INNER_MODIFICATION_TIME));
+        closer.register(
+            openPgpFileWriter(kompressor, INNER_FILENAME, INNER_MODIFICATION_TIME, settings));
 
     return new ImprovedOutputStream("GhostrydeEncoder", fileLayer) {
       @Override
@@ -184,6 +193,16 @@ public final class Ghostryde {
     };
   }
 
+  /**
+   * Creates a Ghostryde Encoder with the {@link RydeSettings#DEFAULT default settings}.
+   *
+   * @see #encoder(OutputStream, PGPPublicKey, OutputStream, RydeSettings)
+   */
+  public static ImprovedOutputStream encoder(
+      OutputStream output, PGPPublicKey encryptionKey, @Nullable OutputStream lengthOutput) {
+    return encoder(output, encryptionKey, lengthOutput, RydeSettings.DEFAULT);
+  }
+
   /**
    * Creates a Ghostryde Encoder.
    *
@@ -199,13 +218,16 @@ public final class Ghostryde {
    *
    * @param input from where to read the encrypted data
    * @param decryptionKey the decryption key to use
+   * @param settings the tuning of the decoding streams
    */
-  public static ImprovedInputStream decoder(InputStream input, PGPPrivateKey decryptionKey) {
+  public static ImprovedInputStream decoder(
+      InputStream input, PGPPrivateKey decryptionKey, RydeSettings settings) {
 
     // We use a Closer to handle the stream .close, to make sure it's done correctly.
     Closer closer = Closer.create();
     InputStream decryptionLayer =
-        closer.register(openDecryptor(input, GHOSTRYDE_USE_INTEGRITY_PACKET, decryptionKey));
+        closer.register(
+            openDecryptor(input, GHOSTRYDE_USE_INTEGRITY_PACKET, decryptionKey, settings));
     InputStream decompressor = closer.register(openDecompressor(decryptionLayer));
     InputStream fileLayer = closer.register(openPgpFileReader(decompressor));
 
@@ -218,5 +240,14 @@ public final class Ghostryde {
     };
   }
 
+  /**
+   * Creates a Ghostryde decoder with the {@link RydeSettings#DEFAULT default settings}.
+   *
+   * @see #decoder(InputStream, PGPPrivateKey, RydeSettings)
+   */
+  public static ImprovedInputStream decoder(InputStream input, PGPPrivateKey decryptionKey) {
+    return decoder(input, decryptionKey, RydeSettings.DEFAULT);
+  }
+
   private Ghostryde() {}
 }
@@ -0,0 +1,209 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.base.Preconditions.checkState;
+import static google.registry.rde.Ghostryde.INNER_FILENAME;
+import static google.registry.rde.Ghostryde.INNER_MODIFICATION_TIME;
+import static google.registry.rde.RydeEncryption.GHOSTRYDE_USE_INTEGRITY_PACKET;
+import static google.registry.rde.RydeEncryption.openEncryptor;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.bouncycastle.bcpg.CompressionAlgorithmTags.ZIP;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+import google.registry.util.ImprovedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.annotation.CheckReturnValue;
+import javax.annotation.WillNotClose;
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.openpgp.PGPLiteralData;
+import org.bouncycastle.openpgp.PGPPublicKey;
+
+/**
+ * Assembles a ghostryde file out of parts that were compressed separately, possibly in parallel.
+ *
+ * <p>The ZIP compression algorithm of OpenPGP is a raw deflate stream. A deflate stream that is
+ * sync-flushed, and not finished, ends on a byte boundary and can be followed by any other deflate
+ * blocks. So each part is compressed on its own with {@link #openPartCompressor}, and the assembler
+ * copies the compressed parts as they are into a single compressed data packet, between sections
+ * that it compresses itself. Only the encryption, which can't be split up, is done serially.
+ *
+ * <p>The length of the data isn't known when the literal data packet is started, so it is written
+ * with an indeterminate length, which runs to the end of the compressed data. The result is read by
+ * {@link Ghostryde#decoder} like any other ghostryde file, and its length is written to the length
+ * file as it would be by {@link Ghostryde#encoder}.
+ *
+ * <p>Here's how you assemble a file:
+ *
+ * <pre>   {@code
+ * try (OutputStream output = new FileOutputStream(out);
+ *     GhostrydeAssembler assembler = GhostrydeAssembler.open(output, publicKey)) &lbrace;
+ *   try (OutputStream section = assembler.openSection()) &lbrace;
+ *     section.write(header);
+ *   &rbrace;
+ *   for (Part part : parts) &lbrace;
+ *     assembler.appendPart(part.openCompressedStream(), part.length());
+ *   &rbrace;
+ * &rbrace;}</pre>
+ */
+public final class GhostrydeAssembler implements Closeable {
+
+  /** Tag of an old format literal data packet, whose length is indeterminate. */
+  private static final int INDETERMINATE_LITERAL_DATA_TAG =
+      0x80 | (PacketTags.LITERAL_DATA << 2) | 0x03;
+
+  private final BCPGOutputStream compressedData;
+  private final RydeSettings settings;
+  private long length;
+  private boolean sectionOpen;
+
+  private GhostrydeAssembler(BCPGOutputStream compressedData, RydeSettings settings) {
+    this.compressedData = compressedData;
+    this.settings = settings;
+  }
+
+  /**
+   * Creates an OutputStream that compresses a part of a ghostryde file.
+   *
+   * <p>The compressed part has no final block, so it can only be read once it is appended to a
+   * {@link GhostrydeAssembler}. Closing the stream doesn't close {@code output}.
+   */
+  @CheckReturnValue
+  public static ImprovedOutputStream openPartCompressor(
+      @WillNotClose OutputStream output, RydeSettings settings) {
+    Deflater deflater = new Deflater(settings.compressionLevel(), true);
+    return new ImprovedOutputStream(
+        "GhostrydePartCompressor",
+        new DeflaterOutputStream(output, deflater, settings.bufferSize(), true),
+        false) {
+      @Override
+      protected void onClose() {
+        // close() has already sync-flushed the deflater. Finishing it would write a final block.
+        deflater.end();
+      }
+    };
+  }
+
+  /** Creates a part compressor with the {@link RydeSettings#DEFAULT default settings}. */
+  @CheckReturnValue
+  public static ImprovedOutputStream openPartCompressor(@WillNotClose OutputStream output) {
+    return openPartCompressor(output, RydeSettings.DEFAULT);
+  }
+
+  /**
+   * Starts a ghostryde file.
+   *
+   * @param output where to write the encrypted data, which is not closed by the assembler
+   * @param encryptionKey the encryption key to use
+   * @param settings the tuning of the encoding streams
+   */
+  public static GhostrydeAssembler open(
+      @WillNotClose OutputStream output, PGPPublicKey encryptionKey, RydeSettings settings)
+      throws IOException {
+    BCPGOutputStream compressedData =
+        new BCPGOutputStream(
+            openEncryptor(
+                output,
+                GHOSTRYDE_USE_INTEGRITY_PACKET,
+                ImmutableList.of(encryptionKey),
+                settings),
+            PacketTags.COMPRESSED_DATA,
+            new byte[settings.bufferSize()]);
+    compressedData.write(ZIP);
+    byte[] filename = INNER_FILENAME.getBytes(UTF_8);
+    try (OutputStream header = openPartCompressor(compressedData, settings)) {
+      header.write(INDETERMINATE_LITERAL_DATA_TAG);
+      header.write(PGPLiteralData.BINARY);
+      header.write(filename.length);
+      header.write(filename);
+      header.write(Ints.toByteArray((int) (INNER_MODIFICATION_TIME.getMillis() / 1000)));
+    }
+    return new GhostrydeAssembler(compressedData, settings);
+  }
+
+  /** Starts a ghostryde file with the {@link RydeSettings#DEFAULT default settings}. */
+  public static GhostrydeAssembler open(
+      @WillNotClose OutputStream output, PGPPublicKey encryptionKey) throws IOException {
+    return open(output, encryptionKey, RydeSettings.DEFAULT);
+  }
+
+  /**
+   * Opens a section of the file that is compressed by the assembler, such as a header.
+   *
+   * <p>The section must be closed before anything else is added to the file.
+   */
+  @CheckReturnValue
+  public ImprovedOutputStream openSection() {
+    checkState(!sectionOpen, "Previous section has not been closed");
+    sectionOpen = true;
+    return new ImprovedOutputStream(
+        "GhostrydeSection", openPartCompressor(compressedData, settings)) {
+      @Override
+      protected void onClose() {
+        length += getBytesWritten();
+        sectionOpen = false;
+      }
+    };
+  }
+
+  /**
+   * Appends a part that was compressed by {@link #openPartCompressor} to the file.
+   *
+   * @param compressedPart the compressed part, which is read to its end but not closed
+   * @param partLength the length of the part before it was compressed
+   * @return the number of compressed bytes that were appended
+   */
+  public long appendPart(@WillNotClose InputStream compressedPart, long partLength)
+      throws IOException {
+    checkState(!sectionOpen, "Previous section has not been closed");
+    length += partLength;
+    return ByteStreams.copy(compressedPart, compressedData);
+  }
+
+  /** Returns the length of the data in the file so far, before it was compressed. */
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Writes the final block of the compressed data and finishes the encryption.
+   *
+   * <p>The OutputStream passed to {@link #open} is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    checkState(!sectionOpen, "Last section has not been closed");
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.finish();
+      byte[] buffer = new byte[16];
+      while (!deflater.finished()) {
+        compressedData.write(buffer, 0, deflater.deflate(buffer));
+      }
+    } finally {
+      deflater.end();
+    }
+    // This also closes the encryption layer, but not the output under it.
+    compressedData.close();
+  }
+}
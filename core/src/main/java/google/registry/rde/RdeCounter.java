@@ -49,6 +49,11 @@ public final class RdeCounter {
     counts.get(type).incrementAndGet();
   }
 
+  /** Increment the count on a given resource by {@code delta}. */
+  public void add(RdeResourceType type, long delta) {
+    counts.get(type).addAndGet(delta);
+  }
+
   /** Constructs a header containing the sum of {@link #increment(RdeResourceType)} calls. */
   public XjcRdeHeader makeHeader(String tld, RdeMode mode) {
     XjcRdeHeader header = new XjcRdeHeader();
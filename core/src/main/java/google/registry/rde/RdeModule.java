@@ -28,6 +28,7 @@ import com.jcraft.jsch.SftpProgressMonitor;
 import dagger.Binds;
 import dagger.Module;
 import dagger.Provides;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.request.Parameter;
 import java.util.Optional;
 import javax.inject.Named;
@@ -109,6 +110,18 @@ public abstract class RdeModule {
     return getQueue("rde-report");
   }
 
+  @Provides
+  static RydeSettings provideRydeSettings(
+      @Config("rdeStreamBufferSize") int bufferSize,
+      @Config("rdeCompressionLevel") int compressionLevel,
+      @Config("rdeUseJdkCipher") boolean useJdkCipher) {
+    return RydeSettings.builder()
+        .setBufferSize(bufferSize)
+        .setCompressionLevel(compressionLevel)
+        .setUseJdkCipher(useJdkCipher)
+        .build();
+  }
+
   @Binds
   abstract SftpProgressMonitor provideSftpProgressMonitor(
       LoggingSftpProgressMonitor loggingSftpProgressMonitor);
@@ -73,6 +73,7 @@ public final class RdeReportAction implements Runnable, EscrowTask {
   @Inject @Config("rdeInterval") Duration interval;
   @Inject @Config("rdeReportLockTimeout") Duration timeout;
   @Inject @Key("rdeStagingDecryptionKey") PGPPrivateKey stagingDecryptionKey;
+  @Inject RydeSettings rydeSettings;
   @Inject RdeReportAction() {}
 
   @Override
@@ -110,7 +111,8 @@ public final class RdeReportAction implements Runnable, EscrowTask {
   /** Reads and decrypts the XML file from cloud storage. */
   private byte[] readReportFromGcs(BlobId reportFilename) throws IOException {
     try (InputStream gcsInput = gcsUtils.openInputStream(reportFilename);
-        InputStream ghostrydeDecoder = Ghostryde.decoder(gcsInput, stagingDecryptionKey)) {
+        InputStream ghostrydeDecoder =
+            Ghostryde.decoder(gcsInput, stagingDecryptionKey, rydeSettings)) {
       return ByteStreams.toByteArray(ghostrydeDecoder);
     }
   }
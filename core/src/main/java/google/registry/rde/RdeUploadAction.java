@@ -121,6 +121,7 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
   @Inject @Key("rdeReceiverKey") PGPPublicKey receiverKey;
   @Inject @Key("rdeSigningKey") PGPKeyPair signingKey;
   @Inject @Key("rdeStagingDecryptionKey") PGPPrivateKey stagingDecryptionKey;
+  @Inject RydeSettings rydeSettings;
   @Inject RdeUploadAction() {}
 
   @Override
@@ -225,7 +226,8 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
       throws Exception {
     logger.atInfo().log("Uploading XML file '%s' to remote path '%s'.", xmlFile, uploadUrl);
     try (InputStream gcsInput = gcsUtils.openInputStream(xmlFile);
-        InputStream ghostrydeDecoder = Ghostryde.decoder(gcsInput, stagingDecryptionKey)) {
+        InputStream ghostrydeDecoder =
+            Ghostryde.decoder(gcsInput, stagingDecryptionKey, rydeSettings)) {
       try (JSchSshSession session = jschSshSessionFactory.create(lazyJsch.get(), uploadUrl);
           JSchSftpChannel ftpChan = session.openSftpChannel()) {
         ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
@@ -240,6 +242,7 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
                     .setRydeOutput(teeOutput, receiverKey)
                     .setSignatureOutput(sigOut, signingKey)
                     .setFileMetadata(nameWithoutPrefix, xmlLength, watermark)
+                    .setSettings(rydeSettings)
                     .build()) {
             long bytesCopied = ByteStreams.copy(ghostrydeDecoder, rydeEncoder);
           logger.atInfo().log("Uploaded %,d bytes to path '%s'.", bytesCopied, rydeFilename);
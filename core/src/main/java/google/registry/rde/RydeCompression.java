@@ -34,8 +34,6 @@ import org.bouncycastle.openpgp.PGPException;
  */
 final class RydeCompression {
 
-  private static final int BUFFER_SIZE = 64 * 1024;
-
   /**
    * Compression algorithm to use when creating RyDE files.
    *
@@ -50,13 +48,18 @@ final class RydeCompression {
    *
    * <p>TODO(b/110465964): document where the input comes from / output goes to. Something like
    * documenting that os is the result of openEncryptor and the result goes into openFileEncoder.
+   *
+   * @param os where to write the compressed data. Is not closed by this object.
+   * @param settings the buffer size and compression level to use
    */
   @CheckReturnValue
-  static ImprovedOutputStream openCompressor(@WillNotClose OutputStream os) {
+  static ImprovedOutputStream openCompressor(
+      @WillNotClose OutputStream os, RydeSettings settings) {
     try {
       return new ImprovedOutputStream(
           "RydeCompressor",
-          new PGPCompressedDataGenerator(COMPRESSION_ALGORITHM).open(os, new byte[BUFFER_SIZE]));
+          new PGPCompressedDataGenerator(COMPRESSION_ALGORITHM, settings.compressionLevel())
+              .open(os, new byte[settings.bufferSize()]));
     } catch (IOException | PGPException e) {
       throw new RuntimeException(e);
     }
@@ -65,15 +65,17 @@ public final class RydeEncoder extends FilterOutputStream {
       String filenamePrefix,
       DateTime modified,
       PGPKeyPair signingKey,
-      Collection<PGPPublicKey> receiverKeys) {
+      Collection<PGPPublicKey> receiverKeys,
+      RydeSettings settings) {
     super(null);
     this.sigOutput = sigOutput;
     signer = closer.register(new RydePgpSigningOutputStream(checkNotNull(rydeOutput), signingKey));
     OutputStream encryptLayer =
-        closer.register(openEncryptor(signer, RYDE_USE_INTEGRITY_PACKET, receiverKeys));
-    OutputStream kompressor = closer.register(openCompressor(encryptLayer));
+        closer.register(openEncryptor(signer, RYDE_USE_INTEGRITY_PACKET, receiverKeys, settings));
+    OutputStream kompressor = closer.register(openCompressor(encryptLayer, settings));
     OutputStream fileLayer =
-        closer.register(openPgpFileWriter(kompressor, filenamePrefix + ".tar", modified));
+        closer.register(
+            openPgpFileWriter(kompressor, filenamePrefix + ".tar", modified, settings));
     this.out =
         closer.register(openTarWriter(fileLayer, dataLength, filenamePrefix + ".xml", modified));
   }
@@ -113,6 +115,7 @@ public final class RydeEncoder extends FilterOutputStream {
     DateTime modified;
     PGPKeyPair signingKey;
     ImmutableList<PGPPublicKey> receiverKeys;
+    RydeSettings settings = RydeSettings.DEFAULT;
 
     /** Sets the OutputStream for the Ryde-encoded data, and the keys used for the encryption. */
     public Builder setRydeOutput(
@@ -138,6 +141,12 @@ public final class RydeEncoder extends FilterOutputStream {
       return this;
     }
 
+    /** Sets the tuning of the encoding streams, which are otherwise the default ones. */
+    public Builder setSettings(RydeSettings settings) {
+      this.settings = checkNotNull(settings, "settings");
+      return this;
+    }
+
     /** Returns the built {@link RydeEncoder}. */
     public RydeEncoder build() {
       return new RydeEncoder(
@@ -147,7 +156,8 @@ public final class RydeEncoder extends FilterOutputStream {
           checkNotNull(filenamePrefix, "Must call 'setFileMetadata'"),
           checkNotNull(modified, "Must call 'setFileMetadata'"),
           checkNotNull(signingKey, "Must call 'setSignatureOutput'"),
-          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"));
+          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"),
+          settings);
     }
   }
 }
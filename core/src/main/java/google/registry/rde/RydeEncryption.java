@@ -63,8 +63,6 @@ import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodG
  */
 final class RydeEncryption {
 
-  private static final int BUFFER_SIZE = 64 * 1024;
-
   /**
    * The symmetric encryption algorithm to use. Do not change this value without checking the RFCs
    * to make sure the encryption algorithm and strength combination is allowed.
@@ -110,6 +108,7 @@ final class RydeEncryption {
    *     allowed in RyDE.
    * @param receiverKeys at least one encryption key. The message will be decryptable with any of
    *     the given keys.
+   * @param settings the buffer size and cipher provider to use
    * @throws IllegalArgumentException if {@code publicKey} is invalid
    * @throws RuntimeException to rethrow {@link PGPException} and {@link IOException}
    */
@@ -117,18 +116,24 @@ final class RydeEncryption {
   static ImprovedOutputStream openEncryptor(
       @WillNotClose OutputStream os,
       boolean withIntegrityPacket,
-      Collection<PGPPublicKey> receiverKeys) {
+      Collection<PGPPublicKey> receiverKeys,
+      RydeSettings settings) {
     try {
-      PGPEncryptedDataGenerator encryptor =
-          new PGPEncryptedDataGenerator(
-              new JcePGPDataEncryptorBuilder(CIPHER)
-                  .setWithIntegrityPacket(withIntegrityPacket)
-                  .setSecureRandom(SecureRandom.getInstance(RANDOM_SOURCE))
-                  .setProvider(PROVIDER_NAME));
+      JcePGPDataEncryptorBuilder encryptorBuilder =
+          new JcePGPDataEncryptorBuilder(CIPHER)
+              .setWithIntegrityPacket(withIntegrityPacket)
+              .setSecureRandom(SecureRandom.getInstance(RANDOM_SOURCE));
+      // Without an explicit provider, the first installed provider that implements the cipher is
+      // used, which is the JDK's.
+      if (!settings.useJdkCipher()) {
+        encryptorBuilder.setProvider(PROVIDER_NAME);
+      }
+      PGPEncryptedDataGenerator encryptor = new PGPEncryptedDataGenerator(encryptorBuilder);
       checkArgument(!receiverKeys.isEmpty(), "Must give at least one receiver key");
       receiverKeys.forEach(
           key -> encryptor.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(key)));
-      return new ImprovedOutputStream("RydeEncryptor", encryptor.open(os, new byte[BUFFER_SIZE]));
+      return new ImprovedOutputStream(
+          "RydeEncryptor", encryptor.open(os, new byte[settings.bufferSize()]));
     } catch (NoSuchAlgorithmException e) {
       throw new ProviderException(e);
     } catch (IOException | PGPException e) {
@@ -146,12 +151,16 @@ final class RydeEncryption {
    * @param checkIntegrityPacket whether to check the integrity packet on the encrypted data. Only
    *     use if the integrety packet was created when encrypting.
    * @param privateKey the private counterpart of one of the receiverKeys used to encrypt.
+   * @param settings the cipher provider to use
    * @throws IllegalArgumentException if {@code publicKey} is invalid
    * @throws RuntimeException to rethrow {@link PGPException} and {@link IOException}
    */
   @CheckReturnValue
   static ImprovedInputStream openDecryptor(
-      @WillNotClose InputStream input, boolean checkIntegrityPacket, PGPPrivateKey privateKey) {
+      @WillNotClose InputStream input,
+      boolean checkIntegrityPacket,
+      PGPPrivateKey privateKey,
+      RydeSettings settings) {
     try {
       PGPEncryptedDataList ciphertextList =
           PgpUtils.readSinglePgpObject(input, PGPEncryptedDataList.class);
@@ -172,11 +181,14 @@ final class RydeEncryption {
                 keyIds, privateKey.getKeyID()));
       }
 
-      InputStream dataStream =
-          cyphertext.get().getDataStream(
-              new JcePublicKeyDataDecryptorFactoryBuilder()
-                  .setProvider(PROVIDER_NAME)
-                  .build(privateKey));
+      JcePublicKeyDataDecryptorFactoryBuilder decryptorBuilder =
+          new JcePublicKeyDataDecryptorFactoryBuilder();
+      // As when encrypting, the JDK's implementations are used if no provider is set. BouncyCastle
+      // is still used for the private key if the JDK doesn't support its algorithm.
+      if (!settings.useJdkCipher()) {
+        decryptorBuilder.setProvider(PROVIDER_NAME);
+      }
+      InputStream dataStream = cyphertext.get().getDataStream(decryptorBuilder.build(privateKey));
       if (!checkIntegrityPacket) {
         return new ImprovedInputStream("RydeDecryptor", dataStream);
       }
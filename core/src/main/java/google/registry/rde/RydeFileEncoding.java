@@ -39,8 +39,6 @@ import org.joda.time.DateTime;
  */
 final class RydeFileEncoding {
 
-  private static final int BUFFER_SIZE = 64 * 1024;
-
   /**
    * Creates an OutputStream that encodes the data as a PGP file blob.
    *
@@ -51,15 +49,16 @@ final class RydeFileEncoding {
    * @param os where to write the file blob. Is not closed by this object.
    * @param filename the filename to set in the file's metadata.
    * @param modified the modification time to set in the file's metadata.
+   * @param settings the buffer size to use
    */
   @CheckReturnValue
   static ImprovedOutputStream openPgpFileWriter(
-      @WillNotClose OutputStream os, String filename, DateTime modified) {
+      @WillNotClose OutputStream os, String filename, DateTime modified, RydeSettings settings) {
     try {
       return new ImprovedOutputStream(
           "PgpFileWriter",
           new PGPLiteralDataGenerator()
-              .open(os, BINARY, filename, modified.toDate(), new byte[BUFFER_SIZE]));
+              .open(os, BINARY, filename, modified.toDate(), new byte[settings.bufferSize()]));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
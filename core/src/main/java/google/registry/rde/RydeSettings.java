@@ -0,0 +1,98 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import java.util.zip.Deflater;
+
+/**
+ * Tuning of the streams that encode and decode RyDE and ghostryde files.
+ *
+ * <p>None of these settings change the format of the files, which stays within the escrow spec: the
+ * compression algorithm is always ZIP and the cipher always AES-128, so files written with any
+ * settings can be read with any other settings.
+ */
+@AutoValue
+public abstract class RydeSettings {
+
+  /** The smallest buffer allowed, which is the smallest first partial packet of RFC 4880. */
+  private static final int MIN_BUFFER_SIZE = 512;
+
+  /** The settings that have always been used, with BouncyCastle doing all the cryptography. */
+  public static final RydeSettings DEFAULT = builder().build();
+
+  /**
+   * The size of the buffers of the OpenPGP packets that are written.
+   *
+   * <p>This is also the length of the partial packets, so larger buffers mean fewer packet headers
+   * and fewer, larger writes to the underlying stream.
+   */
+  public abstract int bufferSize();
+
+  /**
+   * The deflate level of the ZIP compression, from {@link Deflater#NO_COMPRESSION} to {@link
+   * Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+   */
+  public abstract int compressionLevel();
+
+  /**
+   * Whether the encryption layer uses the JCE providers of the JDK instead of BouncyCastle.
+   *
+   * <p>The JDK implements AES with intrinsics that use the AES instructions of the CPU, whereas
+   * BouncyCastle implements it in Java. BouncyCastle is still used for the OpenPGP packets, and
+   * for any algorithm that the JDK doesn't implement, such as the OpenPGP CFB mode of RyDE files,
+   * which have no integrity packet, and ElGamal keys.
+   */
+  public abstract boolean useJdkCipher();
+
+  public static Builder builder() {
+    return new AutoValue_RydeSettings.Builder()
+        .setBufferSize(64 * 1024)
+        .setCompressionLevel(Deflater.DEFAULT_COMPRESSION)
+        .setUseJdkCipher(false);
+  }
+
+  /** Builder for {@link RydeSettings}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    public abstract Builder setBufferSize(int bufferSize);
+
+    public abstract Builder setCompressionLevel(int compressionLevel);
+
+    public abstract Builder setUseJdkCipher(boolean useJdkCipher);
+
+    abstract RydeSettings autoBuild();
+
+    public RydeSettings build() {
+      RydeSettings settings = autoBuild();
+      // BouncyCastle only writes partial packets whose length is a power of two.
+      checkArgument(
+          settings.bufferSize() >= MIN_BUFFER_SIZE && Integer.bitCount(settings.bufferSize()) == 1,
+          "Buffer size must be a power of two of at least %s: %s",
+          MIN_BUFFER_SIZE,
+          settings.bufferSize());
+      checkArgument(
+          settings.compressionLevel() == Deflater.DEFAULT_COMPRESSION
+              || (settings.compressionLevel() >= Deflater.NO_COMPRESSION
+                  && settings.compressionLevel() <= Deflater.BEST_COMPRESSION),
+          "Invalid compression level: %s",
+          settings.compressionLevel());
+      return settings;
+    }
+  }
+}
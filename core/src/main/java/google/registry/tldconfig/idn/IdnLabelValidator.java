@@ -51,9 +51,22 @@ public final class IdnLabelValidator {
    * TLD. If no match is found, an absent value is returned.
    */
   public Optional<String> findValidIdnTableForTld(String label, String tld) {
+    return findValidIdnTable(label, getIdnTablesForTld(tld));
+  }
+
+  /** Returns the {@link IdnTable}s that are configured for the given TLD, in order of priority. */
+  public ImmutableList<IdnTableEnum> getIdnTablesForTld(String tld) {
+    return Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES);
+  }
+
+  /**
+   * Returns name of first {@link IdnTable} among the given ones that considers the label valid, or
+   * an absent value if there is none.
+   */
+  public static Optional<String> findValidIdnTable(
+      String label, ImmutableList<IdnTableEnum> idnTables) {
     String unicodeString = Idn.toUnicode(label);
-    for (IdnTableEnum idnTable :
-        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES)) {
+    for (IdnTableEnum idnTable : idnTables) {
       if (idnTable.getTable().isValidLabel(unicodeString)) {
         return Optional.of(idnTable.getTable().getName());
       }
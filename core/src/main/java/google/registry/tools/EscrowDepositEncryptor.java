@@ -21,6 +21,7 @@ import google.registry.keyring.api.KeyModule.Key;
 import google.registry.model.rde.RdeNamingUtils;
 import google.registry.rde.RdeUtil;
 import google.registry.rde.RydeEncoder;
+import google.registry.rde.RydeSettings;
 import google.registry.xml.XmlException;
 import java.io.BufferedInputStream;
 import java.io.IOException;
@@ -42,6 +43,7 @@ final class EscrowDepositEncryptor {
 
   @Inject @Key("rdeSigningKey") Provider<PGPKeyPair> rdeSigningKey;
   @Inject @Key("rdeReceiverKey") Provider<PGPPublicKey> rdeReceiverKey;
+  @Inject RydeSettings rydeSettings;
   @Inject EscrowDepositEncryptor() {}
 
   /** Creates a {@code .ryde} and {@code .sig} file, provided an XML deposit file. */
@@ -61,6 +63,7 @@ final class EscrowDepositEncryptor {
               .setRydeOutput(rydeOutput, rdeReceiverKey.get())
               .setSignatureOutput(sigOutput, signingKey)
               .setFileMetadata(name, Files.size(xmlFile), watermark)
+              .setSettings(rydeSettings)
               .build()) {
         ByteStreams.copy(xmlInput, rydeEncoder);
       }
@@ -23,6 +23,7 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import google.registry.keyring.api.KeyModule.Key;
 import google.registry.rde.Ghostryde;
+import google.registry.rde.RydeSettings;
 import google.registry.tools.params.PathParameter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -75,6 +76,8 @@ final class GhostrydeCommand implements CommandWithRemoteApi {
   @Key("rdeStagingDecryptionKey")
   Provider<PGPPrivateKey> rdeStagingDecryptionKey;
 
+  @Inject RydeSettings rydeSettings;
+
   @Override
   public final void run() throws Exception {
     checkArgument(encrypt ^ decrypt, "Please specify either --encrypt or --decrypt");
@@ -96,7 +99,7 @@ final class GhostrydeCommand implements CommandWithRemoteApi {
                 ? null
                 : Files.asByteSink(lenOutFile.toFile()).openBufferedStream();
         OutputStream ghostrydeEncoder =
-            Ghostryde.encoder(out, rdeStagingEncryptionKey.get(), lenOut);
+            Ghostryde.encoder(out, rdeStagingEncryptionKey.get(), lenOut, rydeSettings);
         InputStream in = Files.asByteSource(input.toFile()).openBufferedStream()) {
       ByteStreams.copy(in, ghostrydeEncoder);
     }
@@ -104,7 +107,8 @@ final class GhostrydeCommand implements CommandWithRemoteApi {
 
   private void runDecrypt() throws IOException {
     try (InputStream in = Files.asByteSource(input.toFile()).openBufferedStream();
-        InputStream ghostDecoder = Ghostryde.decoder(in, rdeStagingDecryptionKey.get())) {
+        InputStream ghostDecoder =
+            Ghostryde.decoder(in, rdeStagingDecryptionKey.get(), rydeSettings)) {
       if (output == null) {
         ByteStreams.copy(ghostDecoder, System.out);
       } else {
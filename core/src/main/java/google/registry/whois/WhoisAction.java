@@ -14,6 +14,7 @@
 
 package google.registry.whois;
 
+import static google.registry.persistence.transaction.TransactionManagerFactory.replicaRouter;
 import static google.registry.request.Action.Method.POST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
@@ -88,15 +89,19 @@ public class WhoisAction implements Runnable {
       metricBuilder.setCommand(command);
       WhoisResponseResults results =
           retrier.callWithRetry(
-              () -> {
-                WhoisResponseResults results1;
-                try {
-                  results1 = command.executeQuery(now).getResponse(PREFER_UNICODE, disclaimer);
-                } catch (WhoisException e) {
-                  throw new UncheckedWhoisException(e);
-                }
-                return results1;
-              },
+              () ->
+                  // WHOIS only reads, so the query can be served by a read-only replica.
+                  replicaRouter()
+                      .transactReadOnly(
+                          () -> {
+                            try {
+                              return command
+                                  .executeQuery(now)
+                                  .getResponse(PREFER_UNICODE, disclaimer);
+                            } catch (WhoisException e) {
+                              throw new UncheckedWhoisException(e);
+                            }
+                          }),
               DatastoreTimeoutException.class,
               DatastoreFailureException.class);
       responseText = results.plainTextOutput();
@@ -22,6 +22,7 @@ import static com.google.common.net.HttpHeaders.EXPIRES;
 import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
 import static com.google.common.net.HttpHeaders.X_CONTENT_TYPE_OPTIONS;
 import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static google.registry.persistence.transaction.TransactionManagerFactory.replicaRouter;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
@@ -36,6 +37,7 @@ import google.registry.request.RequestPath;
 import google.registry.request.Response;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
+import google.registry.whois.WhoisException.UncheckedWhoisException;
 import google.registry.whois.WhoisMetrics.WhoisMetric;
 import google.registry.whois.WhoisResponse.WhoisResponseResults;
 import java.io.StringReader;
@@ -155,11 +157,20 @@ public final class WhoisHttpAction implements Runnable {
       DateTime now = clock.nowUtc();
       WhoisCommand command = whoisReader.readCommand(new StringReader(commandText), false, now);
       metricBuilder.setCommand(command);
-      sendResponse(SC_OK, command.executeQuery(now));
+      // WHOIS only reads, so the query can be served by a read-only replica of the database.
+      replicaRouter()
+          .transactReadOnly(
+              () -> {
+                try {
+                  sendResponse(SC_OK, command.executeQuery(now));
+                } catch (WhoisException e) {
+                  throw new UncheckedWhoisException(e);
+                }
+              });
+    } catch (UncheckedWhoisException e) {
+      sendError((WhoisException) e.getCause());
     } catch (WhoisException e) {
-      metricBuilder.setStatus(e.getStatus());
-      metricBuilder.setNumResults(0);
-      sendResponse(e.getStatus(), e);
+      sendError(e);
     } catch (Throwable e) {
       metricBuilder.setStatus(SC_INTERNAL_SERVER_ERROR);
       metricBuilder.setNumResults(0);
@@ -184,6 +195,12 @@ public final class WhoisHttpAction implements Runnable {
     response.setPayload(results.plainTextOutput());
   }
 
+  private void sendError(WhoisException e) {
+    metricBuilder.setStatus(e.getStatus());
+    metricBuilder.setNumResults(0);
+    sendResponse(e.getStatus(), e);
+  }
+
   /** Removes {@code %xx} escape codes from request path components. */
   private String decode(String pathData)
       throws UnsupportedEncodingException, WhoisException {
@@ -0,0 +1,122 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayDeque;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.helpers.DefaultValidationEventHandler;
+import javax.xml.validation.Schema;
+
+/**
+ * Thread-confined pool of {@link Marshaller} and {@link Unmarshaller} instances for a single
+ * {@link JAXBContext}.
+ *
+ * <p>Creating a marshaller from a {@link JAXBContext} is surprisingly expensive, and neither
+ * marshallers nor unmarshallers are thread-safe, so we keep a small stack of idle instances per
+ * thread. Borrowing pops an idle instance off the calling thread's stack (or creates a new one if
+ * there are none), and releasing pushes it back. A stack rather than a single slot per thread keeps
+ * this correct even if marshaling code somehow re-enters the pool on the same thread.
+ *
+ * <p>Marshallers are fully reconfigured on every borrow, so callers never observe properties left
+ * over from a previous use. Callers should only release instances that completed successfully;
+ * anything that threw is simply dropped and left to the garbage collector.
+ */
+@ThreadSafe
+final class MarshallerPool {
+
+  /** Maximum number of idle instances of each kind kept per thread. */
+  @VisibleForTesting static final int MAX_IDLE_PER_THREAD = 4;
+
+  private final JAXBContext jaxbContext;
+  private final Schema schema;
+
+  private final ThreadLocal<ArrayDeque<Marshaller>> idleMarshallers =
+      ThreadLocal.withInitial(ArrayDeque::new);
+  private final ThreadLocal<ArrayDeque<Unmarshaller>> idleUnmarshallers =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
+  MarshallerPool(JAXBContext jaxbContext, Schema schema) {
+    this.jaxbContext = jaxbContext;
+    this.schema = schema;
+  }
+
+  /**
+   * Borrows a {@link Marshaller} configured with the given settings.
+   *
+   * <p>The caller must hand the marshaller back with {@link #release(Marshaller)} once done, on
+   * the same thread, and must not use it afterwards.
+   *
+   * @param validate whether to validate against the pool's schema while marshaling
+   * @param format whether or not to indent the output
+   * @param encoding the output encoding, or {@code null} for the JAXB default of UTF-8
+   * @param fragment whether to omit the XML declaration
+   */
+  Marshaller borrowMarshaller(
+      boolean validate, OutputFormat format, @Nullable String encoding, boolean fragment)
+      throws JAXBException {
+    Marshaller marshaller = idleMarshallers.get().pollFirst();
+    if (marshaller == null) {
+      marshaller = jaxbContext.createMarshaller();
+    }
+    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, fragment);
+    marshaller.setProperty(Marshaller.JAXB_ENCODING, encoding == null ? UTF_8.name() : encoding);
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, format == OutputFormat.FORMATTED);
+    marshaller.setSchema(validate ? schema : null);
+    return marshaller;
+  }
+
+  /** Returns a {@link Marshaller} obtained from {@link #borrowMarshaller} to the pool. */
+  void release(Marshaller marshaller) {
+    ArrayDeque<Marshaller> idle = idleMarshallers.get();
+    if (idle.size() < MAX_IDLE_PER_THREAD) {
+      idle.addFirst(marshaller);
+    }
+  }
+
+  /**
+   * Borrows an {@link Unmarshaller} that validates against the pool's schema.
+   *
+   * <p>The caller must hand the unmarshaller back with {@link #release(Unmarshaller)} once done,
+   * on the same thread, and must not use it afterwards.
+   */
+  Unmarshaller borrowUnmarshaller() throws JAXBException {
+    Unmarshaller unmarshaller = idleUnmarshallers.get().pollFirst();
+    if (unmarshaller == null) {
+      unmarshaller = jaxbContext.createUnmarshaller();
+      unmarshaller.setSchema(schema);
+      // This handler was the default in JAXB 1.0. It fails on any exception thrown while
+      // unmarshalling. In JAXB 2.0 some errors are considered recoverable and are ignored, which is
+      // not what we want, so we have to set this explicitly.
+      unmarshaller.setEventHandler(new DefaultValidationEventHandler());
+    }
+    return unmarshaller;
+  }
+
+  /** Returns an {@link Unmarshaller} obtained from {@link #borrowUnmarshaller} to the pool. */
+  void release(Unmarshaller unmarshaller) {
+    ArrayDeque<Unmarshaller> idle = idleUnmarshallers.get();
+    if (idle.size() < MAX_IDLE_PER_THREAD) {
+      idle.addFirst(unmarshaller);
+    }
+  }
+}
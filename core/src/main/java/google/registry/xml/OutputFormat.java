@@ -0,0 +1,24 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+/** Enum that determines whether marshaled xml should be indented. */
+public enum OutputFormat {
+  /** Indent each element on its own line, for human readers. */
+  FORMATTED,
+
+  /** Emit everything without added whitespace, for machine-to-machine traffic. */
+  COMPACT
+}
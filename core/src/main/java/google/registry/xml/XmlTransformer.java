@@ -16,6 +16,7 @@ package google.registry.xml;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.nullToEmpty;
+import static google.registry.xml.OutputFormat.FORMATTED;
 import static google.registry.xml.ValidationMode.STRICT;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -33,7 +34,6 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -41,7 +41,6 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.bind.helpers.DefaultValidationEventHandler;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -75,6 +74,9 @@ public class XmlTransformer {
   /** A {@link Schema} to validate XML. */
   private final Schema schema;
 
+  /** Reusable marshallers and unmarshallers bound to {@link #jaxbContext} and {@link #schema}. */
+  private final MarshallerPool pool;
+
   /**
    * Create a new XmlTransformer that validates using the given schemas, but uses the given classes
    * (rather than generated ones) for marshaling and unmarshaling.
@@ -86,6 +88,7 @@ public class XmlTransformer {
     try {
       this.jaxbContext = JAXBContext.newInstance(recognizedClasses);
       this.schema = loadXmlSchemas(schemaFilenames);
+      this.pool = new MarshallerPool(jaxbContext, schema);
     } catch (JAXBException e) {
       throw new RuntimeException(e);
     }
@@ -103,6 +106,7 @@ public class XmlTransformer {
     try {
       this.jaxbContext = initJaxbContext(pakkage, schemaNamesToFilenames.keySet());
       this.schema = loadXmlSchemas(ImmutableList.copyOf(schemaNamesToFilenames.values()));
+      this.pool = new MarshallerPool(jaxbContext, schema);
     } catch (JAXBException e) {
       throw new RuntimeException(e);
     }
@@ -144,8 +148,11 @@ public class XmlTransformer {
    */
   public <T> T unmarshal(Class<T> clazz, InputStream stream) throws XmlException {
     try (InputStream autoClosingStream = stream) {
-      return clazz.cast(getUnmarshaller().unmarshal(
+      Unmarshaller unmarshaller = pool.borrowUnmarshaller();
+      T result = clazz.cast(unmarshaller.unmarshal(
           XML_INPUT_FACTORY.createXMLStreamReader(new StreamSource(autoClosingStream, SYSTEM_ID))));
+      pool.release(unmarshaller);
+      return result;
     } catch (UnmarshalException e) {
       // Plain old parsing exceptions have a SAXParseException with no further cause.
       if (e.getLinkedException() instanceof SAXParseException
@@ -188,12 +195,13 @@ public class XmlTransformer {
    * @throws XmlException to rethrow {@link JAXBException}.
    */
   public void marshal(Object root, Writer writer, ValidationMode validation) throws XmlException {
+    checkNotNull(root, "root");
+    checkNotNull(writer, "writer");
+    // Omit XML declaration because character-oriented output prevents us from knowing.
+    Marshaller marshaller = borrowMarshaller(validation, FORMATTED, null, true);
     try {
-      // Omit XML declaration because character-oriented output prevents us from knowing.
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_FRAGMENT, true)).marshal(
-              checkNotNull(root, "root"), checkNotNull(writer, "writer"));
+      marshaller.marshal(root, writer);
+      pool.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -216,11 +224,36 @@ public class XmlTransformer {
    */
   public void marshal(Object root, OutputStream out, Charset charset, ValidationMode validation)
       throws XmlException {
+    marshal(root, out, charset, validation, FORMATTED);
+  }
+
+  /**
+   * Validates and streams {@code root} as XML bytes with XML declaration, in the given format.
+   *
+   * <p>This behaves like {@link #marshal(Object, OutputStream, Charset, ValidationMode)}, except
+   * that {@link OutputFormat#COMPACT} output omits all indentation, which makes it smaller and
+   * cheaper to produce for responses that no human will read.
+   *
+   * @param root the object to write
+   * @param out byte-oriented output for writing XML. This method won't close it.
+   * @param charset should almost always be set to {@code "utf-8"}.
+   * @param validation whether to validate while marshaling
+   * @param format whether to indent the output
+   * @throws XmlException to rethrow {@link JAXBException}.
+   */
+  public void marshal(
+      Object root,
+      OutputStream out,
+      Charset charset,
+      ValidationMode validation,
+      OutputFormat format)
+      throws XmlException {
+    checkNotNull(root, "root");
+    checkNotNull(out, "out");
+    Marshaller marshaller = borrowMarshaller(validation, format, charset.toString(), false);
     try {
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_ENCODING, charset.toString())).marshal(
-              checkNotNull(root, "root"), checkNotNull(out, "out"));
+      marshaller.marshal(root, out);
+      pool.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -239,9 +272,12 @@ public class XmlTransformer {
    * @throws XmlException to rethrow {@link JAXBException}.
    */
   public void marshalStrict(Object root, Result result) throws XmlException {
+    checkNotNull(root, "root");
+    checkNotNull(result, "result");
+    Marshaller marshaller = borrowMarshaller(STRICT, FORMATTED, null, false);
     try {
-      getMarshaller(schema, ImmutableMap.of())
-          .marshal(checkNotNull(root, "root"), checkNotNull(result, "result"));
+      marshaller.marshal(root, result);
+      pool.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -274,27 +310,15 @@ public class XmlTransformer {
     return JAXBContext.newInstance(prefix + Joiner.on(':' + prefix).join(schemaNames));
   }
 
-  /** Get a {@link Unmarshaller} instance with the default configuration. */
-  private Unmarshaller getUnmarshaller() throws JAXBException {
-    Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-    unmarshaller.setSchema(schema);
-    // This handler was the default in JAXB 1.0. It fails on any exception thrown while
-    // unmarshalling. In JAXB 2.0 some errors are considered recoverable and are ignored, which is
-    // not what we want, so we have to set this explicitly.
-    unmarshaller.setEventHandler(new DefaultValidationEventHandler());
-    return unmarshaller;
-  }
-
-  /** Get a {@link Marshaller} instance with the given configuration. */
-  private Marshaller getMarshaller(@Nullable Schema schemaParam, Map<String, ?> properties)
-      throws JAXBException {
-    Marshaller marshaller = jaxbContext.createMarshaller();
-    for (Map.Entry<String, ?> entry : properties.entrySet()) {
-      marshaller.setProperty(entry.getKey(), entry.getValue());
+  /** Borrows a {@link Marshaller} from {@link #pool}, which the caller must release. */
+  private Marshaller borrowMarshaller(
+      ValidationMode validation, OutputFormat format, @Nullable String encoding, boolean fragment)
+      throws XmlException {
+    try {
+      return pool.borrowMarshaller(STRICT.equals(validation), format, encoding, fragment);
+    } catch (JAXBException e) {
+      throw new XmlException(e);
     }
-    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-    marshaller.setSchema(schemaParam);
-    return marshaller;
   }
 
   /** Pretty print XML. */
@@ -37,3 +37,4 @@ AND t.invoicingEnabled IS TRUE
 AND b.billingTime BETWEEN CAST('%FIRST_TIMESTAMP_OF_MONTH%' AS timestamp) AND CAST('%LAST_TIMESTAMP_OF_MONTH%' AS timestamp)
 AND c.id IS NULL
 AND cr.id IS NULL
+AND b.id BETWEEN :partitionStart AND :partitionEnd
@@ -15,6 +15,7 @@
 package google.registry.backup;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.backup.RestoreCommitLogsActionTest.createCheckpoint;
 import static google.registry.backup.RestoreCommitLogsActionTest.saveDiffFile;
@@ -34,12 +35,15 @@ import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
@@ -79,6 +83,7 @@ import google.registry.testing.InjectExtension;
 import google.registry.testing.TestObject;
 import google.registry.util.RequestStatusChecker;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -144,6 +149,7 @@ public class ReplayCommitLogsToSqlActionTest {
     action.diffLister.gcsUtils = gcsUtils;
     action.diffLister.executorProvider = MoreExecutors::newDirectExecutorService;
     action.diffLister.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    action.executorProvider = MoreExecutors::newDirectExecutorService;
     jpaTm()
         .transact(
             () ->
@@ -647,6 +653,70 @@ public class ReplayCommitLogsToSqlActionTest {
     runAndAssertSuccess(now.minusMinutes(1), 1, 2);
   }
 
+  @Test
+  void testReplay_failedBatch_replayedOneTransactionAtATime() throws Exception {
+    DateTime now = fakeClock.nowUtc();
+    jpaTm().transact(() -> SqlReplayCheckpoint.set(now.minusMinutes(1).minusMillis(1)));
+    Key<CommitLogManifest> manifestKeyOne =
+        CommitLogManifest.createKey(getBucketKey(1), now.minusMinutes(3));
+    Key<CommitLogManifest> manifestKeyTwo =
+        CommitLogManifest.createKey(getBucketKey(1), now.minusMinutes(2));
+    saveDiffFile(
+        gcsUtils,
+        createCheckpoint(now.minusMinutes(1)),
+        CommitLogManifest.create(getBucketKey(1), now.minusMinutes(3), ImmutableSet.of()),
+        CommitLogMutation.create(manifestKeyOne, TestObject.create("a")),
+        CommitLogManifest.create(getBucketKey(1), now.minusMinutes(2), ImmutableSet.of()),
+        CommitLogMutation.create(manifestKeyTwo, TestObject.create("b")));
+
+    // Fail the batch the first time that "b" is written, after "a" was already written in it
+    JpaTransactionManager spy = spy(jpaTm());
+    TransactionManagerFactory.setJpaTm(() -> spy);
+    lenient()
+        .doThrow(new IllegalStateException("Simulated failure"))
+        .doCallRealMethod()
+        .when(spy)
+        .putIgnoringReadOnly(argThat(entity -> isTestObject(entity, "b")));
+
+    runAndAssertSuccess(now.minusMinutes(1), 1, 2);
+    assertExpectedIds("a", "b");
+    // "a" was rolled back with the batch and written again on its own
+    verify(spy, times(2)).putIgnoringReadOnly(argThat(entity -> isTestObject(entity, "a")));
+  }
+
+  @Test
+  void testGroupIntoWaves() {
+    ImmutableList<VersionedEntity> first = deletions("a", "b");
+    ImmutableList<VersionedEntity> second = deletions("c");
+    ImmutableList<VersionedEntity> third = deletions("a", "d");
+    ImmutableList<VersionedEntity> fourth = deletions("d");
+    ImmutableList<VersionedEntity> fifth = deletions("e");
+
+    ImmutableListMultimap<Integer, ImmutableList<VersionedEntity>> waves =
+        ReplayCommitLogsToSqlAction.groupIntoWaves(
+            ImmutableList.of(first, second, third, fourth, fifth));
+
+    assertThat(waves.keySet()).containsExactly(0, 1, 2).inOrder();
+    assertThat(waves.get(0)).containsExactly(first, second, fifth).inOrder();
+    assertThat(waves.get(1)).containsExactly(third);
+    assertThat(waves.get(2)).containsExactly(fourth);
+  }
+
+  private ImmutableList<VersionedEntity> deletions(String... ids) {
+    return VersionedEntity.fromManifest(
+            CommitLogManifest.create(
+                getBucketKey(1),
+                fakeClock.nowUtc(),
+                Arrays.stream(ids)
+                    .<Key<?>>map(id -> Key.create(TestObject.create(id)))
+                    .collect(toImmutableSet())))
+        .collect(toImmutableList());
+  }
+
+  private static boolean isTestObject(Object entity, String id) {
+    return entity instanceof TestObject && ((TestObject) entity).getId().equals(id);
+  }
+
   private void runAndAssertSuccess(
       DateTime expectedCheckpointTime, int numFiles, int numTransactions) {
     action.run();
@@ -14,16 +14,22 @@
 
 package google.registry.beam.common;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.testing.AppEngineExtension.makeRegistrar1;
 import static google.registry.testing.DatabaseHelper.insertInDb;
 import static google.registry.testing.DatabaseHelper.newRegistry;
 import static google.registry.util.DateTimeUtils.END_OF_TIME;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import google.registry.beam.TestPipelineExtension;
+import google.registry.beam.common.RegistryJpaIO.KeyRange;
+import google.registry.beam.common.RegistryJpaIO.KeyRangePartitions;
 import google.registry.beam.common.RegistryJpaIO.Read;
 import google.registry.model.contact.ContactBase;
 import google.registry.model.contact.ContactResource;
@@ -161,6 +167,70 @@ public class RegistryJpaReadTest {
     testPipeline.run();
   }
 
+  @Test
+  void readWithKeyRangePartitions() {
+    Read<ContactResource, String> read =
+        RegistryJpaIO.read(
+                "select c from Contact c where c.repoId between :partitionStart and :partitionEnd",
+                ContactResource.class,
+                ContactBase::getContactId)
+            .withKeyRangePartitions("Contact", "repo_id", 2);
+    PCollection<String> contactIds = testPipeline.apply(read);
+
+    PAssert.that(contactIds).containsInAnyOrder("contact_0", "contact_1", "contact_2");
+    testPipeline.run();
+  }
+
+  @Test
+  void readWithKeyRangePartitions_morePartitionsThanRows() {
+    Read<ContactResource, String> read =
+        RegistryJpaIO.read(
+                "select c from Contact c where c.repoId between :partitionStart and :partitionEnd",
+                ContactResource.class,
+                ContactBase::getContactId)
+            .withKeyRangePartitions("Contact", "repo_id", 10);
+    PCollection<String> contactIds = testPipeline.apply(read);
+
+    PAssert.that(contactIds).containsInAnyOrder("contact_0", "contact_1", "contact_2");
+    testPipeline.run();
+  }
+
+  @Test
+  void readWithKeyRangePartitions_emptyTable() {
+    Read<DomainBase, String> read =
+        RegistryJpaIO.read(
+                "select d from Domain d where d.repoId between :partitionStart and :partitionEnd",
+                DomainBase.class,
+                DomainBase::getRepoId)
+            .withKeyRangePartitions("Domain", "repo_id", 2);
+    PCollection<String> repoIds = testPipeline.apply(read);
+
+    PAssert.that(repoIds).empty();
+    testPipeline.run();
+  }
+
+  @Test
+  void findKeyRanges() {
+    ImmutableList<String> repoIds =
+        contacts.stream().map(ContactResource::getRepoId).sorted().collect(toImmutableList());
+    assertThat(
+            jpaTm()
+                .transact(() -> KeyRangePartitions.create("Contact", "repo_id", 2).findKeyRanges()))
+        .containsExactly(
+            KeyRange.create(0, repoIds.get(0), repoIds.get(1)),
+            KeyRange.create(1, repoIds.get(2), repoIds.get(2)))
+        .inOrder();
+  }
+
+  @Test
+  void testFailure_nonPositivePartitions() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> KeyRangePartitions.create("Contact", "repo_id", 0));
+    assertThat(thrown).hasMessageThat().isEqualTo("Number of partitions must be positive: 0");
+  }
+
   private void setupForJoinQuery() {
     Registry registry = newRegistry("com", "ABCD_APP");
     Registrar registrar =
@@ -344,7 +344,8 @@ class InvoicingPipelineTest {
                 + "AND b.billingTime BETWEEN CAST('2017-10-01' AS timestamp) AND CAST('2017-11-01'"
                 + " AS timestamp)\n"
                 + "AND c.id IS NULL\n"
-                + "AND cr.id IS NULL\n");
+                + "AND cr.id IS NULL\n"
+                + "AND b.id BETWEEN :partitionStart AND :partitionEnd\n");
   }
 
   /** Returns the text contents of a file under the beamBucket/results directory. */
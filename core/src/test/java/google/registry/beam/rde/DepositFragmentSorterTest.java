@@ -0,0 +1,79 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import google.registry.rde.DepositFragment;
+import google.registry.rde.RdeResourceType;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link DepositFragmentSorter}. */
+class DepositFragmentSorterTest {
+
+  private static final ImmutableList<DepositFragment> FRAGMENTS =
+      ImmutableList.of(
+          DepositFragment.create(RdeResourceType.DOMAIN, "<d>\n", ""),
+          DepositFragment.create(RdeResourceType.DOMAIN, "<b>\n", ""),
+          DepositFragment.create(RdeResourceType.DOMAIN, "", "Failed to marshal c"),
+          DepositFragment.create(RdeResourceType.DOMAIN, "<e>\n", ""),
+          DepositFragment.create(
+              RdeResourceType.DOMAIN, "<a>" + Strings.repeat("x", 100_000) + "</a>\n", ""),
+          DepositFragment.create(RdeResourceType.DOMAIN, "<c>\n", ""));
+
+  private static ImmutableList<DepositFragment> sort(DepositFragmentSorter sorter)
+      throws Exception {
+    for (DepositFragment fragment : FRAGMENTS) {
+      sorter.add(fragment);
+    }
+    return ImmutableList.copyOf(sorter.sorted());
+  }
+
+  private static ImmutableList<DepositFragment> expected() {
+    return ImmutableList.of(
+        FRAGMENTS.get(2),
+        FRAGMENTS.get(4),
+        FRAGMENTS.get(1),
+        FRAGMENTS.get(5),
+        FRAGMENTS.get(0),
+        FRAGMENTS.get(3));
+  }
+
+  @Test
+  void testSorted_inMemory() throws Exception {
+    try (DepositFragmentSorter sorter = new DepositFragmentSorter()) {
+      assertThat(sort(sorter)).containsExactlyElementsIn(expected()).inOrder();
+      assertThat(sorter.getSpilledRuns()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  void testSorted_spilledToDisk() throws Exception {
+    try (DepositFragmentSorter sorter = new DepositFragmentSorter(10)) {
+      assertThat(sort(sorter)).containsExactlyElementsIn(expected()).inOrder();
+      assertThat(sorter.getSpilledRuns()).isGreaterThan(1);
+    }
+  }
+
+  @Test
+  void testFailure_invalidBufferSize() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> new DepositFragmentSorter(0));
+    assertThat(thrown).hasMessageThat().isEqualTo("Buffer size must be positive: 0");
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.beam.rde;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.beam.rde.RdePipeline.decodePendings;
@@ -53,6 +54,7 @@ import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.PgpHelper;
 import google.registry.model.common.Cursor;
 import google.registry.model.common.Cursor.CursorType;
+import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.rde.RdeRevision;
@@ -66,6 +68,7 @@ import google.registry.persistence.transaction.JpaTestExtensions.JpaIntegrationT
 import google.registry.rde.DepositFragment;
 import google.registry.rde.Ghostryde;
 import google.registry.rde.PendingDeposit;
+import google.registry.rde.PendingDeposit.PendingDepositCoder;
 import google.registry.rde.RdeResourceType;
 import google.registry.testing.CloudTasksHelper;
 import google.registry.testing.CloudTasksHelper.TaskMatcher;
@@ -78,9 +81,12 @@ import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.GroupByKey;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.bouncycastle.openpgp.PGPPrivateKey;
@@ -228,9 +234,21 @@ public class RdePipelineTest {
     assertThat(decodePendings(encodedString)).isEqualTo(pendings);
   }
 
+  @Test
+  void testSuccess_loadResources() {
+    ImmutableList<DomainBase> domains = tm().transact(() -> tm().loadAllOf(DomainBase.class));
+    ImmutableList<String> repoIds =
+        domains.stream().map(DomainBase::getRepoId).collect(toImmutableList());
+    assertThat(
+            RdePipeline.loadResources(
+                DomainBase.class,
+                Iterables.concat(repoIds, ImmutableList.of("missing-ROID"))))
+        .containsExactlyElementsIn(domains);
+  }
+
   @Test
   void testSuccess_createFragments() {
-    PAssert.that(rdePipeline.createFragments(pipeline))
+    PAssert.that(rdePipeline.createFragments(pipeline).apply(GroupByKey.create()))
         .satisfies(
             kvs -> {
               kvs.forEach(
@@ -358,8 +376,19 @@ public class RdePipelineTest {
   private void verifyFiles(
       ImmutableMap<PendingDeposit, Iterable<DepositFragment>> input, boolean manual)
       throws Exception {
-    PCollection<KV<PendingDeposit, Iterable<DepositFragment>>> fragments =
-        pipeline.apply("Create Input", Create.of(input));
+    PCollection<KV<PendingDeposit, DepositFragment>> fragments =
+        pipeline.apply(
+            "Create Input",
+            Create.of(
+                    input.entrySet().stream()
+                        .flatMap(
+                            entry ->
+                                Streams.stream(entry.getValue())
+                                    .map(fragment -> KV.of(entry.getKey(), fragment)))
+                        .collect(toImmutableList()))
+                .withCoder(
+                    KvCoder.of(
+                        PendingDepositCoder.of(), SerializableCoder.of(DepositFragment.class))));
     rdePipeline.persistData(fragments);
     pipeline.run().waitUntilFinish();
 
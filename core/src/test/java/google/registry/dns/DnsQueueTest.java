@@ -15,26 +15,38 @@
 package google.registry.dns;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.model.EppResourceUtils.loadByForeignKey;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.testing.DatabaseHelper.createTld;
+import static google.registry.testing.DatabaseHelper.persistActiveDomain;
 import static google.registry.testing.TaskQueueHelper.assertNoTasksEnqueued;
 import static google.registry.testing.TaskQueueHelper.assertTasksEnqueued;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import google.registry.model.domain.DomainBase;
 import google.registry.testing.AppEngineExtension;
+import google.registry.testing.DualDatabaseTest;
 import google.registry.testing.FakeClock;
+import google.registry.testing.InjectExtension;
 import google.registry.testing.TaskQueueHelper.TaskMatcher;
+import google.registry.testing.TestOfyAndSql;
+import google.registry.testing.TestSqlOnly;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 /** Unit tests for {@link DnsQueue}. */
+@DualDatabaseTest
 public class DnsQueueTest {
 
   @RegisterExtension
   public final AppEngineExtension appEngine =
       AppEngineExtension.builder().withDatastoreAndCloudSql().withTaskQueue().build();
 
+  @RegisterExtension public final InjectExtension inject = new InjectExtension();
+
   private DnsQueue dnsQueue;
   private final FakeClock clock = new FakeClock(DateTime.parse("2010-01-01T10:00:00Z"));
 
@@ -44,7 +56,7 @@ public class DnsQueueTest {
     dnsQueue.leaseTasksBatchSize = 10;
   }
 
-  @Test
+  @TestOfyAndSql
   void test_addHostRefreshTask_success() {
     createTld("tld");
     dnsQueue.addHostRefreshTask("octopus.tld");
@@ -57,7 +69,7 @@ public class DnsQueueTest {
             .param("tld", "tld"));
   }
 
-  @Test
+  @TestOfyAndSql
   void test_addHostRefreshTask_failsOnUnknownTld() {
     IllegalArgumentException thrown =
         assertThrows(
@@ -74,7 +86,7 @@ public class DnsQueueTest {
         .contains("octopus.notatld is not a subordinate host to a known tld");
   }
 
-  @Test
+  @TestOfyAndSql
   void test_addDomainRefreshTask_success() {
     createTld("tld");
     dnsQueue.addDomainRefreshTask("octopus.tld");
@@ -87,7 +99,7 @@ public class DnsQueueTest {
             .param("tld", "tld"));
   }
 
-  @Test
+  @TestOfyAndSql
   void test_addDomainRefreshTask_failsOnUnknownTld() {
     IllegalArgumentException thrown =
         assertThrows(
@@ -101,4 +113,51 @@ public class DnsQueueTest {
             });
     assertThat(thrown).hasMessageThat().contains("TLD notatld does not exist");
   }
+
+  @TestSqlOnly
+  void test_addDomainRefreshTask_recordsRefreshInSql() {
+    inject.setStaticField(DnsQueue.class, "sqlRefreshQueueEnabled", true);
+    createTld("tld");
+    persistActiveDomain("octopus.tld");
+    dnsQueue.addDomainRefreshTask("octopus.tld", Duration.standardMinutes(5));
+    assertNoTasksEnqueued("dns-pull");
+    assertThat(loadDomain("octopus.tld").getDnsRefreshRequestTime())
+        .hasValue(DateTime.parse("2010-01-01T10:05:00Z"));
+  }
+
+  @TestSqlOnly
+  void test_addDomainRefreshTask_inSql_keepsEarlierRequest() {
+    inject.setStaticField(DnsQueue.class, "sqlRefreshQueueEnabled", true);
+    createTld("tld");
+    persistActiveDomain("octopus.tld");
+    dnsQueue.addDomainRefreshTask("octopus.tld");
+    dnsQueue.addDomainRefreshTask("octopus.tld", Duration.standardMinutes(5));
+    assertThat(loadDomain("octopus.tld").getDnsRefreshRequestTime())
+        .hasValue(DateTime.parse("2010-01-01T10:00:00Z"));
+  }
+
+  @TestSqlOnly
+  void test_requestDomainRefresh_setsRequestTimeOnDomain() {
+    inject.setStaticField(DnsQueue.class, "sqlRefreshQueueEnabled", true);
+    createTld("tld");
+    DomainBase domain = persistActiveDomain("octopus.tld");
+    DomainBase refreshed = tm().transact(() -> dnsQueue.requestDomainRefresh(domain));
+    assertNoTasksEnqueued("dns-pull");
+    assertThat(refreshed.getDnsRefreshRequestTime()).isPresent();
+    assertThat(domain.getDnsRefreshRequestTime()).isEmpty();
+  }
+
+  @TestOfyAndSql
+  void test_requestDomainRefresh_enqueuesTaskWhenSqlQueueDisabled() {
+    createTld("tld");
+    DomainBase domain = persistActiveDomain("octopus.tld");
+    assertThat(tm().transact(() -> dnsQueue.requestDomainRefresh(domain))).isSameInstanceAs(domain);
+    assertTasksEnqueued(
+        "dns-pull",
+        new TaskMatcher().param("Target-Type", "DOMAIN").param("Target-Name", "octopus.tld"));
+  }
+
+  private DomainBase loadDomain(String domainName) {
+    return loadByForeignKey(DomainBase.class, domainName, clock.nowUtc()).get();
+  }
 }
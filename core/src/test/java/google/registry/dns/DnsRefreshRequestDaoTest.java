@@ -0,0 +1,124 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.testing.DatabaseHelper.createTlds;
+import static google.registry.testing.DatabaseHelper.loadByEntity;
+import static google.registry.testing.DatabaseHelper.persistActiveDomain;
+import static google.registry.testing.DatabaseHelper.persistResource;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import google.registry.model.domain.DomainBase;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.DualDatabaseTest;
+import google.registry.testing.TestSqlOnly;
+import java.util.Optional;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link DnsRefreshRequestDao}. */
+@DualDatabaseTest
+class DnsRefreshRequestDaoTest {
+
+  private static final DateTime NOW = DateTime.parse("2021-06-01T10:00:00Z");
+
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().build();
+
+  @BeforeEach
+  void beforeEach() {
+    createTlds("tld", "other");
+  }
+
+  @TestSqlOnly
+  void testRequestRefresh_setsRequestTime() {
+    DomainBase domain = persistActiveDomain("example.tld");
+    DnsRefreshRequestDao.requestRefresh("example.tld", NOW);
+    assertThat(loadByEntity(domain).getDnsRefreshRequestTime()).hasValue(NOW);
+  }
+
+  @TestSqlOnly
+  void testRequestRefresh_doesNotPostponeEarlierRequest() {
+    DomainBase domain = persistActiveDomain("example.tld");
+    DnsRefreshRequestDao.requestRefresh("example.tld", NOW);
+    DnsRefreshRequestDao.requestRefresh("example.tld", NOW.plusMinutes(1));
+    assertThat(loadByEntity(domain).getDnsRefreshRequestTime()).hasValue(NOW);
+    DnsRefreshRequestDao.requestRefresh("example.tld", NOW.minusMinutes(1));
+    assertThat(loadByEntity(domain).getDnsRefreshRequestTime()).hasValue(NOW.minusMinutes(1));
+  }
+
+  @TestSqlOnly
+  void testClaimRefreshes_returnsDueRequestsOldestFirstAndClearsThem() {
+    DomainBase newer = persistDomainWithRefreshRequest("newer.tld", NOW.minusMinutes(1));
+    DomainBase older = persistDomainWithRefreshRequest("older.tld", NOW.minusMinutes(2));
+    DomainBase future = persistDomainWithRefreshRequest("future.tld", NOW.plusMinutes(1));
+    DomainBase otherTld = persistDomainWithRefreshRequest("example.other", NOW.minusMinutes(3));
+    DomainBase notRequested = persistActiveDomain("none.tld");
+
+    ImmutableMap<String, DateTime> claimed =
+        jpaTm().transact(() -> DnsRefreshRequestDao.claimRefreshes("tld", NOW, 10));
+
+    assertThat(claimed)
+        .containsExactly("older.tld", NOW.minusMinutes(2), "newer.tld", NOW.minusMinutes(1))
+        .inOrder();
+    assertThat(loadByEntity(newer).getDnsRefreshRequestTime()).isEmpty();
+    assertThat(loadByEntity(older).getDnsRefreshRequestTime()).isEmpty();
+    assertThat(loadByEntity(future).getDnsRefreshRequestTime()).hasValue(NOW.plusMinutes(1));
+    assertThat(loadByEntity(otherTld).getDnsRefreshRequestTime()).hasValue(NOW.minusMinutes(3));
+    assertThat(loadByEntity(notRequested).getDnsRefreshRequestTime()).isEmpty();
+  }
+
+  @TestSqlOnly
+  void testClaimRefreshes_respectsLimit() {
+    persistDomainWithRefreshRequest("first.tld", NOW.minusMinutes(3));
+    persistDomainWithRefreshRequest("second.tld", NOW.minusMinutes(2));
+    DomainBase third = persistDomainWithRefreshRequest("third.tld", NOW.minusMinutes(1));
+
+    assertThat(jpaTm().transact(() -> DnsRefreshRequestDao.claimRefreshes("tld", NOW, 2)))
+        .containsExactly("first.tld", NOW.minusMinutes(3), "second.tld", NOW.minusMinutes(2));
+    assertThat(loadByEntity(third).getDnsRefreshRequestTime()).hasValue(NOW.minusMinutes(1));
+    assertThat(jpaTm().transact(() -> DnsRefreshRequestDao.claimRefreshes("tld", NOW, 2)))
+        .containsExactly("third.tld", NOW.minusMinutes(1));
+    assertThat(jpaTm().transact(() -> DnsRefreshRequestDao.claimRefreshes("tld", NOW, 2)))
+        .isEmpty();
+  }
+
+  @TestSqlOnly
+  void testClaimRefreshes_rolledBackClaimLeavesRequests() {
+    DomainBase domain = persistDomainWithRefreshRequest("example.tld", NOW.minusMinutes(1));
+    Runnable claimAndFail =
+        () -> {
+          DnsRefreshRequestDao.claimRefreshes("tld", NOW, 10);
+          throw new IllegalStateException("Failed to enqueue");
+        };
+    assertThrows(IllegalStateException.class, () -> jpaTm().transactNoRetry(claimAndFail));
+    assertThat(loadByEntity(domain).getDnsRefreshRequestTime()).hasValue(NOW.minusMinutes(1));
+  }
+
+  private static DomainBase persistDomainWithRefreshRequest(
+      String domainName, DateTime requestTime) {
+    return persistResource(
+        persistActiveDomain(domainName)
+            .asBuilder()
+            .setDnsRefreshRequestTime(Optional.of(requestTime))
+            .build());
+  }
+}
@@ -15,14 +15,19 @@
 package google.registry.dns;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.testing.DatabaseHelper.createTld;
 import static google.registry.testing.DatabaseHelper.persistActiveDomain;
 import static google.registry.testing.DatabaseHelper.persistActiveSubordinateHost;
 import static google.registry.testing.DatabaseHelper.persistResource;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -42,11 +47,15 @@ import google.registry.testing.AppEngineExtension;
 import google.registry.testing.FakeClock;
 import google.registry.testing.FakeLockHandler;
 import google.registry.testing.InjectExtension;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.stubbing.Answer;
 
 /** Unit tests for {@link PublishDnsUpdatesAction}. */
 public class PublishDnsUpdatesActionTest {
@@ -83,6 +92,9 @@ public class PublishDnsUpdatesActionTest {
   private PublishDnsUpdatesAction createAction(String tld) {
     PublishDnsUpdatesAction action = new PublishDnsUpdatesAction();
     action.timeout = Duration.standardSeconds(10);
+    action.maxConcurrencyPerTld = 8;
+    action.retryBudget = 3;
+    action.threadFactorySupplier = Executors::defaultThreadFactory;
     action.tld = tld;
     action.hosts = ImmutableSet.of();
     action.domains = ImmutableSet.of();
@@ -107,6 +119,7 @@ public class PublishDnsUpdatesActionTest {
     action.run();
 
     verify(dnsWriter).publishHost("ns1.example.xn--q9jyb4c");
+    verify(dnsWriter).supportsConcurrentPublish();
     verify(dnsWriter).commit();
     verifyNoMoreInteractions(dnsWriter);
     verify(dnsMetrics).incrementPublishDomainRequests("xn--q9jyb4c", 0, PublishStatus.ACCEPTED);
@@ -135,6 +148,7 @@ public class PublishDnsUpdatesActionTest {
     action.run();
 
     verify(dnsWriter).publishDomain("example.xn--q9jyb4c");
+    verify(dnsWriter).supportsConcurrentPublish();
     verify(dnsWriter).commit();
     verifyNoMoreInteractions(dnsWriter);
     verify(dnsMetrics).incrementPublishDomainRequests("xn--q9jyb4c", 1, PublishStatus.ACCEPTED);
@@ -217,6 +231,7 @@ public class PublishDnsUpdatesActionTest {
     verify(dnsWriter).publishHost("ns1.example.xn--q9jyb4c");
     verify(dnsWriter).publishHost("ns2.example.xn--q9jyb4c");
     verify(dnsWriter).publishHost("ns1.example2.xn--q9jyb4c");
+    verify(dnsWriter).supportsConcurrentPublish();
     verify(dnsWriter).commit();
     verifyNoMoreInteractions(dnsWriter);
     verify(dnsMetrics).incrementPublishDomainRequests("xn--q9jyb4c", 2, PublishStatus.ACCEPTED);
@@ -245,6 +260,7 @@ public class PublishDnsUpdatesActionTest {
 
     action.run();
 
+    verify(dnsWriter).supportsConcurrentPublish();
     verify(dnsWriter).commit();
     verifyNoMoreInteractions(dnsWriter);
     verify(dnsMetrics).incrementPublishDomainRequests("xn--q9jyb4c", 0, PublishStatus.ACCEPTED);
@@ -367,4 +383,114 @@ public class PublishDnsUpdatesActionTest {
     verify(dnsQueue).addHostRefreshTask("ns1.example2.com");
     verifyNoMoreInteractions(dnsQueue);
   }
+
+  @Test
+  void testHostAndDomain_publishedConcurrently() {
+    action = createAction("xn--q9jyb4c");
+    action.domains = ImmutableSet.of("example.xn--q9jyb4c", "example2.xn--q9jyb4c");
+    action.hosts =
+        ImmutableSet.of(
+            "ns1.example.xn--q9jyb4c", "ns2.example.xn--q9jyb4c", "ns1.example2.xn--q9jyb4c");
+    when(dnsWriter.supportsConcurrentPublish()).thenReturn(true);
+    // Every call waits for all the others to start, which only works if they run concurrently.
+    CountDownLatch allStarted = new CountDownLatch(5);
+    Answer<Void> awaitAllStarted =
+        invocation -> {
+          allStarted.countDown();
+          assertThat(allStarted.await(10, TimeUnit.SECONDS)).isTrue();
+          return null;
+        };
+    doAnswer(awaitAllStarted).when(dnsWriter).publishDomain(anyString());
+    doAnswer(awaitAllStarted).when(dnsWriter).publishHost(anyString());
+
+    action.run();
+
+    verify(dnsWriter).publishDomain("example.xn--q9jyb4c");
+    verify(dnsWriter).publishDomain("example2.xn--q9jyb4c");
+    verify(dnsWriter).publishHost("ns1.example.xn--q9jyb4c");
+    verify(dnsWriter).publishHost("ns2.example.xn--q9jyb4c");
+    verify(dnsWriter).publishHost("ns1.example2.xn--q9jyb4c");
+    verify(dnsWriter).commit();
+    verifyPublishMetrics(5);
+    verify(dnsMetrics)
+        .recordCommit("xn--q9jyb4c", "correctWriter", CommitStatus.SUCCESS, Duration.ZERO, 2, 3);
+    assertThat(ConcurrentDnsPublisher.getAvailablePermits("xn--q9jyb4c")).hasValue(8);
+  }
+
+  @Test
+  void testPublish_retriesFailedPublish() {
+    action = createAction("xn--q9jyb4c");
+    action.domains = ImmutableSet.of("example.xn--q9jyb4c");
+    when(dnsWriter.supportsConcurrentPublish()).thenReturn(true);
+    doThrow(new RuntimeException("load failed"))
+        .doNothing()
+        .when(dnsWriter)
+        .publishDomain("example.xn--q9jyb4c");
+
+    action.run();
+
+    verify(dnsWriter, times(2)).publishDomain("example.xn--q9jyb4c");
+    verify(dnsWriter).commit();
+    verify(dnsMetrics).incrementPublishRetries("xn--q9jyb4c", "correctWriter");
+    verify(dnsMetrics)
+        .recordCommit("xn--q9jyb4c", "correctWriter", CommitStatus.SUCCESS, Duration.ZERO, 1, 0);
+  }
+
+  @Test
+  void testPublish_retryBudgetExhausted() {
+    action = createAction("xn--q9jyb4c");
+    action.retryBudget = 1;
+    action.domains = ImmutableSet.of("example.xn--q9jyb4c");
+    when(dnsWriter.supportsConcurrentPublish()).thenReturn(true);
+    doThrow(new RuntimeException("load failed"))
+        .when(dnsWriter)
+        .publishDomain("example.xn--q9jyb4c");
+
+    RuntimeException thrown = assertThrows(RuntimeException.class, action::run);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("load failed");
+    verify(dnsWriter, times(2)).publishDomain("example.xn--q9jyb4c");
+    verify(dnsWriter, never()).commit();
+    verify(dnsMetrics).incrementPublishRetries("xn--q9jyb4c", "correctWriter");
+  }
+
+  @Test
+  void testPublish_writerWithoutConcurrentPublish_failedPublishNotRetried() {
+    action = createAction("xn--q9jyb4c");
+    action.domains = ImmutableSet.of("example.xn--q9jyb4c");
+    doThrow(new RuntimeException("load failed"))
+        .when(dnsWriter)
+        .publishDomain("example.xn--q9jyb4c");
+
+    RuntimeException thrown = assertThrows(RuntimeException.class, action::run);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("load failed");
+    verify(dnsWriter).publishDomain("example.xn--q9jyb4c");
+    verify(dnsWriter, never()).commit();
+    verify(dnsMetrics, never()).incrementPublishRetries(anyString(), anyString());
+  }
+
+  @Test
+  void testPublish_concurrentFailureFailsBatchAndReleasesPermits() {
+    action = createAction("xn--q9jyb4c");
+    action.retryBudget = 0;
+    action.domains = ImmutableSet.of("example.xn--q9jyb4c", "example2.xn--q9jyb4c");
+    when(dnsWriter.supportsConcurrentPublish()).thenReturn(true);
+    doThrow(new RuntimeException("load failed"))
+        .when(dnsWriter)
+        .publishDomain("example2.xn--q9jyb4c");
+
+    RuntimeException thrown = assertThrows(RuntimeException.class, action::run);
+
+    assertThat(thrown).hasMessageThat().isEqualTo("load failed");
+    verify(dnsWriter, never()).commit();
+    assertThat(ConcurrentDnsPublisher.getAvailablePermits("xn--q9jyb4c")).hasValue(8);
+  }
+
+  private void verifyPublishMetrics(int numItems) {
+    verify(dnsMetrics, times(numItems)).incrementPublishesInFlight("xn--q9jyb4c", "correctWriter");
+    verify(dnsMetrics, times(numItems)).decrementPublishesInFlight("xn--q9jyb4c", "correctWriter");
+    verify(dnsMetrics)
+        .recordPublishThroughput("xn--q9jyb4c", "correctWriter", numItems, Duration.ZERO);
+  }
 }
@@ -0,0 +1,130 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import google.registry.dns.writer.dnsupdate.DnsConnectionPool.DnsConnection;
+import google.registry.testing.FakeClock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.SocketFactory;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link DnsConnectionPool}. */
+class DnsConnectionPoolTest {
+
+  private static final String HOST = "127.0.0.1";
+  private static final int PORT = 53;
+
+  private final SocketFactory mockFactory = mock(SocketFactory.class);
+  private final Socket mockSocket = mock(Socket.class);
+  private final FakeClock clock = new FakeClock();
+
+  private DnsConnectionPool pool;
+
+  @BeforeEach
+  void beforeEach() throws Exception {
+    when(mockFactory.createSocket(InetAddress.getByName(HOST), PORT)).thenReturn(mockSocket);
+    when(mockSocket.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    when(mockSocket.isConnected()).thenReturn(true);
+    pool =
+        new DnsConnectionPool(
+            mockFactory, HOST, PORT, Duration.millis(100), 2, Duration.standardMinutes(1), clock);
+  }
+
+  @Test
+  void testBorrow_reusesReleasedConnection() throws Exception {
+    DnsConnection connection = pool.borrow();
+    assertThat(connection.isReused()).isFalse();
+    pool.release(connection);
+    assertThat(pool.getIdleConnectionCount()).isEqualTo(1);
+
+    DnsConnection reused = pool.borrow();
+    assertThat(reused).isSameInstanceAs(connection);
+    assertThat(reused.isReused()).isTrue();
+    assertThat(pool.getIdleConnectionCount()).isEqualTo(0);
+    verify(mockFactory, times(1)).createSocket(InetAddress.getByName(HOST), PORT);
+  }
+
+  @Test
+  void testBorrow_doesNotReuseConnectionIdleTooLong() throws Exception {
+    pool.release(pool.borrow());
+    clock.advanceBy(Duration.standardMinutes(2));
+
+    assertThat(pool.borrow().isReused()).isFalse();
+    verify(mockSocket).close();
+    verify(mockFactory, times(2)).createSocket(InetAddress.getByName(HOST), PORT);
+  }
+
+  @Test
+  void testBorrow_doesNotReuseClosedConnection() throws Exception {
+    pool.release(pool.borrow());
+    when(mockSocket.isClosed()).thenReturn(true);
+
+    assertThat(pool.borrow().isReused()).isFalse();
+    verify(mockFactory, times(2)).createSocket(InetAddress.getByName(HOST), PORT);
+  }
+
+  @Test
+  void testBorrowNew_bypassesIdleConnections() throws Exception {
+    pool.release(pool.borrow());
+
+    assertThat(pool.borrowNew().isReused()).isFalse();
+    assertThat(pool.getIdleConnectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  void testInvalidate_closesConnection() throws Exception {
+    pool.invalidate(pool.borrow());
+
+    verify(mockSocket).close();
+    assertThat(pool.getIdleConnectionCount()).isEqualTo(0);
+  }
+
+  @Test
+  void testBorrow_waitsForFreeConnection() throws Exception {
+    DnsConnection first = pool.borrow();
+    pool.borrow();
+    IOException thrown = assertThrows(IOException.class, () -> pool.borrow());
+    assertThat(thrown).hasMessageThat().contains("Timed out waiting for a connection");
+
+    pool.release(first);
+    assertThat(pool.borrow()).isSameInstanceAs(first);
+  }
+
+  @Test
+  void testBorrow_releasesPermitWhenConnectionFails() throws Exception {
+    when(mockFactory.createSocket(InetAddress.getByName(HOST), PORT))
+        .thenThrow(new IOException("connection refused"));
+    for (int i = 0; i < 3; i++) {
+      IOException thrown = assertThrows(IOException.class, () -> pool.borrow());
+      assertThat(thrown).hasMessageThat().isEqualTo("connection refused");
+    }
+    verify(mockSocket, never()).close();
+  }
+}
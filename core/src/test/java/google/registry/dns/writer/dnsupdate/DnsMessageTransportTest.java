@@ -14,23 +14,35 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.dns.writer.dnsupdate.DnsMessageTransport.DNS_PORT;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import google.registry.testing.FakeClock;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
@@ -63,9 +75,10 @@ class DnsMessageTransportTest {
     simpleQuery =
         Message.newQuery(Record.newRecord(Name.fromString("example.com."), Type.A, DClass.IN));
     expectedResponse = responseMessageWithCode(simpleQuery, Rcode.NOERROR);
-    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DNS_PORT))
         .thenReturn(mockSocket);
-    resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, Duration.ZERO);
+    resolver =
+        new DnsMessageTransport(createPool(mockFactory, UPDATE_HOST, DNS_PORT, Duration.ZERO));
   }
 
   @Test
@@ -117,7 +130,8 @@ class DnsMessageTransportTest {
     when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
 
     Duration testTimeout = Duration.standardSeconds(1);
-    DnsMessageTransport resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, testTimeout);
+    DnsMessageTransport resolver =
+        new DnsMessageTransport(createPool(mockFactory, UPDATE_HOST, DNS_PORT, testTimeout));
     Message expectedQuery = new Message();
     assertThrows(SocketTimeoutException.class, () -> resolver.send(expectedQuery));
     verify(mockSocket).setSoTimeout((int) testTimeout.getMillis());
@@ -169,6 +183,98 @@ class DnsMessageTransportTest {
         .contains("response opcode 'STATUS' does not match query opcode 'QUERY'");
   }
 
+  @Test
+  void testSend_reusesConnection() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, false)) {
+      DnsConnectionPool pool = createPool(server);
+      DnsMessageTransport transport = new DnsMessageTransport(pool);
+      for (int i = 0; i < 3; i++) {
+        Message query = queryWithId(i);
+        assertThat(transport.send(query).getHeader().getID()).isEqualTo(i);
+      }
+      assertThat(server.acceptCount.get()).isEqualTo(1);
+      assertThat(pool.getIdleConnectionCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testSendAll_matchesOutOfOrderResponsesById() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(3, false)) {
+      DnsMessageTransport transport = new DnsMessageTransport(createPool(server));
+      ImmutableList<Message> responses =
+          transport.sendAll(ImmutableList.of(queryWithId(10), queryWithId(20), queryWithId(30)));
+      assertThat(
+              responses.stream()
+                  .map(response -> response.getHeader().getID())
+                  .collect(toImmutableList()))
+          .containsExactly(10, 20, 30)
+          .inOrder();
+      assertThat(server.acceptCount.get()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void testSendAll_duplicateIds_sendsCopiesWithUnusedIds() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(3, false)) {
+      DnsMessageTransport transport = new DnsMessageTransport(createPool(server));
+      ImmutableList<Message> queries =
+          ImmutableList.of(queryWithId(5), queryWithId(5), queryWithId(6));
+      ImmutableList<Message> responses = transport.sendAll(queries);
+      assertThat(
+              responses.stream()
+                  .map(response -> response.getHeader().getID())
+                  .collect(toImmutableList()))
+          .containsExactly(5, 6, 7)
+          .inOrder();
+      assertThat(
+              queries.stream().map(query -> query.getHeader().getID()).collect(toImmutableList()))
+          .containsExactly(5, 5, 6)
+          .inOrder();
+    }
+  }
+
+  @Test
+  void testSend_reconnectsAfterServerClosesConnection() throws Exception {
+    try (FakeDnsServer server = new FakeDnsServer(1, true)) {
+      DnsMessageTransport transport = new DnsMessageTransport(createPool(server));
+      assertThat(transport.send(queryWithId(1)).getHeader().getID()).isEqualTo(1);
+      assertThat(transport.send(queryWithId(2)).getHeader().getID()).isEqualTo(2);
+      assertThat(server.acceptCount.get()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void testSend_failureOnNewConnectionIsNotRetried() throws Exception {
+    InputStream mockInputStream = mock(InputStream.class);
+    when(mockInputStream.read()).thenThrow(new SocketTimeoutException("testing"));
+    when(mockSocket.getInputStream()).thenReturn(mockInputStream);
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    assertThrows(SocketTimeoutException.class, () -> resolver.send(simpleQuery));
+    verify(mockFactory).createSocket(InetAddress.getByName(UPDATE_HOST), DNS_PORT);
+    verify(mockSocket).close();
+  }
+
+  private static DnsConnectionPool createPool(
+      SocketFactory factory, String host, int port, Duration timeout) {
+    return new DnsConnectionPool(
+        factory, host, port, timeout, 4, Duration.standardMinutes(1), new FakeClock());
+  }
+
+  private static DnsConnectionPool createPool(FakeDnsServer server) {
+    return createPool(
+        SocketFactory.getDefault(),
+        InetAddress.getLoopbackAddress().getHostAddress(),
+        server.getPort(),
+        Duration.standardSeconds(10));
+  }
+
+  private static Message queryWithId(int id) throws Exception {
+    Message query =
+        Message.newQuery(Record.newRecord(Name.fromString("example.com."), Type.A, DClass.IN));
+    query.getHeader().setID(id);
+    return query;
+  }
+
   private Message responseMessageWithCode(Message query, int responseCode) {
     Message message = new Message(query.getHeader().getID());
     message.getHeader().setOpcode(query.getHeader().getOpcode());
@@ -185,4 +291,82 @@ class DnsMessageTransportTest {
     buffer.put(bytes);
     return buffer.array();
   }
+
+  /**
+   * A stand-in DNS server on the loopback interface.
+   *
+   * <p>It reads queries in batches of a given size and answers each batch in reverse order, to
+   * check that responses are matched to queries by ID. It can also close each connection after
+   * answering one batch, as a server whose idle timeout has passed would.
+   */
+  private class FakeDnsServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final int batchSize;
+    private final boolean closeAfterBatch;
+    private final AtomicInteger acceptCount = new AtomicInteger();
+
+    FakeDnsServer(int batchSize, boolean closeAfterBatch) throws IOException {
+      this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      this.batchSize = batchSize;
+      this.closeAfterBatch = closeAfterBatch;
+      startDaemon(this::acceptConnections);
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+          acceptCount.incrementAndGet();
+          startDaemon(() -> serve(socket));
+        }
+      } catch (IOException e) {
+        // The server socket was closed at the end of the test.
+      }
+    }
+
+    private void serve(Socket socket) {
+      try (Socket s = socket) {
+        DataInputStream in = new DataInputStream(s.getInputStream());
+        OutputStream out = s.getOutputStream();
+        while (true) {
+          List<Message> queries = new ArrayList<>();
+          for (int i = 0; i < batchSize; i++) {
+            byte[] messageData;
+            try {
+              messageData = new byte[in.readUnsignedShort()];
+            } catch (EOFException e) {
+              return;
+            }
+            in.readFully(messageData);
+            queries.add(new Message(messageData));
+          }
+          for (Message query : Lists.reverse(queries)) {
+            out.write(messageToBytesWithLength(responseMessageWithCode(query, Rcode.NOERROR)));
+          }
+          out.flush();
+          if (closeAfterBatch) {
+            return;
+          }
+        }
+      } catch (IOException e) {
+        // The client went away.
+      }
+    }
+
+    private void startDaemon(Runnable runnable) {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
 }
@@ -0,0 +1,46 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import google.registry.testing.FakeClock;
+import javax.net.SocketFactory;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link DnsUpdateWriterModule}. */
+class DnsUpdateWriterModuleTest {
+
+  private final SocketFactory factory = SocketFactory.getDefault();
+  private final FakeClock clock = new FakeClock();
+
+  @Test
+  void testProvideDnsConnectionPool_sameConfig_sharesPool() {
+    assertThat(providePool("127.0.0.1", Duration.standardSeconds(30)))
+        .isSameInstanceAs(providePool("127.0.0.1", Duration.standardSeconds(30)));
+  }
+
+  @Test
+  void testProvideDnsConnectionPool_differentConfigForSameHost_doesNotSharePool() {
+    assertThat(providePool("127.0.0.1", Duration.standardSeconds(30)))
+        .isNotSameInstanceAs(providePool("127.0.0.1", Duration.standardSeconds(10)));
+  }
+
+  private DnsConnectionPool providePool(String host, Duration timeout) {
+    return DnsUpdateWriterModule.provideDnsConnectionPool(
+        factory, host, timeout, 4, Duration.standardMinutes(1), clock);
+  }
+}
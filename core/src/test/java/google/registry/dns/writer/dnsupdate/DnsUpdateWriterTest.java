@@ -28,14 +28,18 @@ import static google.registry.testing.DatabaseHelper.persistDeletedHost;
 import static google.registry.testing.DatabaseHelper.persistResource;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.base.Strings;
 import com.google.common.base.VerifyException;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.net.InetAddresses;
+import google.registry.dns.DnsMetrics;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.secdns.DelegationSignerData;
 import google.registry.model.eppcommon.StatusValue;
@@ -81,7 +85,9 @@ public class DnsUpdateWriterTest {
   @RegisterExtension public final InjectExtension inject = new InjectExtension();
 
   @Mock private DnsMessageTransport mockResolver;
+  @Mock private DnsMetrics mockDnsMetrics;
   @Captor private ArgumentCaptor<Update> updateCaptor;
+  @Captor private ArgumentCaptor<ImmutableList<Message>> updatesCaptor;
 
   private final FakeClock clock = new FakeClock(DateTime.parse("1971-01-01TZ"));
 
@@ -94,8 +100,15 @@ public class DnsUpdateWriterTest {
     createTld("tld");
     when(mockResolver.send(any(Update.class))).thenReturn(messageWithResponseCode(Rcode.NOERROR));
 
-    writer = new DnsUpdateWriter(
-        "tld", Duration.ZERO, Duration.ZERO, Duration.ZERO, mockResolver, clock);
+    writer =
+        new DnsUpdateWriter(
+            "tld",
+            Duration.ZERO,
+            Duration.ZERO,
+            Duration.ZERO,
+            mockResolver,
+            mockDnsMetrics,
+            clock);
   }
 
   @TestOfyAndSql
@@ -378,6 +391,81 @@ public class DnsUpdateWriterTest {
     assertThatTotalUpdateSetsIs(update, 6);
   }
 
+  @TestOfyAndSql
+  void testPublishDomainTwice_sendsRecordsOnce() throws Exception {
+    DomainBase domain =
+        persistActiveDomain("example.tld")
+            .asBuilder()
+            .setNameservers(ImmutableSet.of(persistActiveHost("ns1.example.com").createVKey()))
+            .build();
+    persistResource(domain);
+
+    writer.publishDomain("example.tld");
+    writer.publishDomain("example.tld");
+    writer.commit();
+
+    verify(mockResolver).send(updateCaptor.capture());
+    Update update = updateCaptor.getValue();
+    assertThatUpdateDeletes(update, "example.tld.", Type.ANY);
+    assertThatUpdateAdds(update, "example.tld.", Type.NS, "ns1.example.com.");
+    assertThat(update.getSection(Section.UPDATE)).hasSize(2);
+  }
+
+  @TestOfyAndSql
+  void testPublishHostsOfSameDomain_deletesEachRequestingHostOnce() throws Exception {
+    persistDeletedHost("ns1.example.tld", clock.nowUtc().minusDays(1));
+    persistDeletedHost("ns2.example.tld", clock.nowUtc().minusDays(1));
+    persistActiveDomain("example.tld");
+
+    writer.publishHost("ns1.example.tld");
+    writer.publishHost("ns2.example.tld");
+    writer.publishDomain("example.tld");
+    writer.commit();
+
+    verify(mockResolver).send(updateCaptor.capture());
+    Update update = updateCaptor.getValue();
+    assertThatUpdateDeletes(update, "example.tld.", Type.ANY);
+    assertThatUpdateDeletes(update, "ns1.example.tld.", Type.ANY);
+    assertThatUpdateDeletes(update, "ns2.example.tld.", Type.ANY);
+    assertThat(update.getSection(Section.UPDATE)).hasSize(3);
+  }
+
+  @MockitoSettings(strictness = Strictness.LENIENT)
+  @TestOfyAndSql
+  void testPublishLargeBatch_splitsIntoMessagesUnderMaximumLength() throws Exception {
+    when(mockResolver.sendAll(any()))
+        .thenAnswer(
+            invocation ->
+                ImmutableList.copyOf(
+                    Collections.nCopies(
+                        invocation.<ImmutableList<Message>>getArgument(0).size(),
+                        messageWithResponseCode(Rcode.NOERROR))));
+    // Each of these deleted domains needs a 76-byte delete record, so they won't fit in one
+    // message.
+    int numDomains = 1000;
+    for (int i = 0; i < numDomains; i++) {
+      writer.publishDomain(String.format("%s%06d.tld", Strings.repeat("a", 57), i));
+    }
+    writer.commit();
+
+    verify(mockResolver).sendAll(updatesCaptor.capture());
+    ImmutableList<Message> updates = updatesCaptor.getValue();
+    assertThat(updates).hasSize(2);
+    int totalRecords = 0;
+    for (Message update : updates) {
+      assertThat(update.toWire().length).isAtMost(DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH);
+      assertThatUpdatedZoneIs((Update) update, "tld.");
+      totalRecords += update.getSection(Section.UPDATE).size();
+    }
+    assertThat(totalRecords).isEqualTo(numDomains);
+    verify(mockDnsMetrics)
+        .recordUpdateMessages(
+            eq("tld"),
+            eq(DnsUpdateWriter.NAME),
+            argThat(messageLengths -> messageLengths.size() == 2),
+            any(Duration.class));
+  }
+
   @MockitoSettings(strictness = Strictness.LENIENT)
   @SuppressWarnings("AssertThrowsMultipleStatements")
   @TestOfyAndSql
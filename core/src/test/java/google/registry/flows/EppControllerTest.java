@@ -40,6 +40,7 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.eppoutput.Result;
 import google.registry.model.eppoutput.Result.Code;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.EppMetric.Stage;
 import google.registry.testing.AppEngineExtension;
 import google.registry.testing.FakeClock;
 import google.registry.util.Clock;
@@ -139,7 +140,9 @@ class EppControllerTest {
         EppMetric.builderForRequest(clock)
             .setRegistrarId("some-client")
             .setStatus(Code.SUCCESS_WITH_NO_MESSAGES)
-            .setTld("tld");
+            .setTld("tld")
+            .beginStage(Stage.PARSE)
+            .endStage(Stage.PARSE);
     eppController.handleEppCommand(
         sessionMetadata,
         transportCredentials,
@@ -151,6 +154,7 @@ class EppControllerTest {
     EppMetric expectedMetric = metricBuilder.build();
     verify(eppMetrics).incrementEppRequests(eq(expectedMetric));
     verify(eppMetrics).recordProcessingTime(eq(expectedMetric));
+    verify(eppMetrics).recordStageTimes(eq(expectedMetric));
   }
 
   @Test
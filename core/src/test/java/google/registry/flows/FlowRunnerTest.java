@@ -21,6 +21,7 @@ import static google.registry.testing.TestDataHelper.loadFile;
 import static google.registry.testing.TestLogHandlerUtils.findFirstLogMessageByPrefix;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -31,16 +32,19 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.flogger.LoggerConfig;
 import com.google.common.testing.TestLogHandler;
+import google.registry.flows.EppException.UnimplementedExtensionException;
 import google.registry.flows.certs.CertificateChecker;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppoutput.EppOutput.ResponseOrGreeting;
 import google.registry.model.eppoutput.EppResponse;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.monitoring.whitebox.EppMetric.Stage;
 import google.registry.testing.AppEngineExtension;
 import google.registry.testing.FakeClock;
 import google.registry.testing.FakeHttpSession;
 import java.util.List;
 import java.util.Optional;
+import java.util.logging.LogRecord;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -77,6 +81,13 @@ class FlowRunnerTest {
     }
   }
 
+  static class FailingCommandFlow implements Flow {
+    @Override
+    public ResponseOrGreeting run() throws EppException {
+      throw new UnimplementedExtensionException();
+    }
+  }
+
   @BeforeEach
   void beforeEach() {
     LoggerConfig.getConfig(FlowRunner.class).addHandler(handler);
@@ -93,6 +104,8 @@ class FlowRunnerTest {
         new StatelessRequestSessionMetadata("TheRegistrar", ImmutableSet.of());
     flowRunner.trid = Trid.create("client-123", "server-456");
     flowRunner.flowReporter = Mockito.mock(FlowReporter.class);
+    flowRunner.clock = clock;
+    flowRunner.xmlLogSampleInterval = 1;
   }
 
   @Test
@@ -121,6 +134,39 @@ class FlowRunnerTest {
     verify(flowRunner.flowReporter, never()).recordToLogs();
   }
 
+  @Test
+  void testRun_transactionalCommand_setsLastWriteTimeOfSession() throws Exception {
+    flowRunner.isTransactional = true;
+    flowRunner.sessionMetadata = new HttpSessionMetadata(new FakeHttpSession());
+    flowRunner.run(eppMetricBuilder);
+    assertThat(flowRunner.sessionMetadata.getLastWriteTime()).hasValue(clock.nowUtc());
+  }
+
+  @Test
+  void testRun_failedTransactionalCommand_doesNotSetLastWriteTimeOfSession() {
+    flowRunner.isTransactional = true;
+    flowRunner.flowProvider = FailingCommandFlow::new;
+    flowRunner.sessionMetadata = new HttpSessionMetadata(new FakeHttpSession());
+    assertThrows(UnimplementedExtensionException.class, () -> flowRunner.run(eppMetricBuilder));
+    assertThat(flowRunner.sessionMetadata.getLastWriteTime()).isEmpty();
+  }
+
+  @Test
+  void testRun_dryRun_doesNotSetLastWriteTimeOfSession() throws Exception {
+    flowRunner.isTransactional = true;
+    flowRunner.isDryRun = true;
+    flowRunner.sessionMetadata = new HttpSessionMetadata(new FakeHttpSession());
+    flowRunner.run(eppMetricBuilder);
+    assertThat(flowRunner.sessionMetadata.getLastWriteTime()).isEmpty();
+  }
+
+  @Test
+  void testRun_nonTransactionalCommand_doesNotSetLastWriteTimeOfSession() throws Exception {
+    flowRunner.sessionMetadata = new HttpSessionMetadata(new FakeHttpSession());
+    flowRunner.run(eppMetricBuilder);
+    assertThat(flowRunner.sessionMetadata.getLastWriteTime()).isEmpty();
+  }
+
   @Test
   void testRun_loggingStatement_basic() throws Exception {
     flowRunner.run(eppMetricBuilder);
@@ -189,4 +235,60 @@ class FlowRunnerTest {
     String xml = Joiner.on('\n').join(lines.subList(3, lines.size() - 4));
     assertThat(xml).isEqualTo(sanitizedDomainCreateXml);
   }
+
+  @Test
+  void testRun_loggingStatement_notSampled_omitsXml() throws Exception {
+    flowRunner.xmlLogSampleInterval = 0;
+    flowRunner.run(eppMetricBuilder);
+    assertThat(Splitter.on("\n\t").split(findFirstLogMessageByPrefix(handler, "EPP Command\n\t")))
+        .containsExactly(
+            "server-456",
+            "TheRegistrar",
+            "StatelessRequestSessionMetadata"
+                + "{clientId=TheRegistrar, failedLoginAttempts=0, serviceExtensionUris=}",
+            "<XML not logged>",
+            "PasswordOnlyTransportCredentials{}",
+            "UNIT_TEST",
+            "LIVE",
+            "NORMAL")
+        .inOrder();
+    assertThat(handler.getStoredLogRecords()).hasSize(1);
+  }
+
+  @Test
+  void testRun_loggingStatement_notSampled_logsXmlOnFailure() throws Exception {
+    flowRunner.xmlLogSampleInterval = 0;
+    flowRunner.flowProvider = FailingCommandFlow::new;
+    flowRunner.flowClass = FailingCommandFlow.class;
+    assertThrows(UnimplementedExtensionException.class, () -> flowRunner.run(eppMetricBuilder));
+    assertThat(findFirstLogMessageByPrefix(handler, "EPP Command server-456 failed"))
+        .isEqualTo(
+            ", input XML:\n\t"
+                + "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n\t"
+                + "<xml/>\n\t");
+  }
+
+  @Test
+  void testRun_loggingStatement_sampled_logsXmlForOneInN() throws Exception {
+    flowRunner.xmlLogSampleInterval = 3;
+    for (int i = 0; i < 6; i++) {
+      flowRunner.run(eppMetricBuilder);
+    }
+    long commandsWithXml =
+        handler.getStoredLogRecords().stream()
+            .map(LogRecord::getMessage)
+            .filter(message -> message.startsWith("EPP Command\n\t"))
+            .filter(message -> message.contains("<xml/>"))
+            .count();
+    assertThat(commandsWithXml).isEqualTo(2);
+  }
+
+  @Test
+  void testRun_recordsStageDurations() throws Exception {
+    EppMetric.Builder metricBuilder =
+        EppMetric.builderForRequest(new FakeClock().setAutoIncrementByOneMilli());
+    flowRunner.run(metricBuilder);
+    assertThat(metricBuilder.build().getStageDurations().keySet())
+        .containsExactly(Stage.COMMAND_LOG, Stage.FLOW);
+  }
 }
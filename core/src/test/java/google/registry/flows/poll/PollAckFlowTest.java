@@ -15,6 +15,9 @@
 package google.registry.flows.poll;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.flows.poll.PollFlowUtils.getPollMessageCount;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.testing.DatabaseHelper.createHistoryEntryForEppResource;
 import static google.registry.testing.DatabaseHelper.createTld;
 import static google.registry.testing.DatabaseHelper.newDomainBase;
@@ -36,7 +39,9 @@ import google.registry.testing.DualDatabaseTest;
 import google.registry.testing.ReplayExtension;
 import google.registry.testing.SetClockExtension;
 import google.registry.testing.TestOfyAndSql;
+import google.registry.testing.TestSqlOnly;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -180,6 +185,47 @@ class PollAckFlowTest extends FlowTestCase<PollAckFlow> {
             ImmutableMap.of("MSGID", "1-3-EXAMPLE-4-3-2011", "COUNT", "4")));
   }
 
+  @TestSqlOnly
+  void testSuccess_moreMessages_savedCountKeptUpToDate() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      persistOneTimePollMessage(MESSAGE_ID + i);
+    }
+    runFlow();
+    DateTime ackTime = clock.nowUtc();
+    assertThat(jpaTm().transact(() -> PollMessageQueue.getCount("NewRegistrar", ackTime)))
+        .hasValue(4L);
+
+    // Poll messages that were due when the count was saved are counted by the trigger.
+    PollMessage pollMessage =
+        persistResource(
+            new PollMessage.OneTime.Builder()
+                .setId(MESSAGE_ID + 5)
+                .setRegistrarId("NewRegistrar")
+                .setEventTime(clock.nowUtc().minusDays(1))
+                .setMsg("Some poll message.")
+                .setParent(createHistoryEntryForEppResource(domain))
+                .build());
+    assertThat(getPollMessageCount("NewRegistrar", clock.nowUtc())).isEqualTo(5);
+    jpaTm().transact(() -> jpaTm().delete(pollMessage.createVKey()));
+    assertThat(getPollMessageCount("NewRegistrar", clock.nowUtc())).isEqualTo(4);
+
+    // Future poll messages are only counted once they are due.
+    persistResource(
+        new PollMessage.Autorenew.Builder()
+            .setId(MESSAGE_ID + 6)
+            .setRegistrarId("NewRegistrar")
+            .setEventTime(clock.nowUtc().plusDays(1))
+            .setAutorenewEndTime(END_OF_TIME)
+            .setMsg("Domain was auto-renewed.")
+            .setTargetId("test.example")
+            .setParent(createHistoryEntryForEppResource(domain))
+            .build());
+    assertThat(getPollMessageCount("NewRegistrar", clock.nowUtc())).isEqualTo(4);
+    clock.advanceBy(Duration.standardDays(2));
+    assertThat(getPollMessageCount("NewRegistrar", clock.nowUtc())).isEqualTo(5);
+    assertThat(getPollMessageCount("NewRegistrar", ackTime)).isEqualTo(4);
+  }
+
   @TestOfyAndSql
   void testFailure_noSuchMessage() throws Exception {
     assertTransactionalFlow(true);
@@ -14,6 +14,9 @@
 
 package google.registry.flows.poll;
 
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.testing.DatabaseHelper.createHistoryEntryForEppResource;
 import static google.registry.testing.DatabaseHelper.createTld;
 import static google.registry.testing.DatabaseHelper.newDomainBase;
@@ -22,6 +25,7 @@ import static google.registry.testing.DatabaseHelper.persistActiveHost;
 import static google.registry.testing.DatabaseHelper.persistNewRegistrar;
 import static google.registry.testing.DatabaseHelper.persistResource;
 import static google.registry.testing.EppExceptionSubject.assertAboutEppExceptions;
+import static org.joda.time.DateTimeZone.UTC;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.common.collect.ImmutableList;
@@ -41,9 +45,14 @@ import google.registry.model.transfer.TransferResponse.ContactTransferResponse;
 import google.registry.model.transfer.TransferResponse.DomainTransferResponse;
 import google.registry.model.transfer.TransferStatus;
 import google.registry.testing.DualDatabaseTest;
+import google.registry.testing.InjectExtension;
 import google.registry.testing.ReplayExtension;
 import google.registry.testing.SetClockExtension;
 import google.registry.testing.TestOfyAndSql;
+import google.registry.testing.TestSqlOnly;
+import java.sql.Timestamp;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.extension.RegisterExtension;
@@ -60,6 +69,8 @@ class PollRequestFlowTest extends FlowTestCase<PollRequestFlow> {
   @RegisterExtension
   final ReplayExtension replayExtension = ReplayExtension.createWithDoubleReplay(clock);
 
+  @RegisterExtension final InjectExtension queueInject = new InjectExtension();
+
   private DomainBase domain;
   private ContactResource contact;
   private HostResource host;
@@ -260,6 +271,50 @@ class PollRequestFlowTest extends FlowTestCase<PollRequestFlow> {
     runFlowAssertResponse(loadFile("poll_response_host_delete.xml"));
   }
 
+  @TestSqlOnly
+  void testSuccess_pollingWithoutAcking_savesCountOnceCorrectionIsLarge() throws Exception {
+    queueInject.setStaticField(PollMessageQueue.class, "maxCorrection", 2);
+    DateTime countTime = clock.nowUtc();
+    jpaTm().transact(() -> PollMessageQueue.saveCount("NewRegistrar", 0, countTime));
+    for (int hours = 1; hours <= 3; hours++) {
+      persistResource(
+          new PollMessage.OneTime.Builder()
+              .setRegistrarId("NewRegistrar")
+              .setEventTime(countTime.plusHours(hours))
+              .setMsg("Some poll message.")
+              .setParent(createHistoryEntryForEppResource(domain))
+              .build());
+    }
+
+    // The count is corrected by the two poll messages that became due, which is still small.
+    clock.advanceBy(Duration.standardHours(2));
+    runFlow();
+    assertThat(getCountedUntil()).isEqualTo(countTime);
+
+    // The registrar polls again without acking, and now three poll messages have become due.
+    clock.advanceBy(Duration.standardHours(2));
+    runFlow();
+    DateTime pollTime = clock.nowUtc();
+    assertThat(getCountedUntil()).isEqualTo(pollTime);
+    assertThat(jpaTm().transact(() -> PollMessageQueue.getCount("NewRegistrar", pollTime)))
+        .hasValue(3L);
+  }
+
+  private static DateTime getCountedUntil() {
+    Timestamp countedUntil =
+        jpaTm()
+            .transact(
+                () ->
+                    (Timestamp)
+                        jpaTm()
+                            .getEntityManager()
+                            .createNativeQuery(
+                                "SELECT counted_until FROM \"PollMessageQueue\""
+                                    + " WHERE registrar_id = 'NewRegistrar'")
+                            .getSingleResult());
+    return new DateTime(countedUntil.getTime(), UTC);
+  }
+
   @TestOfyAndSql
   void testFailure_messageIdProvided() throws Exception {
     setEppInput("poll_with_id.xml");
@@ -0,0 +1,181 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
+import static google.registry.model.CacheMetrics.refreshFailures;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link CacheUtils}. */
+class CacheUtilsTest {
+
+  private static final Duration REFRESH_DURATION = Duration.standardMinutes(10);
+
+  private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+  private final AtomicLong nanos = new AtomicLong();
+  private final AtomicInteger loadCount = new AtomicInteger();
+  private volatile boolean failLoads;
+
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+
+  private final CacheLoader<String, String> loader =
+      new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+          if (failLoads) {
+            throw new IllegalStateException("Load failed");
+          }
+          return key + loadCount.incrementAndGet();
+        }
+      };
+
+  @BeforeEach
+  void beforeEach() {
+    refreshFailures.reset();
+  }
+
+  private void advanceBy(Duration duration) {
+    nanos.addAndGet(MILLISECONDS.toNanos(duration.getMillis()));
+  }
+
+  /** Returns the reload that the cache scheduled, after checking that its delay was jittered. */
+  private Runnable getScheduledReload() {
+    ArgumentCaptor<Runnable> reload = ArgumentCaptor.forClass(Runnable.class);
+    ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+    verify(executor).schedule(reload.capture(), delay.capture(), eq(MILLISECONDS));
+    assertThat(delay.getValue()).isAtLeast(0L);
+    assertThat(delay.getValue()).isAtMost(REFRESH_DURATION.getMillis() / 10);
+    return reload.getValue();
+  }
+
+  @Test
+  void testRefreshingCache_servesPreviousValueWhileReloading() {
+    LoadingCache<String, String> cache =
+        CacheUtils.newRefreshingCache(
+            "test", REFRESH_DURATION, loader, Optional.of(executor), ticker);
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+
+    // Not due for refresh yet.
+    advanceBy(Duration.standardMinutes(9));
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    verifyNoInteractions(executor);
+
+    // Due for refresh, which is scheduled in the background.
+    advanceBy(Duration.standardMinutes(2));
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    Runnable reload = getScheduledReload();
+    assertThat(loadCount.get()).isEqualTo(1);
+
+    reload.run();
+    assertThat(cache.getUnchecked("key")).isEqualTo("key2");
+    assertThat(loadCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  void testRefreshingCache_keepsPreviousValueOnFailure() {
+    LoadingCache<String, String> cache =
+        CacheUtils.newRefreshingCache(
+            "test", REFRESH_DURATION, loader, Optional.of(executor), ticker);
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+
+    advanceBy(Duration.standardMinutes(11));
+    failLoads = true;
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    getScheduledReload().run();
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    assertThat(refreshFailures).hasValueForLabels(1, "test").and().hasNoOtherValues();
+  }
+
+  @Test
+  void testRefreshingCache_zeroDuration_doesNotCache() {
+    LoadingCache<String, String> cache =
+        CacheUtils.newRefreshingCache("test", Duration.ZERO, loader);
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    assertThat(cache.getUnchecked("key")).isEqualTo("key2");
+  }
+
+  @Test
+  void testRefreshingCache_invalidate_loadsSynchronously() {
+    LoadingCache<String, String> cache =
+        CacheUtils.newRefreshingCache(
+            "test", REFRESH_DURATION, loader, Optional.of(executor), ticker);
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+    cache.invalidate("key");
+    assertThat(cache.getUnchecked("key")).isEqualTo("key2");
+    verifyNoInteractions(executor);
+  }
+
+  @Test
+  void testRefreshingCache_noBackgroundThreads_reloadsInline() {
+    LoadingCache<String, String> cache =
+        CacheUtils.newRefreshingCache("test", REFRESH_DURATION, loader, Optional.empty(), ticker);
+    assertThat(cache.getUnchecked("key")).isEqualTo("key1");
+
+    advanceBy(Duration.standardMinutes(11));
+    assertThat(cache.getUnchecked("key")).isEqualTo("key2");
+    assertThat(loadCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  void testCreateRefreshExecutor_startsThreads() throws Exception {
+    AtomicInteger threads = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable -> {
+          threads.incrementAndGet();
+          Thread thread = new Thread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        };
+    Optional<ScheduledExecutorService> executor = CacheUtils.createRefreshExecutor(threadFactory);
+    assertThat(executor).isPresent();
+    assertThat(threads.get()).isEqualTo(2);
+    executor.get().shutdownNow();
+  }
+
+  @Test
+  void testCreateRefreshExecutor_threadFactoryFails_isEmpty() {
+    ThreadFactory threadFactory =
+        runnable -> {
+          throw new IllegalStateException("No background threads");
+        };
+    assertThat(CacheUtils.createRefreshExecutor(threadFactory)).isEmpty();
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.testing.DatabaseHelper.persistActiveContact;
+import static google.registry.testing.DatabaseHelper.persistActiveHost;
+import static google.registry.testing.DatabaseHelper.persistResource;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.host.HostResource;
+import google.registry.model.index.ForeignKeyIndex;
+import google.registry.persistence.VKey;
+import google.registry.testing.DualDatabaseTest;
+import google.registry.testing.TestOfyAndSql;
+import google.registry.testing.TestSqlOnly;
+import java.util.NoSuchElementException;
+
+/** Unit tests for {@link EppResourceLoadScope}. */
+@DualDatabaseTest
+class EppResourceLoadScopeTest extends EntityTestCase {
+
+  private HostResource modifyHost(HostResource host) {
+    return persistResource(
+        host.asBuilder().setLastTransferTime(fakeClock.nowUtc().minusDays(60)).build());
+  }
+
+  @TestOfyAndSql
+  void testOpenAndClose() {
+    assertThat(EppResourceLoadScope.current()).isEmpty();
+    try (EppResourceLoadScope outerScope = EppResourceLoadScope.open()) {
+      assertThat(EppResourceLoadScope.current()).hasValue(outerScope);
+      try (EppResourceLoadScope innerScope = EppResourceLoadScope.open()) {
+        assertThat(EppResourceLoadScope.current()).hasValue(innerScope);
+      }
+      assertThat(EppResourceLoadScope.current()).hasValue(outerScope);
+    }
+    assertThat(EppResourceLoadScope.current()).isEmpty();
+  }
+
+  @TestOfyAndSql
+  void testFailure_closeOuterScopeFirst() {
+    EppResourceLoadScope outerScope = EppResourceLoadScope.open();
+    EppResourceLoadScope innerScope = EppResourceLoadScope.open();
+    try {
+      IllegalStateException thrown = assertThrows(IllegalStateException.class, outerScope::close);
+      assertThat(thrown)
+          .hasMessageThat()
+          .isEqualTo("This EppResourceLoadScope is not the innermost one");
+    } finally {
+      innerScope.close();
+      outerScope.close();
+    }
+  }
+
+  @TestOfyAndSql
+  void testLoadCached_resourcesKeptForScope() {
+    HostResource host = persistActiveHost("ns1.example.com");
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      assertThat(EppResource.loadCached(host.createVKey())).isEqualTo(host);
+      modifyHost(host);
+      assertThat(EppResource.loadCached(host.createVKey())).isEqualTo(host);
+      assertThat(EppResource.loadCached(ImmutableList.of(host.createVKey())))
+          .containsExactly(host.createVKey(), host);
+    }
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      assertThat(EppResource.loadCached(host.createVKey())).isNotEqualTo(host);
+    }
+  }
+
+  @TestOfyAndSql
+  void testLoadCached_onlyLoadsMissingResources() {
+    HostResource host = persistActiveHost("ns1.example.com");
+    ContactResource contact = persistActiveContact("contact1234");
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      assertThat(EppResource.loadCached(host.createVKey())).isEqualTo(host);
+      modifyHost(host);
+      ContactResource modifiedContact =
+          persistResource(contact.asBuilder().setEmailAddress("different@fake.lol").build());
+      assertThat(
+              EppResource.loadCached(
+                  ImmutableList.of(host.createVKey(), contact.createVKey(), host.createVKey())))
+          .containsExactly(host.createVKey(), host, contact.createVKey(), modifiedContact);
+    }
+  }
+
+  @TestOfyAndSql
+  void testLoadCachedForeignKeyIndexes_keptForScope() {
+    HostResource host = persistActiveHost("ns1.example.com");
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      assertThat(
+              ForeignKeyIndex.loadCached(
+                      HostResource.class, ImmutableList.of("ns1.example.com"), fakeClock.nowUtc())
+                  .get("ns1.example.com")
+                  .getResourceKey())
+          .isEqualTo(host.createVKey());
+      persistResource(host.asBuilder().setDeletionTime(fakeClock.nowUtc().minusDays(1)).build());
+      assertThat(
+              ForeignKeyIndex.loadCached(
+                      HostResource.class, ImmutableList.of("ns1.example.com"), fakeClock.nowUtc())
+                  .keySet())
+          .containsExactly("ns1.example.com");
+    }
+  }
+
+  @TestSqlOnly
+  void testLoadCachedForeignKeyIndexes_resourcesAddedToScope() {
+    HostResource host = persistActiveHost("ns1.example.com");
+    try (EppResourceLoadScope scope = EppResourceLoadScope.open()) {
+      ForeignKeyIndex.loadCached(
+          HostResource.class, ImmutableList.of("ns1.example.com"), fakeClock.nowUtc());
+      modifyHost(host);
+      // The host was loaded along with its foreign key index, so isn't loaded again.
+      assertThat(EppResource.loadCached(host.createVKey())).isEqualTo(host);
+    }
+  }
+
+  @TestSqlOnly
+  void testLoadByKeysInBatches() {
+    HostResource host1 = persistActiveHost("ns1.example.com");
+    HostResource host2 = persistActiveHost("ns2.example.com");
+    ContactResource contact = persistActiveContact("contact1234");
+    assertThat(
+            EppResource.loadByKeysInBatches(
+                ImmutableList.of(host1.createVKey(), contact.createVKey(), host2.createVKey())))
+        .containsExactly(
+            host1.createVKey(), host1, host2.createVKey(), host2, contact.createVKey(), contact);
+  }
+
+  @TestSqlOnly
+  void testFailure_loadByKeysInBatches_missingKey() {
+    HostResource host = persistActiveHost("ns1.example.com");
+    VKey<HostResource> missingKey = VKey.createSql(HostResource.class, "missing-ROID");
+    NoSuchElementException thrown =
+        assertThrows(
+            NoSuchElementException.class,
+            () ->
+                EppResource.loadByKeysInBatches(ImmutableList.of(host.createVKey(), missingKey)));
+    assertThat(thrown).hasMessageThat().contains("missing-ROID");
+  }
+}
@@ -55,6 +55,7 @@ public class PremiumListDaoTest {
   public final TestCacheExtension testCacheExtension =
       new TestCacheExtension.Builder()
           .withPremiumListsCache(standardDays(1))
+          .withPremiumPriceTableCache(standardDays(1))
           .build();
 
   private static final ImmutableMap<String, BigDecimal> TEST_PRICES =
@@ -239,6 +240,21 @@ public class PremiumListDaoTest {
         .hasValue(moneyOf(JPY, 15000));
   }
 
+  @Test
+  void getPriceTable_sharedPerRevision() {
+    PremiumListDao.save(testList);
+    PremiumList savedList = PremiumListDao.getLatestRevision("testname").get();
+    PremiumPriceTable priceTable = PremiumListDao.getPriceTable(savedList);
+    assertThat(priceTable.getRevisionId()).isEqualTo(savedList.getRevisionId());
+    assertThat(priceTable.getPrice("silver")).hasValue(Money.of(USD, 10.23));
+    assertThat(priceTable.getPrice("zirconium")).isEmpty();
+    assertThat(PremiumListDao.getPriceTable(savedList)).isSameInstanceAs(priceTable);
+    assertThat(PremiumListDao.getPriceTableSizes())
+        .containsExactly(ImmutableList.of("testname"), priceTable.getSizeInBytes());
+    PremiumListDao.delete(testList);
+    assertThat(PremiumListDao.getPriceTableSizes()).isEmpty();
+  }
+
   @Test
   void test_savePremiumList_clearsCache() {
     assertThat(PremiumListDao.premiumListCache.getIfPresent("testname")).isNull();
@@ -0,0 +1,122 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tld.label;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.model.tld.label.PremiumPriceTable.NOT_PREMIUM;
+import static org.joda.money.CurrencyUnit.JPY;
+import static org.joda.money.CurrencyUnit.USD;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.model.tld.label.PremiumList.PremiumEntry;
+import java.math.BigDecimal;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link PremiumPriceTable}. */
+class PremiumPriceTableTest {
+
+  private static PremiumList createPremiumList(CurrencyUnit currency, long revisionId) {
+    PremiumList premiumList =
+        new PremiumList.Builder().setName("tld").setCurrency(currency).build();
+    premiumList.revisionId = revisionId;
+    return premiumList;
+  }
+
+  private static PremiumEntry entry(String label, String price) {
+    return PremiumEntry.create(123L, new BigDecimal(price), label);
+  }
+
+  private final PremiumPriceTable table =
+      PremiumPriceTable.create(
+          createPremiumList(USD, 123L),
+          ImmutableList.of(
+              entry("rich", "1999"),
+              entry("lol", "999"),
+              entry("johnny-be-goode", "20.50"),
+              entry("ri", "5.5"),
+              entry("richer", "10000.01")));
+
+  @Test
+  void testGetPrice() {
+    assertThat(table.getPrice("rich")).hasValue(Money.parse("USD 1999.00"));
+    assertThat(table.getPrice("lol")).hasValue(Money.parse("USD 999.00"));
+    assertThat(table.getPrice("johnny-be-goode")).hasValue(Money.parse("USD 20.50"));
+    assertThat(table.getPrice("ri")).hasValue(Money.parse("USD 5.50"));
+    assertThat(table.getPrice("richer")).hasValue(Money.parse("USD 10000.01"));
+  }
+
+  @Test
+  void testGetPrice_notPremium() {
+    assertThat(table.getPrice("poor")).isEmpty();
+    assertThat(table.getPrice("r")).isEmpty();
+    assertThat(table.getPrice("ric")).isEmpty();
+    assertThat(table.getPrice("richest")).isEmpty();
+    assertThat(table.getPrice("")).isEmpty();
+    assertThat(table.getPrice("zzz")).isEmpty();
+  }
+
+  @Test
+  void testGetPriceUnits() {
+    assertThat(table.getPriceUnits("rich")).isEqualTo(199900L);
+    assertThat(table.getPriceUnits("johnny-be-goode")).isEqualTo(2050L);
+    assertThat(table.getPriceUnits("poor")).isEqualTo(NOT_PREMIUM);
+  }
+
+  @Test
+  void testGetPrice_jpy() {
+    PremiumPriceTable jpyTable =
+        PremiumPriceTable.create(
+            createPremiumList(JPY, 123L), ImmutableList.of(entry("silver", "10.00")));
+    assertThat(jpyTable.getPriceUnits("silver")).isEqualTo(10L);
+    assertThat(jpyTable.getPrice("silver")).hasValue(Money.parse("JPY 10"));
+  }
+
+  @Test
+  void testGetPrice_emptyList() {
+    PremiumPriceTable emptyTable =
+        PremiumPriceTable.create(createPremiumList(USD, 123L), ImmutableList.of());
+    assertThat(emptyTable.size()).isEqualTo(0);
+    assertThat(emptyTable.getPrice("rich")).isEmpty();
+  }
+
+  @Test
+  void testMetadata() {
+    assertThat(table.getPremiumListName()).isEqualTo("tld");
+    assertThat(table.getRevisionId()).isEqualTo(123L);
+    assertThat(table.getCurrency()).isEqualTo(USD);
+    assertThat(table.size()).isEqualTo(5);
+  }
+
+  @Test
+  void testGetSizeInBytes() {
+    // 30 label chars, 6 offsets and 5 prices.
+    assertThat(table.getSizeInBytes()).isEqualTo(30L * 2 + 6 * 4 + 5 * 8);
+  }
+
+  @Test
+  void testFailure_negativePrice() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                PremiumPriceTable.create(
+                    createPremiumList(USD, 123L), ImmutableList.of(entry("rich", "-1"))));
+    assertThat(thrown).hasMessageThat().isEqualTo("Premium price of rich is negative");
+  }
+}
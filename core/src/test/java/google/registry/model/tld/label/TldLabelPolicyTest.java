@@ -0,0 +1,143 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tld.label;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
+import static google.registry.model.tld.label.DomainLabelMetrics.reservedListChecks;
+import static google.registry.model.tld.label.DomainLabelMetrics.reservedListHits;
+import static google.registry.model.tld.label.DomainLabelMetrics.reservedListProcessingTime;
+import static google.registry.model.tld.label.ReservationType.FULLY_BLOCKED;
+import static google.registry.model.tld.label.ReservationType.NAME_COLLISION;
+import static google.registry.model.tld.label.ReservationType.RESERVED_FOR_SPECIFIC_USE;
+import static google.registry.testing.DatabaseHelper.createTld;
+import static google.registry.testing.DatabaseHelper.persistPremiumList;
+import static google.registry.testing.DatabaseHelper.persistReservedList;
+import static google.registry.testing.DatabaseHelper.persistResource;
+import static org.joda.money.CurrencyUnit.USD;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import google.registry.model.tld.Registry;
+import google.registry.model.tld.Registry.RegistryNotFoundException;
+import google.registry.testing.AppEngineExtension;
+import java.util.Optional;
+import org.joda.money.Money;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link TldLabelPolicy}. */
+class TldLabelPolicyTest {
+
+  @RegisterExtension
+  public final AppEngineExtension appEngine = AppEngineExtension.builder().withCloudSql().build();
+
+  @BeforeEach
+  void beforeEach() {
+    // createTld() overwrites the premium list, so call it first.
+    createTld("tld");
+    ReservedList rl1 =
+        persistReservedList("reserved1", "lol,FULLY_BLOCKED", "cat,NAME_COLLISION");
+    ReservedList rl2 =
+        persistReservedList("reserved2", "cat,FULLY_BLOCKED", "dog,RESERVED_FOR_SPECIFIC_USE");
+    PremiumList pl = persistPremiumList("tld", USD, "rich,USD 1999", "johnny-be-goode,USD 20.50");
+    persistResource(
+        Registry.get("tld").asBuilder().setReservedLists(rl1, rl2).setPremiumList(pl).build());
+    reservedListChecks.reset();
+    reservedListProcessingTime.reset();
+    reservedListHits.reset();
+  }
+
+  @AfterEach
+  void afterEach() {
+    TldLabelPolicy.setCacheForTest(Optional.empty());
+  }
+
+  @Test
+  void testGetReservationTypes_mergesReservedLists() {
+    TldLabelPolicy policy = TldLabelPolicy.get("tld");
+    assertThat(policy.getTld()).isEqualTo("tld");
+    assertThat(policy.getReservationTypes("lol")).containsExactly(FULLY_BLOCKED);
+    assertThat(policy.getReservationTypes("cat")).containsExactly(FULLY_BLOCKED, NAME_COLLISION);
+    assertThat(policy.getReservationTypes("dog")).containsExactly(RESERVED_FOR_SPECIFIC_USE);
+    assertThat(policy.getReservationTypes("doge")).isEmpty();
+    assertThat(policy.getReservationTypes("")).containsExactly(FULLY_BLOCKED);
+  }
+
+  @Test
+  void testGetReservationTypes_recordsMetrics() {
+    TldLabelPolicy policy = TldLabelPolicy.get("tld");
+    policy.getReservationTypes("cat");
+    policy.getReservationTypes("doge");
+    assertThat(reservedListChecks)
+        .hasValueForLabels(1, "tld", "0", "(none)", "(none)")
+        .and()
+        .hasValueForLabels(1, "tld", "2", "reserved2", FULLY_BLOCKED.toString())
+        .and()
+        .hasNoOtherValues();
+    assertThat(reservedListHits)
+        .hasValueForLabels(1, "tld", "reserved1", NAME_COLLISION.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "reserved2", FULLY_BLOCKED.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  void testGetPremiumPrice() {
+    TldLabelPolicy policy = TldLabelPolicy.get("tld");
+    assertThat(policy.getPremiumPrice("rich")).hasValue(Money.parse("USD 1999.00"));
+    assertThat(policy.getPremiumPrice("johnny-be-goode")).hasValue(Money.parse("USD 20.50"));
+    assertThat(policy.getPremiumPrice("poor")).isEmpty();
+  }
+
+  @Test
+  void testGetPremiumPrice_noPremiumList() {
+    persistResource(Registry.get("tld").asBuilder().setPremiumList(null).build());
+    assertThat(TldLabelPolicy.get("tld").getPremiumPrice("rich")).isEmpty();
+  }
+
+  @Test
+  void testFindValidIdnTable() {
+    TldLabelPolicy policy = TldLabelPolicy.get("tld");
+    assertThat(policy.findValidIdnTable("foo")).hasValue("extended_latin");
+    assertThat(policy.findValidIdnTable("みんな")).hasValue("ja");
+    assertThat(policy.findValidIdnTable("xn--k3hel9n7bxlu1e")).isEmpty();
+  }
+
+  @Test
+  void testGet_noCaching_seesNewRevisions() {
+    assertThat(TldLabelPolicy.get("tld").getPremiumPrice("poor")).isEmpty();
+    persistPremiumList("tld", USD, "poor,USD 5");
+    assertThat(TldLabelPolicy.get("tld").getPremiumPrice("poor")).hasValue(Money.parse("USD 5"));
+  }
+
+  @Test
+  void testGet_cached_keepsSnapshot() {
+    TldLabelPolicy.setCacheForTest(Optional.of(Duration.standardDays(1)));
+    TldLabelPolicy policy = TldLabelPolicy.get("tld");
+    persistPremiumList("tld", USD, "poor,USD 5");
+    assertThat(TldLabelPolicy.get("tld")).isSameInstanceAs(policy);
+    assertThat(TldLabelPolicy.get("tld").getPremiumPrice("poor")).isEmpty();
+  }
+
+  @Test
+  void testFailure_get_tldDoesNotExist() {
+    assertThrows(RegistryNotFoundException.class, () -> TldLabelPolicy.get("nonexistent"));
+  }
+}
@@ -15,13 +15,23 @@
 package google.registry.model.tmch;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import google.registry.persistence.transaction.JpaTestExtensions;
 import google.registry.persistence.transaction.JpaTestExtensions.JpaIntegrationWithCoverageExtension;
 import google.registry.testing.FakeClock;
+import google.registry.testing.InjectExtension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.persistence.PersistenceException;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
@@ -34,6 +44,8 @@ public class ClaimsListDaoTest {
   final JpaIntegrationWithCoverageExtension jpa =
       new JpaTestExtensions.Builder().withClock(fakeClock).buildIntegrationWithCoverageExtension();
 
+  @RegisterExtension public final InjectExtension inject = new InjectExtension();
+
   @Test
   void save_insertsClaimsListSuccessfully() {
     ClaimsList claimsList =
@@ -85,4 +97,120 @@ public class ClaimsListDaoTest {
     assertThat(left.getTmdbGenerationTime()).isEqualTo(right.getTmdbGenerationTime());
     assertThat(left.getLabelsToKeys()).isEqualTo(right.getLabelsToKeys());
   }
+
+  @Test
+  void getIndex_returnsEmptyIndexIfTableIsEmpty() {
+    assertThat(ClaimsListDao.getIndex().size()).isEqualTo(0);
+  }
+
+  @Test
+  void getIndex_returnsLatestClaims_withoutIndexCaching() {
+    ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label1", "key1")));
+    ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label2", "key2")));
+    ClaimsListIndex index = ClaimsListDao.getIndex();
+    assertThat(index.getRevisionId()).isEqualTo(ClaimsListDao.get().getRevisionId());
+    assertThat(index.getClaimKey("label1")).isEmpty();
+    assertThat(index.getClaimKey("label2")).hasValue("key2");
+  }
+
+  @Test
+  void getIndex_withIndexCaching_isReusedUntilNewRevision() {
+    ClaimsListDao.setIndexRevisionProbeForTest(Optional.of(Duration.standardHours(1)));
+    try {
+      ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label1", "key1")));
+      ClaimsListIndex index = ClaimsListDao.getIndex();
+      assertThat(index.getClaimKey("label1")).hasValue("key1");
+      assertThat(ClaimsListDao.getIndex()).isSameInstanceAs(index);
+
+      // Saving a new revision in this process swaps it in without waiting for the probe.
+      ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label2", "key2")));
+      ClaimsListIndex newIndex = ClaimsListDao.getIndex();
+      assertThat(newIndex.getRevisionId()).isGreaterThan(index.getRevisionId());
+      assertThat(newIndex.getClaimKey("label1")).isEmpty();
+      assertThat(newIndex.getClaimKey("label2")).hasValue("key2");
+    } finally {
+      ClaimsListDao.setIndexRevisionProbeForTest(Optional.empty());
+    }
+  }
+
+  @Test
+  void getIndex_withIndexCaching_reloadsWhenProbeFindsNewRevision() {
+    ClaimsListDao.setIndexRevisionProbeForTest(Optional.of(Duration.standardHours(1)));
+    try {
+      ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label1", "key1")));
+      assertThat(ClaimsListDao.getIndex().getClaimKey("label1")).hasValue("key1");
+      // Simulate another process publishing a new revision, which this one hasn't probed yet.
+      jpaTm()
+          .transact(
+              () ->
+                  jpaTm()
+                      .insert(
+                          ClaimsList.create(
+                              fakeClock.nowUtc(), ImmutableMap.of("label2", "key2"))));
+      assertThat(ClaimsListDao.getIndex().getClaimKey("label1")).hasValue("key1");
+      // Resetting the probe forces a fresh revision check.
+      ClaimsListDao.setIndexRevisionProbeForTest(Optional.of(Duration.standardHours(1)));
+      assertThat(ClaimsListDao.getIndex().getClaimKey("label2")).hasValue("key2");
+    } finally {
+      ClaimsListDao.setIndexRevisionProbeForTest(Optional.empty());
+    }
+  }
+
+  @Test
+  void getIndex_withIndexCaching_servesPreviousRevisionWhileReloadingInBackground() {
+    List<Runnable> reloads = new ArrayList<>();
+    AtomicReference<Optional<Long>> probedRevisionId = new AtomicReference<>(Optional.empty());
+    inject.setStaticField(ClaimsListDao.class, "indexEnabled", true);
+    inject.setStaticField(
+        ClaimsListDao.class, "latestRevisionId", (Supplier<Optional<Long>>) probedRevisionId::get);
+    inject.setStaticField(ClaimsListDao.class, "reloadExecutor", (Executor) reloads::add);
+    try {
+      ClaimsList firstClaimsList =
+          ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label1", "key1"));
+      ClaimsListDao.save(firstClaimsList);
+      probedRevisionId.set(Optional.of(firstClaimsList.getRevisionId()));
+      ClaimsListIndex index = ClaimsListDao.getIndex();
+      assertThat(index.getClaimKey("label1")).hasValue("key1");
+
+      // Simulate another process publishing a new revision, which the probe then finds.
+      ClaimsList secondClaimsList =
+          ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label2", "key2"));
+      jpaTm().transact(() -> jpaTm().insert(secondClaimsList));
+      probedRevisionId.set(Optional.of(secondClaimsList.getRevisionId()));
+      assertThat(ClaimsListDao.getIndex()).isSameInstanceAs(index);
+      assertThat(ClaimsListDao.getIndex()).isSameInstanceAs(index);
+      assertThat(reloads).hasSize(1);
+
+      reloads.get(0).run();
+      assertThat(ClaimsListDao.getIndex().getClaimKey("label2")).hasValue("key2");
+      assertThat(reloads).hasSize(1);
+    } finally {
+      ClaimsListDao.setIndexRevisionProbeForTest(Optional.empty());
+    }
+  }
+
+  @Test
+  void getIndex_withIndexCaching_reloadDoesNotReplaceNewerSavedRevision() {
+    List<Runnable> reloads = new ArrayList<>();
+    AtomicReference<Optional<Long>> probedRevisionId = new AtomicReference<>(Optional.empty());
+    inject.setStaticField(ClaimsListDao.class, "indexEnabled", true);
+    inject.setStaticField(
+        ClaimsListDao.class, "latestRevisionId", (Supplier<Optional<Long>>) probedRevisionId::get);
+    inject.setStaticField(ClaimsListDao.class, "reloadExecutor", (Executor) reloads::add);
+    try {
+      ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label1", "key1")));
+      ClaimsList secondClaimsList =
+          ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label2", "key2"));
+      jpaTm().transact(() -> jpaTm().insert(secondClaimsList));
+      probedRevisionId.set(Optional.of(secondClaimsList.getRevisionId()));
+      ClaimsListDao.getIndex();
+
+      // A newer revision is saved by this process while the reload is still pending.
+      ClaimsListDao.save(ClaimsList.create(fakeClock.nowUtc(), ImmutableMap.of("label3", "key3")));
+      reloads.get(0).run();
+      assertThat(ClaimsListDao.getIndex().getClaimKey("label3")).hasValue("key3");
+    } finally {
+      ClaimsListDao.setIndexRevisionProbeForTest(Optional.empty());
+    }
+  }
 }
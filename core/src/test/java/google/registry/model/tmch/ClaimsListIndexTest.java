@@ -0,0 +1,48 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ClaimsListIndex}. */
+class ClaimsListIndexTest {
+
+  @Test
+  void testGetClaimKey() {
+    ClaimsListIndex index =
+        ClaimsListIndex.create(
+            5L, ImmutableMap.of("zebra", "key-z", "apple", "key-a", "mango", "key-m"));
+    assertThat(index.getRevisionId()).isEqualTo(5L);
+    assertThat(index.size()).isEqualTo(3);
+    assertThat(index.getClaimKey("apple")).hasValue("key-a");
+    assertThat(index.getClaimKey("mango")).hasValue("key-m");
+    assertThat(index.getClaimKey("zebra")).hasValue("key-z");
+    assertThat(index.getClaimKey("banana")).isEmpty();
+    assertThat(index.getClaimKey("")).isEmpty();
+    assertThat(index.getClaimKey("zzz")).isEmpty();
+  }
+
+  @Test
+  void testEmpty() {
+    ClaimsListIndex index = ClaimsListIndex.createEmpty();
+    assertThat(index.getRevisionId()).isEqualTo(ClaimsListIndex.EMPTY_REVISION_ID);
+    assertThat(index.size()).isEqualTo(0);
+    assertThat(index.getClaimKey("apple")).isEmpty();
+  }
+}
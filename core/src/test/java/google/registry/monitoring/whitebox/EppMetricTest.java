@@ -14,13 +14,16 @@
 
 package google.registry.monitoring.whitebox;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.testing.DatabaseHelper.createTld;
 import static google.registry.testing.DatabaseHelper.createTlds;
 
 import com.google.common.collect.ImmutableSet;
+import google.registry.monitoring.whitebox.EppMetric.Stage;
 import google.registry.testing.AppEngineExtension;
 import google.registry.testing.FakeClock;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
@@ -64,4 +67,34 @@ class EppMetricTest {
         EppMetric.builderForRequest(new FakeClock()).setTlds(ImmutableSet.of()).build();
     assertThat(metric.getTld()).isEmpty();
   }
+
+  @Test
+  void test_stageDurations_areRecorded() {
+    FakeClock clock = new FakeClock();
+    EppMetric.Builder builder = EppMetric.builderForRequest(clock).beginStage(Stage.PARSE);
+    clock.advanceBy(Duration.millis(5));
+    builder.endStage(Stage.PARSE).beginStage(Stage.FLOW);
+    clock.advanceBy(Duration.millis(20));
+    builder.endStage(Stage.FLOW).beginStage(Stage.COMMAND_LOG);
+    assertThat(builder.build().getStageDurations())
+        .containsExactly(Stage.PARSE, Duration.millis(5), Stage.FLOW, Duration.millis(20));
+  }
+
+  @Test
+  void test_stageDurations_repeatedStagesAreSummed() {
+    FakeClock clock = new FakeClock();
+    EppMetric.Builder builder = EppMetric.builderForRequest(clock);
+    for (int i = 0; i < 2; i++) {
+      builder.beginStage(Stage.FLOW);
+      clock.advanceBy(Duration.millis(3));
+      builder.endStage(Stage.FLOW);
+    }
+    assertThat(builder.build().getStageDurations()).containsExactly(Stage.FLOW, Duration.millis(6));
+  }
+
+  @Test
+  void test_stageDurations_endWithoutBeginIsIgnored() {
+    EppMetric metric = EppMetric.builderForRequest(new FakeClock()).endStage(Stage.PARSE).build();
+    assertThat(metric.getStageDurations()).isEmpty();
+  }
 }
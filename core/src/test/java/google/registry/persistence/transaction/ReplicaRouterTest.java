@@ -0,0 +1,174 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import google.registry.testing.AppEngineExtension;
+import google.registry.testing.FakeClock;
+import google.registry.testing.TmOverrideExtension;
+import java.util.Optional;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link ReplicaRouter}. */
+class ReplicaRouterTest {
+
+  private static final Duration MAX_LAG = Duration.standardSeconds(10);
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2021-06-01T00:00:00Z"));
+
+  @RegisterExtension
+  final AppEngineExtension appEngine =
+      AppEngineExtension.builder().withDatastoreAndCloudSql().withClock(clock).build();
+
+  @RegisterExtension
+  @Order(Order.DEFAULT + 1)
+  TmOverrideExtension tmOverrideExtension = TmOverrideExtension.withJpa();
+
+  private JpaTransactionManager primary;
+  private JpaTransactionManager replica1;
+  private JpaTransactionManager replica2;
+  private ReplicaRouter router;
+
+  @BeforeEach
+  void beforeEach() {
+    primary = jpaTm();
+    // Copies of the primary transaction manager, which tell apart where the work ran.
+    replica1 = spy(primary);
+    replica2 = spy(primary);
+    router =
+        spy(
+            new ReplicaRouter(
+                ImmutableMap.of(
+                    "project:region:replica1", replica1, "project:region:replica2", replica2),
+                MAX_LAG,
+                clock));
+  }
+
+  private JpaTransactionManager runReadOnly() {
+    return router.transactReadOnly(
+        () -> {
+          assertThat(jpaTm().inTransaction()).isTrue();
+          assertThat(tm()).isSameInstanceAs(jpaTm());
+          return jpaTm();
+        });
+  }
+
+  @Test
+  void testTransactReadOnly_takesReplicasInTurn() {
+    assertThat(ImmutableList.of(runReadOnly(), runReadOnly(), runReadOnly(), runReadOnly()))
+        .containsExactly(replica1, replica2, replica1, replica2)
+        .inOrder();
+    assertThat(jpaTm()).isSameInstanceAs(primary);
+    assertThat(tm()).isSameInstanceAs(primary);
+  }
+
+  @Test
+  void testTransactReadOnly_runnable() {
+    router.transactReadOnly(() -> assertThat(jpaTm()).isSameInstanceAs(replica1));
+  }
+
+  @Test
+  void testTransactReadOnly_noReplicas_runsWorkAsIs() {
+    router = new ReplicaRouter(ImmutableMap.of(), MAX_LAG, clock);
+    assertThat(
+            router.transactReadOnly(
+                () -> {
+                  assertThat(jpaTm().inTransaction()).isFalse();
+                  return jpaTm();
+                }))
+        .isSameInstanceAs(primary);
+  }
+
+  @Test
+  void testTransactReadOnly_inTransaction_staysOnPrimary() {
+    assertThat(jpaTm().transact(this::runReadOnly)).isSameInstanceAs(primary);
+  }
+
+  @Test
+  void testTransactReadOnly_skipsLaggingReplica() {
+    doReturn(Optional.of(MAX_LAG.plus(1))).when(router).measureLag(replica1);
+    assertThat(ImmutableList.of(runReadOnly(), runReadOnly())).containsExactly(replica2, replica2);
+  }
+
+  @Test
+  void testTransactReadOnly_skipsReplicaWhoseLagCantBeMeasured() {
+    doThrow(new IllegalStateException("Unreachable")).when(router).measureLag(replica2);
+    assertThat(ImmutableList.of(runReadOnly(), runReadOnly())).containsExactly(replica1, replica1);
+  }
+
+  @Test
+  void testTransactReadOnly_allReplicasLagging_runsWorkAsIs() {
+    doReturn(Optional.of(MAX_LAG.plus(1))).when(router).measureLag(replica1);
+    doReturn(Optional.empty()).when(router).measureLag(replica2);
+    assertThat(
+            router.transactReadOnly(
+                () -> {
+                  assertThat(jpaTm().inTransaction()).isFalse();
+                  return jpaTm();
+                }))
+        .isSameInstanceAs(primary);
+  }
+
+  @Test
+  void testTransactReadOnly_measuresLagOncePerInterval() {
+    doReturn(Optional.of(MAX_LAG.plus(1))).when(router).measureLag(replica1);
+    assertThat(ImmutableList.of(runReadOnly(), runReadOnly())).containsExactly(replica2, replica2);
+    verify(router, times(1)).measureLag(replica1);
+    verify(router, times(1)).measureLag(replica2);
+    // The replica that was lagging is used again once its lag is measured to be small enough.
+    doReturn(Optional.of(MAX_LAG)).when(router).measureLag(replica1);
+    clock.advanceBy(ReplicaRouter.LAG_CHECK_INTERVAL);
+    assertThat(runReadOnly()).isSameInstanceAs(replica1);
+    verify(router, times(2)).measureLag(replica1);
+  }
+
+  @Test
+  void testTransactReadOnly_recentWrite_runsWorkAsIs() {
+    DateTime lastWriteTime = clock.nowUtc();
+    clock.advanceBy(router.getReadYourWritesWindow().minus(1));
+    assertThat(router.transactReadOnly(TransactionManagerFactory::jpaTm, lastWriteTime))
+        .isSameInstanceAs(primary);
+    clock.advanceOneMilli();
+    assertThat(router.transactReadOnly(TransactionManagerFactory::jpaTm, lastWriteTime))
+        .isSameInstanceAs(replica1);
+  }
+
+  @Test
+  void testGetReadYourWritesWindow() {
+    assertThat(router.getReadYourWritesWindow())
+        .isEqualTo(MAX_LAG.plus(ReplicaRouter.LAG_CHECK_INTERVAL));
+  }
+
+  @Test
+  void testMeasureLag_notReplica_isZero() {
+    assertThat(router.measureLag(primary)).hasValue(Duration.ZERO);
+  }
+}
@@ -14,17 +14,40 @@
 
 package google.registry.persistence.transaction;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.auditedOfy;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.persistence.transaction.TransactionManagerFactory.ofyTm;
+import static google.registry.testing.DatabaseHelper.createTld;
+import static google.registry.testing.DatabaseHelper.persistActiveDomain;
+import static google.registry.testing.DatabaseHelper.persistResource;
+import static google.registry.util.DateTimeUtils.END_OF_TIME;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.joda.money.CurrencyUnit.USD;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.appengine.api.datastore.EntityTranslator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import google.registry.model.ImmutableObject;
+import google.registry.model.billing.BillingEvent;
+import google.registry.model.billing.BillingEvent.Flag;
+import google.registry.model.billing.BillingEvent.Reason;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.domain.DomainHistory;
+import google.registry.model.domain.DomainHistory.DomainHistoryId;
+import google.registry.model.domain.Period;
+import google.registry.model.eppcommon.Trid;
 import google.registry.model.ofy.Ofy;
+import google.registry.model.reporting.HistoryEntry;
 import google.registry.persistence.VKey;
+import google.registry.persistence.transaction.Transaction.Delete;
+import google.registry.persistence.transaction.Transaction.Mutation;
+import google.registry.persistence.transaction.Transaction.Update;
 import google.registry.testing.AppEngineExtension;
 import google.registry.testing.DatabaseHelper;
 import google.registry.testing.FakeClock;
@@ -33,6 +56,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.StreamCorruptedException;
+import org.joda.money.Money;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -116,6 +140,185 @@ class TransactionTest {
         StreamCorruptedException.class, () -> Transaction.deserialize(new byte[] {1, 2, 3, 4}));
   }
 
+  @Test
+  void testSerialization_javaSerializedByDefault() throws Exception {
+    Transaction txn =
+        new Transaction.Builder().addUpdate(fooEntity).addDelete(barEntity.key()).build();
+
+    assertThat(txn.serialize()).isEqualTo(serializeWithJava(txn));
+  }
+
+  @Test
+  void testSerialization_binary() throws Exception {
+    inject.setStaticField(Transaction.class, "writeBinaryFormat", true);
+    Transaction txn = new Transaction.Builder().addUpdate(barEntity).build();
+    txn.writeToDatastore();
+
+    txn = new Transaction.Builder().addUpdate(fooEntity).addDelete(barEntity.key()).build();
+    txn = Transaction.deserialize(txn.serialize());
+
+    txn.writeToDatastore();
+
+    ofyTm()
+        .transact(
+            () -> {
+              assertThat(ofyTm().loadByKey(fooEntity.key())).isEqualTo(fooEntity);
+              assertThat(ofyTm().exists(barEntity.key())).isEqualTo(false);
+            });
+  }
+
+  @Test
+  void testSerialization_deleteKeys() throws Exception {
+    inject.setStaticField(Transaction.class, "writeBinaryFormat", true);
+    ImmutableList<VKey<?>> keys =
+        ImmutableList.of(
+            barEntity.key(),
+            VKey.createSql(TestEntity.class, "sqlOnly"),
+            VKey.createOfy(TestEntity.class, Key.create(TestEntity.class, "ofyOnly")),
+            VKey.createSql(BillingEvent.OneTime.class, 12345L),
+            VKey.createSql(DomainHistory.class, new DomainHistoryId("1-TLD", 67890L)));
+    Transaction.Builder builder = new Transaction.Builder();
+    keys.forEach(builder::addDelete);
+
+    Transaction txn = Transaction.deserialize(builder.build().serialize());
+
+    assertThat(txn.getMutations().stream().map(mutation -> ((Delete) mutation).getKey()))
+        .containsExactlyElementsIn(keys)
+        .inOrder();
+  }
+
+  @Test
+  void testSerialization_compressed() throws Exception {
+    inject.setStaticField(Transaction.class, "writeBinaryFormat", true);
+    Transaction.Builder builder = new Transaction.Builder();
+    for (int i = 0; i < 100; i++) {
+      builder.addUpdate(new TestEntity("entity" + i));
+    }
+
+    byte[] serialized = builder.build().serialize();
+    Transaction txn = Transaction.deserialize(serialized);
+
+    // The flags that follow the version id say that the mutations are compressed.
+    assertThat(serialized[4]).isEqualTo((byte) 1);
+    assertThat(txn.getMutations()).hasSize(100);
+    assertThat(((Update) txn.getMutations().get(99)).getEntity())
+        .isEqualTo(new TestEntity("entity99"));
+  }
+
+  @Test
+  void testDeserialization_javaSerialized() throws Exception {
+    Transaction txn = new Transaction.Builder().addUpdate(barEntity).build();
+    txn.writeToDatastore();
+
+    txn = new Transaction.Builder().addUpdate(fooEntity).addDelete(barEntity.key()).build();
+    txn = Transaction.deserialize(serializeWithJava(txn));
+
+    txn.writeToDatastore();
+
+    ofyTm()
+        .transact(
+            () -> {
+              assertThat(ofyTm().loadByKey(fooEntity.key())).isEqualTo(fooEntity);
+              assertThat(ofyTm().exists(barEntity.key())).isEqualTo(false);
+            });
+  }
+
+  @Test
+  void testSerialization_domainCreate_smallerThanJavaSerialization() throws Exception {
+    inject.setStaticField(Transaction.class, "writeBinaryFormat", true);
+    Transaction txn = createDomainCreateTransaction();
+
+    byte[] serialized = txn.serialize();
+
+    assertThat(serialized.length).isLessThan(serializeWithJava(txn).length);
+    assertThat(
+            Transaction.deserialize(serialized).getMutations().stream()
+                .map(mutation -> ((Update) mutation).getEntity()))
+        .containsExactlyElementsIn(
+            txn.getMutations().stream()
+                .map(mutation -> ((Update) mutation).getEntity())
+                .collect(toImmutableList()))
+        .inOrder();
+  }
+
+  /** Returns the mutations that are written when a domain is created. */
+  private Transaction createDomainCreateTransaction() {
+    createTld("tld");
+    DateTime now = fakeClock.nowUtc();
+    DomainBase domain = persistActiveDomain("example.tld");
+    DomainHistory history =
+        persistResource(
+            new DomainHistory.Builder()
+                .setDomain(domain)
+                .setType(HistoryEntry.Type.DOMAIN_CREATE)
+                .setModificationTime(now)
+                .setRegistrarId("TheRegistrar")
+                .setTrid(Trid.create("ABC-123", "server-trid"))
+                .setBySuperuser(false)
+                .setRequestedByRegistrar(true)
+                .setPeriod(Period.create(1, Period.Unit.YEARS))
+                .setXmlBytes(
+                    ("<epp><command><create><domain:create><domain:name>example.tld"
+                            + "</domain:name><domain:period unit=\"y\">1</domain:period>"
+                            + "</domain:create></create></command></epp>")
+                        .getBytes(UTF_8))
+                .build());
+    BillingEvent.OneTime createEvent =
+        persistResource(
+            new BillingEvent.OneTime.Builder()
+                .setReason(Reason.CREATE)
+                .setTargetId("example.tld")
+                .setRegistrarId("TheRegistrar")
+                .setCost(Money.of(USD, 8))
+                .setPeriodYears(1)
+                .setEventTime(now)
+                .setBillingTime(now.plusDays(5))
+                .setParent(history)
+                .build());
+    BillingEvent.Recurring autorenewEvent =
+        persistResource(
+            new BillingEvent.Recurring.Builder()
+                .setReason(Reason.RENEW)
+                .setFlags(ImmutableSet.of(Flag.AUTO_RENEW))
+                .setTargetId("example.tld")
+                .setRegistrarId("TheRegistrar")
+                .setEventTime(now.plusYears(1))
+                .setRecurrenceEndTime(END_OF_TIME)
+                .setParent(history)
+                .build());
+    return new Transaction.Builder()
+        .addUpdate(domain)
+        .addUpdate(history)
+        .addUpdate(createEvent)
+        .addUpdate(autorenewEvent)
+        .build();
+  }
+
+  /** Serializes a transaction the way it was done before the binary format was introduced. */
+  private static byte[] serializeWithJava(Transaction txn) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(baos);
+    out.writeInt(20200604);
+    out.writeInt(txn.getMutations().size());
+    for (Mutation mutation : txn.getMutations()) {
+      if (mutation instanceof Update) {
+        out.writeObject(Mutation.Type.UPDATE);
+        out.write(20200604);
+        ofyTm()
+            .transact(
+                () ->
+                    EntityTranslator.convertToPb(
+                        auditedOfy().toEntity(((Update) mutation).getEntity())))
+            .writeDelimitedTo(out);
+      } else {
+        out.writeObject(Mutation.Type.DELETE);
+        out.writeObject(((Delete) mutation).getKey());
+      }
+    }
+    out.close();
+    return baos.toByteArray();
+  }
+
   @Test
   void testTransactionSerialization() throws IOException {
     DatabaseHelper.setMigrationScheduleToSqlPrimary(fakeClock);
@@ -1073,8 +1073,8 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(1L));
   }
 
-  @TestOfyAndSql
-  void testDomainMatchDeletedDomain_notFound_loggedInAsOtherRegistrar() {
+  @TestOfyOnly
+  void testDomainMatchDeletedDomain_notFound_loggedInAsOtherRegistrar_ofy() {
     login("otherregistrar");
     action.includeDeletedParam = Optional.of(true);
     persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
@@ -1082,6 +1082,16 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyErrorMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(1L), 404);
   }
 
+  @TestSqlOnly
+  void testDomainMatchDeletedDomain_notFound_loggedInAsOtherRegistrar_sql() {
+    login("otherregistrar");
+    action.includeDeletedParam = Optional.of(true);
+    persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
+    runNotFoundTest(RequestType.NAME, "cat.lol", "No domains found");
+    // The deleted domain isn't visible, so it isn't even retrieved.
+    verifyErrorMetrics(SearchType.BY_DOMAIN_NAME);
+  }
+
   @TestOfyAndSql
   void testDomainMatchDeletedDomain_found_loggedInAsAdmin() {
     loginAsAdmin();
@@ -1091,21 +1101,49 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(1L));
   }
 
-  @TestOfyAndSql
-  void testDomainMatchDeletedDomainWithWildcard_notFound() {
+  @TestOfyOnly
+  void testDomainMatchDeletedDomainWithWildcard_notFound_ofy() {
     persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
     runNotFoundTest(RequestType.NAME, "cat.lo*", "No domains found");
     verifyErrorMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(1L), 404);
   }
 
-  @TestOfyAndSql
-  void testDomainMatchDeletedDomainsWithWildcardAndTld_notFound() {
+  @TestSqlOnly
+  void testDomainMatchDeletedDomainWithWildcard_notFound_sql() {
+    persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
+    runNotFoundTest(RequestType.NAME, "cat.lo*", "No domains found");
+    verifyErrorMetrics(SearchType.BY_DOMAIN_NAME);
+  }
+
+  @TestOfyOnly
+  void testDomainMatchDeletedDomainsWithWildcardAndTld_notFound_ofy() {
     persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
     persistDomainAsDeleted(domainCatLol2, clock.nowUtc().minusDays(1));
     runNotFoundTest(RequestType.NAME, "cat*.lol", "No domains found");
     verifyErrorMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(2L), 404);
   }
 
+  @TestSqlOnly
+  void testDomainMatchDeletedDomainsWithWildcardAndTld_notFound_sql() {
+    persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
+    persistDomainAsDeleted(domainCatLol2, clock.nowUtc().minusDays(1));
+    runNotFoundTest(RequestType.NAME, "cat*.lol", "No domains found");
+    verifyErrorMetrics(SearchType.BY_DOMAIN_NAME);
+  }
+
+  @TestSqlOnly
+  void testDomainMatchDeletedDomainsWithWildcard_found_loggedInAsSameRegistrar_sql() {
+    login("evilregistrar");
+    action.includeDeletedParam = Optional.of(true);
+    persistDomainAsDeleted(domainCatLol, clock.nowUtc().minusDays(1));
+    persistDomainAsDeleted(domainCatLol2, clock.nowUtc().minusDays(1));
+    rememberWildcardType("cat*.lol");
+    assertThat(generateActualJson(RequestType.NAME, "cat*.lol"))
+        .isEqualTo(generateExpectedJsonForTwoDomainsCatStarReplySql());
+    assertThat(response.getStatus()).isEqualTo(200);
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(2L));
+  }
+
   // TODO(b/27378695): reenable or delete this test
   @Disabled
   @TestOfyAndSql
@@ -1115,8 +1153,8 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyErrorMetrics(SearchType.BY_DOMAIN_NAME);
   }
 
-  @TestOfyAndSql
-  void testDomainMatch_manyDeletedDomains_fullResultSet() {
+  @TestOfyOnly
+  void testDomainMatch_manyDeletedDomains_fullResultSet_ofy() {
     // There are enough domains to fill a full result set; deleted domains are ignored.
     createManyDomainsAndHosts(4, 4, 2);
     rememberWildcardType("domain*.lol");
@@ -1126,8 +1164,19 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(16L));
   }
 
-  @TestOfyAndSql
-  void testDomainMatch_manyDeletedDomains_partialResultSetDueToInsufficientDomains() {
+  @TestSqlOnly
+  void testDomainMatch_manyDeletedDomains_fullResultSet_sql() {
+    // There are enough domains to fill a full result set; deleted domains are never retrieved.
+    createManyDomainsAndHosts(4, 4, 2);
+    rememberWildcardType("domain*.lol");
+    JsonObject obj = generateActualJson(RequestType.NAME, "domain*.lol");
+    assertThat(response.getStatus()).isEqualTo(200);
+    checkNumberOfDomainsInResult(obj, 4);
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(4L));
+  }
+
+  @TestOfyOnly
+  void testDomainMatch_manyDeletedDomains_partialResultSetDueToInsufficientDomains_ofy() {
     // There are not enough domains to fill a full result set.
     createManyDomainsAndHosts(3, 20, 2);
     rememberWildcardType("domain*.lol");
@@ -1137,8 +1186,37 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
     verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(60L));
   }
 
-  @TestOfyAndSql
-  void testDomainMatch_manyDeletedDomains_partialResultSetDueToFetchingLimit() {
+  @TestSqlOnly
+  void testDomainMatch_manyDeletedDomains_partialResultSetDueToInsufficientDomains_sql() {
+    // There are not enough domains to fill a full result set.
+    createManyDomainsAndHosts(3, 20, 2);
+    rememberWildcardType("domain*.lol");
+    JsonObject obj = generateActualJson(RequestType.NAME, "domain*.lol");
+    assertThat(response.getStatus()).isEqualTo(200);
+    checkNumberOfDomainsInResult(obj, 3);
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(3L));
+  }
+
+  @TestSqlOnly
+  void testDomainMatch_manyDeletedDomains_fullResultSetDespiteFetchingLimit_sql() {
+    // Unlike in Datastore, the deleted domains are filtered out by the query, so there is no limit
+    // on how many of them can be skipped.
+    createManyDomainsAndHosts(4, 50, 2);
+    rememberWildcardType("domain*.lol");
+    assertThat(generateActualJson(RequestType.NAME, "domain*.lol"))
+        .isEqualTo(
+            jsonFileBuilder()
+                .addDomain("domain100.lol", "AC-LOL")
+                .addDomain("domain150.lol", "7A-LOL")
+                .addDomain("domain200.lol", "48-LOL")
+                .addDomain("domain50.lol", "DE-LOL")
+                .load("rdap_nontruncated_domains.json"));
+    assertThat(response.getStatus()).isEqualTo(200);
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(4L));
+  }
+
+  @TestOfyOnly
+  void testDomainMatch_manyDeletedDomains_partialResultSetDueToFetchingLimit_ofy() {
     // This is not exactly desired behavior, but expected: There are enough domains to fill a full
     // result set, but there are so many deleted domains that we run out of patience before we work
     // our way through all of them.
@@ -1268,7 +1346,8 @@ class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDomainSear
                 .setNextQuery("name=domain*.lol&cursor=ZG9tYWluMzAubG9s")
                 .load("rdap_domains_four_truncated.json"));
     assertThat(response.getStatus()).isEqualTo(200);
-    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(27L), IncompletenessWarningType.TRUNCATED);
+    // Only the visible domains are retrieved, plus one to know that the result set is truncated.
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(5L), IncompletenessWarningType.TRUNCATED);
   }
 
   @TestOfyOnly
@@ -482,6 +482,16 @@ class RdapJsonFormatterTest {
         .isEqualTo(loadJson("rdapjson_domain_summary.json"));
   }
 
+  @TestOfyAndSql
+  void testDomain_summaryFromNameAndRepoId() {
+    assertThat(
+            rdapJsonFormatter
+                .createRdapDomainSummary(
+                    domainBaseFull.getDomainName(), domainBaseFull.getRepoId())
+                .toJson())
+        .isEqualTo(loadJson("rdapjson_domain_summary.json"));
+  }
+
   @TestOfyAndSql
   void testDomain_logged_out() {
     rdapJsonFormatter.rdapAuthorization = RdapAuthorization.PUBLIC_AUTHORIZATION;
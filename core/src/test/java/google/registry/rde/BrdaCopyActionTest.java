@@ -109,6 +109,7 @@ public class BrdaCopyActionTest {
     action.receiverKey = receiverKey;
     action.signingKey = signingKey;
     action.stagingDecryptionKey = decryptKey;
+    action.rydeSettings = RydeSettings.DEFAULT;
   }
 
   @ParameterizedTest
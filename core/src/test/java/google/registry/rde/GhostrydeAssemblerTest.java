@@ -0,0 +1,112 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import google.registry.keyring.api.Keyring;
+import google.registry.testing.BouncyCastleProviderExtension;
+import google.registry.testing.FakeKeyringModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Unit tests for {@link GhostrydeAssembler}. */
+class GhostrydeAssemblerTest {
+
+  @RegisterExtension
+  final BouncyCastleProviderExtension bouncy = new BouncyCastleProviderExtension();
+
+  private final Keyring keyring = new FakeKeyringModule().get();
+
+  private static byte[] compressPart(String content) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (OutputStream compressor = GhostrydeAssembler.openPartCompressor(output)) {
+      compressor.write(content.getBytes(UTF_8));
+    }
+    return output.toByteArray();
+  }
+
+  private static void writeSection(GhostrydeAssembler assembler, String content)
+      throws IOException {
+    try (OutputStream section = assembler.openSection()) {
+      section.write(content.getBytes(UTF_8));
+    }
+  }
+
+  @Test
+  void testAssemble_decodedAsGhostryde() throws Exception {
+    ImmutableList<String> parts =
+        ImmutableList.of(
+            "<first/>\n",
+            "",
+            Strings.repeat("Fanatics have their dreams, wherewith they weave\n", 1000),
+            "(◕‿◕)\n");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long length;
+    try (GhostrydeAssembler assembler =
+        GhostrydeAssembler.open(output, keyring.getRdeStagingEncryptionKey())) {
+      writeSection(assembler, "<header>\n");
+      for (String part : parts) {
+        byte[] compressed = compressPart(part);
+        try (InputStream input = new ByteArrayInputStream(compressed)) {
+          assertThat(assembler.appendPart(input, part.getBytes(UTF_8).length))
+              .isEqualTo(compressed.length);
+        }
+      }
+      writeSection(assembler, "</footer>\n");
+      length = assembler.getLength();
+    }
+
+    String expected = "<header>\n" + String.join("", parts) + "</footer>\n";
+    assertThat(
+            new String(
+                Ghostryde.decode(output.toByteArray(), keyring.getRdeStagingDecryptionKey()),
+                UTF_8))
+        .isEqualTo(expected);
+    assertThat(length).isEqualTo(expected.getBytes(UTF_8).length);
+  }
+
+  @Test
+  void testAssemble_empty() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    GhostrydeAssembler.open(output, keyring.getRdeStagingEncryptionKey()).close();
+    assertThat(Ghostryde.decode(output.toByteArray(), keyring.getRdeStagingDecryptionKey()))
+        .isEmpty();
+  }
+
+  @Test
+  void testFailure_appendPartWhileSectionOpen() throws Exception {
+    try (GhostrydeAssembler assembler =
+        GhostrydeAssembler.open(
+            new ByteArrayOutputStream(), keyring.getRdeStagingEncryptionKey())) {
+      OutputStream section = assembler.openSection();
+      IllegalStateException thrown =
+          assertThrows(
+              IllegalStateException.class,
+              () -> assembler.appendPart(new ByteArrayInputStream(new byte[0]), 0));
+      assertThat(thrown).hasMessageThat().isEqualTo("Previous section has not been closed");
+      section.close();
+    }
+  }
+}
@@ -113,6 +113,7 @@ public class RdeReportActionTest {
     action.reporter = reporter;
     action.timeout = standardSeconds(30);
     action.stagingDecryptionKey = new FakeKeyringModule().get().getRdeStagingDecryptionKey();
+    action.rydeSettings = RydeSettings.DEFAULT;
     action.runner = runner;
     action.prefix = Optional.empty();
     return action;
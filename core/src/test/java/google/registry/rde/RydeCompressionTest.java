@@ -32,7 +32,7 @@ final class RydeCompressionTest {
     byte[] expected = "Testing 1, 2, 3".getBytes(UTF_8);
 
     ByteArrayOutputStream output = new ByteArrayOutputStream();
-    try (OutputStream compressor = RydeCompression.openCompressor(output)) {
+    try (OutputStream compressor = RydeCompression.openCompressor(output, RydeSettings.DEFAULT)) {
       compressor.write(expected);
     }
     byte[] compressed = output.toByteArray();
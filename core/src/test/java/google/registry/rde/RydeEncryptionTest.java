@@ -47,13 +47,15 @@ public final class RydeEncryptionTest {
 
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try (OutputStream encryptor =
-        RydeEncryption.openEncryptor(output, false, ImmutableList.of(key.getPublicKey()))) {
+        RydeEncryption.openEncryptor(
+            output, false, ImmutableList.of(key.getPublicKey()), RydeSettings.DEFAULT)) {
       encryptor.write(expected);
     }
     byte[] encryptedData = output.toByteArray();
 
     ByteArrayInputStream input = new ByteArrayInputStream(encryptedData);
-    try (InputStream decryptor = RydeEncryption.openDecryptor(input, false, key.getPrivateKey())) {
+    try (InputStream decryptor =
+        RydeEncryption.openDecryptor(input, false, key.getPrivateKey(), RydeSettings.DEFAULT)) {
       assertThat(ByteStreams.toByteArray(decryptor)).isEqualTo(expected);
     }
   }
@@ -68,7 +70,8 @@ public final class RydeEncryptionTest {
 
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try (OutputStream encryptor =
-        RydeEncryption.openEncryptor(output, false, ImmutableList.of(key.getPublicKey()))) {
+        RydeEncryption.openEncryptor(
+            output, false, ImmutableList.of(key.getPublicKey()), RydeSettings.DEFAULT)) {
       encryptor.write(expected);
     }
     byte[] encryptedData = output.toByteArray();
@@ -78,7 +81,9 @@ public final class RydeEncryptionTest {
         assertThrows(
             RuntimeException.class,
             () -> {
-              RydeEncryption.openDecryptor(input, false, wrongKey.getPrivateKey()).read();
+              RydeEncryption.openDecryptor(
+                      input, false, wrongKey.getPrivateKey(), RydeSettings.DEFAULT)
+                  .read();
             });
 
     assertThat(thrown).hasCauseThat().isInstanceOf(PGPException.class);
@@ -95,18 +100,23 @@ public final class RydeEncryptionTest {
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try (OutputStream encryptor =
         RydeEncryption.openEncryptor(
-            output, false, ImmutableList.of(key1.getPublicKey(), key2.getPublicKey()))) {
+            output,
+            false,
+            ImmutableList.of(key1.getPublicKey(), key2.getPublicKey()),
+            RydeSettings.DEFAULT)) {
       encryptor.write(expected);
     }
     byte[] encryptedData = output.toByteArray();
 
     ByteArrayInputStream input = new ByteArrayInputStream(encryptedData);
-    try (InputStream decryptor = RydeEncryption.openDecryptor(input, false, key1.getPrivateKey())) {
+    try (InputStream decryptor =
+        RydeEncryption.openDecryptor(input, false, key1.getPrivateKey(), RydeSettings.DEFAULT)) {
       assertThat(ByteStreams.toByteArray(decryptor)).isEqualTo(expected);
     }
 
     input.reset();
-    try (InputStream decryptor = RydeEncryption.openDecryptor(input, false, key2.getPrivateKey())) {
+    try (InputStream decryptor =
+        RydeEncryption.openDecryptor(input, false, key2.getPrivateKey(), RydeSettings.DEFAULT)) {
       assertThat(ByteStreams.toByteArray(decryptor)).isEqualTo(expected);
     }
   }
@@ -127,7 +137,8 @@ public final class RydeEncryptionTest {
                     + "XENDmLN3Onf6IwR043Lk0KISKi6z");
 
     ByteArrayInputStream input = new ByteArrayInputStream(encryptedData);
-    try (InputStream decryptor = RydeEncryption.openDecryptor(input, false, key.getPrivateKey())) {
+    try (InputStream decryptor =
+        RydeEncryption.openDecryptor(input, false, key.getPrivateKey(), RydeSettings.DEFAULT)) {
       assertThat(ByteStreams.toByteArray(decryptor)).isEqualTo(expected);
     }
   }
@@ -140,13 +151,15 @@ public final class RydeEncryptionTest {
 
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try (OutputStream encryptor =
-        RydeEncryption.openEncryptor(output, true, ImmutableList.of(key.getPublicKey()))) {
+        RydeEncryption.openEncryptor(
+            output, true, ImmutableList.of(key.getPublicKey()), RydeSettings.DEFAULT)) {
       encryptor.write(expected);
     }
     byte[] encryptedData = output.toByteArray();
 
     ByteArrayInputStream input = new ByteArrayInputStream(encryptedData);
-    try (InputStream decryptor = RydeEncryption.openDecryptor(input, true, key.getPrivateKey())) {
+    try (InputStream decryptor =
+        RydeEncryption.openDecryptor(input, true, key.getPrivateKey(), RydeSettings.DEFAULT)) {
       assertThat(ByteStreams.toByteArray(decryptor)).isEqualTo(expected);
     }
   }
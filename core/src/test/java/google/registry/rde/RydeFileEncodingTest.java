@@ -35,7 +35,8 @@ final class RydeFileEncodingTest {
 
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try (OutputStream encoder =
-        RydeFileEncoding.openPgpFileWriter(output, expectedFilename, expectedModified)) {
+        RydeFileEncoding.openPgpFileWriter(
+            output, expectedFilename, expectedModified, RydeSettings.DEFAULT)) {
       encoder.write(expectedContent);
     }
     byte[] encoded = output.toByteArray();
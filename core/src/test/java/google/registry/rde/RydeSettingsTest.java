@@ -0,0 +1,124 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import google.registry.keyring.api.Keyring;
+import google.registry.testing.BouncyCastleProviderExtension;
+import google.registry.testing.FakeKeyringModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/** Unit tests for {@link RydeSettings}. */
+class RydeSettingsTest {
+
+  @RegisterExtension
+  final BouncyCastleProviderExtension bouncy = new BouncyCastleProviderExtension();
+
+  private static final String CONTENT =
+      Strings.repeat("Fanatics have their dreams, wherewith they weave\n", 1000);
+
+  private final Keyring keyring = new FakeKeyringModule().get();
+
+  @SuppressWarnings("unused")
+  static Stream<Arguments> provideSettings() {
+    return Stream.of(
+        Arguments.of(RydeSettings.DEFAULT),
+        Arguments.of(RydeSettings.builder().setUseJdkCipher(true).build()),
+        Arguments.of(RydeSettings.builder().setBufferSize(512).setCompressionLevel(1).build()),
+        Arguments.of(
+            RydeSettings.builder()
+                .setBufferSize(1 << 20)
+                .setCompressionLevel(0)
+                .setUseJdkCipher(true)
+                .build()));
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideSettings")
+  void testGhostryde_encodedWithSettings_decodedWithDefault(RydeSettings settings)
+      throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (OutputStream encoder =
+        Ghostryde.encoder(output, keyring.getRdeStagingEncryptionKey(), null, settings)) {
+      encoder.write(CONTENT.getBytes(UTF_8));
+    }
+    byte[] result = Ghostryde.decode(output.toByteArray(), keyring.getRdeStagingDecryptionKey());
+    assertThat(new String(result, UTF_8)).isEqualTo(CONTENT);
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideSettings")
+  void testGhostryde_encodedWithDefault_decodedWithSettings(RydeSettings settings)
+      throws Exception {
+    byte[] blob = Ghostryde.encode(CONTENT.getBytes(UTF_8), keyring.getRdeStagingEncryptionKey());
+    try (InputStream decoder =
+        Ghostryde.decoder(
+            new ByteArrayInputStream(blob), keyring.getRdeStagingDecryptionKey(), settings)) {
+      assertThat(new String(ByteStreams.toByteArray(decoder), UTF_8)).isEqualTo(CONTENT);
+    }
+  }
+
+  @Test
+  void testDefault() {
+    assertThat(RydeSettings.DEFAULT.bufferSize()).isEqualTo(64 * 1024);
+    assertThat(RydeSettings.DEFAULT.compressionLevel()).isEqualTo(-1);
+    assertThat(RydeSettings.DEFAULT.useJdkCipher()).isFalse();
+  }
+
+  @Test
+  void testFailure_bufferSizeNotPowerOfTwo() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> RydeSettings.builder().setBufferSize(3000).build());
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Buffer size must be a power of two of at least 512: 3000");
+  }
+
+  @Test
+  void testFailure_bufferSizeTooSmall() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> RydeSettings.builder().setBufferSize(256).build());
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Buffer size must be a power of two of at least 512: 256");
+  }
+
+  @Test
+  void testFailure_invalidCompressionLevel() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> RydeSettings.builder().setCompressionLevel(10).build());
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid compression level: 10");
+  }
+}
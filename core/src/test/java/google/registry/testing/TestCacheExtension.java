@@ -75,6 +75,13 @@ public class TestCacheExtension implements BeforeEachCallback, AfterEachCallback
       return this;
     }
 
+    public Builder withPremiumPriceTableCache(Duration expiry) {
+      cacheHandlerMap.put(
+          "PremiumListDao.premiumPriceTableCache",
+          new TestCacheHandler(PremiumListDao::setPremiumPriceTableCacheForTest, expiry));
+      return this;
+    }
+
     public TestCacheExtension build() {
       return new TestCacheExtension(ImmutableList.copyOf(cacheHandlerMap.values()));
     }
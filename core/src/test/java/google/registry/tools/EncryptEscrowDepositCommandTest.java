@@ -20,6 +20,7 @@ import static google.registry.testing.TestDataHelper.loadBytes;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 import google.registry.rde.RdeTestData;
+import google.registry.rde.RydeSettings;
 import google.registry.testing.BouncyCastleProviderExtension;
 import google.registry.testing.FakeKeyringModule;
 import java.nio.file.Path;
@@ -40,6 +41,7 @@ public class EncryptEscrowDepositCommandTest
     EscrowDepositEncryptor res = new EscrowDepositEncryptor();
     res.rdeReceiverKey = () -> new FakeKeyringModule().get().getRdeReceiverKey();
     res.rdeSigningKey = () -> new FakeKeyringModule().get().getRdeSigningKey();
+    res.rydeSettings = RydeSettings.DEFAULT;
     return res;
   }
 
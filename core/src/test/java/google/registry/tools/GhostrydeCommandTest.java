@@ -20,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import google.registry.keyring.api.Keyring;
 import google.registry.rde.Ghostryde;
+import google.registry.rde.RydeSettings;
 import google.registry.testing.BouncyCastleProviderExtension;
 import google.registry.testing.FakeKeyringModule;
 import google.registry.testing.InjectExtension;
@@ -63,6 +64,7 @@ class GhostrydeCommandTest extends CommandTestCase<GhostrydeCommand> {
     keyring = new FakeKeyringModule().get();
     command.rdeStagingDecryptionKey = keyring::getRdeStagingDecryptionKey;
     command.rdeStagingEncryptionKey = keyring::getRdeStagingEncryptionKey;
+    command.rydeSettings = RydeSettings.DEFAULT;
   }
 
   @Test
@@ -0,0 +1,128 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.xml.OutputFormat.COMPACT;
+import static google.registry.xml.OutputFormat.FORMATTED;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link MarshallerPool}. */
+class MarshallerPoolTest {
+
+  @XmlRootElement(name = "outer")
+  static class Outer {
+    @XmlElement String inner = "foo";
+  }
+
+  private MarshallerPool pool;
+
+  @BeforeEach
+  void beforeEach() throws Exception {
+    pool = new MarshallerPool(JAXBContext.newInstance(Outer.class), null);
+  }
+
+  private String marshal(OutputFormat format, boolean fragment) throws Exception {
+    Marshaller marshaller = pool.borrowMarshaller(false, format, null, fragment);
+    StringWriter writer = new StringWriter();
+    marshaller.marshal(new Outer(), writer);
+    pool.release(marshaller);
+    return writer.toString();
+  }
+
+  @Test
+  void testMarshaller_isReusedOnSameThread() throws Exception {
+    Marshaller first = pool.borrowMarshaller(false, FORMATTED, null, false);
+    pool.release(first);
+    assertThat(pool.borrowMarshaller(false, FORMATTED, null, false)).isSameInstanceAs(first);
+  }
+
+  @Test
+  void testMarshaller_nestedBorrowsGetDistinctInstances() throws Exception {
+    Marshaller first = pool.borrowMarshaller(false, FORMATTED, null, false);
+    Marshaller second = pool.borrowMarshaller(false, FORMATTED, null, false);
+    assertThat(second).isNotSameInstanceAs(first);
+  }
+
+  @Test
+  void testMarshaller_isNotSharedAcrossThreads() throws Exception {
+    Marshaller mine = pool.borrowMarshaller(false, FORMATTED, null, false);
+    pool.release(mine);
+    AtomicReference<Marshaller> theirs = new AtomicReference<>();
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                theirs.set(pool.borrowMarshaller(false, FORMATTED, null, false));
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+    thread.join();
+    assertThat(theirs.get()).isNotNull();
+    assertThat(theirs.get()).isNotSameInstanceAs(mine);
+  }
+
+  @Test
+  void testMarshaller_isReconfiguredOnEachBorrow() throws Exception {
+    String formattedFragment = marshal(FORMATTED, true);
+    assertThat(formattedFragment).doesNotContain("<?xml");
+    assertThat(formattedFragment).contains("<outer>\n");
+    String compactDocument = marshal(COMPACT, false);
+    assertThat(compactDocument).startsWith("<?xml");
+    assertThat(compactDocument).contains("<outer><inner>foo</inner></outer>");
+    assertThat(compactDocument).doesNotContain("\n");
+    assertThat(marshal(FORMATTED, true)).isEqualTo(formattedFragment);
+  }
+
+  @Test
+  void testUnmarshaller_isReused() throws Exception {
+    Unmarshaller unmarshaller = pool.borrowUnmarshaller();
+    Outer outer =
+        (Outer) unmarshaller.unmarshal(new StringReader("<outer><inner>bar</inner></outer>"));
+    assertThat(outer.inner).isEqualTo("bar");
+    pool.release(unmarshaller);
+    assertThat(pool.borrowUnmarshaller()).isSameInstanceAs(unmarshaller);
+  }
+
+  @Test
+  void testRelease_dropsInstancesBeyondLimit() throws Exception {
+    Marshaller[] marshallers = new Marshaller[MarshallerPool.MAX_IDLE_PER_THREAD + 1];
+    for (int i = 0; i < marshallers.length; i++) {
+      marshallers[i] = pool.borrowMarshaller(false, FORMATTED, null, false);
+    }
+    for (Marshaller marshaller : marshallers) {
+      pool.release(marshaller);
+    }
+    // The last instance released didn't fit, so only the first ones come back, most recent first.
+    for (int i = MarshallerPool.MAX_IDLE_PER_THREAD - 1; i >= 0; i--) {
+      assertThat(pool.borrowMarshaller(false, FORMATTED, null, false))
+          .isSameInstanceAs(marshallers[i]);
+    }
+    assertThat(pool.borrowMarshaller(false, FORMATTED, null, false))
+        .isNotSameInstanceAs(marshallers[MarshallerPool.MAX_IDLE_PER_THREAD]);
+  }
+}
@@ -0,0 +1,22 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Lets the prefix searches of RDAP, which use LIKE 'prefix%', use an index whatever the collation
+-- of the database is.
+CREATE INDEX IF NOT EXISTS domain_domain_name_pattern_idx
+  ON "Domain" (domain_name text_pattern_ops);
+
+-- Lets the RDAP searches for all domains of a TLD page through them in order of name.
+CREATE INDEX IF NOT EXISTS domain_tld_domain_name_idx
+  ON "Domain" (tld, domain_name);
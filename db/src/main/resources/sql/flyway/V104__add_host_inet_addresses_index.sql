@@ -0,0 +1,18 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Lets the lookups of hosts by IP address, which use inet_addresses @> ARRAY[address], use an
+-- index instead of scanning every host.
+CREATE INDEX IF NOT EXISTS host_inet_addresses_idx
+  ON "Host" USING gin (inet_addresses);
@@ -0,0 +1,34 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Lets the EPP poll flows find the oldest poll message of a registrar that is due, and count the
+-- due ones, without sorting all of its poll messages.
+CREATE INDEX IF NOT EXISTS poll_message_registrar_id_event_time_idx
+  ON "PollMessage" (registrar_id, event_time);
+
+-- Lets the expansion of recurring billing events find the one-time events of a domain.
+CREATE INDEX IF NOT EXISTS billing_event_domain_repo_id_idx
+  ON "BillingEvent" (domain_repo_id);
+
+-- Lets the host flows find the domains that use a host. The unique constraint on DomainHost
+-- starts with domain_repo_id, so it can't be used to look up by host.
+CREATE INDEX IF NOT EXISTS domain_host_host_repo_id_idx
+  ON "DomainHost" (host_repo_id);
+
+-- Lets the deletion of expired domains find the domains that are due without going through the
+-- ones that were already deleted. Only the domains that aren't deleted, whose deletion time is
+-- END_OF_TIME, are in this index.
+CREATE INDEX IF NOT EXISTS domain_autorenew_end_time_active_idx
+  ON "Domain" (autorenew_end_time)
+  WHERE deletion_time = '294247-01-10 04:00:54.775+00';
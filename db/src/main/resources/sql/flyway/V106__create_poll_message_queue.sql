@@ -0,0 +1,48 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- The number of poll messages of each registrar that were due at some point in time, so that the
+-- poll flows only have to count the poll messages that became due since then.
+CREATE TABLE "PollMessageQueue" (
+  registrar_id text NOT NULL,
+  pending_count bigint NOT NULL,
+  counted_until timestamptz NOT NULL,
+  PRIMARY KEY (registrar_id)
+);
+
+-- Keeps the counts of PollMessageQueue up to date with every write to PollMessage, whichever way
+-- it is written. Only poll messages that were due at the time a count was taken are in it, so the
+-- future-dated ones, such as autorenew poll messages, don't touch the count until they're due.
+CREATE OR REPLACE FUNCTION update_poll_message_queue() RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'UPDATE'
+      AND OLD.registrar_id = NEW.registrar_id
+      AND OLD.event_time = NEW.event_time THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    UPDATE "PollMessageQueue" SET pending_count = pending_count - 1
+      WHERE registrar_id = OLD.registrar_id AND counted_until >= OLD.event_time;
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    UPDATE "PollMessageQueue" SET pending_count = pending_count + 1
+      WHERE registrar_id = NEW.registrar_id AND counted_until >= NEW.event_time;
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER poll_message_queue_trigger
+  AFTER INSERT OR UPDATE OR DELETE ON "PollMessage"
+  FOR EACH ROW EXECUTE PROCEDURE update_poll_message_queue();
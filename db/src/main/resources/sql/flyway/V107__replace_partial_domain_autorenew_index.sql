@@ -0,0 +1,21 @@
+-- Copyright 2021 The Nomulus Authors. All Rights Reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- The partial index added in V105 is only usable by a plan that knows the deletion time it is
+-- looking for is END_OF_TIME. Hibernate binds that value as a parameter, so a generic plan for the
+-- prepared statement can't use it. A regular index on both columns serves both kinds of plan.
+CREATE INDEX IF NOT EXISTS domain_deletion_time_autorenew_end_time_idx
+  ON "Domain" (deletion_time, autorenew_end_time);
+
+DROP INDEX IF EXISTS domain_autorenew_end_time_active_idx;
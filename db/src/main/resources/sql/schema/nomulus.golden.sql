@@ -30,6 +30,32 @@ CREATE EXTENSION IF NOT EXISTS hstore WITH SCHEMA public;
 COMMENT ON EXTENSION hstore IS 'data type for storing sets of (key, value) pairs';
 
 
+--
+-- Name: update_poll_message_queue(); Type: FUNCTION; Schema: public; Owner: -
+--
+
+CREATE FUNCTION public.update_poll_message_queue() RETURNS trigger
+    LANGUAGE plpgsql
+    AS $$
+BEGIN
+  IF TG_OP = 'UPDATE'
+      AND OLD.registrar_id = NEW.registrar_id
+      AND OLD.event_time = NEW.event_time THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    UPDATE "PollMessageQueue" SET pending_count = pending_count - 1
+      WHERE registrar_id = OLD.registrar_id AND counted_until >= OLD.event_time;
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    UPDATE "PollMessageQueue" SET pending_count = pending_count + 1
+      WHERE registrar_id = NEW.registrar_id AND counted_until >= NEW.event_time;
+  END IF;
+  RETURN NULL;
+END;
+$$;
+
+
 SET default_tablespace = '';
 
 SET default_with_oids = false;
@@ -694,6 +720,17 @@ CREATE TABLE public."PollMessage" (
 );
 
 
+--
+-- Name: PollMessageQueue; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE public."PollMessageQueue" (
+    registrar_id text NOT NULL,
+    pending_count bigint NOT NULL,
+    counted_until timestamp with time zone NOT NULL
+);
+
+
 --
 -- Name: PremiumEntry; Type: TABLE; Schema: public; Owner: -
 --
@@ -1316,6 +1353,14 @@ ALTER TABLE ONLY public."PollMessage"
     ADD CONSTRAINT "PollMessage_pkey" PRIMARY KEY (poll_message_id);
 
 
+--
+-- Name: PollMessageQueue PollMessageQueue_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY public."PollMessageQueue"
+    ADD CONSTRAINT "PollMessageQueue_pkey" PRIMARY KEY (registrar_id);
+
+
 --
 -- Name: PremiumEntry PremiumEntry_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -1475,6 +1520,13 @@ ALTER TABLE ONLY public."DomainHistoryHost"
 CREATE INDEX allocation_token_domain_name_idx ON public."AllocationToken" USING btree (domain_name);
 
 
+--
+-- Name: billing_event_domain_repo_id_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX billing_event_domain_repo_id_idx ON public."BillingEvent" USING btree (domain_repo_id);
+
+
 --
 -- Name: database_migration_state_schedule_singleton; Type: INDEX; Schema: public; Owner: -
 --
@@ -1482,6 +1534,13 @@ CREATE INDEX allocation_token_domain_name_idx ON public."AllocationToken" USING
 CREATE UNIQUE INDEX database_migration_state_schedule_singleton ON public."DatabaseMigrationStateSchedule" USING btree ((true));
 
 
+--
+-- Name: domain_deletion_time_autorenew_end_time_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX domain_deletion_time_autorenew_end_time_idx ON public."Domain" USING btree (deletion_time, autorenew_end_time);
+
+
 --
 -- Name: domain_dns_refresh_request_time_idx; Type: INDEX; Schema: public; Owner: -
 --
@@ -1489,6 +1548,13 @@ CREATE UNIQUE INDEX database_migration_state_schedule_singleton ON public."Datab
 CREATE INDEX domain_dns_refresh_request_time_idx ON public."Domain" USING btree (dns_refresh_request_time);
 
 
+--
+-- Name: domain_domain_name_pattern_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX domain_domain_name_pattern_idx ON public."Domain" USING btree (domain_name text_pattern_ops);
+
+
 --
 -- Name: domain_history_to_ds_data_history_idx; Type: INDEX; Schema: public; Owner: -
 --
@@ -1503,6 +1569,27 @@ CREATE INDEX domain_history_to_ds_data_history_idx ON public."DomainDsDataHistor
 CREATE INDEX domain_history_to_transaction_record_idx ON public."DomainTransactionRecord" USING btree (domain_repo_id, history_revision_id);
 
 
+--
+-- Name: domain_host_host_repo_id_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX domain_host_host_repo_id_idx ON public."DomainHost" USING btree (host_repo_id);
+
+
+--
+-- Name: domain_tld_domain_name_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX domain_tld_domain_name_idx ON public."Domain" USING btree (tld, domain_name);
+
+
+--
+-- Name: host_inet_addresses_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX host_inet_addresses_idx ON public."Host" USING gin (inet_addresses);
+
+
 --
 -- Name: idx1iy7njgb7wjmj9piml4l2g0qi; Type: INDEX; Schema: public; Owner: -
 --
@@ -1832,6 +1919,13 @@ CREATE INDEX idxsu1nam10cjes9keobapn5jvxj ON public."DomainHistory" USING btree
 CREATE INDEX idxsudwswtwqnfnx2o1hx4s0k0g5 ON public."ContactHistory" USING btree (history_modification_time);
 
 
+--
+-- Name: poll_message_registrar_id_event_time_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX poll_message_registrar_id_event_time_idx ON public."PollMessage" USING btree (registrar_id, event_time);
+
+
 --
 -- Name: premiumlist_name_idx; Type: INDEX; Schema: public; Owner: -
 --
@@ -1888,6 +1982,13 @@ CREATE INDEX spec11threatmatch_registrar_id_idx ON public."Spec11ThreatMatch" US
 CREATE INDEX spec11threatmatch_tld_idx ON public."Spec11ThreatMatch" USING btree (tld);
 
 
+--
+-- Name: PollMessage poll_message_queue_trigger; Type: TRIGGER; Schema: public; Owner: -
+--
+
+CREATE TRIGGER poll_message_queue_trigger AFTER INSERT OR DELETE OR UPDATE ON public."PollMessage" FOR EACH ROW EXECUTE PROCEDURE public.update_poll_message_queue();
+
+
 --
 -- Name: Contact fk1sfyj7o7954prbn1exk7lpnoe; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
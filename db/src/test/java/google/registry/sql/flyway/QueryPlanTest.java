@@ -0,0 +1,243 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.sql.flyway;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import google.registry.persistence.NomulusPostgreSql;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Query plan regression tests for the hot queries of the registry.
+ *
+ * <p>The schema is deployed with Flyway to a database that is seeded with enough rows for a
+ * sequential scan to cost more than an index scan for a selective query. Each test explains one
+ * of the queries with its parameter values written in as literals, which is how Postgres plans the
+ * first executions of a prepared statement (custom plans), and fails if the plan scans a whole
+ * table. That means that an index the query relies on is missing, or can no longer be used by it.
+ *
+ * <p>Hibernate binds those values as parameters, though, and Postgres may switch a prepared
+ * statement that it has run a few times to a generic plan, which is made without knowing them.
+ * The {@code _genericPlan} tests check that the index is still usable then. Postgres 11 can't be
+ * made to use a generic plan ({@code plan_cache_mode} is new in Postgres 12), so they pass the
+ * values as scalar subqueries, which the planner can't see into either.
+ */
+@Testcontainers
+class QueryPlanTest {
+
+  /** {@code END_OF_TIME} of {@code DateTimeUtils}, which is the deletion time of live resources. */
+  private static final String END_OF_TIME = "'294247-01-10 04:00:54.775+00'";
+
+  private static final String NOW = "'2021-10-16 00:00:00+00'";
+
+  private static final String[] SEED_STATEMENTS = {
+    "INSERT INTO \"Domain\" (repo_id, domain_name, tld, creation_registrar_id, creation_time,"
+        + " current_sponsor_registrar_id, deletion_time, autorenew_end_time)"
+        + " SELECT g || '-TLD', 'domain' || g || '.tld' || g % 10, 'tld' || g % 10,"
+        + " 'registrar' || g % 100, '2020-01-01 00:00:00+00', 'registrar' || g % 100,"
+        + " CASE WHEN g % 2 = 0 THEN "
+        + END_OF_TIME
+        + " ELSE '2021-01-01 00:00:00+00' END,"
+        + " CASE WHEN g % 100 = 0 THEN '2021-06-01 00:00:00+00' ELSE "
+        + END_OF_TIME
+        + " END"
+        + " FROM generate_series(1, 50000) g",
+    "INSERT INTO \"DomainHost\" (domain_repo_id, host_repo_id)"
+        + " SELECT g || '-TLD', 'H' || g % 5000 || '-TLD' FROM generate_series(1, 50000) g",
+    "INSERT INTO \"BillingEvent\" (billing_event_id, registrar_id, domain_history_revision_id,"
+        + " domain_repo_id, event_time, reason, domain_name)"
+        + " SELECT g, 'registrar' || g % 100, g, g % 10000 || '-TLD',"
+        + " '2020-01-01 00:00:00+00'::timestamptz + g * INTERVAL '10 minutes', 'CREATE',"
+        + " 'domain' || g % 10000 || '.tld' FROM generate_series(1, 50000) g",
+    "INSERT INTO \"PollMessage\" (type, poll_message_id, registrar_id, event_time)"
+        + " SELECT 'ONE_TIME', g, 'registrar' || g % 100,"
+        + " '2020-01-01 00:00:00+00'::timestamptz + g * INTERVAL '10 minutes'"
+        + " FROM generate_series(1, 100000) g",
+  };
+
+  @Container
+  private static final PostgreSQLContainer<?> sqlContainer =
+      new PostgreSQLContainer<>(NomulusPostgreSql.getDockerTag());
+
+  private static Connection connection;
+
+  @BeforeAll
+  static void beforeAll() throws SQLException {
+    Flyway.configure()
+        .locations("sql/flyway")
+        .dataSource(
+            sqlContainer.getJdbcUrl(), sqlContainer.getUsername(), sqlContainer.getPassword())
+        .load()
+        .migrate();
+    connection = sqlContainer.createConnection("");
+    try (Statement statement = connection.createStatement()) {
+      // Turns off the foreign key triggers, so that each table can be seeded on its own.
+      statement.execute("SET session_replication_role = replica");
+      for (String seedStatement : SEED_STATEMENTS) {
+        statement.execute(seedStatement);
+      }
+      statement.execute("ANALYZE");
+    }
+  }
+
+  @AfterAll
+  static void afterAll() throws SQLException {
+    connection.close();
+  }
+
+  /** The count of due poll messages in {@code PollFlowUtils.getPollMessageCount}. */
+  @Test
+  void testPollMessageCount() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT count(*) FROM \"PollMessage\" WHERE registrar_id = 'registrar42'"
+            + " AND event_time <= "
+            + NOW);
+  }
+
+  /** The oldest due poll message in {@code PollFlowUtils.getFirstPollMessage}. */
+  @Test
+  void testFirstPollMessage() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT * FROM \"PollMessage\" WHERE registrar_id = 'registrar42'"
+            + " AND event_time <= "
+            + NOW
+            + " ORDER BY event_time LIMIT 1");
+  }
+
+  /** The one-time billing events of a domain in {@code ExpandRecurringBillingEventsAction}. */
+  @Test
+  void testOneTimeBillingEventsOfDomain() throws SQLException {
+    assertNoSequentialScan("SELECT * FROM \"BillingEvent\" WHERE domain_repo_id = '4242-TLD'");
+  }
+
+  /** The domains that use a host in {@code EppResourceUtils.isLinked}. */
+  @Test
+  void testDomainsLinkedToHost() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT d.repo_id FROM \"Domain\" d"
+            + " JOIN \"DomainHost\" dh ON dh.domain_repo_id = d.repo_id"
+            + " WHERE d.deletion_time > "
+            + NOW
+            + " AND dh.host_repo_id = 'H42-TLD'");
+  }
+
+  /** The domains to delete in {@code DeleteExpiredDomainsAction}. */
+  @Test
+  void testExpiredDomainsToDelete() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT * FROM \"Domain\" WHERE autorenew_end_time <= "
+            + NOW
+            + " AND deletion_time = "
+            + END_OF_TIME);
+  }
+
+  /**
+   * The domains to delete in {@code DeleteExpiredDomainsAction}, with END_OF_TIME as a parameter.
+   *
+   * <p>A partial index whose predicate is {@code deletion_time = END_OF_TIME} can't be used here.
+   */
+  @Test
+  void testExpiredDomainsToDelete_genericPlan() throws SQLException {
+    assertGenericPlanUsesIndex(
+        "SELECT * FROM \"Domain\" WHERE autorenew_end_time <= "
+            + asParameter(NOW, "timestamptz")
+            + " AND deletion_time = "
+            + asParameter(END_OF_TIME, "timestamptz"),
+        "domain_deletion_time_autorenew_end_time_idx");
+  }
+
+  /** The count of due poll messages in {@code PollFlowUtils.getPollMessageCount}. */
+  @Test
+  void testPollMessageCount_genericPlan() throws SQLException {
+    assertGenericPlanUsesIndex(
+        "SELECT count(*) FROM \"PollMessage\" WHERE registrar_id = "
+            + asParameter("'registrar42'", "text")
+            + " AND event_time <= "
+            + asParameter(NOW, "timestamptz"),
+        "poll_message_registrar_id_event_time_idx");
+  }
+
+  /** A search by domain name prefix in {@code RdapDomainSearchAction}. */
+  @Test
+  void testRdapDomainNamePrefixSearch() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT domain_name, repo_id FROM \"Domain\" WHERE domain_name LIKE 'domain4242%'"
+            + " AND deletion_time > "
+            + NOW
+            + " ORDER BY domain_name LIMIT 11");
+  }
+
+  /** A page of the search of all domains of a TLD in {@code RdapDomainSearchAction}. */
+  @Test
+  void testRdapTldSearch() throws SQLException {
+    assertNoSequentialScan(
+        "SELECT domain_name, repo_id FROM \"Domain\" WHERE tld = 'tld4'"
+            + " AND domain_name > 'domain4242.tld4' AND deletion_time > "
+            + NOW
+            + " ORDER BY domain_name LIMIT 11");
+  }
+
+  /** Returns a literal as a value of the given type that the planner treats like a parameter. */
+  private static String asParameter(String literal, String type) {
+    return String.format("(SELECT %s::%s)", literal, type);
+  }
+
+  private static void assertNoSequentialScan(String query) throws SQLException {
+    String plan = explain(query);
+    assertWithMessage("Plan of %s:\n%s", query, plan).that(plan).doesNotContain("Seq Scan");
+  }
+
+  /**
+   * Asserts that the plan of a query with parameters uses the given index.
+   *
+   * <p>Without the parameter values, the planner estimates the rows that match with default
+   * selectivities, which have nothing to do with the seeded rows. So rather than check that a
+   * sequential scan isn't the cheapest plan, this turns sequential scans off and checks that the
+   * index is what the query would use instead.
+   */
+  private static void assertGenericPlanUsesIndex(String query, String index) throws SQLException {
+    String plan;
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("SET enable_seqscan = off");
+      try {
+        plan = explain(query);
+      } finally {
+        statement.execute("RESET enable_seqscan");
+      }
+    }
+    assertWithMessage("Plan of %s:\n%s", query, plan).that(plan).contains(index);
+  }
+
+  private static String explain(String query) throws SQLException {
+    StringBuilder plan = new StringBuilder();
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("EXPLAIN " + query)) {
+      while (resultSet.next()) {
+        plan.append(resultSet.getString(1)).append('\n');
+      }
+    }
+    return plan.toString();
+  }
+}
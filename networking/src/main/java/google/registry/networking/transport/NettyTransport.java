@@ -0,0 +1,158 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.networking.transport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The Netty transport, i. e. the event loop and channel implementations, that a server or client
+ * uses.
+ *
+ * <p>The native epoll transport avoids some of the overhead of the JDK selector on Linux. It is
+ * opt-in, and looked up reflectively so that the {@code netty-transport-native-epoll} artifact
+ * only needs to be on the runtime classpath of deployments that use it. If it is not there, or the
+ * native library cannot be loaded on the host, {@link #select} falls back to NIO.
+ */
+public enum NettyTransport {
+  NIO(
+      NioSocketChannel.class.getName(),
+      NioServerSocketChannel.class.getName(),
+      NioEventLoopGroup.class.getName()),
+  EPOLL(
+      "io.netty.channel.epoll.EpollSocketChannel",
+      "io.netty.channel.epoll.EpollServerSocketChannel",
+      "io.netty.channel.epoll.EpollEventLoopGroup");
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  @VisibleForTesting static final String EPOLL_CLASS_NAME = "io.netty.channel.epoll.Epoll";
+
+  private final String socketChannelClassName;
+  private final String serverSocketChannelClassName;
+  private final String eventLoopGroupClassName;
+
+  NettyTransport(
+      String socketChannelClassName,
+      String serverSocketChannelClassName,
+      String eventLoopGroupClassName) {
+    this.socketChannelClassName = socketChannelClassName;
+    this.serverSocketChannelClassName = serverSocketChannelClassName;
+    this.eventLoopGroupClassName = eventLoopGroupClassName;
+  }
+
+  /**
+   * Returns the native transport if it is preferred and available, or NIO otherwise.
+   *
+   * @param preferNative whether to use the native transport when it is available
+   */
+  public static NettyTransport select(boolean preferNative) {
+    if (!preferNative) {
+      return NIO;
+    }
+    if (isEpollAvailable(EPOLL_CLASS_NAME)) {
+      logger.atInfo().log("Using native epoll transport.");
+      return EPOLL;
+    }
+    return NIO;
+  }
+
+  @VisibleForTesting
+  static boolean isEpollAvailable(String epollClassName) {
+    try {
+      Class<?> epoll = Class.forName(epollClassName);
+      if ((Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+        return true;
+      }
+      Throwable cause = (Throwable) epoll.getMethod("unavailabilityCause").invoke(null);
+      logger.atWarning().withCause(cause).log(
+          "Native epoll transport is unavailable, falling back to NIO.");
+    } catch (ReflectiveOperationException | LinkageError e) {
+      logger.atWarning().withCause(e).log(
+          "Native epoll transport is not on the classpath, falling back to NIO.");
+    }
+    return false;
+  }
+
+  /** Returns the client {@link SocketChannel} class of this transport. */
+  public Class<? extends SocketChannel> socketChannelClass() {
+    return loadClass(socketChannelClassName).asSubclass(SocketChannel.class);
+  }
+
+  /** Returns the {@link ServerSocketChannel} class of this transport. */
+  public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+    return loadClass(serverSocketChannelClassName).asSubclass(ServerSocketChannel.class);
+  }
+
+  /**
+   * Creates a new {@link EventLoopGroup} of this transport.
+   *
+   * @param threads the number of I/O threads, or 0 to use Netty's default (twice the number of
+   *     available processors)
+   */
+  public EventLoopGroup newEventLoopGroup(int threads) {
+    checkArgument(threads >= 0, "Number of event loop threads cannot be negative: %s", threads);
+    if (this == NIO) {
+      return new NioEventLoopGroup(threads);
+    }
+    try {
+      return loadClass(eventLoopGroupClassName)
+          .asSubclass(EventLoopGroup.class)
+          .getConstructor(int.class)
+          .newInstance(threads);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot create event loop group of " + this, e);
+    }
+  }
+
+  /**
+   * Creates a pooled {@link ByteBufAllocator} that prefers direct buffers.
+   *
+   * <p>Netty's default allocator picks between heap and direct buffers, and sizes its pools, from
+   * system properties. This makes the choice explicit so that it does not depend on how the JVM is
+   * started.
+   *
+   * @param directArenas the number of direct memory arenas, or 0 to use Netty's default (twice the
+   *     number of available processors, limited by the maximum direct memory)
+   */
+  public static ByteBufAllocator newPooledDirectAllocator(int directArenas) {
+    checkArgument(
+        directArenas >= 0, "Number of direct arenas cannot be negative: %s", directArenas);
+    return new PooledByteBufAllocator(
+        true,
+        PooledByteBufAllocator.defaultNumHeapArena(),
+        directArenas > 0 ? directArenas : PooledByteBufAllocator.defaultNumDirectArena(),
+        PooledByteBufAllocator.defaultPageSize(),
+        PooledByteBufAllocator.defaultMaxOrder());
+  }
+
+  private static Class<?> loadClass(String className) {
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Netty transport class not found: " + className, e);
+    }
+  }
+}
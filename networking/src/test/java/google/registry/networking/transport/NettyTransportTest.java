@@ -0,0 +1,85 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.networking.transport;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link NettyTransport}. */
+class NettyTransportTest {
+
+  @Test
+  void testSelect_nativeNotPreferred() {
+    assertThat(NettyTransport.select(false)).isEqualTo(NettyTransport.NIO);
+  }
+
+  @Test
+  void testIsEpollAvailable_notOnClasspath() {
+    assertThat(NettyTransport.isEpollAvailable("io.netty.channel.epoll.DoesNotExist")).isFalse();
+  }
+
+  @Test
+  void testNio_channelClasses() {
+    assertThat(NettyTransport.NIO.socketChannelClass()).isEqualTo(NioSocketChannel.class);
+    assertThat(NettyTransport.NIO.serverSocketChannelClass())
+        .isEqualTo(NioServerSocketChannel.class);
+  }
+
+  @Test
+  void testNio_newEventLoopGroup() throws Exception {
+    EventLoopGroup eventLoopGroup = NettyTransport.NIO.newEventLoopGroup(2);
+    try {
+      assertThat(eventLoopGroup).isInstanceOf(NioEventLoopGroup.class);
+      assertThat(((NioEventLoopGroup) eventLoopGroup).executorCount()).isEqualTo(2);
+    } finally {
+      Future<?> unusedFuture = eventLoopGroup.shutdownGracefully().sync();
+    }
+  }
+
+  @Test
+  void testFailure_newEventLoopGroup_negativeThreads() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class, () -> NettyTransport.NIO.newEventLoopGroup(-1));
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Number of event loop threads cannot be negative: -1");
+  }
+
+  @Test
+  void testNewPooledDirectAllocator() {
+    ByteBufAllocator allocator = NettyTransport.newPooledDirectAllocator(3);
+    assertThat(allocator).isInstanceOf(PooledByteBufAllocator.class);
+    assertThat(allocator.isDirectBufferPooled()).isTrue();
+    assertThat(((PooledByteBufAllocator) allocator).metric().numDirectArenas()).isEqualTo(3);
+  }
+
+  @Test
+  void testNewPooledDirectAllocator_defaultArenas() {
+    PooledByteBufAllocator allocator =
+        (PooledByteBufAllocator) NettyTransport.newPooledDirectAllocator(0);
+    assertThat(allocator.metric().numDirectArenas())
+        .isEqualTo(PooledByteBufAllocator.defaultNumDirectArena());
+  }
+}
@@ -22,13 +22,14 @@ import google.registry.monitoring.blackbox.module.CertificateModule;
 import google.registry.monitoring.blackbox.module.EppModule;
 import google.registry.monitoring.blackbox.module.WebWhoisModule;
 import google.registry.networking.handler.SslClientInitializer;
+import google.registry.networking.transport.NettyTransport;
 import google.registry.util.Clock;
 import google.registry.util.SystemClock;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslProvider;
 import java.util.Set;
@@ -46,6 +47,22 @@ public class ProberModule {
   /** Default {@link Duration} chosen to be time between each {@link ProbingAction} call. */
   private static final Duration DEFAULT_PROBER_INTERVAL = Duration.standardSeconds(4);
 
+  /**
+   * System property that makes the prober use the native epoll transport when it is available.
+   *
+   * <p>The prober has no configuration file, so this is set on the command line, e. g. {@code
+   * -Dgoogle.registry.prober.nativeTransport=true}.
+   */
+  private static final String NATIVE_TRANSPORT_PROPERTY = "google.registry.prober.nativeTransport";
+
+  /**
+   * System property that sets the number of I/O threads of the global {@link EventLoopGroup}.
+   *
+   * <p>If it is not set, Netty uses twice the number of available processors.
+   */
+  private static final String EVENT_LOOP_THREADS_PROPERTY =
+      "google.registry.prober.eventLoopThreads";
+
   /** {@link Provides} the {@link SslProvider} used by instances of {@link SslClientInitializer} */
   @Provides
   @Singleton
@@ -61,11 +78,25 @@ public class ProberModule {
     return new SystemClock();
   }
 
+  /** {@link Provides} the {@link NettyTransport} used by each {@link ProbingSequence}. */
+  @Provides
+  @Singleton
+  static NettyTransport provideNettyTransport() {
+    return NettyTransport.select(Boolean.getBoolean(NATIVE_TRANSPORT_PROPERTY));
+  }
+
   /** {@link Provides} one global {@link EventLoopGroup} shared by each {@link ProbingSequence}. */
   @Provides
   @Singleton
-  EventLoopGroup provideEventLoopGroup() {
-    return new NioEventLoopGroup();
+  EventLoopGroup provideEventLoopGroup(NettyTransport transport) {
+    return transport.newEventLoopGroup(Integer.getInteger(EVENT_LOOP_THREADS_PROPERTY, 0));
+  }
+
+  /** {@link Provides} one global pooled direct {@link ByteBufAllocator} for all connections. */
+  @Provides
+  @Singleton
+  static ByteBufAllocator provideByteBufAllocator() {
+    return NettyTransport.newPooledDirectAllocator(0);
   }
 
   /**
@@ -74,8 +105,8 @@ public class ProberModule {
    */
   @Provides
   @Singleton
-  Class<? extends Channel> provideChannelClazz() {
-    return NioSocketChannel.class;
+  Class<? extends Channel> provideChannelClazz(NettyTransport transport) {
+    return transport.socketChannelClass();
   }
 
   /**
@@ -93,8 +124,14 @@ public class ProberModule {
    * ProbingSequence}.
    */
   @Provides
-  Bootstrap provideBootstrap(EventLoopGroup eventLoopGroup) {
-    return new Bootstrap().group(eventLoopGroup).channel(NioSocketChannel.class);
+  Bootstrap provideBootstrap(
+      EventLoopGroup eventLoopGroup,
+      Class<? extends Channel> channelClazz,
+      ByteBufAllocator allocator) {
+    return new Bootstrap()
+        .group(eventLoopGroup)
+        .channel(channelClazz)
+        .option(ChannelOption.ALLOCATOR, allocator);
   }
 
   /** Root level {@link Component} that provides each {@link ProbingSequence}. */
@@ -33,8 +33,10 @@ import google.registry.monitoring.blackbox.token.WebWhoisToken;
 import google.registry.networking.handler.SslClientInitializer;
 import google.registry.util.Clock;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
@@ -171,8 +173,13 @@ public class WebWhoisModule {
   @Provides
   @WebWhoisProtocol
   static Bootstrap provideBootstrap(
-      EventLoopGroup eventLoopGroup, Class<? extends Channel> channelClazz) {
-    return new Bootstrap().group(eventLoopGroup).channel(channelClazz);
+      EventLoopGroup eventLoopGroup,
+      Class<? extends Channel> channelClazz,
+      ByteBufAllocator allocator) {
+    return new Bootstrap()
+        .group(eventLoopGroup)
+        .channel(channelClazz)
+        .option(ChannelOption.ALLOCATOR, allocator);
   }
 
   /** {@link Provides} standard WebWhois sequence. */
@@ -0,0 +1,246 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
+
+import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.metric.BackendMetrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import java.util.Deque;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of keep-alive connections to a backend, shared by the frontend channels of an event loop.
+ *
+ * <p>By default, every frontend channel gets a dedicated backend connection, see {@link
+ * ProxyServer}. EPP sessions are long lived but mostly idle, so this means keeping as many backend
+ * TLS connections open as there are registrar sessions. With a pool, a frontend channel only leases
+ * a connection while one of its requests is in flight, and hands it back once the response has been
+ * relayed, so a few connections can serve many sessions.
+ *
+ * <p>A frontend channel has at most one request in flight. Its later requests wait in its {@link
+ * RELAY_BUFFER_KEY relay buffer}, whose head is the request in flight, so responses are relayed in
+ * the order that the requests were received. Session state such as cookies is kept by the frontend
+ * channel's own handlers, and so doesn't depend on which connection carries a request.
+ *
+ * <p>The pool, its connections and the frontend channels using it all share an event loop, so, as
+ * with dedicated connections, none of the relay state needs synchronization.
+ */
+public class BackendChannelPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /**
+   * Key used to retrieve the {@link BackendChannelPool} from a frontend channel that relays through
+   * it, or from one of the pool's connections.
+   */
+  public static final AttributeKey<BackendChannelPool> RELAY_POOL_KEY =
+      AttributeKey.valueOf("RELAY_POOL");
+
+  private final ChannelPool channelPool;
+  private final String backendHost;
+  private final BackendMetrics metrics;
+
+  /**
+   * Class constructor.
+   *
+   * @param bootstrap bootstrap for new connections, with the remote address and the event loop of
+   *     the frontend channels that will use the pool set
+   * @param protocol the backend protocol, whose handlers are added to each new connection
+   * @param maxConnections maximum number of connections open at once
+   * @param metrics metrics for the pool
+   */
+  BackendChannelPool(
+      Bootstrap bootstrap, BackendProtocol protocol, int maxConnections, BackendMetrics metrics) {
+    this.backendHost = protocol.host();
+    this.metrics = metrics;
+    this.channelPool =
+        new FixedChannelPool(
+            bootstrap.attr(PROTOCOL_KEY, protocol),
+            new AbstractChannelPoolHandler() {
+              @Override
+              public void channelCreated(Channel channel) {
+                channel.attr(RELAY_POOL_KEY).set(BackendChannelPool.this);
+                ProxyServer.addHandlers(channel.pipeline(), protocol.handlerProviders());
+                metrics.registerPooledConnection(backendHost, channel);
+                ChannelFuture unusedFuture =
+                    channel.closeFuture().addListener(future -> connectionClosed(channel));
+              }
+            },
+            maxConnections);
+  }
+
+  /**
+   * Relays a message read by a frontend channel or by one of the pool's connections.
+   *
+   * <p>Frontend channels are told apart by having a relay buffer, which backend channels don't.
+   */
+  public void relay(Channel channel, Object msg) {
+    Deque<Object> relayBuffer = channel.attr(RELAY_BUFFER_KEY).get();
+    if (relayBuffer != null) {
+      relayRequest(channel, relayBuffer, msg);
+    } else {
+      relayResponse(channel, msg);
+    }
+  }
+
+  private void relayRequest(Channel frontendChannel, Deque<Object> relayBuffer, Object request) {
+    boolean hasRequestInFlight = !relayBuffer.isEmpty();
+    relayBuffer.add(request);
+    if (!hasRequestInFlight) {
+      sendNextRequest(frontendChannel, false);
+    }
+  }
+
+  /** Sends the request at the head of the frontend channel's relay buffer to the backend. */
+  private void sendNextRequest(Channel frontendChannel, boolean isRetry) {
+    metrics.requestQueued(backendHost);
+    Future<Channel> unusedFuture =
+        channelPool
+            .acquire()
+            .addListener(
+                (Future<Channel> future) -> {
+                  metrics.requestDequeued(backendHost);
+                  if (!future.isSuccess()) {
+                    logger.atSevere().withCause(future.cause()).log(
+                        "Cannot get pooled connection to %s for channel: %s.",
+                        backendHost, frontendChannel);
+                    ChannelFuture unusedFuture2 = frontendChannel.close();
+                    return;
+                  }
+                  Channel backendChannel = future.getNow();
+                  if (!frontendChannel.isActive()) {
+                    Future<Void> unusedFuture2 = channelPool.release(backendChannel);
+                    return;
+                  }
+                  Object request = frontendChannel.attr(RELAY_BUFFER_KEY).get().peek();
+                  metrics.connectionLeased(backendHost);
+                  backendChannel.attr(RELAY_CHANNEL_KEY).set(frontendChannel);
+                  frontendChannel.attr(RELAY_CHANNEL_KEY).set(backendChannel);
+                  ChannelFuture unusedFuture2 =
+                      backendChannel
+                          .writeAndFlush(retainedDuplicate(request))
+                          .addListener(
+                              writeFuture -> {
+                                if (!writeFuture.isSuccess()) {
+                                  requestFailed(
+                                      frontendChannel,
+                                      backendChannel,
+                                      writeFuture.cause(),
+                                      isRetry);
+                                }
+                              });
+                });
+  }
+
+  /**
+   * Returns a copy of the request to write to a connection, sharing its content.
+   *
+   * <p>The request in the relay buffer keeps its own reference and reader index until it is
+   * answered, so that it can be resent in full if writing the copy fails, even after an encoder has
+   * read some of the copy's content.
+   */
+  private static Object retainedDuplicate(Object request) {
+    if (request instanceof ByteBufHolder) {
+      return ((ByteBufHolder) request).retainedDuplicate();
+    }
+    if (request instanceof ByteBuf) {
+      return ((ByteBuf) request).retainedDuplicate();
+    }
+    return ReferenceCountUtil.retain(request);
+  }
+
+  private void requestFailed(
+      Channel frontendChannel, Channel backendChannel, Throwable cause, boolean isRetry) {
+    logger.atWarning().withCause(cause).log(
+        "Relay failed: %s --> %s\nFRONTEND: %s\nBACKEND: %s",
+        frontendChannel.attr(PROTOCOL_KEY).get().name(),
+        backendChannel.attr(PROTOCOL_KEY).get().name(),
+        frontendChannel,
+        backendChannel);
+    returnConnection(backendChannel);
+    ChannelFuture unusedFuture = backendChannel.close();
+    // Pooled connections may have been closed by the backend while idle, so it is worth retrying
+    // once on another connection, which may well be a new one.
+    if (isRetry) {
+      ChannelFuture unusedFuture2 = frontendChannel.close();
+    } else if (frontendChannel.isActive()) {
+      sendNextRequest(frontendChannel, true);
+    }
+  }
+
+  private void relayResponse(Channel backendChannel, Object response) {
+    Channel frontendChannel = returnConnection(backendChannel);
+    if (frontendChannel == null || !frontendChannel.isActive()) {
+      // The frontend channel is gone, and its relay buffer has already been released.
+      logger.atWarning().log(
+          "Dropping response from %s for closed channel: %s", backendChannel, frontendChannel);
+      ReferenceCountUtil.release(response);
+      return;
+    }
+    Deque<Object> relayBuffer = frontendChannel.attr(RELAY_BUFFER_KEY).get();
+    ReferenceCountUtil.release(relayBuffer.poll());
+    writeToRelayChannel(backendChannel, frontendChannel, response, false);
+    if (!relayBuffer.isEmpty()) {
+      sendNextRequest(frontendChannel, false);
+    }
+  }
+
+  private void connectionClosed(Channel backendChannel) {
+    Channel frontendChannel = returnConnection(backendChannel);
+    if (frontendChannel != null && frontendChannel.isActive()) {
+      // The backend may or may not have processed the request, so it isn't safe to resend it.
+      logger.atWarning().log(
+          "Relay interrupted: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
+          frontendChannel.attr(PROTOCOL_KEY).get().name(),
+          backendChannel.attr(PROTOCOL_KEY).get().name(),
+          frontendChannel,
+          backendChannel);
+      ChannelFuture unusedFuture = frontendChannel.close();
+    }
+  }
+
+  /**
+   * Hands a leased connection back to the pool, if it hasn't been already.
+   *
+   * @return the frontend channel that the connection was leased to, or null if it wasn't leased
+   */
+  @Nullable
+  private Channel returnConnection(Channel backendChannel) {
+    Channel frontendChannel = backendChannel.attr(RELAY_CHANNEL_KEY).getAndSet(null);
+    if (frontendChannel == null) {
+      return null;
+    }
+    frontendChannel.attr(RELAY_CHANNEL_KEY).set(null);
+    metrics.connectionReturned(backendHost);
+    Future<Void> unusedFuture = channelPool.release(backendChannel);
+    return frontendChannel;
+  }
+}
@@ -19,6 +19,7 @@ import static google.registry.util.YamlUtils.getConfigSettings;
 
 import com.google.common.base.Ascii;
 import java.util.List;
+import java.util.Map;
 
 /** The POJO that YAML config files are deserialized into. */
 public class ProxyConfig {
@@ -48,6 +49,7 @@ public class ProxyConfig {
   public WebWhois webWhois;
   public HttpsRelay httpsRelay;
   public Metrics metrics;
+  public Transport transport;
 
   /** Configuration options that apply to GCS. */
   public static class Gcs {
@@ -101,6 +103,15 @@ public class ProxyConfig {
   public static class HttpsRelay {
     public int port;
     public int maxMessageLengthBytes;
+    public int connectionPoolSize;
+  }
+
+  /** Configuration options that apply to the Netty transport. */
+  public static class Transport {
+    public boolean nativeTransport;
+    public int eventLoopThreads;
+    public Map<String, Integer> protocolEventLoopThreads;
+    public int directArenas;
   }
 
   /** Configuration options that apply to Stackdriver monitoring metrics. */
@@ -43,6 +43,7 @@ import google.registry.proxy.WebWhoisProtocolsModule.HttpWhoisProtocol;
 import google.registry.proxy.WebWhoisProtocolsModule.HttpsWhoisProtocol;
 import google.registry.proxy.WhoisProtocolModule.WhoisProtocol;
 import google.registry.proxy.handler.ProxyProtocolHandler;
+import google.registry.proxy.metric.BackendMetrics;
 import google.registry.util.Clock;
 import google.registry.util.GoogleCredentialsBundle;
 import google.registry.util.SystemClock;
@@ -363,5 +364,9 @@ public class ProxyModule {
     Set<FrontendProtocol> protocols();
 
     MetricReporter metricReporter();
+
+    ProxyConfig proxyConfig();
+
+    BackendMetrics backendMetrics();
   }
 }
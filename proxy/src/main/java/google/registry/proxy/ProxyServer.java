@@ -23,29 +23,37 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.monitoring.metrics.MetricReporter;
+import google.registry.networking.transport.NettyTransport;
 import google.registry.proxy.Protocol.BackendProtocol;
 import google.registry.proxy.Protocol.FrontendProtocol;
 import google.registry.proxy.ProxyConfig.Environment;
+import google.registry.proxy.ProxyConfig.Transport;
 import google.registry.proxy.ProxyModule.ProxyComponent;
+import google.registry.proxy.metric.BackendMetrics;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.JdkLoggerFactory;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import javax.inject.Provider;
 
@@ -60,17 +68,27 @@ public class ProxyServer implements Runnable {
   private static final int MAX_SOCKET_BACKLOG = 128;
 
   private final ImmutableSet<FrontendProtocol> protocols;
+  private final int connectionPoolSize;
+  private final BackendMetrics backendMetrics;
+  private final Transport transportConfig;
+  private final NettyTransport transport;
+  private final ByteBufAllocator allocator;
   private final HashMap<Integer, Channel> portToChannelMap = new HashMap<>();
-  private final EventLoopGroup eventGroup = new NioEventLoopGroup();
+  private final List<EventLoopGroup> eventGroups = new ArrayList<>();
 
   ProxyServer(ProxyComponent proxyComponent) {
     this.protocols = ImmutableSet.copyOf(proxyComponent.protocols());
+    this.connectionPoolSize = proxyComponent.proxyConfig().httpsRelay.connectionPoolSize;
+    this.backendMetrics = proxyComponent.backendMetrics();
+    this.transportConfig = proxyComponent.proxyConfig().transport;
+    this.transport = NettyTransport.select(transportConfig.nativeTransport);
+    this.allocator = NettyTransport.newPooledDirectAllocator(transportConfig.directArenas);
   }
 
   /**
    * A {@link ChannelInitializer} for connections from a client of a certain protocol.
    *
-   * <p>The {@link #initChannel(NioSocketChannel)} method does the following:
+   * <p>The {@link #initChannel(SocketChannel)} method does the following:
    *
    * <ol>
    *   <li>Determine the {@link FrontendProtocol} of the inbound {@link Channel} from its parent
@@ -81,10 +99,40 @@ public class ProxyServer implements Runnable {
    *   <li>After the outbound {@link Channel} connects successfully, enable {@link
    *       ChannelOption#AUTO_READ} on the inbound {@link Channel} to start reading.
    * </ol>
+   *
+   * <p>If a connection pool size is configured, the inbound {@link Channel} instead relays through
+   * a {@link BackendChannelPool} shared by all inbound channels on its event loop, and starts
+   * reading immediately.
    */
-  private static class ServerChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+  private static class ServerChannelInitializer extends ChannelInitializer<SocketChannel> {
+
+    private final NettyTransport transport;
+    private final ByteBufAllocator allocator;
+    private final int connectionPoolSize;
+    private final BackendMetrics backendMetrics;
+
+    /**
+     * Backend connection pools of each event loop.
+     *
+     * <p>The inner maps don't need to be synchronized because each one is only accessed by the I/O
+     * thread of its event loop.
+     */
+    private final Map<EventLoop, Map<BackendProtocol, BackendChannelPool>> pools =
+        new ConcurrentHashMap<>();
+
+    ServerChannelInitializer(
+        NettyTransport transport,
+        ByteBufAllocator allocator,
+        int connectionPoolSize,
+        BackendMetrics backendMetrics) {
+      this.transport = transport;
+      this.allocator = allocator;
+      this.connectionPoolSize = connectionPoolSize;
+      this.backendMetrics = backendMetrics;
+    }
+
     @Override
-    protected void initChannel(NioSocketChannel inboundChannel) {
+    protected void initChannel(SocketChannel inboundChannel) {
       // Add inbound channel handlers.
       FrontendProtocol inboundProtocol =
           (FrontendProtocol) inboundChannel.parent().attr(PROTOCOL_KEY).get();
@@ -99,23 +147,33 @@ public class ProxyServer implements Runnable {
       } else {
         logger.atInfo().log(
             "Connection established: %s %s", inboundProtocol.name(), inboundChannel);
-        // Connect to the relay (outbound) channel specified by the BackendProtocol.
         BackendProtocol outboundProtocol = inboundProtocol.relayProtocol();
+        if (connectionPoolSize > 0) {
+          inboundChannel
+              .attr(BackendChannelPool.RELAY_POOL_KEY)
+              .set(getPool(inboundChannel.eventLoop(), outboundProtocol));
+          // Pooled connections are established on demand, so there is nothing to wait for.
+          inboundChannel.config().setAutoRead(true);
+          releaseBufferOnClose(inboundProtocol, inboundChannel);
+          return;
+        }
+        // Connect to the relay (outbound) channel specified by the BackendProtocol.
         Bootstrap bootstrap =
             new Bootstrap()
                 // Use the same thread to connect to the relay channel, therefore avoiding
                 // synchronization handling due to interactions between the two channels
                 .group(inboundChannel.eventLoop())
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannelClass())
                 .handler(
-                    new ChannelInitializer<NioSocketChannel>() {
+                    new ChannelInitializer<SocketChannel>() {
                       @Override
-                      protected void initChannel(NioSocketChannel outboundChannel) {
+                      protected void initChannel(SocketChannel outboundChannel) {
                         addHandlers(
                             outboundChannel.pipeline(), outboundProtocol.handlerProviders());
                       }
                     })
                 .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.ALLOCATOR, allocator)
                 // Outbound channel relays to inbound channel.
                 .attr(RELAY_CHANNEL_KEY, inboundChannel)
                 .attr(PROTOCOL_KEY, outboundProtocol);
@@ -129,31 +187,66 @@ public class ProxyServer implements Runnable {
                 .closeFuture()
                 .addListener(
                     (future) -> {
-                      logger.atInfo().log(
-                          "Connection terminated: %s %s", inboundProtocol.name(), inboundChannel);
                       // Check if there's a relay connection. In case that the outbound connection
                       // is not successful, this attribute is not set.
                       Channel outboundChannel = inboundChannel.attr(RELAY_CHANNEL_KEY).get();
                       if (outboundChannel != null) {
                         ChannelFuture unusedChannelFuture2 = outboundChannel.close();
                       }
-                      // If the frontend channel is closed and there are messages remaining in the
-                      // buffer, we should make sure that they are released (if the messages are
-                      // reference counted).
-                      inboundChannel
-                          .attr(RELAY_BUFFER_KEY)
-                          .get()
-                          .forEach(
-                              msg -> {
-                                logger.atWarning().log(
-                                    "Unfinished relay for connection %s\nHASH: %s",
-                                    inboundChannel, msg.hashCode());
-                                ReferenceCountUtil.release(msg);
-                              });
                     });
+        releaseBufferOnClose(inboundProtocol, inboundChannel);
       }
     }
 
+    /** Returns the pool of connections to the backend shared by the event loop's channels. */
+    private BackendChannelPool getPool(EventLoop eventLoop, BackendProtocol outboundProtocol) {
+      return pools
+          .computeIfAbsent(eventLoop, unused -> new HashMap<>())
+          .computeIfAbsent(
+              outboundProtocol,
+              protocol ->
+                  new BackendChannelPool(
+                      new Bootstrap()
+                          .group(eventLoop)
+                          .channel(transport.socketChannelClass())
+                          .remoteAddress(protocol.host(), protocol.port())
+                          .option(ChannelOption.SO_KEEPALIVE, true)
+                          .option(ChannelOption.ALLOCATOR, allocator),
+                      protocol,
+                      connectionPoolSize,
+                      backendMetrics));
+    }
+
+    /**
+     * Adds a listener that releases the messages left in the relay buffer when the inbound channel
+     * is closed.
+     *
+     * <p>If the frontend channel is closed and there are messages remaining in the buffer, we
+     * should make sure that they are released (if the messages are reference counted). Pooled
+     * backend connections are shared, so they are left open.
+     */
+    private static void releaseBufferOnClose(
+        FrontendProtocol inboundProtocol, SocketChannel inboundChannel) {
+      ChannelFuture unusedChannelFuture =
+          inboundChannel
+              .closeFuture()
+              .addListener(
+                  (future) -> {
+                    logger.atInfo().log(
+                        "Connection terminated: %s %s", inboundProtocol.name(), inboundChannel);
+                    inboundChannel
+                        .attr(RELAY_BUFFER_KEY)
+                        .get()
+                        .forEach(
+                            msg -> {
+                              logger.atWarning().log(
+                                  "Unfinished relay for connection %s\nHASH: %s",
+                                  inboundChannel, msg.hashCode());
+                              ReferenceCountUtil.release(msg);
+                            });
+                  });
+    }
+
     /**
      * Establishes an outbound relay channel and sets the relevant metadata on both channels.
      *
@@ -167,7 +260,7 @@ public class ProxyServer implements Runnable {
         Bootstrap bootstrap,
         FrontendProtocol inboundProtocol,
         BackendProtocol outboundProtocol,
-        NioSocketChannel inboundChannel) {
+        SocketChannel inboundChannel) {
       ChannelFuture outboundChannelFuture =
           bootstrap.connect(outboundProtocol.host(), outboundProtocol.port());
       outboundChannelFuture.addListener(
@@ -236,33 +329,44 @@ public class ProxyServer implements Runnable {
             }
           });
     }
+  }
 
-    private static void addHandlers(
-        ChannelPipeline channelPipeline,
-        ImmutableList<Provider<? extends ChannelHandler>> handlerProviders) {
-      for (Provider<? extends ChannelHandler> handlerProvider : handlerProviders) {
-        channelPipeline.addLast(handlerProvider.get());
-      }
+  /** Adds handlers provided by the given providers to the end of a channel pipeline. */
+  static void addHandlers(
+      ChannelPipeline channelPipeline,
+      ImmutableList<Provider<? extends ChannelHandler>> handlerProviders) {
+    for (Provider<? extends ChannelHandler> handlerProvider : handlerProviders) {
+      channelPipeline.addLast(handlerProvider.get());
     }
   }
 
   @Override
   public void run() {
     try {
-      ServerBootstrap serverBootstrap =
-          new ServerBootstrap()
-              .group(eventGroup)
-              .channel(NioServerSocketChannel.class)
-              .childHandler(new ServerChannelInitializer())
-              .option(ChannelOption.SO_BACKLOG, MAX_SOCKET_BACKLOG)
-              .childOption(ChannelOption.SO_KEEPALIVE, true)
-              // Do not read before relay channel is established.
-              .childOption(ChannelOption.AUTO_READ, false);
+      ServerChannelInitializer serverChannelInitializer =
+          new ServerChannelInitializer(transport, allocator, connectionPoolSize, backendMetrics);
+      EventLoopGroup sharedEventGroup = newEventGroup(transportConfig.eventLoopThreads);
 
       // Bind to each port specified in portToHandlersMap.
       protocols.forEach(
           protocol -> {
             int port = protocol.port();
+            Integer protocolThreads =
+                Optional.ofNullable(transportConfig.protocolEventLoopThreads)
+                    .map(threads -> threads.get(protocol.name()))
+                    .orElse(null);
+            ServerBootstrap serverBootstrap =
+                new ServerBootstrap()
+                    .group(
+                        protocolThreads == null ? sharedEventGroup : newEventGroup(protocolThreads))
+                    .channel(transport.serverSocketChannelClass())
+                    .childHandler(serverChannelInitializer)
+                    .option(ChannelOption.SO_BACKLOG, MAX_SOCKET_BACKLOG)
+                    .option(ChannelOption.ALLOCATOR, allocator)
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.ALLOCATOR, allocator)
+                    // Do not read before relay channel is established.
+                    .childOption(ChannelOption.AUTO_READ, false);
             try {
               // Wait for binding to be established for each listening port.
               ChannelFuture serverChannelFuture = serverBootstrap.bind(port).sync();
@@ -296,10 +400,19 @@ public class ProxyServer implements Runnable {
           });
     } finally {
       logger.atInfo().log("Shutting down server...");
-      Future<?> unusedFuture = eventGroup.shutdownGracefully();
+      for (EventLoopGroup eventGroup : eventGroups) {
+        Future<?> unusedFuture = eventGroup.shutdownGracefully();
+      }
     }
   }
 
+  /** Creates an event loop group with the given number of threads, and keeps it for shutdown. */
+  private EventLoopGroup newEventGroup(int threads) {
+    EventLoopGroup eventGroup = transport.newEventLoopGroup(threads);
+    eventGroups.add(eventGroup);
+    return eventGroup;
+  }
+
   public static void main(String[] args) {
     // Use JDK logger for Netty's LoggingHandler,
     // which is what Flogger uses under the hood.
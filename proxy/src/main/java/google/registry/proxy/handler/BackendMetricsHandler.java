@@ -15,7 +15,6 @@
 package google.registry.proxy.handler;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.EppServiceHandler.CLIENT_CERTIFICATE_HASH_KEY;
@@ -52,12 +51,9 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
   private final Clock clock;
   private final BackendMetrics metrics;
 
-  private String relayedProtocolName;
-  private String clientCertHash;
-  private Channel relayedChannel;
-
   /**
-   * A queue that saves the time at which a request is sent to the GAE app.
+   * A queue that saves the time at which a request is sent to the GAE app, along with the labels of
+   * the frontend channel that it was relayed from.
    *
    * <p>This queue is used to calculate HTTP request-response latency. HTTP 1.1 specification allows
    * for pipelining, in which a client can sent multiple requests without waiting for each
@@ -68,10 +64,13 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
    * guarantees that the request time at the head of the queue always corresponds to the response
    * received in {@link #channelRead}.
    *
+   * <p>The labels are looked up for each request because a pooled backend channel relays requests
+   * from many frontend channels in turn, see {@link google.registry.proxy.BackendChannelPool}.
+   *
    * @see <a href="https://www.w3.org/Protocols/rfc2616/rfc2616-sec8.html">RFC 2616 8.1.2.2
    *     Pipelining</a>
    */
-  private final Queue<DateTime> requestSentTimeQueue = new ArrayDeque<>();
+  private final Queue<SentRequest> sentRequestQueue = new ArrayDeque<>();
 
   @Inject
   BackendMetricsHandler(Clock clock, BackendMetrics metrics) {
@@ -79,40 +78,32 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
     this.metrics = metrics;
   }
 
-  @Override
-  public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
-    // Backend channel is always established after a frontend channel is connected, so this call
-    // should always return a non-null relay channel.
-    relayedChannel = ctx.channel().attr(RELAY_CHANNEL_KEY).get();
-    checkNotNull(relayedChannel, "No frontend channel found.");
-    relayedProtocolName = relayedChannel.attr(PROTOCOL_KEY).get().name();
-    super.channelRegistered(ctx);
-  }
-
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
     checkArgument(msg instanceof FullHttpResponse, "Incoming response must be FullHttpResponse.");
-    checkState(!requestSentTimeQueue.isEmpty(), "Response received before request is sent.");
+    checkState(!sentRequestQueue.isEmpty(), "Response received before request is sent.");
+    SentRequest sentRequest = sentRequestQueue.remove();
     metrics.responseReceived(
-        relayedProtocolName,
-        clientCertHash,
+        sentRequest.relayedProtocolName,
+        sentRequest.clientCertHash,
         (FullHttpResponse) msg,
-        new Duration(requestSentTimeQueue.remove().getMillis(), clock.nowUtc().getMillis()));
+        new Duration(sentRequest.sentTime.getMillis(), clock.nowUtc().getMillis()));
     super.channelRead(ctx, msg);
   }
 
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
     checkArgument(msg instanceof FullHttpRequest, "Outgoing request must be FullHttpRequest.");
+    // The relay channel is always set before a request is written to a backend channel.
+    Channel relayedChannel = ctx.channel().attr(RELAY_CHANNEL_KEY).get();
+    checkState(relayedChannel != null, "No frontend channel found.");
+    String relayedProtocolName = relayedChannel.attr(PROTOCOL_KEY).get().name();
     // For WHOIS, client certificate hash is always set to "none".
     // For EPP, the client hash attribute is set upon handshake completion, before the first HELLO
-    // is sent to the server. Therefore the first call to write() with HELLO payload has access to
-    // the hash in its channel attribute.
-    if (clientCertHash == null) {
-      clientCertHash =
-          Optional.ofNullable(relayedChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).get())
-              .orElse("none");
-    }
+    // is sent to the server. Therefore every call to write() has access to the hash in the
+    // frontend channel's attribute.
+    String clientCertHash =
+        Optional.ofNullable(relayedChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).get()).orElse("none");
     FullHttpRequest request = (FullHttpRequest) msg;
 
     // Record request size now because the content would have read by the time the listener is
@@ -126,8 +117,22 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
                   if (future.isSuccess()) {
                     // Only instrument request metrics when the request is actually sent to GAE.
                     metrics.requestSent(relayedProtocolName, clientCertHash, bytes);
-                    requestSentTimeQueue.add(clock.nowUtc());
+                    sentRequestQueue.add(
+                        new SentRequest(relayedProtocolName, clientCertHash, clock.nowUtc()));
                   }
                 });
   }
+
+  /** A request sent to the GAE app, with the labels to record its response metrics with. */
+  private static class SentRequest {
+    final String relayedProtocolName;
+    final String clientCertHash;
+    final DateTime sentTime;
+
+    SentRequest(String relayedProtocolName, String clientCertHash, DateTime sentTime) {
+      this.relayedProtocolName = relayedProtocolName;
+      this.clientCertHash = clientCertHash;
+      this.sentTime = sentTime;
+    }
+  }
 }
@@ -93,18 +93,22 @@ public abstract class HttpsRelayServiceHandler extends ByteToMessageCodec<FullHt
    * <p>This default method creates a bare-bone {@link FullHttpRequest} that may need to be
    * modified, e. g. adding headers specific for each protocol.
    *
+   * <p>The request content is a retained slice of the inbound message rather than a copy, so that
+   * large EPP frames are not copied on their way to the backend. The slice keeps the inbound buffer
+   * alive until the request is released once it has been relayed.
+   *
    * @param byteBuf inbound message.
    */
   protected FullHttpRequest decodeFullHttpRequest(ByteBuf byteBuf) {
+    ByteBuf content = byteBuf.readRetainedSlice(byteBuf.readableBytes());
     FullHttpRequest request =
-        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, relayPath);
+        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, relayPath, content);
     request
         .headers()
         .set(HttpHeaderNames.USER_AGENT, "Proxy")
         .set(HttpHeaderNames.HOST, relayHost)
         .set(HttpHeaderNames.AUTHORIZATION, "Bearer " + accessTokenSupplier.get())
-        .setInt(HttpHeaderNames.CONTENT_LENGTH, byteBuf.readableBytes());
-    request.content().writeBytes(byteBuf);
+        .setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
     return request;
   }
 
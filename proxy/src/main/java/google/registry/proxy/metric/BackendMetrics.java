@@ -14,13 +14,25 @@
 
 package google.registry.proxy.metric;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.EventMetric;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.util.NonFinalForTesting;
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.joda.time.Duration;
@@ -29,6 +41,18 @@ import org.joda.time.Duration;
 @Singleton
 public class BackendMetrics extends BaseMetrics {
 
+  private static final ImmutableSet<LabelDescriptor> POOL_LABELS =
+      ImmutableSet.of(LabelDescriptor.create("backend", "Host name of the backend."));
+
+  private static final ConcurrentMap<ImmutableList<String>, ChannelGroup> pooledConnections =
+      new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<ImmutableList<String>, AtomicLong> leasedConnections =
+      new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<ImmutableList<String>, AtomicLong> queuedRequests =
+      new ConcurrentHashMap<>();
+
   static final IncrementableMetric requestsCounter =
       MetricRegistryImpl.getDefault()
           .newIncrementableMetric(
@@ -75,6 +99,46 @@ public class BackendMetrics extends BaseMetrics {
               LABELS,
               DEFAULT_LATENCY_FITTER);
 
+  static final Metric<Long> pooledConnectionsGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/backend/pool/open_connections",
+              "Number of open pooled connections to the backend.",
+              "Open Connections",
+              POOL_LABELS,
+              () -> collectLongValues(pooledConnections, group -> (long) group.size()),
+              Long.class);
+
+  static final Metric<Long> activeRequestsGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/backend/pool/active_requests",
+              "Number of pooled connections to the backend currently carrying a request.",
+              "Active Requests",
+              POOL_LABELS,
+              () -> collectLongValues(leasedConnections, AtomicLong::get),
+              Long.class);
+
+  static final Metric<Long> queuedRequestsGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/backend/pool/queued_requests",
+              "Number of requests waiting for a pooled connection to the backend to become free.",
+              "Queued Requests",
+              POOL_LABELS,
+              () -> collectLongValues(queuedRequests, AtomicLong::get),
+              Long.class);
+
+  static final Metric<Double> poolUtilizationGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/backend/pool/utilization",
+              "Fraction of open pooled connections to the backend currently carrying a request.",
+              "Utilization",
+              POOL_LABELS,
+              BackendMetrics::computePoolUtilization,
+              Double.class);
+
   @Inject
   BackendMetrics() {}
 
@@ -85,6 +149,29 @@ public class BackendMetrics extends BaseMetrics {
     responseBytes.reset();
     responsesCounter.reset();
     latencyMs.reset();
+    pooledConnections.clear();
+    leasedConnections.clear();
+    queuedRequests.clear();
+  }
+
+  private static <V> ImmutableMap<ImmutableList<String>, Long> collectLongValues(
+      Map<ImmutableList<String>, V> values, Function<V, Long> toLong) {
+    return values.entrySet().stream()
+        .collect(
+            ImmutableMap.toImmutableMap(
+                Map.Entry::getKey, entry -> toLong.apply(entry.getValue())));
+  }
+
+  private static ImmutableMap<ImmutableList<String>, Double> computePoolUtilization() {
+    ImmutableMap.Builder<ImmutableList<String>, Double> utilization = new ImmutableMap.Builder<>();
+    pooledConnections.forEach(
+        (labels, group) -> {
+          AtomicLong leased = leasedConnections.get(labels);
+          if (!group.isEmpty() && leased != null) {
+            utilization.put(labels, (double) leased.get() / group.size());
+          }
+        });
+    return utilization.build();
   }
 
   @NonFinalForTesting
@@ -100,4 +187,43 @@ public class BackendMetrics extends BaseMetrics {
     responseBytes.record(response.content().readableBytes(), protocol, certHash);
     responsesCounter.increment(protocol, certHash, response.status().toString());
   }
+
+  /** Tracks a newly opened pooled connection to the backend until it is closed. */
+  @NonFinalForTesting
+  public void registerPooledConnection(String backend, Channel channel) {
+    pooledConnections
+        .computeIfAbsent(
+            ImmutableList.of(backend),
+            labels -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE))
+        .add(channel);
+  }
+
+  /** Records that a pooled connection started carrying a request. */
+  @NonFinalForTesting
+  public void connectionLeased(String backend) {
+    getCounter(leasedConnections, backend).incrementAndGet();
+  }
+
+  /** Records that a pooled connection finished carrying a request. */
+  @NonFinalForTesting
+  public void connectionReturned(String backend) {
+    getCounter(leasedConnections, backend).decrementAndGet();
+  }
+
+  /** Records that a request started waiting for a pooled connection. */
+  @NonFinalForTesting
+  public void requestQueued(String backend) {
+    getCounter(queuedRequests, backend).incrementAndGet();
+  }
+
+  /** Records that a request stopped waiting for a pooled connection. */
+  @NonFinalForTesting
+  public void requestDequeued(String backend) {
+    getCounter(queuedRequests, backend).decrementAndGet();
+  }
+
+  private static AtomicLong getCounter(
+      ConcurrentMap<ImmutableList<String>, AtomicLong> counters, String backend) {
+    return counters.computeIfAbsent(ImmutableList.of(backend), labels -> new AtomicLong());
+  }
 }
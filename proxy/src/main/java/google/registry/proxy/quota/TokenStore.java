@@ -14,18 +14,26 @@
 
 package google.registry.proxy.quota;
 
+import static com.google.common.base.Preconditions.checkState;
 import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
 import static java.lang.StrictMath.max;
 import static java.lang.StrictMath.min;
+import static org.joda.time.DateTimeZone.UTC;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import google.registry.util.Clock;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.ThreadSafe;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -40,8 +48,14 @@ import org.joda.time.Duration;
  * tokens, see {@code config/default-config.yaml}.
  *
  * <p>The store also lazily refills tokens for a {@code userId} when a {@link #take} or a {@link
- * #put} takes place. It also exposes a {@link #refresh} method that goes through each entry in the
- * store and purges stale entries, in order to prevent the token store from growing too large.
+ * #put} takes place. It also exposes a {@link #refresh} method that purges stale entries, in order
+ * to prevent the token store from growing too large.
+ *
+ * <p>Each user's available tokens and last refill time are packed into a single {@code long}, which
+ * {@link #take} and {@link #put} update with compare-and-set, so that concurrent connections of a
+ * user don't contend on a lock, and no objects are created for the bookkeeping once the user has an
+ * entry. To find stale entries without walking the whole store, entries are also filed in a coarse
+ * timing wheel by their refill time, and {@link #refresh} only looks at the expired slots.
  *
  * <p>There should be one token store for each protocol.
  */
@@ -62,18 +76,70 @@ public class TokenStore {
   }
 
   /**
-   * A wrapper to get around Java lambda's closure limitation.
+   * The tokens of a user, with the user's quota looked up once when the entry is created.
    *
-   * <p>Use the class to modify the value of a local variable captured by an lambda.
+   * <p>The state holds the token count in its lowest {@link #COUNT_BITS} bits, and the refill time
+   * in milliseconds since the epoch in the bits above.
    */
-  private static class Wrapper<T> {
-    T value;
+  private static final class TokenBucket {
+    final boolean unlimited;
+    final int tokenAmount;
+    final long refillPeriodMillis;
+    final AtomicLong state;
+
+    TokenBucket(String userId, QuotaConfig config, long nowMillis) {
+      unlimited = config.hasUnlimitedTokens(userId);
+      if (unlimited) {
+        tokenAmount = SENTINEL_UNLIMITED_TOKENS;
+        refillPeriodMillis = 0;
+        state = new AtomicLong(pack(UNLIMITED_COUNT, nowMillis));
+      } else {
+        tokenAmount = config.getTokenAmount(userId);
+        checkState(
+            tokenAmount <= MAX_TOKEN_AMOUNT,
+            "Token amount %s of user ID %s exceeds the maximum of %s",
+            tokenAmount,
+            userId,
+            MAX_TOKEN_AMOUNT);
+        refillPeriodMillis = config.getRefillPeriod(userId).getMillis();
+        state = new AtomicLong(pack(tokenAmount, nowMillis));
+      }
+    }
+
+    /** Returns if refill is enabled and a pool refilled at the given time needs to be refilled. */
+    boolean needsRefill(long refillMillis, long nowMillis) {
+      return refillPeriodMillis != 0 && nowMillis - refillMillis >= refillPeriodMillis;
+    }
   }
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  private static final int COUNT_BITS = 20;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  /** The packed token count of users with unlimited tokens. */
+  private static final long UNLIMITED_COUNT = COUNT_MASK;
+
+  /** The largest token amount that can be packed, one less than {@link #UNLIMITED_COUNT}. */
+  @VisibleForTesting static final int MAX_TOKEN_AMOUNT = (int) COUNT_MASK - 1;
+
+  /** The state of a bucket that has been purged by {@link #refresh} and must not be updated. */
+  private static final long EVICTED = -1L;
+
+  /** Number of timing wheel slots that one refresh period is divided into. */
+  private static final int WHEEL_SLOTS_PER_REFRESH_PERIOD = 60;
+
   /** A map of {@code userId} to available tokens, timestamped at last refill time. */
-  private final ConcurrentHashMap<String, TimestampedInteger> tokensMap = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, TokenBucket> tokensMap = new ConcurrentHashMap<>();
+
+  /**
+   * A timing wheel of the {@code userId}s whose entries were refilled in each time slot.
+   *
+   * <p>A user is filed again whenever a refill moves its entry to a later slot, so a slot may list
+   * users whose entries have since been refilled. These are skipped when the slot is purged.
+   */
+  private final ConcurrentSkipListMap<Long, Queue<String>> refillWheel =
+      new ConcurrentSkipListMap<>();
 
   private final QuotaConfig config;
   private final ScheduledExecutorService refreshExecutor;
@@ -85,6 +151,19 @@ public class TokenStore {
     this.clock = clock;
   }
 
+  private static long pack(long count, long refillMillis) {
+    return (refillMillis << COUNT_BITS) | count;
+  }
+
+  private static int unpackCount(long state) {
+    long count = state & COUNT_MASK;
+    return count == UNLIMITED_COUNT ? SENTINEL_UNLIMITED_TOKENS : (int) count;
+  }
+
+  private static long unpackRefillMillis(long state) {
+    return state >>> COUNT_BITS;
+  }
+
   /**
    * Attempts to take one token from the token store.
    *
@@ -101,36 +180,40 @@ public class TokenStore {
    *     which the granted one is taken.
    */
   TimestampedInteger take(String userId) {
-    Wrapper<TimestampedInteger> grantedToken = new Wrapper<>();
-    tokensMap.compute(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount;
-          DateTime refillTime;
-          // Checks if the user is provisioned with unlimited tokens.
-          if (config.hasUnlimitedTokens(user)) {
-            grantedToken.value = TimestampedInteger.create(1, now);
-            return TimestampedInteger.create(SENTINEL_UNLIMITED_TOKENS, now);
-          }
-          // Checks if the entry exists.
-          if (availableTokens == null
-              // Or if refill is enabled and the entry needs to be refilled.
-              || (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                  && !new Duration(availableTokens.timestamp(), now)
-                      .isShorterThan(config.getRefillPeriod(user)))) {
-            currentTokenCount = config.getTokenAmount(user);
-            refillTime = now;
-          } else {
-            currentTokenCount = availableTokens.value();
-            refillTime = availableTokens.timestamp();
-          }
-          int newTokenCount = max(0, currentTokenCount - 1);
-          grantedToken.value =
-              TimestampedInteger.create(currentTokenCount - newTokenCount, refillTime);
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
-    return grantedToken.value;
+    DateTime now = clock.nowUtc();
+    long nowMillis = now.getMillis();
+    while (true) {
+      TokenBucket bucket = getOrCreateBucket(userId, nowMillis);
+      long state = bucket.state.get();
+      if (state == EVICTED) {
+        // Purged by a concurrent refresh, start over with a new entry.
+        tokensMap.remove(userId, bucket);
+        continue;
+      }
+      long refillMillis = unpackRefillMillis(state);
+      int grantedTokenCount;
+      long newState;
+      // Checks if the user is provisioned with unlimited tokens.
+      if (bucket.unlimited) {
+        grantedTokenCount = 1;
+        refillMillis = nowMillis;
+        newState = pack(UNLIMITED_COUNT, nowMillis);
+      } else {
+        int currentTokenCount = unpackCount(state);
+        if (bucket.needsRefill(refillMillis, nowMillis)) {
+          currentTokenCount = bucket.tokenAmount;
+          refillMillis = nowMillis;
+        }
+        int newTokenCount = max(0, currentTokenCount - 1);
+        grantedTokenCount = currentTokenCount - newTokenCount;
+        newState = pack(newTokenCount, refillMillis);
+      }
+      if (newState == state || bucket.state.compareAndSet(state, newState)) {
+        fileRefill(userId, unpackRefillMillis(state), refillMillis);
+        return TimestampedInteger.create(
+            grantedTokenCount, refillMillis == nowMillis ? now : new DateTime(refillMillis, UTC));
+      }
+    }
   }
 
   /**
@@ -145,32 +228,76 @@ public class TokenStore {
    *     one is taken from.
    */
   void put(String userId, DateTime returnedTokenRefillTime) {
-    tokensMap.computeIfPresent(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount = availableTokens.value();
-          DateTime refillTime = availableTokens.timestamp();
-          int newTokenCount;
-          // Check if quota is unlimited.
-          if (!config.hasUnlimitedTokens(userId)) {
-            // Check if refill is enabled and a refill is needed.
-            if (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                && !new Duration(availableTokens.timestamp(), now)
-                    .isShorterThan(config.getRefillPeriod(user))) {
-              currentTokenCount = config.getTokenAmount(user);
-              refillTime = now;
-            }
-            // If the returned token comes from the current pool, add it back, otherwise discard it.
-            newTokenCount =
-                returnedTokenRefillTime.equals(refillTime)
-                    ? min(currentTokenCount + 1, config.getTokenAmount(userId))
-                    : currentTokenCount;
-          } else {
-            newTokenCount = SENTINEL_UNLIMITED_TOKENS;
-          }
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
+    TokenBucket bucket = tokensMap.get(userId);
+    // Nothing to do if the entry is gone, or if quota is unlimited.
+    if (bucket == null || bucket.unlimited) {
+      return;
+    }
+    long nowMillis = clock.nowUtc().getMillis();
+    while (true) {
+      long state = bucket.state.get();
+      if (state == EVICTED) {
+        return;
+      }
+      int currentTokenCount = unpackCount(state);
+      long refillMillis = unpackRefillMillis(state);
+      // Check if refill is enabled and a refill is needed.
+      if (bucket.needsRefill(refillMillis, nowMillis)) {
+        currentTokenCount = bucket.tokenAmount;
+        refillMillis = nowMillis;
+      }
+      // If the returned token comes from the current pool, add it back, otherwise discard it.
+      int newTokenCount =
+          returnedTokenRefillTime.getMillis() == refillMillis
+              ? min(currentTokenCount + 1, bucket.tokenAmount)
+              : currentTokenCount;
+      long newState = pack(newTokenCount, refillMillis);
+      if (newState == state || bucket.state.compareAndSet(state, newState)) {
+        fileRefill(userId, unpackRefillMillis(state), refillMillis);
+        return;
+      }
+    }
+  }
+
+  private TokenBucket getOrCreateBucket(String userId, long nowMillis) {
+    TokenBucket bucket = tokensMap.get(userId);
+    if (bucket == null) {
+      TokenBucket newBucket = new TokenBucket(userId, config, nowMillis);
+      bucket = tokensMap.putIfAbsent(userId, newBucket);
+      if (bucket == null) {
+        bucket = newBucket;
+        fileInWheel(userId, nowMillis);
+      }
+    }
+    return bucket;
+  }
+
+  /** Files the entry of a user in the timing wheel again if a refill moved it to a later slot. */
+  private void fileRefill(String userId, long oldRefillMillis, long newRefillMillis) {
+    if (oldRefillMillis != newRefillMillis) {
+      long slotMillis = getWheelSlotMillis();
+      if (slotMillis != 0 && oldRefillMillis / slotMillis != newRefillMillis / slotMillis) {
+        fileInWheel(userId, newRefillMillis);
+      }
+    }
+  }
+
+  private void fileInWheel(String userId, long refillMillis) {
+    long slotMillis = getWheelSlotMillis();
+    // Entries are never purged if refresh is disabled, so there is no need to keep track of them.
+    if (slotMillis != 0) {
+      refillWheel
+          .computeIfAbsent(refillMillis / slotMillis, slot -> new ConcurrentLinkedQueue<>())
+          .add(userId);
+    }
+  }
+
+  /** Returns the width of a timing wheel slot, or 0 if refresh is disabled. */
+  private long getWheelSlotMillis() {
+    long refreshPeriodMillis = config.getRefreshPeriod().getMillis();
+    return refreshPeriodMillis == 0
+        ? 0
+        : max(1, refreshPeriodMillis / WHEEL_SLOTS_PER_REFRESH_PERIOD);
   }
 
   /**
@@ -182,15 +309,52 @@ public class TokenStore {
    * the refill period is much shorter than the refresh period, so the last refill time should serve
    * as a good proxy for last update time as the actual update time cannot be one refill period
    * later from the refill time, otherwise another refill would have been performed.
+   *
+   * <p>Only the timing wheel slots that may hold stale entries are visited, and each of them is
+   * discarded afterwards. Entries in the last of these slots that are not stale yet are filed
+   * again.
    */
   void refresh() {
-    tokensMap.forEach(
-        (user, availableTokens) -> {
-          if (!new Duration(availableTokens.timestamp(), clock.nowUtc())
-              .isShorterThan(config.getRefreshPeriod())) {
-            tokensMap.remove(user);
-          }
-        });
+    long slotMillis = getWheelSlotMillis();
+    if (slotMillis == 0) {
+      return;
+    }
+    long nowMillis = clock.nowUtc().getMillis();
+    long refreshPeriodMillis = config.getRefreshPeriod().getMillis();
+    long lastStaleSlot = (nowMillis - refreshPeriodMillis) / slotMillis;
+    for (Map.Entry<Long, Queue<String>> slot :
+        ImmutableList.copyOf(refillWheel.headMap(lastStaleSlot, true).entrySet())) {
+      refillWheel.remove(slot.getKey(), slot.getValue());
+      for (String userId : slot.getValue()) {
+        purgeIfStale(userId, slot.getKey(), slotMillis, nowMillis, refreshPeriodMillis);
+      }
+    }
+  }
+
+  private void purgeIfStale(
+      String userId, long slot, long slotMillis, long nowMillis, long refreshPeriodMillis) {
+    TokenBucket bucket = tokensMap.get(userId);
+    if (bucket == null) {
+      return;
+    }
+    while (true) {
+      long state = bucket.state.get();
+      if (state == EVICTED) {
+        return;
+      }
+      long refillMillis = unpackRefillMillis(state);
+      if (nowMillis - refillMillis < refreshPeriodMillis) {
+        if (refillMillis / slotMillis == slot) {
+          fileInWheel(userId, refillMillis);
+        }
+        return;
+      }
+      // Concurrent updates that don't refill still need to be checked again.
+      if (bucket.state.compareAndSet(state, EVICTED)) {
+        tokensMap.remove(userId, bucket);
+        return;
+      }
+    }
   }
 
   /** Schedules token store refresh if enabled. */
@@ -217,6 +381,12 @@ public class TokenStore {
    */
   @VisibleForTesting
   TimestampedInteger getTokenForTests(String userId) {
-    return tokensMap.get(userId);
+    TokenBucket bucket = tokensMap.get(userId);
+    long state = bucket == null ? EVICTED : bucket.state.get();
+    if (state == EVICTED) {
+      return null;
+    }
+    return TimestampedInteger.create(
+        unpackCount(state), new DateTime(unpackRefillMillis(state), UTC));
   }
 }
@@ -0,0 +1,297 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static google.registry.proxy.BackendChannelPool.RELAY_POOL_KEY;
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.handler.RelayHandler;
+import google.registry.proxy.metric.BackendMetrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Provider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link BackendChannelPool}.
+ *
+ * <p>The frontend and backend servers are in-JVM {@link LocalChannel} servers that exchange plain
+ * strings. They share a single event loop with the pool, as frontend channels and their pool do in
+ * the {@link ProxyServer}.
+ */
+class BackendChannelPoolTest {
+
+  private static final String HOST = "backend.tld";
+
+  private final EventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(1);
+  private final BackendMetrics metrics = mock(BackendMetrics.class);
+
+  private final BackendProtocol backendProtocol =
+      Protocol.backendBuilder()
+          .name("backend protocol")
+          .host(HOST)
+          .port(1)
+          .handlerProviders(
+              ImmutableList.<Provider<? extends ChannelHandler>>of(
+                  FailNextWriteHandler::new, () -> new RelayHandler<String>(String.class)))
+          .build();
+
+  private final FrontendProtocol frontendProtocol =
+      Protocol.frontendBuilder()
+          .name("frontend protocol")
+          .port(2)
+          .relayProtocol(backendProtocol)
+          .handlerProviders(ImmutableList.of())
+          .build();
+
+  private final AtomicBoolean failNextWrite = new AtomicBoolean();
+
+  private LocalAddress frontendAddress;
+
+  /**
+   * Fails the next write to a backend connection once {@link #failNextWrite} is set, after reading
+   * the content of the message as an encoder would.
+   */
+  private class FailNextWriteHandler extends ChannelOutboundHandlerAdapter {
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+      if (!failNextWrite.compareAndSet(true, false)) {
+        ctx.write(msg, promise);
+        return;
+      }
+      ByteBuf content = ((ByteBufHolder) msg).content();
+      content.skipBytes(content.readableBytes());
+      ReferenceCountUtil.release(msg);
+      promise.setFailure(new IOException("Connection reset"));
+    }
+  }
+
+  /**
+   * Starts an echo backend, and a frontend server that relays through a pool of given size.
+   *
+   * <p>The backend answers plain strings, and the content of {@link FullHttpRequest}s, with the
+   * same text followed by " handled".
+   */
+  private void startServers(int poolSize) throws Exception {
+    Channel backendServer =
+        new ServerBootstrap()
+            .group(eventLoopGroup)
+            .channel(LocalServerChannel.class)
+            .childHandler(
+                new SimpleChannelInboundHandler<Object>() {
+                  @Override
+                  protected void channelRead0(ChannelHandlerContext ctx, Object request) {
+                    String msg =
+                        request instanceof FullHttpRequest
+                            ? ((FullHttpRequest) request).content().toString(US_ASCII)
+                            : (String) request;
+                    if (msg.equals("close")) {
+                      ChannelFuture unusedFuture = ctx.close();
+                    } else {
+                      ChannelFuture unusedFuture = ctx.writeAndFlush(msg + " handled");
+                    }
+                  }
+                })
+            .bind(LocalAddress.ANY)
+            .sync()
+            .channel();
+    BackendChannelPool pool =
+        new BackendChannelPool(
+            new Bootstrap()
+                .group(eventLoopGroup.next())
+                .channel(LocalChannel.class)
+                .remoteAddress(backendServer.localAddress()),
+            backendProtocol,
+            poolSize,
+            metrics);
+    Channel frontendServer =
+        new ServerBootstrap()
+            .group(eventLoopGroup)
+            .channel(LocalServerChannel.class)
+            .childHandler(
+                new ChannelInitializer<LocalChannel>() {
+                  @Override
+                  protected void initChannel(LocalChannel ch) {
+                    ch.attr(PROTOCOL_KEY).set(frontendProtocol);
+                    ch.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
+                    ch.attr(RELAY_POOL_KEY).set(pool);
+                    ch.pipeline().addLast(new RelayHandler<Object>(Object.class));
+                  }
+                })
+            .bind(LocalAddress.ANY)
+            .sync()
+            .channel();
+    frontendAddress = (LocalAddress) frontendServer.localAddress();
+  }
+
+  /** Connects a client to the frontend server, whose responses are added to the given queue. */
+  private Channel connectClient(BlockingQueue<String> responses) throws Exception {
+    return new Bootstrap()
+        .group(eventLoopGroup)
+        .channel(LocalChannel.class)
+        .handler(
+            new SimpleChannelInboundHandler<String>() {
+              @Override
+              protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+                responses.add(msg);
+              }
+            })
+        .connect(frontendAddress)
+        .sync()
+        .channel();
+  }
+
+  private static void assertNextResponse(BlockingQueue<String> responses, String expected)
+      throws Exception {
+    assertThat(responses.poll(5, TimeUnit.SECONDS)).isEqualTo(expected);
+  }
+
+  @AfterEach
+  void afterEach() throws Exception {
+    Future<?> unusedFuture = eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+  }
+
+  @Test
+  void testSuccess_sessionsShareConnection() throws Exception {
+    startServers(1);
+    BlockingQueue<String> responsesA = new LinkedBlockingQueue<>();
+    BlockingQueue<String> responsesB = new LinkedBlockingQueue<>();
+    Channel clientA = connectClient(responsesA);
+    Channel clientB = connectClient(responsesB);
+
+    ChannelFuture unusedFuture = clientA.writeAndFlush("a1");
+    unusedFuture = clientA.writeAndFlush("a2");
+    unusedFuture = clientB.writeAndFlush("b1");
+    unusedFuture = clientA.writeAndFlush("a3");
+
+    // Each session gets its responses in the order that it sent the requests.
+    assertNextResponse(responsesA, "a1 handled");
+    assertNextResponse(responsesA, "a2 handled");
+    assertNextResponse(responsesA, "a3 handled");
+    assertNextResponse(responsesB, "b1 handled");
+    assertThat(clientA.isActive()).isTrue();
+    assertThat(clientB.isActive()).isTrue();
+
+    verify(metrics).registerPooledConnection(any(), any());
+    verify(metrics, times(4)).requestQueued(HOST);
+    verify(metrics, times(4)).requestDequeued(HOST);
+    verify(metrics, times(4)).connectionLeased(HOST);
+    verify(metrics, times(4)).connectionReturned(HOST);
+  }
+
+  @Test
+  void testSuccess_poolOpensUpToMaxConnections() throws Exception {
+    startServers(2);
+    BlockingQueue<String> responsesA = new LinkedBlockingQueue<>();
+    BlockingQueue<String> responsesB = new LinkedBlockingQueue<>();
+    BlockingQueue<String> responsesC = new LinkedBlockingQueue<>();
+    Channel clientA = connectClient(responsesA);
+    Channel clientB = connectClient(responsesB);
+    Channel clientC = connectClient(responsesC);
+
+    ChannelFuture unusedFuture = clientA.writeAndFlush("a1");
+    unusedFuture = clientB.writeAndFlush("b1");
+    unusedFuture = clientC.writeAndFlush("c1");
+
+    assertNextResponse(responsesA, "a1 handled");
+    assertNextResponse(responsesB, "b1 handled");
+    assertNextResponse(responsesC, "c1 handled");
+    verify(metrics, times(2)).registerPooledConnection(any(), any());
+  }
+
+  @Test
+  void testFailure_backendClosesConnection_closesSession() throws Exception {
+    startServers(1);
+    BlockingQueue<String> responsesA = new LinkedBlockingQueue<>();
+    BlockingQueue<String> responsesB = new LinkedBlockingQueue<>();
+    Channel clientA = connectClient(responsesA);
+    Channel clientB = connectClient(responsesB);
+
+    ChannelFuture unusedFuture = clientA.writeAndFlush("close");
+    // The backend may or may not have processed the request, so the session can't go on.
+    assertThat(clientA.closeFuture().await(5, TimeUnit.SECONDS)).isTrue();
+
+    // Other sessions get a new connection.
+    unusedFuture = clientB.writeAndFlush("b1");
+    assertNextResponse(responsesB, "b1 handled");
+    assertThat(responsesA).isEmpty();
+    verify(metrics, times(2)).registerPooledConnection(any(), any());
+    verify(metrics, times(2)).connectionLeased(HOST);
+    verify(metrics, times(2)).connectionReturned(HOST);
+  }
+
+  @Test
+  void testSuccess_writeFailsAfterContentIsRead_retriesWithFullContent() throws Exception {
+    startServers(1);
+    BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+    Channel client = connectClient(responses);
+    FullHttpRequest request =
+        new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.POST,
+            "/",
+            Unpooled.copiedBuffer("request body", US_ASCII));
+
+    failNextWrite.set(true);
+    ChannelFuture unusedFuture = client.writeAndFlush(request);
+
+    // The retry goes out on a new connection, with none of the content read by the failed write.
+    assertNextResponse(responses, "request body handled");
+    assertThat(client.isActive()).isTrue();
+    assertThat(request.refCnt()).isEqualTo(0);
+    verify(metrics, times(2)).registerPooledConnection(any(), any());
+    verify(metrics, times(2)).connectionLeased(HOST);
+    verify(metrics, times(2)).connectionReturned(HOST);
+  }
+}
@@ -229,4 +229,43 @@ class BackendMetricsHandlerTest {
     verify(metrics).responseReceived(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, response3, latency3);
     verifyNoMoreInteractions(metrics);
   }
+
+  @Test
+  void testSuccess_relayChannelChangesBetweenRequests() {
+    FrontendProtocol otherFrontendProtocol =
+        Protocol.frontendBuilder()
+            .name("other frontend protocol")
+            .port(3)
+            .relayProtocol(backendProtocol)
+            .handlerProviders(ImmutableList.of())
+            .build();
+    EmbeddedChannel otherFrontendChannel = new EmbeddedChannel();
+    otherFrontendChannel.attr(PROTOCOL_KEY).set(otherFrontendProtocol);
+    FullHttpRequest request1 = makeHttpPostRequest("request 1", HOST, "/");
+    FullHttpResponse response1 = makeHttpResponse("response 1", HttpResponseStatus.OK);
+    FullHttpRequest request2 = makeHttpPostRequest("request 22", HOST, "/");
+    FullHttpResponse response2 = makeHttpResponse("response 22", HttpResponseStatus.OK);
+
+    assertThat(channel.writeOutbound(request1)).isTrue();
+    assertHttpRequestEquivalent(request1, channel.readOutbound());
+    // A pooled backend channel is leased to another frontend channel for its next request.
+    channel.attr(RELAY_CHANNEL_KEY).set(otherFrontendChannel);
+    assertThat(channel.writeOutbound(request2)).isTrue();
+    assertHttpRequestEquivalent(request2, channel.readOutbound());
+    fakeClock.advanceOneMilli();
+    assertThat(channel.writeInbound(response1)).isTrue();
+    assertHttpResponseEquivalent(response1, channel.readInbound());
+    assertThat(channel.writeInbound(response2)).isTrue();
+    assertHttpResponseEquivalent(response2, channel.readInbound());
+
+    verify(metrics)
+        .requestSent(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, request1.content().readableBytes());
+    verify(metrics)
+        .requestSent("other frontend protocol", "none", request2.content().readableBytes());
+    verify(metrics)
+        .responseReceived(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, response1, Duration.millis(1));
+    verify(metrics)
+        .responseReceived("other frontend protocol", "none", response2, Duration.millis(1));
+    verifyNoMoreInteractions(metrics);
+  }
 }
@@ -211,6 +211,23 @@ class EppServiceHandlerTest {
     assertThat(channel.isActive()).isTrue();
   }
 
+  @Test
+  void testSuccess_requestContentNotCopied() throws Exception {
+    setHandshakeSuccess();
+    // First inbound message is hello.
+    channel.readInbound();
+    String content = "<epp>stuff</epp>";
+    ByteBuf inboundMessage = Unpooled.wrappedBuffer(content.getBytes(UTF_8));
+    channel.writeInbound(inboundMessage);
+    FullHttpRequest request = channel.readInbound();
+    // The request content is a view of the inbound message, which it keeps alive.
+    assertThat(inboundMessage.refCnt()).isEqualTo(1);
+    inboundMessage.setByte(1, 'E');
+    assertThat(request.content().toString(UTF_8)).isEqualTo("<Epp>stuff</epp>");
+    request.release();
+    assertThat(inboundMessage.refCnt()).isEqualTo(0);
+  }
+
   @Test
   void testSuccess_sendResponseToNextHandler() throws Exception {
     setHandshakeSuccess();
@@ -14,12 +14,17 @@
 
 package google.registry.proxy.metric;
 
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.monitoring.metrics.contrib.DistributionMetricSubject.assertThat;
 import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.proxy.TestUtils.makeHttpPostRequest;
 import static google.registry.proxy.TestUtils.makeHttpResponse;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.MetricPoint;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -168,4 +173,58 @@ class BackendMetricsTest {
         .and()
         .hasNoOtherValues();
   }
+
+  @Test
+  void testSuccess_poolGauges() {
+    EmbeddedChannel channel1 = new EmbeddedChannel();
+    EmbeddedChannel channel2 = new EmbeddedChannel();
+    metrics.registerPooledConnection(host, channel1);
+    metrics.registerPooledConnection(host, channel2);
+    metrics.requestQueued(host);
+    metrics.requestDequeued(host);
+    metrics.connectionLeased(host);
+    metrics.requestQueued(host);
+
+    assertThat(BackendMetrics.pooledConnectionsGauge)
+        .hasValueForLabels(2, host)
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.activeRequestsGauge)
+        .hasValueForLabels(1, host)
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.queuedRequestsGauge)
+        .hasValueForLabels(1, host)
+        .and()
+        .hasNoOtherValues();
+    MetricPoint<Double> utilization =
+        getOnlyElement(BackendMetrics.poolUtilizationGauge.getTimestampedValues());
+    assertThat(utilization.labelValues()).containsExactly(host);
+    assertThat(utilization.value()).isEqualTo(0.5);
+  }
+
+  @Test
+  void testSuccess_poolGauges_connectionClosed() throws Exception {
+    EmbeddedChannel channel1 = new EmbeddedChannel();
+    EmbeddedChannel channel2 = new EmbeddedChannel();
+    metrics.registerPooledConnection(host, channel1);
+    metrics.registerPooledConnection(host, channel2);
+    metrics.connectionLeased(host);
+    metrics.connectionLeased(host);
+    metrics.connectionReturned(host);
+    ChannelFuture unusedFuture = channel1.close().sync();
+
+    assertThat(BackendMetrics.pooledConnectionsGauge)
+        .hasValueForLabels(1, host)
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.activeRequestsGauge)
+        .hasValueForLabels(1, host)
+        .and()
+        .hasNoOtherValues();
+    MetricPoint<Double> utilization =
+        getOnlyElement(BackendMetrics.poolUtilizationGauge.getTimestampedValues());
+    assertThat(utilization.labelValues()).containsExactly(host);
+    assertThat(utilization.value()).isEqualTo(1.0);
+  }
 }
@@ -16,6 +16,7 @@ package google.registry.proxy.quota;
 
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -31,6 +32,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
@@ -210,6 +212,46 @@ class TokenStoreTest {
         .isEqualTo(TimestampedInteger.create(4, refillTime2));
   }
 
+  @Test
+  void testSuccess_refresh_keepsRefilledEntry() {
+    assertTake(1, 2, clock.nowUtc());
+
+    // Refill 50s later, which moves the entry to a later slot.
+    clock.advanceBy(Duration.standardSeconds(50));
+    DateTime refillTime = clock.nowUtc();
+    assertTake(1, 2, refillTime);
+
+    // The entry was refilled 10s ago, so it is kept, and is purged a refresh period after refill.
+    clock.advanceBy(Duration.standardSeconds(10));
+    tokenStore.refresh();
+    assertThat(tokenStore.getTokenForTests(user))
+        .isEqualTo(TimestampedInteger.create(2, refillTime));
+    clock.advanceBy(Duration.standardSeconds(50));
+    tokenStore.refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+  }
+
+  @Test
+  void testSuccess_refresh_entryRecreatedAfterPurge() {
+    assertTake(1, 2, clock.nowUtc());
+    clock.advanceBy(Duration.standardSeconds(60));
+    tokenStore.refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+
+    // A returned token from the purged entry is discarded, and a new entry gets the full amount.
+    tokenStore.put(user, clock.nowUtc());
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+    assertTake(1, 2, clock.nowUtc());
+  }
+
+  @Test
+  void testFailure_take_tokenAmountTooLarge() {
+    when(quotaConfig.getTokenAmount(user)).thenReturn(TokenStore.MAX_TOKEN_AMOUNT + 1);
+    IllegalStateException thrown =
+        assertThrows(IllegalStateException.class, () -> tokenStore.take(user));
+    assertThat(thrown).hasMessageThat().contains("exceeds the maximum");
+  }
+
   @Test
   void testSuccess_unlimitedQuota() {
     when(quotaConfig.hasUnlimitedTokens(user)).thenReturn(true);
@@ -293,6 +335,36 @@ class TokenStoreTest {
         .isEqualTo(TimestampedInteger.create(4, time3));
   }
 
+  @Test
+  void testSuccess_contention() throws Exception {
+    // Not a spy, which would record every call.
+    TokenStore tokenStore = new TokenStore(quotaConfig, refreshExecutor, clock);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    DateTime refillTime = clock.nowUtc();
+    AtomicInteger leasedTokens = new AtomicInteger();
+    AtomicInteger maxLeasedTokens = new AtomicInteger();
+    Runnable task =
+        () -> {
+          for (int i = 0; i < 10000; ++i) {
+            TimestampedInteger grantedToken = tokenStore.take(user);
+            if (grantedToken.value() == 1) {
+              maxLeasedTokens.accumulateAndGet(leasedTokens.incrementAndGet(), Math::max);
+              leasedTokens.decrementAndGet();
+              tokenStore.put(user, grantedToken.timestamp());
+            }
+          }
+        };
+    try {
+      submitAndWaitForTasks(executor, task, task, task, task, task, task, task, task);
+    } finally {
+      executor.shutdown();
+    }
+    // No more tokens than allotted are ever leased, and all of them are returned.
+    assertThat(maxLeasedTokens.get()).isAtMost(3);
+    assertThat(tokenStore.getTokenForTests(user))
+        .isEqualTo(TimestampedInteger.create(3, refillTime));
+  }
+
   @Test
   void testSuccess_scheduleRefresh() throws Exception {
     when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.standardSeconds(5));
@@ -29,7 +29,7 @@ import javax.annotation.concurrent.NotThreadSafe;
  *
  * <ul>
  * <li>Byte counting
- * <li>Always {@link #flush()} on {@link #close()}
+ * <li>Always {@link #flush()} on {@link #close()}, which fails if the flush fails
  * <li>Check expected byte count when closed (Optional)
  * <li>Close original {@link OutputStream} when closed (Optional)
  * <li>Overridable {@link #onClose()} method
@@ -101,7 +101,17 @@ public class ImprovedOutputStream extends FilterOutputStream {
     try {
       flush();
     } catch (IOException e) {
+      // Whatever wasn't flushed is lost, so the stream must not look like it was closed cleanly.
       logger.atWarning().withCause(e).log("flush() failed for %s", name);
+      if (shouldClose) {
+        try {
+          out.close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      out = null;
+      throw e;
     }
     onClose();
     if (shouldClose) {
@@ -114,7 +124,7 @@ public class ImprovedOutputStream extends FilterOutputStream {
   /**
    * Overridable method that's called by {@link #close()}.
    *
-   * <p>This method does nothing by default.
+   * <p>This method does nothing by default. It isn't called if the final flush fails.
    */
   protected void onClose() throws IOException {
     // Does nothing by default.
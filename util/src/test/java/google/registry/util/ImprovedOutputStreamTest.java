@@ -0,0 +1,85 @@
+// Copyright 2021 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ImprovedOutputStream}. */
+class ImprovedOutputStreamTest {
+
+  /** An OutputStream whose flush fails, and which records whether it was closed. */
+  private static class FailingFlushOutputStream extends FilterOutputStream {
+
+    boolean closed;
+
+    FailingFlushOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      throw new IOException("Flush failed");
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @Test
+  void testClose_flushesAndCloses() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    boolean[] onCloseCalled = {false};
+    try (ImprovedOutputStream stream =
+        new ImprovedOutputStream("test", output) {
+          @Override
+          protected void onClose() {
+            onCloseCalled[0] = true;
+          }
+        }) {
+      stream.write(new byte[] {1, 2, 3});
+      assertThat(stream.getBytesWritten()).isEqualTo(3);
+    }
+    assertThat(output.toByteArray()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(onCloseCalled[0]).isTrue();
+  }
+
+  @Test
+  void testFailure_flushFailsOnClose() throws Exception {
+    FailingFlushOutputStream output = new FailingFlushOutputStream(new ByteArrayOutputStream());
+    boolean[] onCloseCalled = {false};
+    ImprovedOutputStream stream =
+        new ImprovedOutputStream("test", output) {
+          @Override
+          protected void onClose() {
+            onCloseCalled[0] = true;
+          }
+        };
+    IOException thrown = assertThrows(IOException.class, stream::close);
+    assertThat(thrown).hasMessageThat().isEqualTo("Flush failed");
+    assertThat(onCloseCalled[0]).isFalse();
+    assertThat(output.closed).isTrue();
+    // The stream counts as closed, so closing it again does nothing.
+    stream.close();
+  }
+}